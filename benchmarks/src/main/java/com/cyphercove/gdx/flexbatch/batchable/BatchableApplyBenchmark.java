@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g2d.PolygonRegion;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.benchmarks.Headless;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+
+/** Measures vertex generation alone, by calling the Batchables' {@code apply} methods directly without a FlexBatch. This
+ * benchmark lives in the batchable package because those methods are protected. Throughput is reported per Batchable.
+ * 
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchableApplyBenchmark {
+
+	/** The number of Batchables applied in each benchmark operation. */
+	public static final int SPRITES = 1000;
+
+	private Texture texture;
+	private final Quad2D[] quad2Ds = new Quad2D[SPRITES];
+	private final Quad3D[] quad3Ds = new Quad3D[SPRITES];
+	private final LitQuad3D[] litQuad3Ds = new LitQuad3D[SPRITES];
+	private final Poly2D[] poly2Ds = new Poly2D[SPRITES];
+	private Target quad2DTarget, quad3DTarget, litQuad3DTarget, poly2DTarget;
+
+	/** A vertex array with the matching attribute layout for one Batchable type. */
+	private static class Target {
+		final AttributeOffsets offsets;
+		final int vertexSize;
+		final float[] vertices;
+
+		Target (Array<VertexAttribute> attributes, int maxVerticesPerBatchable) {
+			VertexAttributes vertexAttributes = new VertexAttributes(attributes.toArray());
+			offsets = new AttributeOffsets(vertexAttributes);
+			vertexSize = vertexAttributes.vertexSize / 4;
+			vertices = new float[vertexSize * maxVerticesPerBatchable * SPRITES];
+		}
+	}
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		texture = Headless.createTexture(64, 64);
+		TextureRegion region = new TextureRegion(texture, 8, 8, 32, 32);
+		PolygonRegion polygonRegion = Headless.createPolygonRegion(texture, 8);
+
+		MathUtils.random.setSeed(0);
+		for (int i = 0; i < SPRITES; i++) {
+			float x = MathUtils.random(800f), y = MathUtils.random(480f), z = MathUtils.random(-100f, 100f);
+			float rotation = MathUtils.random(360f);
+			quad2Ds[i] = new Quad2D();
+			quad2Ds[i].textureRegion(region).position(x, y).origin(16, 16).rotation(rotation).scale(1.5f, 1.5f);
+			quad3Ds[i] = new Quad3D();
+			quad3Ds[i].textureRegion(region).size(1f, 1f).position(x, y, z).rotation(0, 0, rotation);
+			litQuad3Ds[i] = new LitQuad3D();
+			litQuad3Ds[i].textureRegion(region).size(1f, 1f).position(x, y, z).rotation(0, 0, rotation);
+			poly2Ds[i] = new Poly2D();
+			poly2Ds[i].region(polygonRegion).position(x, y).origin(16, 16).rotation(rotation);
+		}
+
+		Array<VertexAttribute> attributes = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+		quad2Ds[0].addVertexAttributes(attributes);
+		quad2DTarget = new Target(attributes, 4);
+		attributes.clear();
+		quad3Ds[0].addVertexAttributes(attributes);
+		quad3DTarget = new Target(attributes, 4);
+		attributes.clear();
+		litQuad3Ds[0].addVertexAttributes(attributes);
+		litQuad3DTarget = new Target(attributes, 4);
+		attributes.clear();
+		poly2Ds[0].addVertexAttributes(attributes);
+		poly2DTarget = new Target(attributes, 8);
+	}
+
+	@TearDown
+	public void tearDown () {
+		texture.dispose();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public float[] quad2D () {
+		Target target = quad2DTarget;
+		float[] vertices = target.vertices;
+		AttributeOffsets offsets = target.offsets;
+		int vertexSize = target.vertexSize;
+		for (int i = 0, v = 0; i < SPRITES; i++)
+			v += quad2Ds[i].apply(vertices, v, offsets, vertexSize) * vertexSize;
+		return vertices;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public float[] quad3D () {
+		Target target = quad3DTarget;
+		float[] vertices = target.vertices;
+		AttributeOffsets offsets = target.offsets;
+		int vertexSize = target.vertexSize;
+		for (int i = 0, v = 0; i < SPRITES; i++)
+			v += quad3Ds[i].apply(vertices, v, offsets, vertexSize) * vertexSize;
+		return vertices;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public float[] litQuad3D () {
+		Target target = litQuad3DTarget;
+		float[] vertices = target.vertices;
+		AttributeOffsets offsets = target.offsets;
+		int vertexSize = target.vertexSize;
+		for (int i = 0, v = 0; i < SPRITES; i++)
+			v += litQuad3Ds[i].apply(vertices, v, offsets, vertexSize) * vertexSize;
+		return vertices;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public float[] poly2D () {
+		Target target = poly2DTarget;
+		float[] vertices = target.vertices;
+		AttributeOffsets offsets = target.offsets;
+		int vertexSize = target.vertexSize;
+		for (int i = 0, v = 0; i < SPRITES; i++)
+			v += poly2Ds[i].apply(vertices, v, offsets, vertexSize) * vertexSize;
+		return vertices;
+	}
+}
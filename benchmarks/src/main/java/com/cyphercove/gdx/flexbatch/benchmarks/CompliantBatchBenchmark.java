@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.MathUtils;
+import com.cyphercove.gdx.flexbatch.CompliantBatch;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+
+/** Measures {@link CompliantBatch#draw(Texture, float[], int, int)}, the path used by Sprite, BitmapFont, NinePatch and
+ * ParticleEffect. Throughput is reported per sprite.
+ * 
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompliantBatchBenchmark {
+
+	/** The number of sprites drawn in each benchmark operation. */
+	public static final int SPRITES = 10000;
+	private static final int SPRITE_SIZE = 20;
+	/** The number of sprites submitted per call in {@link #spriteRuns()}, similar to a BitmapFontCache line of text. */
+	private static final int RUN_LENGTH = 50;
+
+	/** The vertex capacity of the batch, which determines how many flushes occur per operation. */
+	@Param({"1000", "4000", "32000"})
+	public int maxVertices;
+
+	/** Whether the batch supports Poly2Ds, which disables the fixed-size index optimization. */
+	@Param({"false", "true"})
+	public boolean supportPolygons;
+
+	private Texture texture;
+	private ShaderProgram shader;
+	private CompliantBatch<Quad2D> batch;
+	private final float[] spriteVertices = new float[SPRITES * SPRITE_SIZE];
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		texture = Headless.createTexture(64, 64);
+		shader = Headless.createShader();
+		batch = new CompliantBatch<Quad2D>(Quad2D.class, maxVertices, false, supportPolygons);
+		batch.setShader(shader);
+
+		MathUtils.random.setSeed(0);
+		float color = Color.WHITE.toFloatBits();
+		for (int i = 0, v = 0; i < SPRITES; i++) {
+			float x = MathUtils.random(800f), y = MathUtils.random(480f);
+			float x2 = x + 32f, y2 = y + 32f;
+			v = putVertex(v, x, y, color, 0f, 1f);
+			v = putVertex(v, x, y2, color, 0f, 0f);
+			v = putVertex(v, x2, y2, color, 1f, 0f);
+			v = putVertex(v, x2, y, color, 1f, 1f);
+		}
+	}
+
+	private int putVertex (int index, float x, float y, float color, float u, float v) {
+		float[] spriteVertices = this.spriteVertices;
+		spriteVertices[index + Batch.X1] = x;
+		spriteVertices[index + Batch.Y1] = y;
+		spriteVertices[index + Batch.C1] = color;
+		spriteVertices[index + Batch.U1] = u;
+		spriteVertices[index + Batch.V1] = v;
+		return index + 5;
+	}
+
+	@TearDown
+	public void tearDown () {
+		batch.dispose();
+		shader.dispose();
+		texture.dispose();
+	}
+
+	/** One call per sprite, as Sprite.draw(Batch) does. */
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int sprites () {
+		CompliantBatch<Quad2D> batch = this.batch;
+		Texture texture = this.texture;
+		float[] spriteVertices = this.spriteVertices;
+		batch.begin();
+		for (int i = 0; i < SPRITES; i++)
+			batch.draw(texture, spriteVertices, i * SPRITE_SIZE, SPRITE_SIZE);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	/** Several sprites per call, as BitmapFontCache and NinePatch do. */
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int spriteRuns () {
+		CompliantBatch<Quad2D> batch = this.batch;
+		Texture texture = this.texture;
+		float[] spriteVertices = this.spriteVertices;
+		batch.begin();
+		for (int i = 0; i < SPRITES; i += RUN_LENGTH)
+			batch.draw(texture, spriteVertices, i * SPRITE_SIZE, RUN_LENGTH * SPRITE_SIZE);
+		batch.end();
+		return batch.renderCalls;
+	}
+}
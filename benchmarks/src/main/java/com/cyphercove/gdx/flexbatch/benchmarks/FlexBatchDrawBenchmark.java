@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PolygonRegion;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.MathUtils;
+import com.cyphercove.gdx.flexbatch.Batchable;
+import com.cyphercove.gdx.flexbatch.FlexBatch;
+import com.cyphercove.gdx.flexbatch.FlexBatchCache;
+import com.cyphercove.gdx.flexbatch.batchable.LitQuad3D;
+import com.cyphercove.gdx.flexbatch.batchable.Poly2D;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.batchable.Quad3D;
+
+/** Measures the full {@link FlexBatch#draw(com.cyphercove.gdx.flexbatch.Batchable)} path for the built-in Batchable types,
+ * including render context checks, vertex generation and the flushes that occur when the batch fills up. Throughput is
+ * reported per Batchable, i.e. in sprites per second. Run with the GC profiler to see bytes allocated per sprite.
+ * 
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlexBatchDrawBenchmark {
+
+	/** The number of Batchables drawn in each benchmark operation. */
+	public static final int SPRITES = 10000;
+
+	/** The vertex capacity of the batches, which determines how many flushes occur per operation. */
+	@Param({"1000", "4000", "32000"})
+	public int maxVertices;
+
+	private Texture texture;
+	private TextureRegion region;
+	private ShaderProgram shader;
+	private FlexBatch<Quad2D> quad2DBatch;
+	private FlexBatch<Quad2D> directQuad2DBatch;
+	private FlexBatchCache<Quad2D> quad2DCache;
+	private int quad2DCacheID;
+	private FlexBatch<Quad3D> quad3DBatch;
+	private FlexBatch<Quad3D> parallelQuad3DBatch;
+	private ExecutorService executor;
+	private FlexBatch<LitQuad3D> litQuad3DBatch;
+	private FlexBatch<Poly2D> poly2DBatch;
+	private final Quad2D[] quad2Ds = new Quad2D[SPRITES];
+	private final Quad3D[] quad3Ds = new Quad3D[SPRITES];
+	private final LitQuad3D[] litQuad3Ds = new LitQuad3D[SPRITES];
+	private final Poly2D[] poly2Ds = new Poly2D[SPRITES];
+	private final float[] positions = new float[SPRITES * 3];
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		texture = Headless.createTexture(64, 64);
+		region = new TextureRegion(texture, 8, 8, 32, 32);
+		PolygonRegion polygonRegion = Headless.createPolygonRegion(texture, 8);
+		shader = Headless.createShader();
+
+		quad2DBatch = new FlexBatch<Quad2D>(Quad2D.class, maxVertices, 0);
+		quad3DBatch = new FlexBatch<Quad3D>(Quad3D.class, maxVertices, 0);
+		litQuad3DBatch = new FlexBatch<LitQuad3D>(LitQuad3D.class, maxVertices, 0);
+		poly2DBatch = new FlexBatch<Poly2D>(Poly2D.class, maxVertices, maxVertices);
+		quad2DBatch.setShader(shader);
+		directQuad2DBatch = new FlexBatch<Quad2D>(Quad2D.class, maxVertices, 0, true);
+		directQuad2DBatch.setShader(shader);
+		quad3DBatch.setShader(shader);
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		executor = Executors.newFixedThreadPool(Math.max(1, parallelism - 1));
+		parallelQuad3DBatch = new FlexBatch<Quad3D>(Quad3D.class, maxVertices, 0);
+		parallelQuad3DBatch.setParallelVertexGeneration(executor, Math.max(2, parallelism), 64);
+		parallelQuad3DBatch.setShader(shader);
+		litQuad3DBatch.setShader(shader);
+		poly2DBatch.setShader(shader);
+
+		quad2DCache = new FlexBatchCache<Quad2D>(Quad2D.class, SPRITES * 4, 0);
+		quad2DCache.setShader(shader);
+
+		MathUtils.random.setSeed(0);
+		for (int i = 0; i < SPRITES; i++) {
+			float x = MathUtils.random(800f), y = MathUtils.random(480f), z = MathUtils.random(-100f, 100f);
+			float rotation = MathUtils.random(360f);
+			positions[i * 3] = x;
+			positions[i * 3 + 1] = y;
+			positions[i * 3 + 2] = z;
+			quad2Ds[i] = new Quad2D();
+			quad2Ds[i].textureRegion(region).position(x, y).origin(16, 16).rotation(rotation).scale(1.5f, 1.5f);
+			quad3Ds[i] = new Quad3D();
+			quad3Ds[i].textureRegion(region).size(1f, 1f).position(x, y, z).rotation(0, 0, rotation);
+			litQuad3Ds[i] = new LitQuad3D();
+			litQuad3Ds[i].textureRegion(region).size(1f, 1f).position(x, y, z).rotation(0, 0, rotation);
+			poly2Ds[i] = new Poly2D();
+			poly2Ds[i].region(polygonRegion).position(x, y).origin(16, 16).rotation(rotation);
+		}
+
+		quad2DCache.beginCache();
+		for (Quad2D quad : quad2Ds)
+			quad2DCache.add(quad);
+		quad2DCacheID = quad2DCache.endCache();
+	}
+
+	@TearDown
+	public void tearDown () {
+		quad2DBatch.dispose();
+		directQuad2DBatch.dispose();
+		quad2DCache.dispose();
+		quad3DBatch.dispose();
+		parallelQuad3DBatch.dispose();
+		executor.shutdown();
+		litQuad3DBatch.dispose();
+		poly2DBatch.dispose();
+		shader.dispose();
+		texture.dispose();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int quad2D () {
+		FlexBatch<Quad2D> batch = quad2DBatch;
+		batch.begin();
+		for (Quad2D quad : quad2Ds)
+			batch.draw(quad);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	/** Draws the same Quad2Ds as {@link #quad2D()} with a single call to {@link FlexBatch#draw(Batchable[], int, int)}. */
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int quad2DSeries () {
+		FlexBatch<Quad2D> batch = quad2DBatch;
+		batch.begin();
+		batch.draw(quad2Ds, 0, SPRITES);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	/** Draws the same Quad2Ds as {@link #quad2D()} with a batch that writes directly into its Mesh's buffer. */
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int quad2DDirect () {
+		FlexBatch<Quad2D> batch = directQuad2DBatch;
+		batch.begin();
+		for (Quad2D quad : quad2Ds)
+			batch.draw(quad);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	/** Draws the same Quad2Ds as {@link #quad2D()}, recorded once into a {@link FlexBatchCache}. */
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int quad2DCached () {
+		FlexBatchCache<Quad2D> cache = quad2DCache;
+		cache.begin();
+		cache.draw(quad2DCacheID);
+		cache.end();
+		return cache.renderCalls;
+	}
+
+	/** Uses the internal Batchable returned by {@link FlexBatch#draw()}, the way CompliantBatch draws. */
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int quad2DChained () {
+		FlexBatch<Quad2D> batch = quad2DBatch;
+		float[] positions = this.positions;
+		batch.begin();
+		for (int i = 0; i < SPRITES; i++)
+			batch.draw().textureRegion(region).position(positions[i * 3], positions[i * 3 + 1]).rotation(positions[i * 3 + 2]);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int quad3D () {
+		FlexBatch<Quad3D> batch = quad3DBatch;
+		batch.begin();
+		for (Quad3D quad : quad3Ds)
+			batch.draw(quad);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int quad3DSeries () {
+		FlexBatch<Quad3D> batch = quad3DBatch;
+		batch.begin();
+		batch.draw(quad3Ds, 0, SPRITES);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	/** Draws the same Quad3Ds as {@link #quad3DSeries()}, generating vertex data on all available cores. */
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int quad3DParallel () {
+		FlexBatch<Quad3D> batch = parallelQuad3DBatch;
+		batch.begin();
+		batch.draw(quad3Ds, 0, SPRITES);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int litQuad3D () {
+		FlexBatch<LitQuad3D> batch = litQuad3DBatch;
+		batch.begin();
+		for (LitQuad3D quad : litQuad3Ds)
+			batch.draw(quad);
+		batch.end();
+		return batch.renderCalls;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SPRITES)
+	public int poly2D () {
+		FlexBatch<Poly2D> batch = poly2DBatch;
+		batch.begin();
+		for (Poly2D poly : poly2Ds)
+			batch.draw(poly);
+		batch.end();
+		return batch.renderCalls;
+	}
+}
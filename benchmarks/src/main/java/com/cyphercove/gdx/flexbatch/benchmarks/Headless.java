@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PolygonRegion;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.MathUtils;
+
+/** Sets up the LibGDX static context for benchmarking without a GPU or window. The natives are loaded so Meshes and Pixmaps
+ * can be created, and {@link Gdx#gl} is replaced with a {@link NoOpGL20}.
+ * 
+ * @author cypherdare */
+public final class Headless {
+
+	private static boolean initialized;
+
+	private Headless () {
+	}
+
+	public static synchronized void initialize () {
+		if (initialized) return;
+		HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+		config.renderInterval = -1; // no render loop
+		new HeadlessApplication(new ApplicationAdapter() {
+		}, config);
+		Gdx.gl = Gdx.gl20 = new NoOpGL20();
+		Gdx.gl30 = null;
+		ShaderProgram.pedantic = false;
+		initialized = true;
+	}
+
+	/** @return A ShaderProgram that can be set on a FlexBatch. It is never compiled, but it does not need to be. */
+	public static ShaderProgram createShader () {
+		return new ShaderProgram("void main(){}", "void main(){}");
+	}
+
+	public static Texture createTexture (int width, int height) {
+		Pixmap pixmap = new Pixmap(width, height, Pixmap.Format.RGBA8888);
+		Texture texture = new Texture(pixmap);
+		pixmap.dispose();
+		return texture;
+	}
+
+	/** @return A convex PolygonRegion covering the whole texture, with the given number of outer vertices. */
+	public static PolygonRegion createPolygonRegion (Texture texture, int vertexCount) {
+		TextureRegion region = new TextureRegion(texture);
+		float halfWidth = texture.getWidth() / 2f, halfHeight = texture.getHeight() / 2f;
+		float[] vertices = new float[vertexCount * 2];
+		for (int i = 0; i < vertexCount; i++) {
+			float angle = MathUtils.PI2 * i / vertexCount;
+			vertices[i * 2] = halfWidth + halfWidth * MathUtils.cos(angle);
+			vertices[i * 2 + 1] = halfHeight + halfHeight * MathUtils.sin(angle);
+		}
+		short[] triangles = new short[(vertexCount - 2) * 3];
+		for (int i = 0, t = 0; i < vertexCount - 2; i++) { // fan
+			triangles[t++] = 0;
+			triangles[t++] = (short)(i + 1);
+			triangles[t++] = (short)(i + 2);
+		}
+		return new PolygonRegion(region, vertices, triangles);
+	}
+}
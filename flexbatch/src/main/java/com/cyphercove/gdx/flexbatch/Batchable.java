@@ -59,6 +59,20 @@ public abstract class Batchable implements Poolable {
 	protected abstract boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices,
 		int remainingIndices);
 
+	/** Called by FlexBatch when drawing a series of Batchables, to determine whether
+	 * {@link #prepareContext(RenderContextAccumulator, int, int)} can be skipped for this Batchable because the previous
+	 * Batchable in the series already made the same render context changes. Remaining capacity is checked by the FlexBatch when
+	 * this returns true.
+	 * <p>
+	 * A subclass that overrides {@code prepareContext()} in a way that depends on its own parameters must also override this
+	 * method to compare those parameters.
+	 * @param previous The Batchable that was drawn immediately before this one.
+	 * @return Whether calling {@code prepareContext()} on this Batchable would change nothing in the render context. The default
+	 *         implementation returns false. */
+	protected boolean hasEquivalentContext (Batchable previous) {
+		return false;
+	}
+
 	/** A Batchable implementation calls this to populate a list of vertex attributes that will be used by the FlexBatch. This is
 	 * called only on one of the FlexBatch's internal Batchable instances. All instances of a class must have an equivalent set of
 	 * attributes. Any subclass that does not have equivalent attributes to the superclass cannot be drawn by a FlexBatch that was
@@ -66,10 +80,18 @@ public abstract class Batchable implements Poolable {
 	 * @param attributes An array to which attributes can be added. */
 	protected abstract void addVertexAttributes (Array<VertexAttribute> attributes);
 
-	/** @return The number of simultaneous textures that are drawn. This is used by the FlexBatch to determine how many texture
-	 *         uniforms to bind to the shader. Must always return the same value. */
+	/** @return The number of simultaneous textures that are drawn. Unless {@link #getNumberOfTextureUnits()} is overridden, this
+	 *         is used by the FlexBatch to determine how many texture uniforms to bind to the shader. Must always return the same
+	 *         value. */
 	protected abstract int getNumberOfTextures ();
 
+	/** @return The number of texture units that the shader samples from, which the FlexBatch uses to determine how many texture
+	 *         uniforms to bind to the shader. This is the same as {@link #getNumberOfTextures()} by default. It may be larger for
+	 *         a Batchable that selects among several bound textures in the shader. Must always return the same value. */
+	protected int getNumberOfTextureUnits () {
+		return getNumberOfTextures();
+	}
+
 	/** Resets the state and default parameters of the Batchable so it can be reused for an entirely new image. */
 	public abstract void refresh ();
 
@@ -98,7 +120,7 @@ public abstract class Batchable implements Poolable {
 
 	/** Parent class for Batchables that all have the same number of vertices and triangles. This allows all triangle indices for a
 	 * FlexBatch to be generated one time so they don't have to be repeatedly updated when drawing. */
-	public static abstract class FixedSizeBatchable extends Batchable {
+	public static abstract class FixedSizeBatchable extends Batchable implements IntIndexedBatchable {
 
 		private static ObjectMap<Class<? extends FixedSizeBatchable>, short[]> indicesModels = new ObjectMap<Class<? extends FixedSizeBatchable>, short[]>();
 
@@ -131,21 +153,62 @@ public abstract class Batchable implements Poolable {
 		 *           series of this Batchable type. */
 		protected abstract void populateTriangleIndices (short[] triangles);
 
-		/** Called by FlexBatch to apply triangle index data, only if this FixedSizeBatchable is drawn by a FlexBatch that is not
-		 * limited to drawing FixedSizeBatchables. See {@link Batchable#apply(short[], int, short)} */
-		protected final int apply (short[] triangles, int triangleStartingIndex, short firstVertex) {
+		/** Populate the fixed triangle array for the FlexBatch's mesh, if the FlexBatch uses 32-bit indices. The default
+		 * implementation repeats the indices of a single Batchable from {@link #populateTriangleIndices(short[])}, offsetting them
+		 * for each successive Batchable.
+		 * @param triangles An array of triangle indices that, before this method returns, must be fully populated for drawing a
+		 *           series of this Batchable type. */
+		protected void populateTriangleIndices (int[] triangles) {
+			short[] model = getIndicesModel();
+			int verticesPerBatchable = getVerticesPerBatchable();
+			for (int i = 0, firstVertex = 0; i + model.length <= triangles.length; firstVertex += verticesPerBatchable) {
+				for (int j = 0; j < model.length; j++)
+					triangles[i++] = model[j] + firstVertex;
+			}
+		}
+
+		/** Fills the indices of a full batch by repeating the cached indices of a single Batchable of this class, offset for each
+		 * successive Batchable, so they are not populated from scratch for each batch capacity.
+		 * @param triangles The array to fill. */
+		final void populateSeriesIndices (short[] triangles) {
+			short[] model = getIndicesModel();
+			int verticesPerBatchable = getVerticesPerBatchable();
+			for (int i = 0, firstVertex = 0; i + model.length <= triangles.length; firstVertex += verticesPerBatchable) {
+				for (int j = 0; j < model.length; j++)
+					triangles[i++] = (short)(model[j] + firstVertex);
+			}
+		}
+
+		private short[] getIndicesModel () {
 			short[] model = indicesModels.get(getClass());
 			if (model == null) {
 				model = new short[getTrianglesPerBatchable() * 3];
 				populateTriangleIndices(model);
 				indicesModels.put(getClass(), model);
 			}
+			return model;
+		}
 
+		/** Called by FlexBatch to apply triangle index data, only if this FixedSizeBatchable is drawn by a FlexBatch that is not
+		 * limited to drawing FixedSizeBatchables. See {@link Batchable#apply(short[], int, short)} */
+		protected final int apply (short[] triangles, int triangleStartingIndex, short firstVertex) {
+			short[] model = getIndicesModel();
 			for (int i = 0; i < model.length; i++) {
 				triangles[triangleStartingIndex++] = (short)(model[i] + firstVertex);
 			}
 
 			return model.length;
 		}
+
+		/** Called by FlexBatch to apply triangle index data, only if this FixedSizeBatchable is drawn by a FlexBatch that is not
+		 * limited to drawing FixedSizeBatchables and uses 32-bit indices. See {@link IntIndexedBatchable#apply(int[], int, int)} */
+		public final int apply (int[] triangles, int triangleStartingIndex, int firstVertex) {
+			short[] model = getIndicesModel();
+			for (int i = 0; i < model.length; i++) {
+				triangles[triangleStartingIndex++] = model[i] + firstVertex;
+			}
+
+			return model.length;
+		}
 	}
 }
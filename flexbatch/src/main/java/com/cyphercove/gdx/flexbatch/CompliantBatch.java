@@ -23,31 +23,35 @@ import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.math.Affine2;
 import com.badlogic.gdx.utils.NumberUtils;
 import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
-import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.GeneratedShaderCache;
 
 /** A {@link FlexBatch} that implements the {@link Batch} interface, so it is compatible with Stage/Actor, BitmapFont,
- * ParticleEffect, Sprite, and NinePatch. It creates its own default ShaderProgram, which is owned and is disposed automatically
- * with the CompliantBatch.
+ * ParticleEffect, Sprite, and NinePatch. It obtains a default ShaderProgram from the {@link GeneratedShaderCache}, shared with
+ * other CompliantBatches, and releases it automatically when the CompliantBatch is disposed.
  * <p>
  * A CompliantBatch must be {@link #dispose() disposed of} when no longer used to avoid leaking memory.
  * <p>
  * In addition to drawing Quad2Ds (or given subclass), if polygon support is specified in the constructor, it may also draw
- * Poly2Ds (or matching subclass) by submitting them to {@link #draw(Batchable)}.
+ * Poly2Ds (or matching subclass) by submitting them to {@link #draw(Batchable)}. Likewise, it can draw
+ * {@link com.cyphercove.gdx.flexbatch.batchable.NinePatch2D NinePatch2Ds}, which draw a whole nine-patch in one Batchable.
  * <p>
  * A subclass of Quad2D may be passed to the constructor to customize what is drawn (multi-texturing or other attributes).
+ * <p>
+ * For scenes that draw from many textures, {@link #setSorted(boolean) sorted mode} with {@link #setLayer(int) layers} groups
+ * the draws by texture and blend state, so they don't need to be ordered by hand to avoid flushes.
  * 
  * @param <T> The type of Quad2D that is returned when acquiring one with {@link #draw()}. This must match the class type that is
  *           passed to the constructor.
  * @author cypherdare */
 public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Batch {
 	private final T tmp;
-	private final ShaderProgram defaultShader;
+	private ShaderProgram defaultShader;
 	private float color = Color.WHITE.toFloatBits();
 	private final Color tempColor = new Color();
 	private final float[] tempVertices = new float[20];
 
 	/** Constructs a CompliantQuadBatch with a default shader and a capacity of 1000 quads that can be drawn per flush. The default
-	 * shader is owned by the CompliantQuadBatch, so it is disposed when the CompliantQuadBatch is disposed. If an alternate shader
+	 * shader is shared, and released when the CompliantQuadBatch is disposed. If an alternate shader
 	 * has been applied with {@link #setShader(ShaderProgram)}, the default can be used again by setting the shader to null.
 	 * @param supportPolygons Whether Poly2Ds are supported for drawing. The FlexBatch will not be optimized for
 	 *           FixedSizeBatchables. */
@@ -55,10 +59,10 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 		this(batchableType, 4000, supportPolygons);
 	}
 
-	/** Constructs a CompliantQuadBatch with a default shader. The default shader is owned by the CompliantQuadBatch, so it is
-	 * disposed when the CompliantQuadBatch is disposed. If an alternate shader has been applied with
+	/** Constructs a CompliantQuadBatch with a default shader. The default shader is shared, and released when the
+	 * CompliantQuadBatch is disposed. If an alternate shader has been applied with
 	 * {@link #setShader(ShaderProgram)}, the default can be used again by setting the shader to null.
-	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Maximum of 32767.
+	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Maximum of 65535 unless OpenGL ES 3.0 is available.
 	 * @param supportPolygons Whether Poly2Ds are supported for drawing. The FlexBatch will not be optimized for
 	 *           FixedSizeBatchables. */
 	public CompliantBatch (Class<T> batchableType, int maxVertices, boolean supportPolygons) {
@@ -66,9 +70,9 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 	}
 
 	/** Constructs a CompliantQuadBatch with a specified capacity and optional default shader.
-	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Maximum of 32767.
-	 * @param generateDefaultShader Whether a default shader should be created. The default shader is owned by the
-	 *           CompliantQuadBatch, so it is disposed when the CompliantQuadBatch is disposed. If an alternate shader has been
+	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Maximum of 65535 unless OpenGL ES 3.0 is available.
+	 * @param generateDefaultShader Whether a default shader should be created. The default shader is shared, and
+	 *           released when the CompliantQuadBatch is disposed. If an alternate shader has been
 	 *           applied with {@link #setShader(ShaderProgram)}, the default can be used again by setting the shader to null.
 	 * @param supportPolygons Whether Poly2Ds are supported for drawing. The FlexBatch will not be optimized for
 	 *           FixedSizeBatchables. */
@@ -80,10 +84,7 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 			throw new IllegalArgumentException("Batchable classes must be public and have an empty constructor.", e);
 		}
 		if (generateDefaultShader) {
-			defaultShader = new ShaderProgram(BatchablePreparation.generateGenericVertexShader(1),
-				BatchablePreparation.generateGenericFragmentShader(1));
-			if (defaultShader.isCompiled() == false)
-				throw new IllegalArgumentException("Error compiling shader: " + defaultShader.getLog());
+			defaultShader = GeneratedShaderCache.obtain(1, 0);
 			setShader(defaultShader);
 		} else {
 			defaultShader = null;
@@ -99,7 +100,10 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 	@Override
 	public void dispose () {
 		super.dispose();
-		if (defaultShader != null) defaultShader.dispose();
+		if (defaultShader != null) {
+			GeneratedShaderCache.release(defaultShader);
+			defaultShader = null;
+		}
 	}
 
 	/** Sets the color used to tint images when they are added to the Batch. Default is Color.WHITE. Does not affect the color of
@@ -16,6 +16,12 @@
 package com.cyphercove.gdx.flexbatch;
 
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
@@ -26,10 +32,16 @@ import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BufferUtils;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.FlushStatistics.FlushListener;
+import com.cyphercove.gdx.flexbatch.FlushStatistics.FlushReason;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.IntIndexBufferObject;
 import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.VertexPacker;
 
 /**
  * Draws batched {@link Batchable} objects, optimizing the drawing process by combining them into a single Mesh. FlexBatch can be
@@ -50,6 +62,12 @@ import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
  * <p>
  * A single FlexBatch might be capable of drawing more than one type of Batchable. See {@link #draw(Batchable)} for details.
  * <p>
+ * In {@link #setSorted(boolean) sorted mode}, draws are held until the batch flushes and are then drawn grouped by layer and
+ * render context, so Batchables with different textures can be drawn in any order with few flushes.
+ * <p>
+ * If the Batchable type has compact vertex attributes, such as those of a Quad whose {@code isVertexDataCompact()} returns true,
+ * Batchables still write their vertex data as floats. The FlexBatch converts it with a {@link VertexPacker} before uploading it.
+ * <p>
  * Unlike SpriteBatch, no default shader is provided automatically. A call to {@link #setShader(ShaderProgram)} must be made
  * before any drawing can occur. The attribute names to be used in the vertex shader are defined by the Batchable. By default
  * FlexBatch automatically passes its combined transform and projection matrices to the shader with the uniform name
@@ -72,10 +90,21 @@ public class FlexBatch<T extends Batchable> implements Disposable {
     public final Class<T> batchableType;
     private T internalBatchable;
     private boolean havePendingInternal;
-    private final Mesh mesh;
+    private final Mesh[] meshes;
+    private int meshIndex;
+    private int previousMeshIndex;
+    private int flushesSinceBegin;
     private final AttributeOffsets attributeOffsets;
-    private final float[] vertices;
-    private final short[] triangles;
+    private final float[] vertices; // only large enough for one Batchable if directStaging
+    private FloatBuffer vertexBuffer; // only for directStaging
+    private final boolean directStaging;
+    private final VertexPacker vertexPacker; // only for compact vertex attributes
+    private final ByteBuffer packedVertices; // only for compact vertex attributes
+    private final FloatBuffer packedVerticesAsFloats; // only for compact vertex attributes
+    private final short[] triangles; // null if intIndices or fixedIndices
+    private final boolean intIndices;
+    private final int[] intTriangles; // only for intIndices without fixedIndices
+    private final IntIndexBufferObject[] intIndexBuffers; // only for intIndices, one per Mesh
     private int vertIdx, triIdx;
     private int previousTriIdx;
     private boolean reflushUsed;
@@ -87,6 +116,17 @@ public class FlexBatch<T extends Batchable> implements Disposable {
     // only for fixedIndices
     private final int indicesPerBatchable, verticesPerBatchable, vertexDataPerBatchable;
 
+    // only for parallel vertex generation
+    private ExecutorService vertexGenerationExecutor;
+    private VertexGenerationTask[] vertexGenerationTasks;
+    private Future<?>[] vertexGenerationFutures;
+    private int minimumParallelRunLength;
+
+    // only for sorted mode
+    private SortedDrawQueue sortedQueue;
+    private int layer;
+    private boolean drawingSorted;
+
     private boolean drawing = false;
 
     /**
@@ -98,6 +138,20 @@ public class FlexBatch<T extends Batchable> implements Disposable {
      * Number of rendering calls, ever. Will not be reset unless set manually.
      **/
     public int totalRenderCalls = 0;
+    /**
+     * Number of flushes since the last {@link #begin()} that reused a Mesh that was already flushed since that call. If this
+     * is frequently above zero, the Mesh ring is too small to give each flush of a frame its own Mesh, and the driver may
+     * have to wait for a previous draw to finish with the Mesh before it can be refilled.
+     **/
+    public int meshRingWraps = 0;
+    /**
+     * Number of flushes that reused a Mesh already flushed since the {@link #begin()} call of the time, ever. Will not be
+     * reset unless set manually.
+     **/
+    public int totalMeshRingWraps = 0;
+
+    private final FlushStatistics statistics = new FlushStatistics();
+    private FlushListener flushListener;
 
     private final Matrix4 transformMatrix = new Matrix4();
     private final Matrix4 projectionMatrix = new Matrix4();
@@ -112,21 +166,79 @@ public class FlexBatch<T extends Batchable> implements Disposable {
     /**
      * Construct a FlexBatch capable of drawing the given Batchable type and other compatible Batchables (ones with the same + *
      * VertexAttributes or subset of beginning VertexAttributes). The FlexBatch will not be limited to FixedSizeBatchables.
+     * <p>
+     * Up to 65535 vertices are addressed with 16-bit indices. If more vertices are used, the FlexBatch uses 32-bit indices,
+     * which are only available with OpenGL ES 3.0. In that case, any Batchable that is not a FixedSizeBatchable must implement
+     * {@link IntIndexedBatchable}, and the index buffer is not restored after the OpenGL context is lost.
      *
      * @param batchableType The type of Batchable that defines the VertexAttributes supported by this FlexBatch, and the + *
      *                      default Batchable type drawn by the {@link #draw()} method.
-     * @param maxVertices   The number of vertices this FlexBatch can batch at once. Maximum of 32767. If the Batchable is a
-     *                      FixedSizeBatchable and 0 is used for maxTriangles, this value will be rounded down to a multiple of the
-     *                      Batchable's size.
+     * @param maxVertices   The number of vertices this FlexBatch can batch at once. Values above 65535 are only supported with
+     *                      OpenGL ES 3.0, and cause 32-bit indices to be used. If the Batchable is a FixedSizeBatchable and 0 is
+     *                      used for maxTriangles, this value will be rounded down to a multiple of the Batchable's size.
      * @param maxTriangles  The number of triangles this FlexBatch can batch at once, or 0 to optimize this FlexBatch to draw only
      *                      FixedSizeBatchables.
      */
     public FlexBatch (Class<T> batchableType, int maxVertices, int maxTriangles) {
-        // 32767 is max vertex index.
-        if (maxVertices > 32767)
-            throw new IllegalArgumentException("Can't have more than 32767 vertices per batch: " + maxTriangles);
+        this(batchableType, maxVertices, maxTriangles, false);
+    }
+
+    /**
+     * Construct a FlexBatch capable of drawing the given Batchable type and other compatible Batchables. See
+     * {@link #FlexBatch(Class, int, int)}.
+     * <p>
+     * If direct staging is used, each Batchable's vertex data is copied into the native buffer of the Mesh as it is queued,
+     * through a scratch array the size of one Batchable, rather than being accumulated in a heap array the size of the batch
+     * and copied into the Mesh when the batch is flushed. This spreads the copy over the queued Batchables and saves the heap
+     * array, but each vertex is still written twice, since Batchables only write to float arrays. It is only available when
+     * the FlexBatch is optimized for FixedSizeBatchables. Parallel vertex generation cannot be used with direct staging, and
+     * {@link #repeatPreviousFlush()} may only be used if nothing has been drawn since the previous flush. Direct staging
+     * cannot be used with Batchables that have compact vertex attributes.
+     *
+     * @param batchableType The type of Batchable that defines the VertexAttributes supported by this FlexBatch, and the
+     *                      default Batchable type drawn by the {@link #draw()} method.
+     * @param maxVertices   The number of vertices this FlexBatch can batch at once. Values above 65535 are only supported with
+     *                      OpenGL ES 3.0, and cause 32-bit indices to be used. If the Batchable is a FixedSizeBatchable and 0 is
+     *                      used for maxTriangles, this value will be rounded down to a multiple of the Batchable's size.
+     * @param maxTriangles  The number of triangles this FlexBatch can batch at once, or 0 to optimize this FlexBatch to draw only
+     *                      FixedSizeBatchables.
+     * @param directStaging Whether to copy each Batchable's vertex data into the Mesh's buffer as it is queued. Requires
+     *                      batchableType to be a FixedSizeBatchable and maxTriangles to be 0.
+     */
+    public FlexBatch (Class<T> batchableType, int maxVertices, int maxTriangles, boolean directStaging) {
+        this(batchableType, maxVertices, maxTriangles, directStaging, 1);
+    }
+
+    /**
+     * Construct a FlexBatch capable of drawing the given Batchable type and other compatible Batchables. See
+     * {@link #FlexBatch(Class, int, int, boolean)}.
+     * <p>
+     * If more than one Mesh is used, each flush submits its vertex data to the next Mesh of a ring, so the data of a flush
+     * does not overwrite the buffer that a draw call submitted by the previous flush may still be reading. This avoids
+     * synchronization stalls in the driver, especially on tile-based mobile GPUs, at the cost of the memory for the additional
+     * Meshes. {@link #meshRingWraps} can be monitored to choose a ring size large enough for the number of flushes in a frame.
+     *
+     * @param batchableType The type of Batchable that defines the VertexAttributes supported by this FlexBatch, and the
+     *                      default Batchable type drawn by the {@link #draw()} method.
+     * @param maxVertices   The number of vertices this FlexBatch can batch at once. Values above 65535 are only supported with
+     *                      OpenGL ES 3.0, and cause 32-bit indices to be used. If the Batchable is a FixedSizeBatchable and 0 is
+     *                      used for maxTriangles, this value will be rounded down to a multiple of the Batchable's size.
+     * @param maxTriangles  The number of triangles this FlexBatch can batch at once, or 0 to optimize this FlexBatch to draw only
+     *                      FixedSizeBatchables.
+     * @param directStaging Whether to copy each Batchable's vertex data into the Mesh's buffer as it is queued. Requires
+     *                      batchableType to be a FixedSizeBatchable and maxTriangles to be 0.
+     * @param meshCount     The number of Meshes that flushes rotate through. Must be at least 1.
+     */
+    public FlexBatch (Class<T> batchableType, int maxVertices, int maxTriangles, boolean directStaging, int meshCount) {
+        // 65535 is max vertex index of unsigned short indices.
+        intIndices = maxVertices > 65535;
+        if (intIndices && Gdx.gl30 == null)
+            throw new IllegalArgumentException("Can't have more than 65535 vertices per batch without OpenGL ES 3.0: "
+                    + maxVertices);
         if (Modifier.isAbstract(batchableType.getModifiers()))
             throw new IllegalArgumentException("Can't use an abstract batchableType");
+        if (meshCount < 1)
+            throw new IllegalArgumentException("meshCount must be at least 1: " + meshCount);
 
         this.batchableType = batchableType;
 
@@ -139,11 +251,17 @@ public class FlexBatch<T extends Batchable> implements Disposable {
         Array<VertexAttribute> attributesArray = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
         internalBatchable.addVertexAttributes(attributesArray);
         VertexAttributes vertexAttributes = new VertexAttributes(attributesArray.toArray());
-        attributeOffsets = new AttributeOffsets(vertexAttributes);
-        vertexSize = vertexAttributes.vertexSize / 4;
-        final int vertexArraySize = vertexSize * maxVertices;
-        vertices = new float[vertexArraySize];
+        // Compact attributes are written by Batchables as floats and packed when flushed.
+        vertexPacker = VertexPacker.isPacked(vertexAttributes) ? new VertexPacker(vertexAttributes) : null;
+        VertexAttributes stagingAttributes = vertexPacker != null ? vertexPacker.expandedAttributes : vertexAttributes;
+        attributeOffsets = new AttributeOffsets(stagingAttributes);
+        vertexSize = stagingAttributes.vertexSize / 4;
         fixedIndices = internalBatchable instanceof FixedSizeBatchable && maxTriangles == 0;
+        if (directStaging && !fixedIndices) throw new IllegalArgumentException(
+                "Direct staging requires a FixedSizeBatchable batchableType and a maxTriangles of 0.");
+        if (directStaging && vertexPacker != null) throw new IllegalArgumentException(
+                "Direct staging cannot be used with compact vertex attributes.");
+        this.directStaging = directStaging;
 
         if (fixedIndices) {
             FixedSizeBatchable fixedSizeBatchable = (FixedSizeBatchable) internalBatchable;
@@ -152,25 +270,66 @@ public class FlexBatch<T extends Batchable> implements Disposable {
             this.maxVertices = maxVertices - (maxVertices % verticesPerBatchable);
             this.maxIndices = (this.maxVertices / verticesPerBatchable) * fixedSizeBatchable.getTrianglesPerBatchable() * 3;
             indicesPerBatchable = fixedSizeBatchable.getTrianglesPerBatchable() * 3;
-            triangles = new short[maxIndices];
-            fixedSizeBatchable.populateTriangleIndices(triangles);
+            // Fixed indices never change, so they are shared with other FlexBatches of the same type and capacity.
+            if (intIndices) {
+                IntIndexBufferObject intIndexBuffer = SharedIndices.obtainInt(fixedSizeBatchable, maxIndices);
+                intIndexBuffers = new IntIndexBufferObject[meshCount];
+                for (int i = 0; i < meshCount; i++)
+                    intIndexBuffers[i] = intIndexBuffer;
+            } else {
+                intIndexBuffers = null;
+            }
+            triangles = null;
+            intTriangles = null;
+            vertices = new float[directStaging ? vertexDataPerBatchable : vertexSize * this.maxVertices];
         } else {
             if (maxTriangles == 0) throw new IllegalArgumentException(
                     "maxTriangles must be greater than 0 if batchableType is not a FixedSizeBatchable");
+            if (intIndices && !(internalBatchable instanceof IntIndexedBatchable)) throw new IllegalArgumentException(
+                    "batchableType must implement IntIndexedBatchable to use more than 65535 vertices: "
+                            + batchableType.getName());
             this.maxVertices = maxVertices;
             maxIndices = maxTriangles * 3;
-            triangles = new short[maxIndices];
+            if (intIndices) {
+                intTriangles = new int[maxIndices];
+                intIndexBuffers = new IntIndexBufferObject[meshCount];
+                for (int i = 0; i < meshCount; i++)
+                    intIndexBuffers[i] = new IntIndexBufferObject(false, maxIndices);
+                triangles = null;
+            } else {
+                triangles = new short[maxIndices];
+                intTriangles = null;
+                intIndexBuffers = null;
+            }
             indicesPerBatchable = verticesPerBatchable = vertexDataPerBatchable = 0;
+            vertices = new float[vertexSize * maxVertices];
         }
 
         Mesh.VertexDataType vertexDataType = Gdx.gl30 != null ? VertexDataType.VertexBufferObjectWithVAO
                 : Mesh.VertexDataType.VertexArray;
-        mesh = new Mesh(vertexDataType, false, this.maxVertices, maxIndices, attributesArray.toArray());
-        if (fixedIndices) mesh.setIndices(triangles);
+        meshes = new Mesh[meshCount];
+        for (int i = 0; i < meshCount; i++) {
+            if (fixedIndices && !intIndices)
+                meshes[i] = SharedIndices.createMesh((FixedSizeBatchable) internalBatchable, this.maxVertices, maxIndices,
+                        attributesArray.toArray());
+            else
+                meshes[i] = new Mesh(vertexDataType, false, this.maxVertices, intIndices ? 0 : maxIndices,
+                        attributesArray.toArray());
+        }
+        if (directStaging) {
+            vertexBuffer = meshes[0].getVerticesBuffer();
+            vertexBuffer.clear();
+        }
+        if (vertexPacker != null) {
+            packedVertices = BufferUtils.newByteBuffer(this.maxVertices * vertexPacker.packedVertexSize);
+            packedVerticesAsFloats = packedVertices.asFloatBuffer();
+        } else {
+            packedVertices = null;
+            packedVerticesAsFloats = null;
+        }
 
-        textureUnitUniforms = new String[internalBatchable.getNumberOfTextures()];
+        textureUnitUniforms = new String[internalBatchable.getNumberOfTextureUnits()];
         for (int i = 0; i < textureUnitUniforms.length; i++) {
-            ;
             textureUnitUniforms[i] = "u_texture" + i;
         }
 
@@ -184,12 +343,16 @@ public class FlexBatch<T extends Batchable> implements Disposable {
     public void begin () {
         if (drawing) throw new IllegalStateException("end() must be called before begin().");
         renderCalls = 0;
+        statistics.reset();
+        meshRingWraps = 0;
+        flushesSinceBegin = 0;
 
         renderContext.begin();
         internalBatchable.prepareSharedContext(renderContext);
         renderContext.executeChanges();
         shader.begin();
         applyMatrices();
+        applyTextureUniforms();
 
         drawing = true;
         flushCalled = false;
@@ -200,7 +363,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
         if (!drawing) throw new IllegalStateException("begin() must be called before end().");
         if (!reflushUsed && !flushCalled) // didn't reflush and didn't draw anything, so next reflush should use 0 count.
             previousTriIdx = 0;
-        flush();
+        flush(FlushReason.End);
         drawing = false;
 
         renderContext.end();
@@ -262,20 +425,388 @@ public class FlexBatch<T extends Batchable> implements Disposable {
     public void draw (Batchable batchable) {
         if (havePendingInternal) drawPending();
         if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+        if (sortedQueue != null) {
+            sortedQueue.add(batchable, renderContext, layer);
+            if (sortedQueue.isFull()) flush(FlushReason.Capacity);
+            return;
+        }
         if (fixedIndices) {
-            if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, 0)) flush();
-            batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
+            if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, maxIndices - triIdx))
+                flush(contextFlushReason());
+            if (directStaging) {
+                batchable.apply(vertices, 0, attributeOffsets, vertexSize);
+                stageVertices(vertices, 0, vertexDataPerBatchable);
+            } else {
+                batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
+            }
             triIdx += indicesPerBatchable;
             vertIdx += vertexDataPerBatchable;
         } else {
-            if (batchable.prepareContext(renderContext, maxVertices - unfixedVertCount, maxIndices - triIdx)) flush();
-            triIdx += batchable.apply(triangles, triIdx, (short) unfixedVertCount);
+            if (batchable.prepareContext(renderContext, maxVertices - unfixedVertCount, maxIndices - triIdx))
+                flush(contextFlushReason());
+            triIdx += applyTriangles(batchable);
             int verticesAdded = batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
             unfixedVertCount += verticesAdded;
             vertIdx += vertexSize * verticesAdded;
         }
     }
 
+    /**
+     * Queues a series of Batchables for drawing. The result is the same as passing each of them to {@link #draw(Batchable)} in
+     * order, but the state checks are done once for the whole series. If this FlexBatch is optimized for FixedSizeBatchables,
+     * {@link Batchable#prepareContext(RenderContextAccumulator, int, int)} is skipped for each Batchable that
+     * {@link Batchable#hasEquivalentContext(Batchable) has an equivalent context} to the one before it, so runs of Batchables
+     * sharing the same textures and render state are queued with minimal overhead. The same restrictions on the Batchables apply
+     * as in {@link #draw(Batchable)}.
+     *
+     * @param batchables The Batchables to draw.
+     * @param offset     The index of the first Batchable to draw.
+     * @param count      The number of Batchables to draw.
+     */
+    public void draw (Batchable[] batchables, int offset, int count) {
+        if (offset + count > batchables.length)
+            throw new IndexOutOfBoundsException("offset + count must be <= length: " + offset + " + " + count + " <= "
+                    + batchables.length);
+        drawSeries(batchables, offset, count);
+    }
+
+    /**
+     * Queues a series of Batchables for drawing. See {@link #draw(Batchable[], int, int)}.
+     *
+     * @param batchables The Batchables to draw.
+     * @param offset     The index of the first Batchable to draw.
+     * @param count      The number of Batchables to draw.
+     */
+    public void draw (Array<? extends Batchable> batchables, int offset, int count) {
+        if (offset + count > batchables.size)
+            throw new IndexOutOfBoundsException("offset + count must be <= size: " + offset + " + " + count + " <= "
+                    + batchables.size);
+        // The backing array of an Array may be an Object[] if it was not created with a component type.
+        Object[] items = batchables.items;
+        drawSeries(items, offset, count);
+    }
+
+    private void drawSeries (Object[] batchables, int offset, int count) {
+        if (havePendingInternal) drawPending();
+        if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+        if (sortedQueue != null) {
+            for (int i = offset, end = offset + count; i < end; i++)
+                draw((Batchable) batchables[i]);
+            return;
+        }
+        final RenderContextAccumulator renderContext = this.renderContext;
+        final AttributeOffsets attributeOffsets = this.attributeOffsets;
+        final float[] vertices = this.vertices;
+        final int vertexSize = this.vertexSize;
+        final int end = offset + count;
+        if (fixedIndices) {
+            final int vertexDataPerBatchable = this.vertexDataPerBatchable;
+            final int vertexDataCapacity = maxVertices * vertexSize;
+            final boolean parallel = vertexGenerationExecutor != null;
+            Batchable previous = null;
+            int i = offset;
+            while (i < end) {
+                Batchable batchable = (Batchable) batchables[i];
+                if (previous == null || !batchable.hasEquivalentContext(previous)) {
+                    if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, maxIndices - triIdx))
+                        flush(contextFlushReason());
+                } else if (vertIdx + vertexDataPerBatchable > vertexDataCapacity) {
+                    flush(FlushReason.Capacity);
+                }
+                if (parallel) {
+                    // Find the run of Batchables sharing this context that fits in the remaining capacity.
+                    final int limit = Math.min(end, i + (vertexDataCapacity - vertIdx) / vertexDataPerBatchable);
+                    int runEnd = i + 1;
+                    while (runEnd < limit && ((Batchable) batchables[runEnd]).hasEquivalentContext((Batchable) batchables[runEnd - 1]))
+                        runEnd++;
+                    final int runLength = runEnd - i;
+                    if (runLength >= minimumParallelRunLength) {
+                        applyParallel(batchables, i, runLength);
+                    } else {
+                        for (int j = i, vertexIndex = vertIdx; j < runEnd; j++, vertexIndex += vertexDataPerBatchable)
+                            ((Batchable) batchables[j]).apply(vertices, vertexIndex, attributeOffsets, vertexSize);
+                    }
+                    triIdx += indicesPerBatchable * runLength;
+                    vertIdx += vertexDataPerBatchable * runLength;
+                    previous = (Batchable) batchables[runEnd - 1];
+                    i = runEnd;
+                    continue;
+                }
+                if (directStaging) {
+                    batchable.apply(vertices, 0, attributeOffsets, vertexSize);
+                    stageVertices(vertices, 0, vertexDataPerBatchable);
+                } else {
+                    batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
+                }
+                triIdx += indicesPerBatchable;
+                vertIdx += vertexDataPerBatchable;
+                previous = batchable;
+                i++;
+            }
+        } else {
+            for (int i = offset; i < end; i++) {
+                Batchable batchable = (Batchable) batchables[i];
+                if (batchable.prepareContext(renderContext, maxVertices - unfixedVertCount, maxIndices - triIdx))
+                    flush(contextFlushReason());
+                triIdx += applyTriangles(batchable);
+                int verticesAdded = batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
+                unfixedVertCount += verticesAdded;
+                vertIdx += vertexSize * verticesAdded;
+            }
+        }
+    }
+
+    /**
+     * Applies a run of Batchables with equivalent context on the vertex generation threads. The run must fit in the remaining
+     * capacity of the batch. The first slice is applied on the calling thread while the others are in progress.
+     */
+    private void applyParallel (Object[] batchables, int offset, int count) {
+        final VertexGenerationTask[] tasks = vertexGenerationTasks;
+        final Future<?>[] futures = vertexGenerationFutures;
+        final int sliceLength = (count + tasks.length) / (tasks.length + 1);
+        final int end = offset + count;
+        int submitted = 0;
+        for (int start = offset + sliceLength; start < end; start += sliceLength) {
+            VertexGenerationTask task = tasks[submitted];
+            task.set(batchables, start, Math.min(start + sliceLength, end), vertIdx + (start - offset) * vertexDataPerBatchable);
+            futures[submitted++] = vertexGenerationExecutor.submit(task);
+        }
+        for (int i = offset, n = Math.min(offset + sliceLength, end), vertexIndex = vertIdx; i < n;
+             i++, vertexIndex += vertexDataPerBatchable)
+            ((Batchable) batchables[i]).apply(vertices, vertexIndex, attributeOffsets, vertexSize);
+
+        // Wait for every task before reporting a failure, so no worker is still writing to the vertices afterwards.
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (int i = 0; i < submitted; i++) {
+            while (true) {
+                try {
+                    futures[i].get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e.getCause();
+                    break;
+                }
+            }
+            futures[i] = null;
+            tasks[i].batchables = null;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (failure != null) throw new GdxRuntimeException("Vertex generation failed.", failure);
+    }
+
+    private static class VertexGenerationTask implements Callable<Void> {
+        final FlexBatch<?> batch;
+        Object[] batchables;
+        int start, end, vertexIndex;
+
+        VertexGenerationTask (FlexBatch<?> batch) {
+            this.batch = batch;
+        }
+
+        void set (Object[] batchables, int start, int end, int vertexIndex) {
+            this.batchables = batchables;
+            this.start = start;
+            this.end = end;
+            this.vertexIndex = vertexIndex;
+        }
+
+        public Void call () {
+            final Object[] batchables = this.batchables;
+            final float[] vertices = batch.vertices;
+            final AttributeOffsets attributeOffsets = batch.attributeOffsets;
+            final int vertexSize = batch.vertexSize, vertexDataPerBatchable = batch.vertexDataPerBatchable;
+            for (int i = start, vertexIndex = this.vertexIndex; i < end; i++, vertexIndex += vertexDataPerBatchable)
+                ((Batchable) batchables[i]).apply(vertices, vertexIndex, attributeOffsets, vertexSize);
+            return null;
+        }
+    }
+
+    /**
+     * Enables generating vertex data on several threads when a series of Batchables is drawn with
+     * {@link #draw(Batchable[], int, int)} or {@link #draw(Array, int, int)}. Only runs of consecutive FixedSizeBatchables that
+     * {@link Batchable#hasEquivalentContext(Batchable) have equivalent context} are split between threads, and only if this
+     * FlexBatch is optimized for FixedSizeBatchables. The context check for each run is still done on the calling thread, and
+     * the calling thread waits for all vertex data of a run to be generated before continuing.
+     * <p>
+     * The {@link Batchable#apply(float[], int, AttributeOffsets, int)} method of the drawn Batchables must be safe to call
+     * from several threads at once. It must not write to static or otherwise shared temporary objects. The built-in Batchables
+     * satisfy this.
+     * <p>
+     * Parallel vertex generation cannot be used if this FlexBatch was constructed with direct staging.
+     *
+     * @param executor         The executor that runs vertex generation tasks, or null to generate all vertex data on the calling
+     *                         thread. The executor is not shut down by this FlexBatch.
+     * @param parallelism      The number of slices each run is split into, including the slice applied on the calling thread.
+     *                         Must be at least 2 if executor is not null.
+     * @param minimumRunLength The minimum number of Batchables in a run for it to be split between threads. Shorter runs are
+     *                         applied on the calling thread, where they avoid the cost of synchronization.
+     */
+    public void setParallelVertexGeneration (ExecutorService executor, int parallelism, int minimumRunLength) {
+        if (directStaging && executor != null)
+            throw new IllegalStateException("Parallel vertex generation cannot be used with direct staging.");
+        if (drawing) flush();
+        if (executor == null) {
+            vertexGenerationExecutor = null;
+            vertexGenerationTasks = null;
+            vertexGenerationFutures = null;
+            return;
+        }
+        if (parallelism < 2) throw new IllegalArgumentException("parallelism must be at least 2: " + parallelism);
+        vertexGenerationExecutor = executor;
+        vertexGenerationTasks = new VertexGenerationTask[parallelism - 1];
+        for (int i = 0; i < vertexGenerationTasks.length; i++)
+            vertexGenerationTasks[i] = new VertexGenerationTask(this);
+        vertexGenerationFutures = new Future<?>[parallelism - 1];
+        minimumParallelRunLength = Math.max(minimumRunLength, parallelism);
+    }
+
+    /**
+     * Sets whether draws are sorted. In sorted mode, Batchables are not queued in the order they are drawn. Their vertex data is
+     * generated immediately and held with a 64-bit sort key that packs the current {@link #setLayer(int) layer}, the render
+     * context (textures and GL state, including blending) that the Batchable prepared, and the submission order. When the batch
+     * flushes, for example on {@link #end()}, {@link #flush()}, or a shader or matrix change, the held draws are radix sorted by
+     * key and drawn with one flush per layer and render context, rather than one flush per texture change in submission order.
+     * <p>
+     * Layers are drawn in ascending order. Within a layer, draws with the same render context keep their submission order, but
+     * draws with different render contexts may be reordered relative to each other, so overlapping Batchables that must be drawn
+     * in a certain order should be put on different layers. Blending changes made with {@link #enableBlending()},
+     * {@link #disableBlending()}, {@link #setBlendFunction(int, int)} or {@link #setBlendFunctionSeparate(int, int, int, int)}
+     * do not flush in sorted mode. They only apply to later draws. Render contexts are compared as a whole, so Batchables like
+     * {@link com.cyphercove.gdx.flexbatch.batchable.SlottedQuad2D} that add textures to the context may flush more often than
+     * when unsorted.
+     *
+     * @param sorted Whether draws are sorted. If drawing, anything queued is flushed first.
+     */
+    public void setSorted (boolean sorted) {
+        if (sorted == (sortedQueue != null)) return;
+        if (drawing) flush();
+        sortedQueue = sorted ? new SortedDrawQueue(vertexSize, attributeOffsets, !fixedIndices) : null;
+    }
+
+    /**
+     * @return Whether draws are sorted. See {@link #setSorted(boolean)}.
+     */
+    public boolean isSorted () {
+        return sortedQueue != null;
+    }
+
+    /**
+     * Sets the layer of subsequent draws in {@link #setSorted(boolean) sorted mode}. Lower layers are drawn first. The layer is
+     * ignored when not sorting.
+     *
+     * @param layer The layer, from -32768 to 32767. The default is 0.
+     */
+    public void setLayer (int layer) {
+        if (layer < SortedDrawQueue.MIN_LAYER || layer > SortedDrawQueue.MAX_LAYER)
+            throw new IllegalArgumentException("Layer must be in the range of a short: " + layer);
+        if (havePendingInternal) drawPending();
+        this.layer = layer;
+    }
+
+    public int getLayer () {
+        return layer;
+    }
+
+    /**
+     * Queues the Batchables recorded in a {@link FlexBatchCommandBuffer}. Their vertex data and triangle indices were generated
+     * when they were recorded, so they are only copied into this batch. Each run of recorded Batchables that share a render
+     * context replaces the pending render context of this FlexBatch, flushing if it differs. The restrictions on the recorded
+     * Batchables are the same as those in {@link #draw(Batchable)}.
+     *
+     * @param commandBuffer A command buffer that is not currently recording.
+     * @throws IllegalArgumentException If the vertices of the command buffer's Batchable type have a different size, or if this
+     *                                  FlexBatch is optimized for FixedSizeBatchables and the command buffer contains other
+     *                                  Batchables.
+     */
+    public void draw (FlexBatchCommandBuffer<?> commandBuffer) {
+        if (havePendingInternal) drawPending();
+        if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+        if (commandBuffer.isRecording())
+            throw new IllegalStateException("The command buffer must be ended before it is drawn.");
+        if (commandBuffer.vertexSize != vertexSize)
+            throw new IllegalArgumentException("The command buffer's vertex size does not match this FlexBatch's.");
+        if (fixedIndices && commandBuffer.itemCount > 0 && commandBuffer.fixedVertexCount != verticesPerBatchable)
+            throw new IllegalArgumentException("This FlexBatch can only draw FixedSizeBatchables with " + verticesPerBatchable
+                    + " vertices.");
+        if (sortedQueue != null) {
+            if (sortedQueue.getRemainingItems() < commandBuffer.itemCount) flush(FlushReason.Capacity);
+            sortedQueue.add(commandBuffer, layer);
+            return;
+        }
+        final float[] sourceVertices = commandBuffer.vertices;
+        final short[] sourceTriangles = commandBuffer.triangles;
+        final int[] itemSizes = commandBuffer.itemSizes;
+        for (int r = 0; r < commandBuffer.runCount; r++) {
+            FlexBatchCommandBuffer.Run run = commandBuffer.runs.get(r);
+            if (!renderContext.hasEquivalentPendingState(run.context)) {
+                renderContext.set(run.context);
+                flush(contextFlushReason());
+            }
+            if (fixedIndices) {
+                stageFixedSizeVertices(sourceVertices, run.vertexOffset, run.vertexCount * vertexSize);
+            } else {
+                int vertexOffset = run.vertexOffset;
+                int triangleOffset = run.triangleOffset;
+                for (int i = run.firstItem, end = run.firstItem + run.itemCount; i < end; i++) {
+                    final int vertexCount = itemSizes[i * 2];
+                    final int indexCount = itemSizes[i * 2 + 1];
+                    stageItem(sourceVertices, vertexOffset, vertexCount, sourceTriangles, triangleOffset, indexCount);
+                    vertexOffset += vertexCount * vertexSize;
+                    triangleOffset += indexCount;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the vertex data of whole FixedSizeBatchables, flushing whenever the batch is full. Only for fixed indices.
+     */
+    private void stageFixedSizeVertices (float[] source, int offset, int count) {
+        final int vertexDataPerBatchable = this.vertexDataPerBatchable;
+        final int vertexDataCapacity = maxVertices * vertexSize;
+        while (count > 0) {
+            int copyCount = Math.min(vertexDataCapacity - vertIdx, count) / vertexDataPerBatchable * vertexDataPerBatchable;
+            if (copyCount == 0) {
+                flush(FlushReason.Capacity);
+                continue;
+            }
+            stageVertices(source, offset, copyCount);
+            vertIdx += copyCount;
+            triIdx += copyCount / vertexDataPerBatchable * indicesPerBatchable;
+            offset += copyCount;
+            count -= copyCount;
+        }
+    }
+
+    /**
+     * Copies the vertex data and triangle indices of one Batchable, flushing first if there is not enough room. Only for
+     * non-fixed indices.
+     *
+     * @param sourceTriangles Indices starting from 0 for the first vertex.
+     */
+    private void stageItem (float[] sourceVertices, int vertexOffset, int vertexCount, short[] sourceTriangles,
+                            int triangleOffset, int indexCount) {
+        if (maxVertices - unfixedVertCount < vertexCount || maxIndices - triIdx < indexCount)
+            flush(FlushReason.Capacity);
+        if (intIndices) {
+            final int startingVertex = unfixedVertCount;
+            for (int j = 0; j < indexCount; j++)
+                intTriangles[triIdx + j] = (sourceTriangles[triangleOffset + j] & 0xffff) + startingVertex;
+        } else {
+            final short startingVertex = (short) unfixedVertCount;
+            for (int j = 0; j < indexCount; j++)
+                triangles[triIdx + j] = (short) (sourceTriangles[triangleOffset + j] + startingVertex);
+        }
+        triIdx += indexCount;
+        final int vertexDataCount = vertexCount * vertexSize;
+        stageVertices(sourceVertices, vertexOffset, vertexDataCount);
+        vertIdx += vertexDataCount;
+        unfixedVertCount += vertexCount;
+    }
+
     /**
      * Draws explicit vertex data, using only the render context and Texture parameter(s) of the passed in FixedSizeBatchable. The
      * restrictions on the supplied Batchable class are the same as those in {@link #draw(Batchable)}.
@@ -293,25 +824,34 @@ public class FlexBatch<T extends Batchable> implements Disposable {
     protected void draw (FixedSizeBatchable batchable, float[] explicitVertices, int offset, int count, int vertexSize) {
         if (havePendingInternal) drawPending();
         if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
-        if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, 0)) {
-            flush();
+        if (sortedQueue != null) {
+            while (count > 0) {
+                int added = sortedQueue.add(batchable, renderContext, layer, explicitVertices, offset, count, vertexSize);
+                offset += added;
+                count -= added;
+                if (sortedQueue.isFull()) flush(FlushReason.Capacity);
+            }
+            return;
+        }
+        if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, maxIndices - triIdx)) {
+            flush(contextFlushReason());
         }
 
-        int verticesLength = vertices.length;
+        int verticesLength = maxVertices * this.vertexSize;
         int remainingVertices = verticesLength - vertIdx;
         // room for at least one Batchable size is assured by prepareContext()
         // call above
 
         if (this.vertexSize == vertexSize) {
             int copyCount = Math.min(remainingVertices, count);
-            System.arraycopy(explicitVertices, offset, vertices, vertIdx, copyCount);
+            stageVertices(explicitVertices, offset, copyCount);
             vertIdx += copyCount;
             if (fixedIndices)
                 triIdx += (copyCount / this.vertexDataPerBatchable) * this.indicesPerBatchable;
             else {
                 int verticesPerBatchable = batchable.getVerticesPerBatchable();
                 for (int i = 0, n = copyCount / (verticesPerBatchable * vertexSize); i < n; i++) {
-                    int indicesAdded = batchable.apply(triangles, triIdx, (short) unfixedVertCount);
+                    int indicesAdded = applyTriangles(batchable);
                     triIdx += indicesAdded;
                     unfixedVertCount += verticesPerBatchable;
                 }
@@ -319,16 +859,16 @@ public class FlexBatch<T extends Batchable> implements Disposable {
             count -= copyCount;
             while (count > 0) {
                 offset += copyCount;
-                flush();
+                flush(FlushReason.Capacity);
                 copyCount = Math.min(verticesLength, count);
-                System.arraycopy(explicitVertices, offset, vertices, vertIdx, copyCount);
+                stageVertices(explicitVertices, offset, copyCount);
                 vertIdx += copyCount;
                 if (fixedIndices)
                     triIdx += (copyCount / this.vertexDataPerBatchable) * this.indicesPerBatchable;
                 else {
                     int verticesPerBatchable = batchable.getVerticesPerBatchable();
                     for (int i = 0, n = copyCount / (verticesPerBatchable * vertexSize); i < n; i++) {
-                        int indicesAdded = batchable.apply(triangles, triIdx, (short) unfixedVertCount);
+                        int indicesAdded = applyTriangles(batchable);
                         triIdx += indicesAdded;
                         unfixedVertCount += verticesPerBatchable;
                     }
@@ -340,7 +880,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
             int dstCopyCount = Math.min(remainingVertices, dstCount);
             int vertexCount = dstCopyCount / this.vertexSize;
             for (int i = 0; i < vertexCount; i++) {
-                System.arraycopy(explicitVertices, offset, vertices, vertIdx, vertexSize);
+                stageVertices(explicitVertices, offset, vertexSize);
                 vertIdx += this.vertexSize;
                 offset += vertexSize;
             }
@@ -349,18 +889,18 @@ public class FlexBatch<T extends Batchable> implements Disposable {
             else {
                 int verticesPerBatchable = batchable.getVerticesPerBatchable();
                 for (int i = 0, n = vertexCount / verticesPerBatchable; i < n; i++) {
-                    int indicesAdded = batchable.apply(triangles, triIdx, (short) unfixedVertCount);
+                    int indicesAdded = applyTriangles(batchable);
                     triIdx += indicesAdded;
                     unfixedVertCount += verticesPerBatchable;
                 }
             }
             dstCount -= dstCopyCount;
             while (dstCount > 0) {
-                flush();
+                flush(FlushReason.Capacity);
                 dstCopyCount = Math.min(verticesLength, dstCount);
                 vertexCount = dstCopyCount / this.vertexSize;
                 for (int i = 0; i < vertexCount; i++) {
-                    System.arraycopy(explicitVertices, offset, vertices, vertIdx, vertexSize);
+                    stageVertices(explicitVertices, offset, vertexSize);
                     vertIdx += this.vertexSize;
                     offset += vertexSize;
                 }
@@ -369,7 +909,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
                 else {
                     int verticesPerBatchable = batchable.getVerticesPerBatchable();
                     for (int i = 0, n = vertexCount / verticesPerBatchable; i < n; i++) {
-                        int indicesAdded = batchable.apply(triangles, triIdx, (short) unfixedVertCount);
+                        int indicesAdded = applyTriangles(batchable);
                         triIdx += indicesAdded;
                         unfixedVertCount += verticesPerBatchable;
                     }
@@ -379,6 +919,26 @@ public class FlexBatch<T extends Batchable> implements Disposable {
         }
     }
 
+    /** Applies the triangle indices of a Batchable at the current triangle index, for non-fixed indices. */
+    private int applyTriangles (Batchable batchable) {
+        if (intIndices) {
+            if (!(batchable instanceof IntIndexedBatchable)) throw new IllegalArgumentException(
+                    batchable.getClass().getSimpleName() + " must implement IntIndexedBatchable for 32-bit indices.");
+            return ((IntIndexedBatchable) batchable).apply(intTriangles, triIdx, unfixedVertCount);
+        }
+        return batchable.apply(triangles, triIdx, (short) unfixedVertCount);
+    }
+
+    /** Copies vertex data to the current vertex index without advancing it. */
+    private void stageVertices (float[] source, int offset, int count) {
+        if (directStaging) {
+            vertexBuffer.position(vertIdx);
+            vertexBuffer.put(source, offset, count);
+        } else {
+            System.arraycopy(source, offset, vertices, vertIdx, count);
+        }
+    }
+
     /**
      * Draws explicit vertex data, using only the render context and Texture parameter(s) of the passed-in Batchable. This must
      * only be called if this FlexBatch is not limited to drawing FixedSizedBatchables. The restrictions on the supplied Batchable
@@ -405,21 +965,33 @@ public class FlexBatch<T extends Batchable> implements Disposable {
         if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
         if (fixedIndices)
             throw new UnsupportedOperationException("This method can only be used for Batchables without fixed size");
+        if (sortedQueue != null) {
+            sortedQueue.add(batchable, renderContext, layer, explicitVertices, verticesOffset, vertexDataCount, vertexSize,
+                    explicitTriangles, trianglesOffset, trianglesCount);
+            if (sortedQueue.isFull()) flush(FlushReason.Capacity);
+            return;
+        }
         if (batchable.prepareContext(renderContext, maxVertices - unfixedVertCount, maxIndices - triIdx)) {
-            flush();
+            flush(contextFlushReason());
         }
 
         int verticesLength = vertices.length;
-        int trianglesLength = triangles.length;
+        int trianglesLength = maxIndices;
         final int vertexCount = vertexDataCount / vertexSize;
         if (verticesLength - vertIdx < vertexCount * this.vertexSize || trianglesLength - triIdx < trianglesCount)
-            flush();
+            flush(FlushReason.Capacity);
 
-        System.arraycopy(explicitTriangles, trianglesOffset, triangles, triIdx, trianglesCount);
-        final short startingVertex = (short) unfixedVertCount;
-        final int upTo = triIdx + trianglesCount;
-        for (int i = triIdx; i < upTo; i++)
-            triangles[i] += startingVertex;
+        if (intIndices) {
+            final int startingVertex = unfixedVertCount;
+            for (int i = 0; i < trianglesCount; i++)
+                intTriangles[triIdx + i] = (explicitTriangles[trianglesOffset + i] & 0xffff) + startingVertex;
+        } else {
+            System.arraycopy(explicitTriangles, trianglesOffset, triangles, triIdx, trianglesCount);
+            final short startingVertex = (short) unfixedVertCount;
+            final int upTo = triIdx + trianglesCount;
+            for (int i = triIdx; i < upTo; i++)
+                triangles[i] += startingVertex;
+        }
         triIdx += trianglesCount;
 
         if (this.vertexSize == vertexSize) {
@@ -436,24 +1008,106 @@ public class FlexBatch<T extends Batchable> implements Disposable {
         unfixedVertCount += vertexCount;
     }
 
+    /**
+     * Determines why a Batchable's {@link Batchable#prepareContext(RenderContextAccumulator, int, int)} requested a flush.
+     */
+    private FlushReason contextFlushReason () {
+        if (renderContext.hasPendingTextureChanges()) return FlushReason.TextureChange;
+        if (renderContext.hasPendingStateChanges()) return FlushReason.StateChange;
+        return FlushReason.Capacity;
+    }
+
     public void flush () {
+        flush(FlushReason.Explicit);
+    }
+
+    /**
+     * Draws the sorted queue, replacing the pending render context for each render context in it, and leaves the last of the
+     * queued data to be drawn by the flush that called this. The pending render context used for preparing later draws is
+     * restored afterwards.
+     */
+    private void drawSorted () {
+        final SortedDrawQueue queue = sortedQueue;
+        final long[] keys = queue.sort();
+        final int[] items = queue.items;
+        final float[] sourceVertices = queue.vertices;
+        final short[] sourceTriangles = queue.triangles;
+        queue.recordingState.set(renderContext);
+        drawingSorted = true;
+        int previousContextId = -1;
+        for (int i = 0, n = queue.size(); i < n; i++) {
+            final long key = keys[i];
+            final int contextId = SortedDrawQueue.getContextId(key);
+            if (contextId != previousContextId) {
+                RenderContextAccumulator context = queue.getContext(contextId);
+                // The first context is always applied, discarding texture changes made while preparing the queued draws.
+                if (previousContextId < 0 || !renderContext.hasEquivalentPendingState(context)) {
+                    renderContext.set(context);
+                    flush(contextFlushReason());
+                }
+                previousContextId = contextId;
+            }
+            final int item = SortedDrawQueue.getItem(key) * 4;
+            if (fixedIndices)
+                stageFixedSizeVertices(sourceVertices, items[item], items[item + 1] * vertexSize);
+            else
+                stageItem(sourceVertices, items[item], items[item + 1], sourceTriangles, items[item + 2], items[item + 3]);
+        }
+        drawingSorted = false;
+        queue.clear();
+        renderContext.set(queue.recordingState);
+        queue.recordingState.clearAllTextureUnits();
+    }
+
+    private void flush (FlushReason reason) {
         if (havePendingInternal) drawPending();
+        if (sortedQueue != null && !drawingSorted && sortedQueue.size() > 0) drawSorted();
         flushCalled = true;
         if (vertIdx == 0) {
             if (drawing) renderContext.executeChanges(); // first item
             return;
         }
 
-        Mesh mesh = this.mesh;
-        mesh.setVertices(vertices, 0, vertIdx);
-        if (fixedIndices) {
-            mesh.getIndicesBuffer().position(0);
-            mesh.getIndicesBuffer().limit(triIdx);
+        Mesh mesh = meshes[meshIndex];
+        int vertexCount = vertIdx / vertexSize;
+        if (directStaging) {
+            FloatBuffer vertexBuffer = mesh.getVerticesBuffer(); // marks a VBO as needing upload
+            vertexBuffer.position(0);
+            vertexBuffer.limit(vertIdx);
+        } else if (vertexPacker != null) {
+            vertexPacker.pack(vertices, 0, vertexCount, packedVertices, 0);
+            packedVerticesAsFloats.position(0);
+            packedVerticesAsFloats.limit(vertexCount * vertexPacker.packedVertexSize / 4);
+            FloatBuffer vertexBuffer = mesh.getVerticesBuffer(); // marks a VBO as needing upload
+            vertexBuffer.clear();
+            vertexBuffer.put(packedVerticesAsFloats); // a bulk copy of the packed bytes
+            vertexBuffer.flip();
         } else {
-            mesh.setIndices(triangles, 0, triIdx);
+            mesh.setVertices(vertices, 0, vertIdx);
+        }
+        if (!fixedIndices) {
+            if (intIndices)
+                intIndexBuffers[meshIndex].setIndices(intTriangles, 0, triIdx);
+            else
+                mesh.setIndices(triangles, 0, triIdx);
         }
 
-        mesh.render(shader, GL20.GL_TRIANGLES, 0, triIdx);
+        renderContext.executeTextureUnitAdditions(); // textures for units the queued data started using without a flush
+        renderMesh(meshIndex, triIdx);
+        previousMeshIndex = meshIndex;
+        int bytes = vertexPacker != null ? vertexCount * vertexPacker.packedVertexSize : vertIdx * 4;
+        if (!fixedIndices) bytes += triIdx * (intIndices ? 4 : 2);
+        statistics.record(reason, vertexCount, bytes);
+        if (flushListener != null) flushListener.onFlush(this, reason, vertexCount, triIdx);
+        if (++flushesSinceBegin > meshes.length) {
+            meshRingWraps++;
+            totalMeshRingWraps++;
+        }
+        if (meshes.length > 1) {
+            meshIndex = (meshIndex + 1) % meshes.length;
+            if (directStaging) vertexBuffer = meshes[meshIndex].getVerticesBuffer();
+        }
+        if (directStaging) vertexBuffer.clear();
 
         renderContext.executeChanges(); // might have flushed for new item
 
@@ -473,38 +1127,68 @@ public class FlexBatch<T extends Batchable> implements Disposable {
      */
     public void repeatPreviousFlush (){
         if (previousTriIdx != 0) {
-            mesh.render(shader, GL20.GL_TRIANGLES, 0, previousTriIdx);
+            renderMesh(previousMeshIndex, previousTriIdx);
             renderCalls++;
             totalRenderCalls++;
         }
         reflushUsed = true;
     }
 
+    private void renderMesh (int meshIndex, int count) {
+        Mesh mesh = meshes[meshIndex];
+        if (!intIndices) {
+            mesh.render(shader, GL20.GL_TRIANGLES, 0, count);
+            return;
+        }
+        IntIndexBufferObject intIndexBuffer = intIndexBuffers[meshIndex];
+        mesh.bind(shader);
+        intIndexBuffer.bind();
+        Gdx.gl30.glDrawElements(GL20.GL_TRIANGLES, count, GL20.GL_UNSIGNED_INT, 0);
+        intIndexBuffer.unbind();
+        mesh.unbind(shader);
+    }
+
+    /**
+     * @return The counts of flushes by reason and the amount of data drawn since the last {@link #begin()}. The returned object
+     * is updated by this FlexBatch, and is reset when {@link #begin()} is called.
+     */
+    public FlushStatistics getStatistics () {
+        return statistics;
+    }
+
+    /**
+     * @param flushListener A listener that is notified of each flush that draws something, or null to remove the listener.
+     */
+    public void setFlushListener (FlushListener flushListener) {
+        this.flushListener = flushListener;
+    }
+
     public ShaderProgram getShader () {
         return shader;
     }
 
     public void setShader (ShaderProgram shader) {
         if (drawing) {
-            flush();
-            shader.end();
+            flush(FlushReason.ShaderChange);
+            this.shader.end();
         }
         this.shader = shader;
         if (drawing) {
             shader.begin();
             applyMatrices();
+            applyTextureUniforms();
         }
     }
 
     public void disableBlending () {
         if (!renderContext.isBlendingEnabled()) return;
-        flush();
+        if (sortedQueue == null) flush(FlushReason.StateChange);
         renderContext.setBlending(false);
     }
 
     public void enableBlending () {
         if (renderContext.isBlendingEnabled()) return;
-        flush();
+        if (sortedQueue == null) flush(FlushReason.StateChange);
         renderContext.setBlending(true);
     }
 
@@ -513,7 +1197,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
         if (!renderContext.isBlendFuncSeparate() && renderContext.getBlendFuncSrcColor() == srcFunc
                 && renderContext.getBlendFuncDstColor() == dstFunc) return;
 
-        flush();
+        if (sortedQueue == null) flush(FlushReason.StateChange);
         renderContext.setBlendFunction(srcFunc, dstFunc);
     }
 
@@ -521,7 +1205,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
         if (renderContext.getBlendFuncSrcColor() == srcColorFunc && renderContext.getBlendFuncDstColor() == dstColorFunc
                 && renderContext.getBlendFuncSrcAlpha() == srcAlphaFunc && renderContext.getBlendFuncDstAlpha() == dstAlphaFunc)
             return;
-        flush();
+        if (sortedQueue == null) flush(FlushReason.StateChange);
         renderContext.setBlendFunction(srcColorFunc, dstColorFunc, srcAlphaFunc, dstAlphaFunc);
     }
 
@@ -554,13 +1238,13 @@ public class FlexBatch<T extends Batchable> implements Disposable {
     }
 
     public void setProjectionMatrix (Matrix4 projection) {
-        if (drawing) flush();
+        if (drawing) flush(FlushReason.MatrixChange);
         projectionMatrix.set(projection);
         if (drawing) applyMatrices();
     }
 
     public void setTransformMatrix (Matrix4 transform) {
-        if (drawing) flush();
+        if (drawing) flush(FlushReason.MatrixChange);
         transformMatrix.set(transform);
         if (drawing) applyMatrices();
     }
@@ -575,13 +1259,16 @@ public class FlexBatch<T extends Batchable> implements Disposable {
     }
 
     /**
-     * Sets shader uniform values for the textures. The default implementation uses the uniform name "u_texture" with the texture
-     * unit appended. For example, if the Batchable type supports two textures, uniforms will be set for "u_texture0" and
-     * "u_texture1".
+     * Called only while drawing. Sets shader uniform values for the textures. The default implementation uses the uniform name
+     * "u_texture" with the texture unit appended. For example, if the Batchable type supports two textures, uniforms will be set
+     * for "u_texture0" and "u_texture1". Uniforms that the shader does not have are skipped.
      */
     protected void applyTextureUniforms () {
-        for (int i = 0; i < textureUnitUniforms.length; i++)
-            getShader().setUniformi(textureUnitUniforms[i], i);
+        ShaderProgram shader = getShader();
+        for (int i = 0; i < textureUnitUniforms.length; i++) {
+            int location = shader.fetchUniformLocation(textureUnitUniforms[i], false);
+            if (location >= 0) shader.setUniformi(location, i);
+        }
     }
 
     /**
@@ -595,7 +1282,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
      * @return The number of vertices that can be drawn between flushes.
      */
     public int getVertexCapacity (){
-        return vertices.length / vertexSize;
+        return maxVertices;
     }
 
     /**
@@ -603,11 +1290,19 @@ public class FlexBatch<T extends Batchable> implements Disposable {
      */
     public int getBatchableCapacity (){
         if (fixedIndices)
-            return vertices.length / (vertexSize * verticesPerBatchable);
+            return maxVertices / verticesPerBatchable;
         return 0;
     }
 
     public void dispose () {
-        mesh.dispose();
+        for (Mesh mesh : meshes)
+            mesh.dispose();
+        if (intIndexBuffers != null) {
+            if (fixedIndices)
+                SharedIndices.releaseInt((FixedSizeBatchable) internalBatchable, maxIndices);
+            else
+                for (IntIndexBufferObject intIndexBuffer : intIndexBuffers)
+                    intIndexBuffer.dispose();
+        }
     }
 }
@@ -0,0 +1,360 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch;
+
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Mesh.VertexDataType;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.VertexPacker;
+
+/** Draws {@link Batchable Batchables} that are recorded once into a static Mesh and can then be redrawn many times, similarly to
+ * SpriteCache. This avoids generating and uploading vertex data every frame for content that doesn't change, such as backgrounds
+ * and level geometry. A FlexBatchCache must be {@link #dispose() disposed of} when no longer used to avoid leaking memory.
+ * <p>
+ * Batchables are recorded between calls to {@link #beginCache()} and {@link #endCache()}. The latter returns an ID that can be
+ * drawn with {@link #draw(int)} between calls to {@link #begin()} and {@link #end()}. The Batchables can be modified or reused
+ * after they are added to a cache. The render context and textures of each recorded Batchable are captured when it is added, so
+ * drawing a cache only requires the render context changes between runs of Batchables with different context.
+ * <p>
+ * The same restrictions on Batchable compatibility apply as in {@link FlexBatch#draw(Batchable)}. A FlexBatchCache is never
+ * limited to FixedSizeBatchables. All caches share a single Mesh with a capacity given in the constructor, and caches can only be
+ * removed all at once with {@link #clear()}.
+ * <p>
+ * As with FlexBatch, no default shader is provided, so {@link #setShader(ShaderProgram)} must be called before drawing.
+ * <p>
+ * <i>This API is based on SpriteCache from the LibGDX project.</i>
+ *
+ * @param <T> The type of Batchable that is returned when acquiring one with {@link #add()}. This must match the class type that
+ *           is passed to the constructor.
+ * @author cypherdare */
+public class FlexBatchCache<T extends Batchable> implements Disposable {
+
+	public final Class<T> batchableType;
+	private final T internalBatchable;
+	private boolean havePendingInternal;
+	private final Mesh mesh;
+	private final AttributeOffsets attributeOffsets;
+	private final VertexPacker vertexPacker; // only for compact vertex attributes
+	private final ByteBuffer packedVertices; // only for compact vertex attributes
+	private final int vertexSize, maxVertices, maxIndices;
+	private final float[] vertices;
+	private final short[] triangles;
+	private int vertIdx, triIdx, vertexCount;
+
+	private final Array<Cache> caches = new Array<Cache>();
+	private Cache currentCache;
+	private Run currentRun;
+	private final RenderContextAccumulator recordingContext = new RenderContextAccumulator();
+	private final RenderContextAccumulator renderContext = new RenderContextAccumulator();
+	private boolean drawing;
+
+	/** Number of render calls since the last {@link #begin()}. **/
+	public int renderCalls = 0;
+	/** Number of rendering calls, ever. Will not be reset unless set manually. **/
+	public int totalRenderCalls = 0;
+
+	private final Matrix4 transformMatrix = new Matrix4();
+	private final Matrix4 projectionMatrix = new Matrix4();
+	private final Matrix4 combinedMatrix = new Matrix4();
+
+	private final String[] textureUnitUniforms;
+
+	private ShaderProgram shader;
+
+	/** Construct a FlexBatchCache capable of drawing the given Batchable type and other compatible Batchables.
+	 * @param batchableType The type of Batchable that defines the VertexAttributes supported by this FlexBatchCache, and the
+	 *           default Batchable type recorded by the {@link #add()} method.
+	 * @param maxVertices The number of vertices that can be recorded in all caches combined. Maximum of 65535.
+	 * @param maxTriangles The number of triangles that can be recorded in all caches combined. If the Batchable type is a
+	 *           FixedSizeBatchable, 0 can be used to derive the number of triangles from the number of vertices. */
+	public FlexBatchCache (Class<T> batchableType, int maxVertices, int maxTriangles) {
+		// 65535 is max vertex index of unsigned short indices.
+		if (maxVertices > 65535) throw new IllegalArgumentException("Can't have more than 65535 vertices per cache: " + maxVertices);
+		if (Modifier.isAbstract(batchableType.getModifiers()))
+			throw new IllegalArgumentException("Can't use an abstract batchableType");
+
+		this.batchableType = batchableType;
+
+		try {
+			internalBatchable = batchableType.newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Batchable classes must be public and have an empty constructor.", e);
+		}
+
+		Array<VertexAttribute> attributesArray = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+		internalBatchable.addVertexAttributes(attributesArray);
+		VertexAttributes vertexAttributes = new VertexAttributes(attributesArray.toArray());
+		vertexPacker = VertexPacker.isPacked(vertexAttributes) ? new VertexPacker(vertexAttributes) : null;
+		VertexAttributes stagingAttributes = vertexPacker != null ? vertexPacker.expandedAttributes : vertexAttributes;
+		attributeOffsets = new AttributeOffsets(stagingAttributes);
+		vertexSize = stagingAttributes.vertexSize / 4;
+
+		if (maxTriangles == 0) {
+			if (!(internalBatchable instanceof FixedSizeBatchable)) throw new IllegalArgumentException(
+				"maxTriangles must be greater than 0 if batchableType is not a FixedSizeBatchable");
+			FixedSizeBatchable fixedSizeBatchable = (FixedSizeBatchable)internalBatchable;
+			maxTriangles = (maxVertices / fixedSizeBatchable.getVerticesPerBatchable())
+				* fixedSizeBatchable.getTrianglesPerBatchable();
+		}
+		this.maxVertices = maxVertices;
+		maxIndices = maxTriangles * 3;
+		vertices = new float[vertexSize * maxVertices];
+		triangles = new short[maxIndices];
+
+		Mesh.VertexDataType vertexDataType = Gdx.gl30 != null ? VertexDataType.VertexBufferObjectWithVAO
+			: VertexDataType.VertexBufferObject;
+		mesh = new Mesh(vertexDataType, true, maxVertices, maxIndices, attributesArray.toArray());
+		packedVertices = vertexPacker != null ? BufferUtils.newByteBuffer(maxVertices * vertexPacker.packedVertexSize) : null;
+
+		textureUnitUniforms = new String[internalBatchable.getNumberOfTextureUnits()];
+		for (int i = 0; i < textureUnitUniforms.length; i++)
+			textureUnitUniforms[i] = "u_texture" + i;
+
+		projectionMatrix.setToOrtho2D(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+
+		recordingContext.setBlending(true);
+		recordingContext.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+	}
+
+	/** Starts recording a new cache. Batchables can then be added with {@link #add(Batchable)} or {@link #add()}, until
+	 * {@link #endCache()} is called. */
+	public void beginCache () {
+		if (drawing) throw new IllegalStateException("end() must be called before beginCache().");
+		if (currentCache != null) throw new IllegalStateException("endCache() must be called before beginCache().");
+		currentCache = new Cache();
+		internalBatchable.prepareSharedContext(recordingContext);
+	}
+
+	/** Finishes recording the current cache and uploads its data to the Mesh.
+	 * @return The ID of the cache, which can be passed to {@link #draw(int)}. */
+	public int endCache () {
+		if (currentCache == null) throw new IllegalStateException("beginCache() must be called before endCache().");
+		if (havePendingInternal) addPending();
+		Cache cache = currentCache;
+		currentCache = null;
+		currentRun = null;
+		recordingContext.clearAllTextureUnits();
+		internalBatchable.reset();
+
+		if (vertexPacker != null) {
+			vertexPacker.pack(vertices, 0, vertexCount, packedVertices, 0);
+			FloatBuffer packedVerticesAsFloats = packedVertices.asFloatBuffer();
+			packedVerticesAsFloats.limit(vertexCount * vertexPacker.packedVertexSize / 4);
+			FloatBuffer vertexBuffer = mesh.getVerticesBuffer(); // marks the VBO as needing upload
+			vertexBuffer.clear();
+			vertexBuffer.put(packedVerticesAsFloats);
+			vertexBuffer.flip();
+		} else {
+			mesh.setVertices(vertices, 0, vertIdx);
+		}
+		mesh.setIndices(triangles, 0, triIdx);
+
+		caches.add(cache);
+		return caches.size - 1;
+	}
+
+	private void addPending () {
+		havePendingInternal = false;
+		add(internalBatchable);
+	}
+
+	/** @return A Batchable that will automatically be recorded upon the next call to add() or endCache(). The Batchable will be
+	 *         of the same type as the {@link #batchableType} of this FlexBatchCache.
+	 *         <p>
+	 *         Do not cache and reuse the returned Batchable. */
+	public T add () {
+		if (havePendingInternal) addPending();
+		havePendingInternal = true;
+		internalBatchable.refresh();
+		return internalBatchable;
+	}
+
+	/** Records a Batchable into the current cache. The Batchable's current parameters are captured, so it can be modified or
+	 * reused afterwards.
+	 * @param batchable The Batchable to record.
+	 * @throws IllegalStateException If there is not enough remaining capacity in the FlexBatchCache for the Batchable. */
+	public void add (Batchable batchable) {
+		if (havePendingInternal) addPending();
+		if (currentCache == null) throw new IllegalStateException("beginCache() must be called before add().");
+		final int remainingVertices = maxVertices - vertexCount, remainingIndices = maxIndices - triIdx;
+		boolean changed = batchable.prepareContext(recordingContext, remainingVertices, remainingIndices);
+		if (currentRun == null || (changed && !recordingContext.hasEquivalentPendingState(currentRun.context))) {
+			currentRun = new Run(triIdx);
+			currentRun.context.set(recordingContext);
+			currentCache.runs.add(currentRun);
+			// With the context already applied, a second call only reports whether there is enough room.
+			if (changed) changed = batchable.prepareContext(recordingContext, remainingVertices, remainingIndices);
+		}
+		if (changed) throw new IllegalStateException("Not enough capacity left in the FlexBatchCache.");
+		// A Batchable may add texture units without changing the ones the run already uses.
+		if (!recordingContext.hasEquivalentPendingState(currentRun.context)) currentRun.context.set(recordingContext);
+		int indicesAdded = batchable.apply(triangles, triIdx, (short)vertexCount);
+		int verticesAdded = batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
+		if (batchable instanceof FixedSizeBatchable) verticesAdded = ((FixedSizeBatchable)batchable).getVerticesPerBatchable();
+		triIdx += indicesAdded;
+		vertexCount += verticesAdded;
+		vertIdx += vertexSize * verticesAdded;
+		currentRun.count += indicesAdded;
+	}
+
+	/** Discards all caches. Any previously returned cache IDs become invalid. */
+	public void clear () {
+		if (currentCache != null) throw new IllegalStateException("endCache() must be called before clear().");
+		caches.clear();
+		vertIdx = triIdx = vertexCount = 0;
+	}
+
+	public void begin () {
+		if (drawing) throw new IllegalStateException("end() must be called before begin().");
+		if (currentCache != null) throw new IllegalStateException("endCache() must be called before begin().");
+		renderCalls = 0;
+
+		renderContext.begin();
+		shader.begin();
+		applyMatrices();
+		applyTextureUniforms();
+		mesh.bind(shader);
+
+		drawing = true;
+	}
+
+	public void end () {
+		if (!drawing) throw new IllegalStateException("begin() must be called before end().");
+		drawing = false;
+
+		mesh.unbind(shader);
+		renderContext.end();
+
+		// Avoid hanging onto native resource object references
+		renderContext.clearAllTextureUnits();
+
+		shader.end();
+	}
+
+	/** Draws the Batchables recorded in a cache.
+	 * @param cacheID An ID returned by {@link #endCache()}. */
+	public void draw (int cacheID) {
+		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+		Array<Run> runs = caches.get(cacheID).runs;
+		for (int i = 0, n = runs.size; i < n; i++) {
+			Run run = runs.get(i);
+			if (run.count == 0) continue;
+			renderContext.set(run.context);
+			renderContext.executeChanges();
+			mesh.render(shader, GL20.GL_TRIANGLES, run.offset, run.count, false);
+			renderCalls++;
+			totalRenderCalls++;
+		}
+	}
+
+	public ShaderProgram getShader () {
+		return shader;
+	}
+
+	public void setShader (ShaderProgram shader) {
+		if (drawing) {
+			mesh.unbind(this.shader);
+			this.shader.end();
+		}
+		this.shader = shader;
+		if (drawing) {
+			shader.begin();
+			applyMatrices();
+			applyTextureUniforms();
+			mesh.bind(shader);
+		}
+	}
+
+	public Matrix4 getProjectionMatrix () {
+		return projectionMatrix;
+	}
+
+	public Matrix4 getTransformMatrix () {
+		return transformMatrix;
+	}
+
+	public void setProjectionMatrix (Matrix4 projection) {
+		projectionMatrix.set(projection);
+		if (drawing) applyMatrices();
+	}
+
+	public void setTransformMatrix (Matrix4 transform) {
+		transformMatrix.set(transform);
+		if (drawing) applyMatrices();
+	}
+
+	/** Called only while drawing. Recalculates the matrices and sets their values to shader uniforms. The default implementation
+	 * combines the projection and transform matrices and sets them to a single uniform named "u_projTrans". */
+	protected void applyMatrices () {
+		combinedMatrix.set(projectionMatrix).mul(transformMatrix);
+		getShader().setUniformMatrix("u_projTrans", combinedMatrix);
+	}
+
+	/** Sets shader uniform values for the textures. The default implementation uses the uniform name "u_texture" with the texture
+	 * unit appended. For example, if the Batchable type supports two textures, uniforms will be set for "u_texture0" and
+	 * "u_texture1". Uniforms that the shader does not have are skipped. */
+	protected void applyTextureUniforms () {
+		ShaderProgram shader = getShader();
+		for (int i = 0; i < textureUnitUniforms.length; i++) {
+			int location = shader.fetchUniformLocation(textureUnitUniforms[i], false);
+			if (location >= 0) shader.setUniformi(location, i);
+		}
+	}
+
+	/** @return Whether this FlexBatchCache is between {@link #begin()} and {@link #end()} calls. */
+	public boolean isDrawing () {
+		return drawing;
+	}
+
+	/** @return The number of vertices that can still be recorded. */
+	public int getRemainingVertexCapacity () {
+		return maxVertices - vertexCount;
+	}
+
+	public void dispose () {
+		mesh.dispose();
+	}
+
+	private static class Cache {
+		final Array<Run> runs = new Array<Run>();
+	}
+
+	/** A sequence of recorded triangles that share a render context. */
+	private static class Run {
+		final RenderContextAccumulator context = new RenderContextAccumulator();
+		final int offset;
+		int count;
+
+		Run (int offset) {
+			this.offset = offset;
+		}
+	}
+}
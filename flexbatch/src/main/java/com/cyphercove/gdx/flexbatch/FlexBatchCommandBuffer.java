@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch;
+
+import java.lang.reflect.Modifier;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.VertexPacker;
+
+/** Records {@link Batchable Batchables} on any thread, so they can later be drawn by a {@link FlexBatch} on the GL thread with
+ * {@link FlexBatch#draw(FlexBatchCommandBuffer)}. Recording generates the vertex data and triangle indices of each Batchable and
+ * captures its render context and textures, but does not use OpenGL. Replaying only copies the recorded data into the FlexBatch,
+ * so the work of setting up and applying Batchables can be moved off the GL thread, for example to a game logic thread that
+ * records the next frame while the GL thread draws the current one.
+ * <p>
+ * Batchables are recorded between calls to {@link #begin()} and {@link #end()}. A command buffer may only be used by one thread
+ * at a time, and must be handed over to the GL thread through a synchronization point, such as a concurrent queue, after
+ * {@link #end()} is called. It must not be recorded into while it is being replayed. Two command buffers can be alternated to
+ * record one frame while drawing the previous one. The textures of recorded Batchables must stay valid until the command buffer
+ * is replayed.
+ * <p>
+ * The command buffer grows to fit what is recorded, and keeps its capacity when it is reused. The same restrictions on Batchable
+ * compatibility apply as in {@link FlexBatch#draw(Batchable)}, and the recorded Batchable type must have the same vertex
+ * attributes as the FlexBatch that replays it. A FlexBatch that is optimized for FixedSizeBatchables can only replay
+ * FixedSizeBatchables of its own size.
+ *
+ * @param <T> The type of Batchable that is returned when acquiring one with {@link #record()}. This must match the class type
+ *           that is passed to the constructor.
+ * @author cypherdare */
+public class FlexBatchCommandBuffer<T extends Batchable> {
+
+	public final Class<T> batchableType;
+	private final T internalBatchable;
+	private boolean havePendingInternal;
+	private final AttributeOffsets attributeOffsets;
+	final int vertexSize;
+	float[] vertices;
+	short[] triangles;
+	/** The vertex count and index count of each recorded Batchable. */
+	int[] itemSizes;
+	private int vertIdx, triIdx;
+	int itemCount;
+	/** The vertex count shared by all recorded Batchables if they are all FixedSizeBatchables of the same size, 0 if nothing is
+	 * recorded, or -1 otherwise. */
+	int fixedVertexCount;
+
+	final Array<Run> runs = new Array<Run>();
+	int runCount;
+	private Run currentRun;
+	private final RenderContextAccumulator recordingContext = new RenderContextAccumulator();
+	private boolean recording;
+	/** The triangle indices of one FixedSizeBatchable of each recorded type. They are not taken from the static cache behind
+	 * {@link FixedSizeBatchable#apply(short[], int, short)}, which is filled lazily on whichever thread draws first. */
+	private final ObjectMap<Class<? extends FixedSizeBatchable>, short[]> indicesModels = new ObjectMap<Class<? extends FixedSizeBatchable>, short[]>();
+
+	/** Construct a FlexBatchCommandBuffer for the given Batchable type and other compatible Batchables.
+	 * @param batchableType The type of Batchable that defines the VertexAttributes of the recorded data, and the default Batchable
+	 *           type recorded by the {@link #record()} method.
+	 * @param initialVertices The number of vertices to allocate room for initially. The command buffer grows as needed. */
+	public FlexBatchCommandBuffer (Class<T> batchableType, int initialVertices) {
+		if (Modifier.isAbstract(batchableType.getModifiers()))
+			throw new IllegalArgumentException("Can't use an abstract batchableType");
+
+		this.batchableType = batchableType;
+
+		try {
+			internalBatchable = batchableType.newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Batchable classes must be public and have an empty constructor.", e);
+		}
+
+		Array<VertexAttribute> attributesArray = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+		internalBatchable.addVertexAttributes(attributesArray);
+		VertexAttributes vertexAttributes = new VertexAttributes(attributesArray.toArray());
+		// Use the same float layout that a FlexBatch stages its vertex data in.
+		if (VertexPacker.isPacked(vertexAttributes)) vertexAttributes = new VertexPacker(vertexAttributes).expandedAttributes;
+		attributeOffsets = new AttributeOffsets(vertexAttributes);
+		vertexSize = vertexAttributes.vertexSize / 4;
+
+		initialVertices = Math.max(initialVertices, 4);
+		vertices = new float[initialVertices * vertexSize];
+		triangles = new short[initialVertices * 3 / 2];
+		itemSizes = new int[initialVertices / 2];
+		if (internalBatchable instanceof FixedSizeBatchable) getIndicesModel((FixedSizeBatchable)internalBatchable);
+
+		recordingContext.setBlending(true);
+		recordingContext.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+	}
+
+	/** Discards anything previously recorded and starts recording. */
+	public void begin () {
+		if (recording) throw new IllegalStateException("end() must be called before begin().");
+		recording = true;
+		vertIdx = triIdx = itemCount = runCount = fixedVertexCount = 0;
+		currentRun = null;
+		recordingContext.clearAllTextureUnits();
+		internalBatchable.prepareSharedContext(recordingContext);
+	}
+
+	/** Finishes recording. The command buffer can then be replayed by a FlexBatch. */
+	public void end () {
+		if (!recording) throw new IllegalStateException("begin() must be called before end().");
+		if (havePendingInternal) recordPending();
+		recording = false;
+		recordingContext.clearAllTextureUnits();
+		internalBatchable.reset();
+	}
+
+	private void recordPending () {
+		havePendingInternal = false;
+		record(internalBatchable);
+	}
+
+	/** @return A Batchable that will automatically be recorded upon the next call to record() or end(). The Batchable will be of
+	 *         the same type as the {@link #batchableType} of this FlexBatchCommandBuffer.
+	 *         <p>
+	 *         Do not cache and reuse the returned Batchable. */
+	public T record () {
+		if (havePendingInternal) recordPending();
+		havePendingInternal = true;
+		internalBatchable.refresh();
+		return internalBatchable;
+	}
+
+	/** Records a Batchable. Its current parameters are captured, so it can be modified or reused afterwards.
+	 * @param batchable The Batchable to record. */
+	public void record (Batchable batchable) {
+		if (havePendingInternal) recordPending();
+		if (!recording) throw new IllegalStateException("begin() must be called before recording.");
+		if (batchable instanceof FixedSizeBatchable) {
+			// Make room first, so a texture added to the run along with a capacity request does not start a new run.
+			FixedSizeBatchable fixedSizeBatchable = (FixedSizeBatchable)batchable;
+			while (getRemainingVertices() < fixedSizeBatchable.getVerticesPerBatchable()
+				|| triangles.length - triIdx < fixedSizeBatchable.getTrianglesPerBatchable() * 3)
+				grow();
+		}
+		boolean changed = batchable.prepareContext(recordingContext, getRemainingVertices(), triangles.length - triIdx);
+		if (currentRun == null || (changed && !recordingContext.hasEquivalentPendingState(currentRun.context))) {
+			startRun();
+			// With the context already applied, a second call only reports whether there is enough room.
+			if (changed) changed = batchable.prepareContext(recordingContext, getRemainingVertices(), triangles.length - triIdx);
+		}
+		while (changed) {
+			grow();
+			changed = batchable.prepareContext(recordingContext, getRemainingVertices(), triangles.length - triIdx);
+		}
+		// A Batchable may add texture units without changing the ones the run already uses.
+		if (!recordingContext.hasEquivalentPendingState(currentRun.context)) currentRun.context.set(recordingContext);
+
+		int indicesAdded;
+		if (batchable instanceof FixedSizeBatchable) {
+			short[] model = getIndicesModel((FixedSizeBatchable)batchable);
+			System.arraycopy(model, 0, triangles, triIdx, model.length);
+			indicesAdded = model.length;
+		} else {
+			indicesAdded = batchable.apply(triangles, triIdx, (short)0);
+		}
+		int verticesAdded = batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
+		if (batchable instanceof FixedSizeBatchable) {
+			verticesAdded = ((FixedSizeBatchable)batchable).getVerticesPerBatchable();
+			if (fixedVertexCount == 0)
+				fixedVertexCount = verticesAdded;
+			else if (fixedVertexCount != verticesAdded) fixedVertexCount = -1;
+		} else {
+			fixedVertexCount = -1;
+		}
+		if (itemSizes.length < (itemCount + 1) * 2) {
+			int[] newItemSizes = new int[itemSizes.length * 2];
+			System.arraycopy(itemSizes, 0, newItemSizes, 0, itemCount * 2);
+			itemSizes = newItemSizes;
+		}
+		itemSizes[itemCount * 2] = verticesAdded;
+		itemSizes[itemCount * 2 + 1] = indicesAdded;
+		itemCount++;
+		triIdx += indicesAdded;
+		vertIdx += vertexSize * verticesAdded;
+		currentRun.itemCount++;
+		currentRun.vertexCount += verticesAdded;
+	}
+
+	private short[] getIndicesModel (FixedSizeBatchable batchable) {
+		short[] model = indicesModels.get(batchable.getClass());
+		if (model == null) {
+			model = new short[batchable.getTrianglesPerBatchable() * 3];
+			batchable.populateTriangleIndices(model);
+			indicesModels.put(batchable.getClass(), model);
+		}
+		return model;
+	}
+
+	private int getRemainingVertices () {
+		// Triangle indices are relative to each Batchable, so a single Batchable cannot exceed the range of a short.
+		return Math.min((vertices.length - vertIdx) / vertexSize, 65535);
+	}
+
+	private void startRun () {
+		if (runCount == runs.size) runs.add(new Run());
+		currentRun = runs.get(runCount++);
+		currentRun.context.set(recordingContext);
+		currentRun.firstItem = itemCount;
+		currentRun.itemCount = 0;
+		currentRun.vertexOffset = vertIdx;
+		currentRun.vertexCount = 0;
+		currentRun.triangleOffset = triIdx;
+	}
+
+	private void grow () {
+		float[] newVertices = new float[vertices.length * 2];
+		System.arraycopy(vertices, 0, newVertices, 0, vertIdx);
+		vertices = newVertices;
+		short[] newTriangles = new short[triangles.length * 2];
+		System.arraycopy(triangles, 0, newTriangles, 0, triIdx);
+		triangles = newTriangles;
+	}
+
+	/** @return Whether Batchables are being recorded. */
+	public boolean isRecording () {
+		return recording;
+	}
+
+	/** @return The number of Batchables recorded since the last {@link #begin()}. */
+	public int size () {
+		return itemCount;
+	}
+
+	/** A sequence of recorded Batchables that share a render context. */
+	static class Run {
+		final RenderContextAccumulator context = new RenderContextAccumulator();
+		int firstItem, itemCount, vertexOffset, vertexCount, triangleOffset;
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch;
+
+/** Counts the flushes of a {@link FlexBatch} since its last {@link FlexBatch#begin()}, by the reason each flush occurred, along
+ * with the amount of data submitted. Only flushes that draw something are counted. This can be used to find the draw code
+ * responsible for excessive flushing.
+ *
+ * @author cypherdare */
+public class FlushStatistics {
+
+	/** The cause of a flush. */
+	public enum FlushReason {
+		/** A Batchable bound different textures than the ones queued before it. */
+		TextureChange,
+		/** A Batchable or a FlexBatch method changed the blending, depth or other GL state. */
+		StateChange,
+		/** There was not enough room left in the batch for the next Batchable or vertex data. */
+		Capacity,
+		/** The shader was changed. */
+		ShaderChange,
+		/** The projection or transform matrix was changed. */
+		MatrixChange,
+		/** {@link FlexBatch#flush()} was called, or a FlexBatch setting was changed while drawing. */
+		Explicit,
+		/** {@link FlexBatch#end()} was called. */
+		End;
+
+		static final FlushReason[] values = values();
+	}
+
+	/** Receives a callback for each flush of a FlexBatch. Set with {@link FlexBatch#setFlushListener(FlushListener)}. */
+	public interface FlushListener {
+		/** Called after a FlexBatch has drawn a batch.
+		 * @param batch The FlexBatch that flushed.
+		 * @param reason Why the flush occurred.
+		 * @param vertices The number of vertices that were drawn.
+		 * @param indices The number of triangle indices that were drawn. */
+		void onFlush (FlexBatch<?> batch, FlushReason reason, int vertices, int indices);
+	}
+
+	private final int[] flushesByReason = new int[FlushReason.values.length];
+	/** The number of flushes. */
+	public int flushes;
+	/** The number of vertices submitted by all flushes. */
+	public int verticesUploaded;
+	/** The number of bytes of vertex and index data uploaded by all flushes. Fixed indices are uploaded only once, when the
+	 * FlexBatch is created, so they are not included. */
+	public long bytesUploaded;
+	/** The largest number of vertices submitted by a single flush. */
+	public int largestBatch;
+
+	/** @param reason A flush reason.
+	 * @return The number of flushes that occurred for the reason. */
+	public int getFlushes (FlushReason reason) {
+		return flushesByReason[reason.ordinal()];
+	}
+
+	void record (FlushReason reason, int vertices, int bytes) {
+		flushesByReason[reason.ordinal()]++;
+		flushes++;
+		verticesUploaded += vertices;
+		bytesUploaded += bytes;
+		if (vertices > largestBatch) largestBatch = vertices;
+	}
+
+	/** Sets all counts to zero. This is called automatically by {@link FlexBatch#begin()}. */
+	public void reset () {
+		for (int i = 0; i < flushesByReason.length; i++)
+			flushesByReason[i] = 0;
+		flushes = verticesUploaded = largestBatch = 0;
+		bytesUploaded = 0;
+	}
+
+	public String toString () {
+		StringBuilder sb = new StringBuilder();
+		sb.append("flushes: ").append(flushes).append(" (");
+		for (int i = 0; i < flushesByReason.length; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(FlushReason.values[i]).append(": ").append(flushesByReason[i]);
+		}
+		sb.append("), vertices: ").append(verticesUploaded).append(", bytes: ").append(bytesUploaded).append(", largest batch: ")
+			.append(largestBatch);
+		return sb.toString();
+	}
+}
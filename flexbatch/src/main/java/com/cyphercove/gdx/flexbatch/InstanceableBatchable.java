@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch;
+
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+
+/** A {@link FixedSizeBatchable} that can be drawn by an {@link InstancedFlexBatch}. The template shape is drawn once per
+ * instance, and has {@link FixedSizeBatchable#getVerticesPerBatchable()} vertices and the indices from
+ * {@link FixedSizeBatchable#populateTriangleIndices(short[])}.
+ *
+ * @author cypherdare */
+public interface InstanceableBatchable {
+	/** Adds the vertex attributes of the template shape.
+	 * @param attributes An array to which attributes can be added. */
+	void addTemplateAttributes (Array<VertexAttribute> attributes);
+
+	/** Populates the vertex data of the template shape. This is called only once on one of the InstancedFlexBatch's internal
+	 * Batchable instances.
+	 * @param vertices The array to fill with one template's vertex data.
+	 * @param offsets The offsets of the attributes added by {@link #addTemplateAttributes(Array)}.
+	 * @param vertexSize The size of the template vertices in floats. */
+	void populateTemplateVertices (float[] vertices, AttributeOffsets offsets, int vertexSize);
+
+	/** Adds the attributes that are applied once per instance by {@link #applyInstance(float[], int, AttributeOffsets)}. All
+	 * instances of a class must have an equivalent set of attributes.
+	 * @param attributes An array to which attributes can be added. */
+	void addInstanceAttributes (Array<VertexAttribute> attributes);
+
+	/** Called by InstancedFlexBatch instead of {@link Batchable#apply(float[], int, AttributeOffsets, int)}. Applies the data of
+	 * one instance.
+	 * @param instances The array of instance data.
+	 * @param startingIndex The index of the first element of this instance's data.
+	 * @param offsets The offsets of the attributes added by {@link #addInstanceAttributes(Array)}. */
+	void applyInstance (float[] instances, int startingIndex, AttributeOffsets offsets);
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch;
+
+import java.lang.reflect.Modifier;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Mesh.VertexDataType;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.InstanceBufferObject;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** Draws {@link FixedSizeBatchable FixedSizeBatchables} with hardware instancing. A single template of the Batchable's shape is
+ * stored in a static Mesh, and each queued Batchable only uploads one compact record of instance data, such as its position,
+ * size, rotation, color and texture region. The shader expands the template into each instance's corners, so the CPU does not
+ * have to transform and write every vertex. An InstancedFlexBatch must be {@link #dispose() disposed of} when no longer used to
+ * avoid leaking memory.
+ * <p>
+ * Instanced drawing requires OpenGL ES 3.0, so an InstancedFlexBatch can only be created if {@link Gdx#gl30} is available. A
+ * {@link FlexBatch} can be used as a fallback with the same Batchables and a non-instanced shader.
+ * <p>
+ * The Batchable type must implement {@link InstanceableBatchable}. {@link com.cyphercove.gdx.flexbatch.batchable.Quad2D
+ * Quad2D} and {@link com.cyphercove.gdx.flexbatch.batchable.Quad3D Quad3D} support instancing, and matching vertex shaders can
+ * be generated with
+ * {@link com.cyphercove.gdx.flexbatch.utils.BatchablePreparation#generateInstancedQuad2DVertexShader(int)} and
+ * {@link com.cyphercove.gdx.flexbatch.utils.BatchablePreparation#generateInstancedQuad3DVertexShader(int)}, or shared programs
+ * obtained from {@link com.cyphercove.gdx.flexbatch.utils.GeneratedShaderCache GeneratedShaderCache}. The texture array
+ * layer of a Quad is not part of its instance data. All Batchables drawn must be of the same class as the {@link #batchableType},
+ * or a subclass that does not change its instance attributes.
+ * <p>
+ * As with FlexBatch, no default shader is provided, so {@link #setShader(ShaderProgram)} must be called before drawing.
+ *
+ * @param <T> The type of Batchable that is returned when acquiring one with {@link #draw()}. This must match the class type that
+ *           is passed to the constructor.
+ * @author cypherdare */
+public class InstancedFlexBatch<T extends FixedSizeBatchable & InstanceableBatchable> implements Disposable {
+
+	public final Class<T> batchableType;
+	private final T internalBatchable;
+	private boolean havePendingInternal;
+	private final Mesh mesh;
+	private final InstanceBufferObject instanceBuffer;
+	private final AttributeOffsets instanceOffsets;
+	private final int instanceSize, maxInstances, verticesPerInstance, indicesPerInstance;
+	private final float[] instances;
+	private int instanceCount;
+
+	private final RenderContextAccumulator renderContext = new RenderContextAccumulator();
+	private boolean drawing;
+
+	/** Number of render calls since the last {@link #begin()}. **/
+	public int renderCalls = 0;
+	/** Number of rendering calls, ever. Will not be reset unless set manually. **/
+	public int totalRenderCalls = 0;
+
+	private final Matrix4 transformMatrix = new Matrix4();
+	private final Matrix4 projectionMatrix = new Matrix4();
+	private final Matrix4 combinedMatrix = new Matrix4();
+
+	private final String[] textureUnitUniforms;
+
+	private ShaderProgram shader;
+
+	/** Construct an InstancedFlexBatch capable of drawing the given FixedSizeBatchable type.
+	 * @param batchableType The type of Batchable that defines the template shape and instance attributes of this
+	 *           InstancedFlexBatch, and the default Batchable type drawn by the {@link #draw()} method.
+	 * @param maxInstances The number of Batchables that can be queued before a flush. */
+	public InstancedFlexBatch (Class<T> batchableType, int maxInstances) {
+		if (Gdx.gl30 == null) throw new IllegalArgumentException("InstancedFlexBatch requires OpenGL ES 3.0.");
+		if (maxInstances < 1) throw new IllegalArgumentException("maxInstances must be at least 1.");
+		if (Modifier.isAbstract(batchableType.getModifiers()))
+			throw new IllegalArgumentException("Can't use an abstract batchableType");
+		if (!InstanceableBatchable.class.isAssignableFrom(batchableType))
+			throw new IllegalArgumentException("batchableType must implement InstanceableBatchable: " + batchableType.getName());
+
+		this.batchableType = batchableType;
+		this.maxInstances = maxInstances;
+
+		try {
+			internalBatchable = batchableType.newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Batchable classes must be public and have an empty constructor.", e);
+		}
+
+		Array<VertexAttribute> templateAttributesArray = new Array<VertexAttribute>(true, 4, VertexAttribute.class);
+		internalBatchable.addTemplateAttributes(templateAttributesArray);
+		VertexAttributes templateAttributes = new VertexAttributes(templateAttributesArray.toArray());
+		int templateVertexSize = templateAttributes.vertexSize / 4;
+		verticesPerInstance = internalBatchable.getVerticesPerBatchable();
+		indicesPerInstance = internalBatchable.getTrianglesPerBatchable() * 3;
+		float[] templateVertices = new float[verticesPerInstance * templateVertexSize];
+		internalBatchable.populateTemplateVertices(templateVertices, new AttributeOffsets(templateAttributes), templateVertexSize);
+		short[] templateIndices = new short[indicesPerInstance];
+		internalBatchable.populateTriangleIndices(templateIndices);
+		mesh = new Mesh(VertexDataType.VertexBufferObjectWithVAO, true, verticesPerInstance, indicesPerInstance,
+			templateAttributesArray.toArray());
+		mesh.setVertices(templateVertices);
+		mesh.setIndices(templateIndices);
+
+		Array<VertexAttribute> instanceAttributesArray = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+		internalBatchable.addInstanceAttributes(instanceAttributesArray);
+		VertexAttributes instanceAttributes = new VertexAttributes(instanceAttributesArray.toArray());
+		instanceOffsets = new AttributeOffsets(instanceAttributes);
+		instanceSize = instanceAttributes.vertexSize / 4;
+		instances = new float[instanceSize * maxInstances];
+		instanceBuffer = new InstanceBufferObject(maxInstances, instanceAttributes);
+
+		textureUnitUniforms = new String[internalBatchable.getNumberOfTextureUnits()];
+		for (int i = 0; i < textureUnitUniforms.length; i++)
+			textureUnitUniforms[i] = "u_texture" + i;
+
+		projectionMatrix.setToOrtho2D(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+
+		renderContext.setBlending(true);
+		renderContext.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+	}
+
+	/** Prepares the OpenGL state for drawing. This must be called before any Batchables are drawn. */
+	public void begin () {
+		if (drawing) throw new IllegalStateException("end() must be called before begin().");
+		renderCalls = 0;
+
+		renderContext.begin();
+		internalBatchable.prepareSharedContext(renderContext);
+		renderContext.executeChanges();
+		shader.begin();
+		applyMatrices();
+		applyTextureUniforms();
+
+		drawing = true;
+	}
+
+	/** Draws any queued Batchables and restores the OpenGL state. */
+	public void end () {
+		if (!drawing) throw new IllegalStateException("begin() must be called before end().");
+		if (havePendingInternal) drawPending();
+		flush();
+		drawing = false;
+
+		renderContext.end();
+
+		// Avoid hanging onto native resource object references
+		renderContext.clearAllTextureUnits();
+
+		shader.end();
+	}
+
+	/** @return The RenderContextAccumulator that tracks the OpenGL state of this InstancedFlexBatch. Changes made to it while
+	 *         drawing take effect with the next Batchable whose context differs, or with the next flush. */
+	public RenderContextAccumulator getRenderContext () {
+		return renderContext;
+	}
+
+	private void drawPending () {
+		havePendingInternal = false;
+		draw(internalBatchable);
+	}
+
+	/** @return A Batchable that will automatically be queued for drawing upon the next call to draw(), flush(), or end(). The
+	 *         Batchable will be of the same type as the {@link #batchableType} of this InstancedFlexBatch.
+	 *         <p>
+	 *         Do not cache and reuse the returned Batchable. */
+	public T draw () {
+		if (havePendingInternal) drawPending();
+		havePendingInternal = true;
+		internalBatchable.refresh();
+		return internalBatchable;
+	}
+
+	/** Queues a Batchable for drawing as one instance. Its class must have the same instance attributes as the
+	 * {@link #batchableType}. This is not checked.
+	 * @param batchable */
+	public void draw (T batchable) {
+		if (havePendingInternal) drawPending();
+		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+		final int remainingInstances = maxInstances - instanceCount;
+		if (batchable.prepareContext(renderContext, remainingInstances * verticesPerInstance,
+			remainingInstances * indicesPerInstance)) flush();
+		batchable.applyInstance(instances, instanceCount * instanceSize, instanceOffsets);
+		instanceCount++;
+	}
+
+	/** Draws all queued Batchables with a single instanced draw call, and applies any pending render context changes. */
+	public void flush () {
+		if (instanceCount == 0) {
+			renderContext.executeChanges();
+			return;
+		}
+
+		instanceBuffer.setInstances(instances, 0, instanceCount * instanceSize);
+		renderContext.executeTextureUnitAdditions();
+		mesh.bind(shader);
+		instanceBuffer.bind(shader);
+		Gdx.gl30.glDrawElementsInstanced(GL20.GL_TRIANGLES, indicesPerInstance, GL20.GL_UNSIGNED_SHORT, 0, instanceCount);
+		instanceBuffer.unbind(shader);
+		mesh.unbind(shader);
+		renderCalls++;
+		totalRenderCalls++;
+		instanceCount = 0;
+
+		renderContext.executeChanges();
+	}
+
+	public ShaderProgram getShader () {
+		return shader;
+	}
+
+	public void setShader (ShaderProgram shader) {
+		if (drawing) {
+			flush();
+			this.shader.end();
+		}
+		this.shader = shader;
+		if (drawing) {
+			shader.begin();
+			applyMatrices();
+			applyTextureUniforms();
+		}
+	}
+
+	public Matrix4 getProjectionMatrix () {
+		return projectionMatrix;
+	}
+
+	public Matrix4 getTransformMatrix () {
+		return transformMatrix;
+	}
+
+	public void setProjectionMatrix (Matrix4 projection) {
+		if (drawing) flush();
+		projectionMatrix.set(projection);
+		if (drawing) applyMatrices();
+	}
+
+	public void setTransformMatrix (Matrix4 transform) {
+		if (drawing) flush();
+		transformMatrix.set(transform);
+		if (drawing) applyMatrices();
+	}
+
+	/** Called only while drawing. Recalculates the matrices and sets their values to shader uniforms. The default implementation
+	 * combines the projection and transform matrices and sets them to a single uniform named "u_projTrans". */
+	protected void applyMatrices () {
+		combinedMatrix.set(projectionMatrix).mul(transformMatrix);
+		getShader().setUniformMatrix("u_projTrans", combinedMatrix);
+	}
+
+	/** Sets shader uniform values for the textures. The default implementation uses the uniform name "u_texture" with the texture
+	 * unit appended. For example, if the Batchable type supports two textures, uniforms will be set for "u_texture0" and
+	 * "u_texture1". Uniforms that the shader does not have are skipped. */
+	protected void applyTextureUniforms () {
+		ShaderProgram shader = getShader();
+		for (int i = 0; i < textureUnitUniforms.length; i++) {
+			int location = shader.fetchUniformLocation(textureUnitUniforms[i], false);
+			if (location >= 0) shader.setUniformi(location, i);
+		}
+	}
+
+	/** @return Whether this InstancedFlexBatch is between {@link #begin()} and {@link #end()} calls. */
+	public boolean isDrawing () {
+		return drawing;
+	}
+
+	/** @return The number of Batchables that can be queued before a flush. */
+	public int getInstanceCapacity () {
+		return maxInstances;
+	}
+
+	public void dispose () {
+		mesh.dispose();
+		instanceBuffer.dispose();
+	}
+}
@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch;
+
+/** A Batchable that can apply its triangle indices as 32-bit values, so it can be drawn by a {@link FlexBatch} that supports more
+ * than 65535 vertices and is not limited to FixedSizeBatchables. {@link Batchable.FixedSizeBatchable FixedSizeBatchables} and
+ * {@link com.cyphercove.gdx.flexbatch.batchable.Poly Poly} implement it.
+ *
+ * @author cypherdare */
+public interface IntIndexedBatchable {
+	/** Called by FlexBatch instead of {@link Batchable#apply(short[], int, short)} if the FlexBatch uses 32-bit indices.
+	 * @param triangles
+	 * @param startingIndex
+	 * @param firstVertex The first vertex value that should be used.
+	 * @return The number of triangle indices that were added. */
+	int apply (int[] triangles, int startingIndex, int firstVertex);
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch;
+
+import java.nio.ShortBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.IndexBufferObject;
+import com.badlogic.gdx.graphics.glutils.IndexData;
+import com.badlogic.gdx.graphics.glutils.VertexArray;
+import com.badlogic.gdx.graphics.glutils.VertexBufferObjectWithVAO;
+import com.badlogic.gdx.graphics.glutils.VertexData;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.utils.IntIndexBufferObject;
+
+/** Reference-counted index buffers shared by all FlexBatches that are optimized for the same FixedSizeBatchable class and have
+ * the same index capacity, so the fixed indices are generated and stored only once per process. A buffer is disposed when its
+ * last user releases it. The indices are built from the single-Batchable indices that FixedSizeBatchable caches per class.
+ *
+ * @author cypherdare */
+final class SharedIndices {
+
+	private static final ObjectMap<Key, Entry> entries = new ObjectMap<Key, Entry>();
+
+	private SharedIndices () {
+	}
+
+	/** Creates a Mesh for dynamic vertices that draws with the shared 16-bit indices for the Batchable's class and capacity.
+	 * The vertices use a VAO if OpenGL ES 3.0 is available, or a vertex array otherwise. Disposing of the Mesh releases its
+	 * reference to the indices. */
+	static Mesh createMesh (FixedSizeBatchable template, int maxVertices, int maxIndices, VertexAttribute[] attributes) {
+		VertexAttributes vertexAttributes = new VertexAttributes(attributes);
+		VertexData vertexData = Gdx.gl30 != null ? new VertexBufferObjectWithVAO(false, maxVertices, vertexAttributes)
+			: new VertexArray(maxVertices, vertexAttributes);
+		return new SharedIndicesMesh(vertexData, obtain(template, maxIndices));
+	}
+
+	/** @return A reference to the shared 16-bit indices for the Batchable's class and capacity, for use as the IndexData of a
+	 *         single Mesh. The Mesh releases the reference when it is disposed. */
+	static IndexData obtain (FixedSizeBatchable template, int maxIndices) {
+		Entry entry = obtainEntry(template, maxIndices, false);
+		Reference reference = new Reference(entry);
+		entry.references.add(reference);
+		return reference;
+	}
+
+	/** @return The shared 32-bit indices for the Batchable's class and capacity. Must be released with
+	 *         {@link #releaseInt(FixedSizeBatchable, int)} instead of being disposed. */
+	static IntIndexBufferObject obtainInt (FixedSizeBatchable template, int maxIndices) {
+		Entry entry = obtainEntry(template, maxIndices, true);
+		entry.intReferenceCount++;
+		return entry.intBuffer;
+	}
+
+	static void releaseInt (FixedSizeBatchable template, int maxIndices) {
+		Key key = new Key(template.getClass(), maxIndices, true);
+		Entry entry = entries.get(key);
+		if (entry == null) return;
+		if (--entry.intReferenceCount == 0) {
+			entries.remove(key);
+			entry.intBuffer.dispose();
+		}
+	}
+
+	private static Entry obtainEntry (FixedSizeBatchable template, int maxIndices, boolean intIndices) {
+		Key key = new Key(template.getClass(), maxIndices, intIndices);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(key);
+			if (intIndices) {
+				int[] triangles = new int[maxIndices];
+				template.populateTriangleIndices(triangles);
+				entry.intBuffer = new IntIndexBufferObject(true, maxIndices);
+				entry.intBuffer.setIndices(triangles, 0, maxIndices);
+			} else {
+				short[] triangles = new short[maxIndices];
+				template.populateSeriesIndices(triangles);
+				entry.buffer = new IndexBufferObject(true, maxIndices);
+				entry.buffer.setIndices(triangles, 0, maxIndices);
+				entry.readOnlyBuffer = entry.buffer.getBuffer().asReadOnlyBuffer();
+			}
+			entries.put(key, entry);
+		}
+		return entry;
+	}
+
+	private static class Key {
+		final Class<?> batchableType;
+		final int maxIndices;
+		final boolean intIndices;
+
+		Key (Class<?> batchableType, int maxIndices, boolean intIndices) {
+			this.batchableType = batchableType;
+			this.maxIndices = maxIndices;
+			this.intIndices = intIndices;
+		}
+
+		public boolean equals (Object o) {
+			if (!(o instanceof Key)) return false;
+			Key other = (Key)o;
+			return batchableType == other.batchableType && maxIndices == other.maxIndices && intIndices == other.intIndices;
+		}
+
+		public int hashCode () {
+			return (batchableType.hashCode() * 31 + maxIndices) * 31 + (intIndices ? 1 : 0);
+		}
+	}
+
+	private static class Entry {
+		final Key key;
+		IndexBufferObject buffer;
+		ShortBuffer readOnlyBuffer;
+		final Array<Reference> references = new Array<Reference>(false, 4);
+		IntIndexBufferObject intBuffer;
+		int intReferenceCount;
+
+		Entry (Key key) {
+			this.key = key;
+		}
+	}
+
+	/** A Mesh whose indices are bound as a buffer object, even if its vertices are a client-side vertex array. */
+	private static class SharedIndicesMesh extends Mesh {
+		SharedIndicesMesh (VertexData vertices, IndexData indices) {
+			super(vertices, indices, false);
+		}
+	}
+
+	/** The IndexData of one Mesh, delegating to the shared buffer. The indices are read-only. */
+	private static class Reference implements IndexData {
+		private Entry entry;
+
+		Reference (Entry entry) {
+			this.entry = entry;
+		}
+
+		public int getNumIndices () {
+			return entry.buffer.getNumIndices();
+		}
+
+		public int getNumMaxIndices () {
+			return entry.buffer.getNumMaxIndices();
+		}
+
+		public void setIndices (short[] indices, int offset, int count) {
+			throw new UnsupportedOperationException("Shared indices cannot be modified.");
+		}
+
+		public void setIndices (ShortBuffer indices) {
+			throw new UnsupportedOperationException("Shared indices cannot be modified.");
+		}
+
+		public void updateIndices (int targetOffset, short[] indices, int offset, int count) {
+			throw new UnsupportedOperationException("Shared indices cannot be modified.");
+		}
+
+		public ShortBuffer getBuffer () {
+			return entry.readOnlyBuffer;
+		}
+
+		public void bind () {
+			entry.buffer.bind();
+		}
+
+		public void unbind () {
+			entry.buffer.unbind();
+		}
+
+		/** Every Mesh using the buffer is invalidated when the context is restored, but the buffer must only be recreated once. */
+		public void invalidate () {
+			if (entry.references.first() == this) entry.buffer.invalidate();
+		}
+
+		public void dispose () {
+			if (entry == null) return;
+			entry.references.removeValue(this, true);
+			if (entry.references.size == 0) {
+				entries.remove(entry.key);
+				entry.buffer.dispose();
+			}
+			entry = null;
+		}
+	}
+}
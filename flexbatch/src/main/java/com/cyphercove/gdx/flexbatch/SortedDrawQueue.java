@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** Holds the draws of a FlexBatch in sorted mode until it flushes. The vertex data of each draw is generated immediately, and the
+ * draw is given a sort key packing its layer, the ID of its render context, and its submission order, from most to least
+ * significant. Render contexts are assigned IDs in the order they are first seen, by comparing them to the ones already used
+ * since the last flush.
+ *
+ * @author cypherdare */
+final class SortedDrawQueue {
+
+	static final int MIN_LAYER = Short.MIN_VALUE, MAX_LAYER = Short.MAX_VALUE;
+	private static final int ORDER_BITS = 24, CONTEXT_BITS = 24;
+	private static final int MAX_ITEMS = 1 << ORDER_BITS;
+	private static final int ORDER_MASK = MAX_ITEMS - 1, CONTEXT_MASK = (1 << CONTEXT_BITS) - 1;
+
+	private final int vertexSize;
+	private final boolean storeTriangles;
+	private final AttributeOffsets attributeOffsets;
+	float[] vertices;
+	/** Indices relative to the first vertex of each item. Only used if the FlexBatch is not limited to FixedSizeBatchables. */
+	short[] triangles;
+	private int vertIdx, triIdx;
+	/** The vertex data offset, vertex count, triangle offset and index count of each item. */
+	int[] items;
+	private long[] keys, sortBuffer;
+	private final int[] digitCounts = new int[256];
+	private int itemCount;
+
+	private final Array<RenderContextAccumulator> contexts = new Array<RenderContextAccumulator>();
+	private int contextCount;
+	private int lastContextId = -1;
+	/** Holds the render context that draws are being prepared with while the queue is drawn. */
+	final RenderContextAccumulator recordingState = new RenderContextAccumulator();
+
+	SortedDrawQueue (int vertexSize, AttributeOffsets attributeOffsets, boolean storeTriangles) {
+		this.vertexSize = vertexSize;
+		this.attributeOffsets = attributeOffsets;
+		this.storeTriangles = storeTriangles;
+		vertices = new float[256 * vertexSize];
+		triangles = new short[storeTriangles ? 384 : 0];
+		items = new int[64 * 4];
+		keys = new long[64];
+		sortBuffer = new long[64];
+	}
+
+	/** Prepares the Batchable's render context on the FlexBatch's render context, which is only used for recording while the
+	 * queue is filled, and adds its vertex data. */
+	void add (Batchable batchable, RenderContextAccumulator renderContext, int layer) {
+		if (batchable instanceof FixedSizeBatchable) {
+			// Make room first, so the preparation reports only context changes. FixedSizeBatchables do not check the indices.
+			FixedSizeBatchable fixedSizeBatchable = (FixedSizeBatchable)batchable;
+			ensureCapacity(fixedSizeBatchable.getVerticesPerBatchable(),
+				storeTriangles ? fixedSizeBatchable.getTrianglesPerBatchable() * 3 : 0);
+		}
+		if (batchable.prepareContext(renderContext, getRemainingVertices(), triangles.length - triIdx)) {
+			// With the context already applied, a second call only reports whether there is enough room.
+			while (batchable.prepareContext(renderContext, getRemainingVertices(), triangles.length - triIdx))
+				grow(vertices.length, triangles.length);
+		}
+
+		int indicesAdded = storeTriangles ? batchable.apply(triangles, triIdx, (short)0) : 0;
+		int verticesAdded = batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
+		if (batchable instanceof FixedSizeBatchable) verticesAdded = ((FixedSizeBatchable)batchable).getVerticesPerBatchable();
+		addItem(findContext(renderContext), layer, verticesAdded, indicesAdded);
+	}
+
+	/** Adds explicit vertex data drawn with the render context of a FixedSizeBatchable. If triangles are stored, each
+	 * FixedSizeBatchable-sized group of vertices is added as a separate item, and adding stops early if the queue becomes
+	 * {@link #isFull() full}.
+	 * @param sourceVertexSize The vertex size of the source data, which may be smaller than the FlexBatch's.
+	 * @return The number of source array elements that were added. */
+	int add (FixedSizeBatchable batchable, RenderContextAccumulator renderContext, int layer, float[] source, int offset,
+		int count, int sourceVertexSize) {
+		batchable.prepareContext(renderContext, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		final int contextId = findContext(renderContext);
+		final int vertexCount = count / sourceVertexSize;
+		if (!storeTriangles) {
+			ensureCapacity(vertexCount, 0);
+			copyVertices(source, offset, vertexCount, sourceVertexSize);
+			addItem(contextId, layer, vertexCount, 0);
+			return count;
+		}
+		final int verticesPerBatchable = batchable.getVerticesPerBatchable();
+		final int indicesPerBatchable = batchable.getTrianglesPerBatchable() * 3;
+		final int dataPerBatchable = verticesPerBatchable * sourceVertexSize;
+		int added = 0;
+		while (added + dataPerBatchable <= count && !isFull()) {
+			ensureCapacity(verticesPerBatchable, indicesPerBatchable);
+			batchable.apply(triangles, triIdx, (short)0);
+			copyVertices(source, offset + added, verticesPerBatchable, sourceVertexSize);
+			addItem(contextId, layer, verticesPerBatchable, indicesPerBatchable);
+			added += dataPerBatchable;
+		}
+		return added + dataPerBatchable <= count ? added : count;
+	}
+
+	/** Adds explicit vertex data and triangle indices drawn with the render context of a Batchable.
+	 * @param sourceVertexSize The vertex size of the source data, which may be smaller than the FlexBatch's.
+	 * @param sourceTriangles Indices starting from 0 for the first vertex. */
+	void add (Batchable batchable, RenderContextAccumulator renderContext, int layer, float[] source, int offset, int count,
+		int sourceVertexSize, short[] sourceTriangles, int trianglesOffset, int trianglesCount) {
+		batchable.prepareContext(renderContext, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		final int vertexCount = count / sourceVertexSize;
+		ensureCapacity(vertexCount, trianglesCount);
+		System.arraycopy(sourceTriangles, trianglesOffset, triangles, triIdx, trianglesCount);
+		copyVertices(source, offset, vertexCount, sourceVertexSize);
+		addItem(findContext(renderContext), layer, vertexCount, trianglesCount);
+	}
+
+	/** Adds the recorded Batchables of a command buffer. The render context of the FlexBatch is not changed. */
+	void add (FlexBatchCommandBuffer<?> commandBuffer, int layer) {
+		final int[] itemSizes = commandBuffer.itemSizes;
+		for (int r = 0; r < commandBuffer.runCount; r++) {
+			FlexBatchCommandBuffer.Run run = commandBuffer.runs.get(r);
+			final int contextId = findContext(run.context);
+			int vertexOffset = run.vertexOffset;
+			int triangleOffset = run.triangleOffset;
+			for (int i = run.firstItem, end = run.firstItem + run.itemCount; i < end; i++) {
+				final int vertexCount = itemSizes[i * 2];
+				final int indexCount = storeTriangles ? itemSizes[i * 2 + 1] : 0;
+				ensureCapacity(vertexCount, indexCount);
+				System.arraycopy(commandBuffer.triangles, triangleOffset, triangles, triIdx, indexCount);
+				copyVertices(commandBuffer.vertices, vertexOffset, vertexCount, vertexSize);
+				addItem(contextId, layer, vertexCount, indexCount);
+				vertexOffset += vertexCount * vertexSize;
+				triangleOffset += itemSizes[i * 2 + 1];
+			}
+		}
+	}
+
+	private void copyVertices (float[] source, int offset, int vertexCount, int sourceVertexSize) {
+		if (sourceVertexSize == vertexSize) {
+			System.arraycopy(source, offset, vertices, vertIdx, vertexCount * vertexSize);
+		} else {
+			for (int i = 0, v = vertIdx; i < vertexCount; i++, v += vertexSize, offset += sourceVertexSize)
+				System.arraycopy(source, offset, vertices, v, sourceVertexSize);
+		}
+	}
+
+	private void addItem (int contextId, int layer, int vertexCount, int indexCount) {
+		if (itemCount == keys.length) {
+			keys = Arrays.copyOf(keys, itemCount * 2);
+			sortBuffer = new long[itemCount * 2];
+			items = Arrays.copyOf(items, itemCount * 8);
+		}
+		final int item = itemCount * 4;
+		items[item] = vertIdx;
+		items[item + 1] = vertexCount;
+		items[item + 2] = triIdx;
+		items[item + 3] = indexCount;
+		keys[itemCount] = (long)(layer - MIN_LAYER) << (CONTEXT_BITS + ORDER_BITS) | (long)contextId << ORDER_BITS | itemCount;
+		itemCount++;
+		vertIdx += vertexCount * vertexSize;
+		triIdx += indexCount;
+	}
+
+	private int findContext (RenderContextAccumulator renderContext) {
+		if (lastContextId >= 0 && contexts.get(lastContextId).hasEquivalentPendingState(renderContext)) return lastContextId;
+		for (int i = 0; i < contextCount; i++) {
+			if (contexts.get(i).hasEquivalentPendingState(renderContext)) return lastContextId = i;
+		}
+		if (contextCount == contexts.size) contexts.add(new RenderContextAccumulator());
+		contexts.get(contextCount).set(renderContext);
+		return lastContextId = contextCount++;
+	}
+
+	private int getRemainingVertices () {
+		// Triangle indices are relative to each item, so a single item cannot exceed the range of a short.
+		return Math.min((vertices.length - vertIdx) / vertexSize, 65535);
+	}
+
+	private void ensureCapacity (int vertexCount, int indexCount) {
+		int verticesLength = vertices.length, trianglesLength = triangles.length;
+		while (verticesLength - vertIdx < vertexCount * vertexSize)
+			verticesLength *= 2;
+		while (trianglesLength - triIdx < indexCount)
+			trianglesLength = Math.max(trianglesLength * 2, 64);
+		if (verticesLength != vertices.length || trianglesLength != triangles.length) grow(verticesLength, trianglesLength);
+	}
+
+	private void grow (int minVerticesLength, int minTrianglesLength) {
+		if (vertices.length <= minVerticesLength) vertices = Arrays.copyOf(vertices, Math.max(minVerticesLength, vertices.length * 2));
+		if (storeTriangles && triangles.length <= minTrianglesLength)
+			triangles = Arrays.copyOf(triangles, Math.max(minTrianglesLength, triangles.length * 2));
+	}
+
+	/** @return Whether no more items can be added until the queue is drawn and cleared. Every render context is used by at least
+	 *         one item, so the context IDs cannot run out first. */
+	boolean isFull () {
+		return itemCount == MAX_ITEMS;
+	}
+
+	int getRemainingItems () {
+		return MAX_ITEMS - itemCount;
+	}
+
+	int size () {
+		return itemCount;
+	}
+
+	/** Sorts the keys with a stable least significant digit radix sort. The submission order in the low bits is already
+	 * ascending, so only the bytes of the layer and context ID are sorted, and bytes that are the same for every key are
+	 * skipped. A single layer with fewer than 256 render contexts takes one pass.
+	 * @return The sorted keys. The first {@link #size()} are valid. */
+	long[] sort () {
+		final int n = itemCount;
+		final int[] counts = digitCounts;
+		long[] keys = this.keys, buffer = sortBuffer;
+		for (int shift = ORDER_BITS; shift < 64; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++)
+				counts[(int)(keys[i] >>> shift) & 0xff]++;
+			if (counts[(int)(keys[0] >>> shift) & 0xff] == n) continue;
+			for (int d = 0, offset = 0; d < 256; d++) {
+				int count = counts[d];
+				counts[d] = offset;
+				offset += count;
+			}
+			for (int i = 0; i < n; i++) {
+				long key = keys[i];
+				buffer[counts[(int)(key >>> shift) & 0xff]++] = key;
+			}
+			long[] swap = keys;
+			keys = buffer;
+			buffer = swap;
+		}
+		this.keys = keys;
+		sortBuffer = buffer;
+		return keys;
+	}
+
+	static int getItem (long key) {
+		return (int)key & ORDER_MASK;
+	}
+
+	static int getContextId (long key) {
+		return (int)(key >>> ORDER_BITS) & CONTEXT_MASK;
+	}
+
+	RenderContextAccumulator getContext (int contextId) {
+		return contexts.get(contextId);
+	}
+
+	/** Removes all queued items and releases the textures referenced by their render contexts. */
+	void clear () {
+		for (int i = 0; i < contextCount; i++)
+			contexts.get(i).clearAllTextureUnits();
+		itemCount = contextCount = vertIdx = triIdx = 0;
+		lastContextId = -1;
+	}
+}
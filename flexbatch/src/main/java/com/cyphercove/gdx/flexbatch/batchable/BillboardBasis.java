@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+
+/** The orientation shared by {@link BillboardQuad3D BillboardQuad3Ds} that face the same camera. It is updated once per frame
+ * after the camera is updated, so each quad only has to expand its corners along the {@link #right} and {@link #up} axes instead
+ * of computing its own rotation.
+ * <p>
+ * The quads face opposite the camera's direction rather than toward the camera's position, so they are parallel to the view
+ * plane. This is indistinguishable for small quads, but differs from {@link Quad3D#billboard(Camera)} near the edges of a wide
+ * field of view.
+ * <p>
+ * The basis must not be changed while quads that use it are being drawn or recorded.
+ *
+ * @author cypherdare */
+public class BillboardBasis {
+
+	/** The normalized axes that the quads' local X, Y, and Z axes are aligned to. The normal points toward the camera. */
+	public final Vector3 right = new Vector3(Vector3.X), up = new Vector3(Vector3.Y), normal = new Vector3(Vector3.Z);
+	/** The rotation equivalent to the axes, for quads drawn by an InstancedFlexBatch. */
+	public final Quaternion rotation = new Quaternion();
+
+	/** Orients the quads to face the camera in every direction, with their top sides matching the camera's.
+	 * @return This object for chaining. */
+	public BillboardBasis set (Camera camera) {
+		final Vector3 direction = camera.direction, cameraUp = camera.up;
+		float nx = -direction.x, ny = -direction.y, nz = -direction.z;
+		float invLength = inverseLength(nx, ny, nz);
+		nx *= invLength;
+		ny *= invLength;
+		nz *= invLength;
+		// right = up x normal
+		float rx = cameraUp.y * nz - cameraUp.z * ny;
+		float ry = cameraUp.z * nx - cameraUp.x * nz;
+		float rz = cameraUp.x * ny - cameraUp.y * nx;
+		invLength = inverseLength(rx, ry, rz);
+		rx *= invLength;
+		ry *= invLength;
+		rz *= invLength;
+		// orthogonal up = normal x right
+		float ux = ny * rz - nz * ry;
+		float uy = nz * rx - nx * rz;
+		float uz = nx * ry - ny * rx;
+		return setAxes(rx, ry, rz, ux, uy, uz, nx, ny, nz);
+	}
+
+	/** Orients the quads to turn toward the camera only around an axis, such as for trees or grass. Their top sides point along
+	 * the axis.
+	 * @param axis The axis the quads turn around. It does not need to be normalized.
+	 * @return This object for chaining. */
+	public BillboardBasis set (Camera camera, Vector3 axis) {
+		final Vector3 direction = camera.direction;
+		float ux = axis.x, uy = axis.y, uz = axis.z;
+		float invLength = inverseLength(ux, uy, uz);
+		ux *= invLength;
+		uy *= invLength;
+		uz *= invLength;
+		// right = up x -direction
+		float rx = uz * direction.y - uy * direction.z;
+		float ry = ux * direction.z - uz * direction.x;
+		float rz = uy * direction.x - ux * direction.y;
+		if (rx * rx + ry * ry + rz * rz < 0.000001f) {
+			// Looking along the axis, so use the camera's right side.
+			final Vector3 cameraUp = camera.up;
+			rx = direction.y * cameraUp.z - direction.z * cameraUp.y;
+			ry = direction.z * cameraUp.x - direction.x * cameraUp.z;
+			rz = direction.x * cameraUp.y - direction.y * cameraUp.x;
+		}
+		invLength = inverseLength(rx, ry, rz);
+		rx *= invLength;
+		ry *= invLength;
+		rz *= invLength;
+		// normal = right x up
+		float nx = ry * uz - rz * uy;
+		float ny = rz * ux - rx * uz;
+		float nz = rx * uy - ry * ux;
+		return setAxes(rx, ry, rz, ux, uy, uz, nx, ny, nz);
+	}
+
+	private BillboardBasis setAxes (float rx, float ry, float rz, float ux, float uy, float uz, float nx, float ny, float nz) {
+		right.set(rx, ry, rz);
+		up.set(ux, uy, uz);
+		normal.set(nx, ny, nz);
+		rotation.setFromAxes(rx, ux, nx, ry, uy, ny, rz, uz, nz);
+		return this;
+	}
+
+	/** @return The multiplier that normalizes the vector, or 1 if it has zero or unit length. */
+	private static float inverseLength (float x, float y, float z) {
+		float length2 = x * x + y * y + z * z;
+		if (length2 == 0f || length2 == 1f) return 1f;
+		return 1f / (float)Math.sqrt(length2);
+	}
+}
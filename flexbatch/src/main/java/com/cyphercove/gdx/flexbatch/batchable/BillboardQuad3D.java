@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+
+/** A {@link Quad3D} that faces the camera using a {@link BillboardBasis} shared with other quads, which is updated once per
+ * frame. Its corners are expanded along the axes of the basis, so no rotation is computed per quad. This is much cheaper than
+ * calling {@link #billboard(com.badlogic.gdx.graphics.Camera) billboard()} on every quad, such as for particles.
+ * <p>
+ * While the basis is null, the quad is oriented by its {@link #rotation} like any Quad3D. The basis is cleared by
+ * {@link #refresh()}, so it must be set again on quads obtained from {@link com.cyphercove.gdx.flexbatch.FlexBatch#draw()}.
+ * 
+ * @author cypherdare */
+public class BillboardQuad3D extends Quad3D {
+
+	public BillboardBasis basis;
+
+	/** A BillboardQuad3D that starts opaque. */
+	public BillboardQuad3D () {
+	}
+
+	/** A BillboardQuad3D that starts with blending enabled, with the specified blend factors. */
+	public BillboardQuad3D (int srcBlendFactor, int dstBlendFactor) {
+		super(srcBlendFactor, dstBlendFactor);
+	}
+
+	/** A BillboardQuad3D that starts with blending enabled, and a common set of blend factors. */
+	public BillboardQuad3D (Blending blending) {
+		super(blending);
+	}
+
+	public void refresh () {
+		super.refresh();
+		basis = null;
+	}
+
+	/** Sets the shared basis that orients the quad, or null to use its rotation.
+	 * @return This object for chaining. */
+	public BillboardQuad3D basis (BillboardBasis basis) {
+		this.basis = basis;
+		return this;
+	}
+
+	protected void applyPositions (float[] vertices, int vertexStartingIndex, int vertexSize) {
+		final BillboardBasis basis = this.basis;
+		if (basis == null) {
+			super.applyPositions(vertices, vertexStartingIndex, vertexSize);
+			return;
+		}
+		final Vector3 right = basis.right, up = basis.up;
+		applyCorners(vertices, vertexStartingIndex, vertexSize, right.x, right.y, right.z, up.x, up.y, up.z);
+	}
+
+	public void applyInstance (float[] instances, int startingIndex, AttributeOffsets offsets) {
+		super.applyInstance(instances, startingIndex, offsets);
+		if (basis == null) return;
+		final Quaternion rotation = basis.rotation;
+		int i = startingIndex + offsets.generic1;
+		instances[i] = rotation.x;
+		instances[i + 1] = rotation.y;
+		instances[i + 2] = rotation.z;
+		instances[i + 3] = rotation.w;
+	}
+
+	// Usually, chain methods must be overridden to allow return of subclass type. BillboardQuad3D's own setter is meant to be
+	// called first, so it is acceptable for the inherited ones to return Quad3Ds.
+
+}
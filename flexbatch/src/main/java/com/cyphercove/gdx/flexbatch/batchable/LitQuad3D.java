@@ -17,17 +17,16 @@ package com.cyphercove.gdx.flexbatch.batchable;
 
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
-import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.utils.Array;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
 
 /** A {@link Quad3D} with support for lighting through the use of normal, tangent, and binormal vertex attributes.
  * 
  * @author cypherdare */
 public class LitQuad3D extends Quad3D {
 
-	private static final Vector3 TMP1 = new Vector3();
-
 	/** A LitQuad3D that starts opaque. */
 	public LitQuad3D () {
 	}
@@ -44,70 +43,84 @@ public class LitQuad3D extends Quad3D {
 
 	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
 		super.addVertexAttributes(attributes);
-		attributes.add(new VertexAttribute(Usage.Normal, 3, "a_normal"));
-		attributes.add(new VertexAttribute(Usage.Tangent, 3, "a_tangent"));
-		attributes.add(new VertexAttribute(Usage.BiNormal, 3, "a_binormal"));
+		if (isVertexDataCompact()) {
+			attributes.add(BatchablePreparation.newPackedDirectionAttribute(Usage.Normal, "a_normal"));
+			attributes.add(BatchablePreparation.newPackedDirectionAttribute(Usage.Tangent, "a_tangent"));
+			attributes.add(BatchablePreparation.newPackedDirectionAttribute(Usage.BiNormal, "a_binormal"));
+		} else {
+			attributes.add(new VertexAttribute(Usage.Normal, 3, "a_normal"));
+			attributes.add(new VertexAttribute(Usage.Tangent, 3, "a_tangent"));
+			attributes.add(new VertexAttribute(Usage.BiNormal, 3, "a_binormal"));
+		}
 	}
 
 	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
 		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
 
-		TMP1.set(0, 0, 1);
-		rotation.transform(TMP1);
+		// The rotated Z, X, and Y axes, computed without temporary objects so LitQuad3Ds can be applied from multiple threads.
+		final Quaternion rotation = this.rotation;
+		final float qx = rotation.x, qy = rotation.y, qz = rotation.z, qw = rotation.w;
+		final float scalar = qw * qw - qx * qx - qy * qy - qz * qz;
+
+		float axisX = 2 * (qx * qz + qw * qy);
+		float axisY = 2 * (qy * qz - qw * qx);
+		float axisZ = scalar + 2 * qz * qz;
 		int ni = vertexStartingIndex + offsets.normal;
-		vertices[ni] = TMP1.x;
-		vertices[ni + 1] = TMP1.y;
-		vertices[ni + 2] = TMP1.z;
+		vertices[ni] = axisX;
+		vertices[ni + 1] = axisY;
+		vertices[ni + 2] = axisZ;
 		ni += vertexSize;
-		vertices[ni] = TMP1.x;
-		vertices[ni + 1] = TMP1.y;
-		vertices[ni + 2] = TMP1.z;
+		vertices[ni] = axisX;
+		vertices[ni + 1] = axisY;
+		vertices[ni + 2] = axisZ;
 		ni += vertexSize;
-		vertices[ni] = TMP1.x;
-		vertices[ni + 1] = TMP1.y;
-		vertices[ni + 2] = TMP1.z;
+		vertices[ni] = axisX;
+		vertices[ni + 1] = axisY;
+		vertices[ni + 2] = axisZ;
 		ni += vertexSize;
-		vertices[ni] = TMP1.x;
-		vertices[ni + 1] = TMP1.y;
-		vertices[ni + 2] = TMP1.z;
+		vertices[ni] = axisX;
+		vertices[ni + 1] = axisY;
+		vertices[ni + 2] = axisZ;
 
-		TMP1.set(1, 0, 0);
-		rotation.transform(TMP1);
+		axisX = scalar + 2 * qx * qx;
+		axisY = 2 * (qx * qy + qw * qz);
+		axisZ = 2 * (qx * qz - qw * qy);
 		int ti = vertexStartingIndex + offsets.tangent;
-		vertices[ti] = TMP1.x;
-		vertices[ti + 1] = TMP1.y;
-		vertices[ti + 2] = TMP1.z;
+		vertices[ti] = axisX;
+		vertices[ti + 1] = axisY;
+		vertices[ti + 2] = axisZ;
 		ti += vertexSize;
-		vertices[ti] = TMP1.x;
-		vertices[ti + 1] = TMP1.y;
-		vertices[ti + 2] = TMP1.z;
+		vertices[ti] = axisX;
+		vertices[ti + 1] = axisY;
+		vertices[ti + 2] = axisZ;
 		ti += vertexSize;
-		vertices[ti] = TMP1.x;
-		vertices[ti + 1] = TMP1.y;
-		vertices[ti + 2] = TMP1.z;
+		vertices[ti] = axisX;
+		vertices[ti + 1] = axisY;
+		vertices[ti + 2] = axisZ;
 		ti += vertexSize;
-		vertices[ti] = TMP1.x;
-		vertices[ti + 1] = TMP1.y;
-		vertices[ti + 2] = TMP1.z;
+		vertices[ti] = axisX;
+		vertices[ti + 1] = axisY;
+		vertices[ti + 2] = axisZ;
 
-		TMP1.set(0, 1, 0);
-		rotation.transform(TMP1);
+		axisX = 2 * (qx * qy - qw * qz);
+		axisY = scalar + 2 * qy * qy;
+		axisZ = 2 * (qy * qz + qw * qx);
 		int bni = vertexStartingIndex + offsets.biNormal;
-		vertices[bni] = TMP1.x;
-		vertices[bni + 1] = TMP1.y;
-		vertices[bni + 2] = TMP1.z;
+		vertices[bni] = axisX;
+		vertices[bni + 1] = axisY;
+		vertices[bni + 2] = axisZ;
 		bni += vertexSize;
-		vertices[bni] = TMP1.x;
-		vertices[bni + 1] = TMP1.y;
-		vertices[bni + 2] = TMP1.z;
+		vertices[bni] = axisX;
+		vertices[bni + 1] = axisY;
+		vertices[bni + 2] = axisZ;
 		bni += vertexSize;
-		vertices[bni] = TMP1.x;
-		vertices[bni + 1] = TMP1.y;
-		vertices[bni + 2] = TMP1.z;
+		vertices[bni] = axisX;
+		vertices[bni + 1] = axisY;
+		vertices[bni + 2] = axisZ;
 		bni += vertexSize;
-		vertices[bni] = TMP1.x;
-		vertices[bni + 1] = TMP1.y;
-		vertices[bni + 2] = TMP1.z;
+		vertices[bni] = axisX;
+		vertices[bni + 1] = axisY;
+		vertices[bni + 2] = axisZ;
 
 		return 4;
 	}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.NumberUtils;
+import com.cyphercove.gdx.flexbatch.Batchable;
+import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.Region2D;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** A {@link com.cyphercove.gdx.flexbatch.Batchable Batchable} that draws a whole nine-patch, such as a scalable UI panel, as a
+ * grid of 16 vertices and 18 triangles. It is analogous to LibGDX's NinePatch, which draws nine separate quads with 36 vertices.
+ * The corners keep their size while the edges and center stretch to fill the width and height. If the width or height is
+ * smaller than the borders, the borders are shrunk proportionally to fit.
+ * <p>
+ * The default origin of a NinePatch2D is its bottom left corner. Its origin is used for positioning, and as the center of
+ * rotation and scaling.
+ * <p>
+ * It has the same vertex attributes as {@link Quad2D}, so it uses the same shaders, and a FlexBatch instantiated for a type that
+ * is not a FixedSizeBatchable, such as {@link Poly2D}, can draw NinePatch2Ds and Quad2Ds together. A FlexBatch instantiated for
+ * NinePatch2D can only draw NinePatch2Ds.
+ * 
+ * @author cypherdare */
+public class NinePatch2D extends FixedSizeBatchable {
+	protected GLTexture texture;
+	protected final Region2D region = new Region2D();
+	/** The texture coordinates of the inner edges of the borders. */
+	protected float innerU, innerU2, innerV, innerV2;
+	public float x, y, color = WHITE, originX, originY, scaleX = 1, scaleY = 1, rotation;
+	/** The size of the whole nine-patch in world units. */
+	public float width, height;
+	/** The size of the borders in world units. They are set to the split sizes in texels by
+	 * {@link #ninePatch(TextureRegion, int, int, int, int)}, and can be changed afterwards to scale the borders. */
+	public float leftWidth, rightWidth, topHeight, bottomHeight;
+
+	/** Scratch space for the grid, so applying does not allocate. */
+	private final float[] gridX = new float[4], gridY = new float[4], gridU = new float[4], gridV = new float[4];
+
+	private static final float WHITE = Color.WHITE.toFloatBits();
+
+	protected final int getTrianglesPerBatchable () {
+		return 18;
+	}
+
+	protected final int getVerticesPerBatchable () {
+		return 16;
+	}
+
+	/** The vertices are in rows of four from bottom to top, ordered left to right, and each of the nine patches is two triangles
+	 * in the same order as a {@link Quad}. */
+	protected final void populateTriangleIndices (short[] triangles) {
+		for (int i = 0, firstVertex = 0; i + 53 < triangles.length; firstVertex += 16) {
+			for (int row = 0; row < 3; row++) {
+				for (int column = 0; column < 3; column++) {
+					short bottomLeft = (short)(firstVertex + row * 4 + column);
+					short topLeft = (short)(bottomLeft + 4);
+					triangles[i++] = bottomLeft;
+					triangles[i++] = (short)(topLeft + 1);
+					triangles[i++] = topLeft;
+					triangles[i++] = bottomLeft;
+					triangles[i++] = (short)(bottomLeft + 1);
+					triangles[i++] = (short)(topLeft + 1);
+				}
+			}
+		}
+	}
+
+	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		BatchablePreparation.addBaseAttributes(attributes, getNumberOfTextures(), false, false, isVertexDataCompact());
+	}
+
+	protected final int getNumberOfTextures () {
+		return 1;
+	}
+
+	/** Determines whether the vertex data uses the compact layout of
+	 * {@link BatchablePreparation#addBaseAttributes(Array, int, boolean, boolean, boolean)}. The default is false. Must return
+	 * the same constant value for every instance of the class.
+	 * <p>
+	 * Overriding this method will produce a subclass that is incompatible with a FlexBatch that was instantiated for the
+	 * superclass type. */
+	protected boolean isVertexDataCompact () {
+		return false;
+	}
+
+	protected void prepareSharedContext (RenderContextAccumulator renderContext) {
+		super.prepareSharedContext(renderContext);
+		renderContext.setDepthMasking(false);
+	}
+
+	protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingIndices) {
+		return renderContext.setTextureUnit(texture, 0) || remainingVertices < 16 || remainingIndices < 54;
+	}
+
+	protected boolean hasEquivalentContext (Batchable previous) {
+		return previous.getClass() == getClass() && ((NinePatch2D)previous).texture == texture;
+	}
+
+	public void refresh () { // Does not reset the texture and splits, in the interest of speed.
+		x = y = originX = originY = rotation = 0;
+		scaleX = scaleY = 1;
+		color = WHITE;
+	}
+
+	/** Resets the state of the object and drops the Texture reference to prepare it for returning to a
+	 * {@link com.badlogic.gdx.utils.Pool Pool}. */
+	public void reset () {
+		refresh();
+		texture = null;
+	}
+
+	/** Sets the texture region and the splits that divide it into nine patches, in the same way as LibGDX's NinePatch. The
+	 * border sizes are set to match the splits, and the width and height are set to the size of the region.
+	 * @param left The width of the left column in texels.
+	 * @param right The width of the right column in texels.
+	 * @param top The height of the top row in texels.
+	 * @param bottom The height of the bottom row in texels.
+	 * @return This object for chaining. */
+	public NinePatch2D ninePatch (TextureRegion region, int left, int right, int top, int bottom) {
+		int regionWidth = region.getRegionWidth(), regionHeight = region.getRegionHeight();
+		if (left + right > regionWidth || top + bottom > regionHeight)
+			throw new IllegalArgumentException("The splits must not be larger than the region.");
+		texture = region.getTexture();
+		Region2D uv = this.region;
+		uv.set(region);
+		// Interpolate across the region so flipped regions are handled.
+		innerU = uv.u + (uv.u2 - uv.u) * left / regionWidth;
+		innerU2 = uv.u2 - (uv.u2 - uv.u) * right / regionWidth;
+		innerV = uv.v + (uv.v2 - uv.v) * top / regionHeight;
+		innerV2 = uv.v2 - (uv.v2 - uv.v) * bottom / regionHeight;
+		leftWidth = left;
+		rightWidth = right;
+		topHeight = top;
+		bottomHeight = bottom;
+		width = regionWidth;
+		height = regionHeight;
+		return this;
+	}
+
+	/** Sets the size of the borders in world units.
+	 * @return This object for chaining. */
+	public NinePatch2D borders (float leftWidth, float rightWidth, float topHeight, float bottomHeight) {
+		this.leftWidth = leftWidth;
+		this.rightWidth = rightWidth;
+		this.topHeight = topHeight;
+		this.bottomHeight = bottomHeight;
+		return this;
+	}
+
+	/** Sets the position of the bottom left of the nine-patch in world space.
+	 * @return This object for chaining. */
+	public NinePatch2D position (float x, float y) {
+		this.x = x;
+		this.y = y;
+		return this;
+	}
+
+	/** Sets the position of the bottom left of the nine-patch in world space.
+	 * @return This object for chaining. */
+	public NinePatch2D position (Vector2 position) {
+		x = position.x;
+		y = position.y;
+		return this;
+	}
+
+	/** Sets the size of the whole nine-patch in world units.
+	 * @return This object for chaining. */
+	public NinePatch2D size (float width, float height) {
+		this.width = width;
+		this.height = height;
+		return this;
+	}
+
+	/** Sets the center point for rotation and scale, relative to the bottom left corner.
+	 * @return This object for chaining. */
+	public NinePatch2D origin (float originX, float originY) {
+		this.originX = originX;
+		this.originY = originY;
+		return this;
+	}
+
+	public NinePatch2D scale (float scaleX, float scaleY) {
+		this.scaleX = scaleX;
+		this.scaleY = scaleY;
+		return this;
+	}
+
+	public NinePatch2D rotation (float rotation) {
+		this.rotation = rotation;
+		return this;
+	}
+
+	public NinePatch2D color (Color color) {
+		this.color = color.toFloatBits();
+		return this;
+	}
+
+	public NinePatch2D color (float r, float g, float b, float a) {
+		int intBits = (int)(255 * a) << 24 | (int)(255 * b) << 16 | (int)(255 * g) << 8 | (int)(255 * r);
+		color = NumberUtils.intToFloatColor(intBits);
+		return this;
+	}
+
+	public NinePatch2D color (float floatBits) {
+		color = floatBits;
+		return this;
+	}
+
+	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		float left = leftWidth, right = rightWidth, bottom = bottomHeight, top = topHeight;
+		final float width = this.width, height = this.height;
+		if (left + right > width) {
+			float shrink = width / (left + right);
+			left *= shrink;
+			right *= shrink;
+		}
+		if (bottom + top > height) {
+			float shrink = height / (bottom + top);
+			bottom *= shrink;
+			top *= shrink;
+		}
+
+		// grid lines relative to the origin
+		final float[] gridX = this.gridX, gridY = this.gridY;
+		gridX[0] = -originX * scaleX;
+		gridX[1] = (left - originX) * scaleX;
+		gridX[2] = (width - right - originX) * scaleX;
+		gridX[3] = (width - originX) * scaleX;
+		gridY[0] = -originY * scaleY;
+		gridY[1] = (bottom - originY) * scaleY;
+		gridY[2] = (height - top - originY) * scaleY;
+		gridY[3] = (height - originY) * scaleY;
+
+		final float[] gridU = this.gridU, gridV = this.gridV;
+		gridU[0] = region.u;
+		gridU[1] = innerU;
+		gridU[2] = innerU2;
+		gridU[3] = region.u2;
+		gridV[0] = region.v2;
+		gridV[1] = innerV2;
+		gridV[2] = innerV;
+		gridV[3] = region.v;
+
+		final float worldOriginX = x + originX, worldOriginY = y + originY;
+		final float color = this.color;
+		final int colorOffset = offsets.color0, textureCoordinateOffset = offsets.textureCoordinate0;
+		int i = vertexStartingIndex;
+		if (rotation != 0) {
+			final float cos = MathUtils.cosDeg(rotation);
+			final float sin = MathUtils.sinDeg(rotation);
+			for (int row = 0; row < 4; row++) {
+				final float gy = gridY[row], v = gridV[row];
+				for (int column = 0; column < 4; column++) {
+					final float gx = gridX[column];
+					vertices[i] = cos * gx - sin * gy + worldOriginX;
+					vertices[i + 1] = sin * gx + cos * gy + worldOriginY;
+					vertices[i + colorOffset] = color;
+					vertices[i + textureCoordinateOffset] = gridU[column];
+					vertices[i + textureCoordinateOffset + 1] = v;
+					i += vertexSize;
+				}
+			}
+		} else {
+			for (int row = 0; row < 4; row++) {
+				final float wy = gridY[row] + worldOriginY, v = gridV[row];
+				for (int column = 0; column < 4; column++) {
+					vertices[i] = gridX[column] + worldOriginX;
+					vertices[i + 1] = wy;
+					vertices[i + colorOffset] = color;
+					vertices[i + textureCoordinateOffset] = gridU[column];
+					vertices[i + textureCoordinateOffset + 1] = v;
+					i += vertexSize;
+				}
+			}
+		}
+
+		return 16;
+	}
+}
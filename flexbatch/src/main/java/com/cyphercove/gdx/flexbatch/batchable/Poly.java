@@ -24,6 +24,7 @@ import com.badlogic.gdx.utils.NumberUtils;
 import com.badlogic.gdx.utils.Pool;
 import com.badlogic.gdx.utils.Pool.Poolable;
 import com.cyphercove.gdx.flexbatch.Batchable;
+import com.cyphercove.gdx.flexbatch.IntIndexedBatchable;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
 import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
 import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
@@ -31,7 +32,7 @@ import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
 /** A Batchable supporting a single {@link PolygonRegion}, with color, position, scale, and an origin offset.
  * 
  * @author cypherdare */
-public abstract class Poly extends Batchable implements Poolable {
+public abstract class Poly extends Batchable implements IntIndexedBatchable, Poolable {
 	protected PolygonRegion region;
 	protected int numVertices, numIndices;
 	public float x, y, color = WHITE, originX, originY, scaleX = 1, scaleY = 1;
@@ -44,7 +45,8 @@ public abstract class Poly extends Batchable implements Poolable {
 	protected static final float WHITE = Color.WHITE.toFloatBits();
 
 	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
-		BatchablePreparation.addBaseAttributes(attributes, getNumberOfTextures(), isPosition3D(), isTextureCoordinate3D());
+		BatchablePreparation.addBaseAttributes(attributes, getNumberOfTextures(), isPosition3D(), isTextureCoordinate3D(),
+			isVertexDataCompact());
 	}
 
 	protected final int getNumberOfTextures () {
@@ -65,6 +67,17 @@ public abstract class Poly extends Batchable implements Poolable {
 	 * superclass type. */
 	protected abstract boolean isTextureCoordinate3D ();
 
+	/** Determines whether the vertex data uses the compact layout of
+	 * {@link BatchablePreparation#addBaseAttributes(Array, int, boolean, boolean, boolean)}, which halves the size of 2D
+	 * positions and texture coordinates at the cost of precision. The default is false. Must return the same constant value for
+	 * every instance of the class.
+	 * <p>
+	 * Overriding this method will produce a subclass that is incompatible with a FlexBatch that was instantiated for the
+	 * superclass type. */
+	protected boolean isVertexDataCompact () {
+		return false;
+	}
+
 	protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingIndices) {
 		boolean textureChanged = false;
 		if (region != null) textureChanged |= renderContext.setTextureUnit(region.getRegion().getTexture(), 0);
@@ -166,4 +179,12 @@ public abstract class Poly extends Batchable implements Poolable {
 		}
 		return numIndices;
 	}
+
+	public int apply (int[] triangles, int triangleStartingIndex, int firstVertex) {
+		short[] regionTriangles = region.getTriangles();
+		for (int i = 0; i < regionTriangles.length; i++) {
+			triangles[triangleStartingIndex++] = (regionTriangles[i] & 0xffff) + firstVertex;
+		}
+		return numIndices;
+	}
 }
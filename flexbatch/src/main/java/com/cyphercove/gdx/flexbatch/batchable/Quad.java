@@ -18,16 +18,21 @@ package com.cyphercove.gdx.flexbatch.batchable;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GLTexture;
 import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.NumberUtils;
 import com.badlogic.gdx.utils.Pool;
 import com.badlogic.gdx.utils.Pool.Poolable;
+import com.cyphercove.gdx.flexbatch.Batchable;
 import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.InstanceableBatchable;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
 import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
 import com.cyphercove.gdx.flexbatch.utils.Region2D;
 import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.TextureArrayBinner;
 
 /** A Batchable representing a rectangle and supporting zero or more Textures/TextureRegions, and supporting color, position,
  * scale, and an origin offset.
@@ -39,7 +44,7 @@ import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
  * A Quad has fixed size, so its indices do not need to be recalculated for every draw call.
  * 
  * @author cypherdare */
-public abstract class Quad extends FixedSizeBatchable implements Poolable {
+public abstract class Quad extends FixedSizeBatchable implements InstanceableBatchable, Poolable {
 	protected final GLTexture[] textures;
 	protected final Region2D[] regions;
 	private int regionIndex = -1;
@@ -65,6 +70,10 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		BatchablePreparation.populateQuadrangleIndices(triangles);
 	}
 
+	protected final void populateTriangleIndices (int[] triangles) {
+		BatchablePreparation.populateQuadrangleIndices(triangles);
+	}
+
 	protected final int getTrianglesPerBatchable () {
 		return 2;
 	}
@@ -73,8 +82,56 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		return 4;
 	}
 
+	/** The template is a unit square, with the corner index as a third component so the shader can rotate the texture
+	 * coordinates. */
+	public final void addTemplateAttributes (Array<VertexAttribute> attributes) {
+		attributes.add(new VertexAttribute(Usage.Generic, 3, BatchablePreparation.CORNER_ATTRIBUTE));
+	}
+
+	public final void populateTemplateVertices (float[] vertices, AttributeOffsets offsets, int vertexSize) {
+		int i = offsets.generic0;
+		vertices[i] = 0; // bottom left
+		vertices[i + 1] = 0;
+		vertices[i + 2] = 0;
+		i += vertexSize;
+		vertices[i] = 0; // top left
+		vertices[i + 1] = 1;
+		vertices[i + 2] = 1;
+		i += vertexSize;
+		vertices[i] = 1; // top right
+		vertices[i + 1] = 1;
+		vertices[i + 2] = 2;
+		i += vertexSize;
+		vertices[i] = 1; // bottom right
+		vertices[i + 1] = 0;
+		vertices[i + 2] = 3;
+	}
+
+	/** Adds the color and a region for each texture. Subclasses add their transform after these. TextureArray layers are not
+	 * included. */
+	public void addInstanceAttributes (Array<VertexAttribute> attributes) {
+		attributes.add(new VertexAttribute(Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE));
+		for (int i = 0; i < getNumberOfTextures(); i++)
+			attributes.add(new VertexAttribute(Usage.TextureCoordinates, 4, BatchablePreparation.REGION_ATTRIBUTE + i, i));
+	}
+
+	public void applyInstance (float[] instances, int startingIndex, AttributeOffsets offsets) {
+		applyDefaultSize();
+		instances[startingIndex + offsets.color0] = color;
+		int ri = startingIndex + offsets.textureCoordinate0;
+		for (int i = 0; i < regions.length; i++) {
+			Region2D region = regions[i];
+			instances[ri] = region.u;
+			instances[ri + 1] = region.v;
+			instances[ri + 2] = region.u2;
+			instances[ri + 3] = region.v2;
+			ri += 4;
+		}
+	}
+
 	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
-		BatchablePreparation.addBaseAttributes(attributes, getNumberOfTextures(), isPosition3D(), isTextureCoordinate3D());
+		BatchablePreparation.addBaseAttributes(attributes, getNumberOfTextures(), isPosition3D(), isTextureCoordinate3D(),
+			isVertexDataCompact());
 	}
 
 	protected int getNumberOfTextures () {
@@ -95,6 +152,17 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 	 * superclass type. */
 	protected abstract boolean isTextureCoordinate3D ();
 
+	/** Determines whether the vertex data uses the compact layout of
+	 * {@link BatchablePreparation#addBaseAttributes(Array, int, boolean, boolean, boolean)}, which halves the size of 2D
+	 * positions and texture coordinates at the cost of precision. The default is false. Must return the same constant value for
+	 * every instance of the class.
+	 * <p>
+	 * Overriding this method will produce a subclass that is incompatible with a FlexBatch that was instantiated for the
+	 * superclass type. */
+	protected boolean isVertexDataCompact () {
+		return false;
+	}
+
 	protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingIndices) {
 		boolean textureChanged = false;
 		for (int i = 0; i < textures.length; i++) {
@@ -104,6 +172,15 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		return textureChanged || remainingVertices < 4;
 	}
 
+	protected boolean hasEquivalentContext (Batchable previous) {
+		if (previous.getClass() != getClass()) return false;
+		GLTexture[] previousTextures = ((Quad)previous).textures;
+		for (int i = 0; i < textures.length; i++) {
+			if (previousTextures[i] != textures[i]) return false;
+		}
+		return true;
+	}
+
 	public void refresh () { // Does not reset textures, in the interest of speed. There is no need for the concept of default
 										// textures.
 		x = y = originX = originY = 0;
@@ -182,6 +259,32 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		return this;
 	}
 
+	/** Sets the TextureArray layer of the most recently applied texture. The layer is only used if
+	 * {@link #isTextureCoordinate3D()} is true. It is reset to 0 when a texture or texture region is set.
+	 * <p>
+	 * This method must not be called in a Batchable that supports zero textures.
+	 * @return This object for chaining. */
+	public Quad layer (int layer) {
+		regions[regionIndex].layer = layer;
+		return this;
+	}
+
+	/** Replaces each of this Quad's textures that the binner can hold with the binner's TextureArray, and sets the region's layer
+	 * to match. The UV regions are unchanged, since a binned Texture has the same size as the TextureArray. Textures that cannot
+	 * be binned are left in place, which is always the case when TextureArrays are not supported. Must be called after the
+	 * textures are set, and is only useful if {@link #isTextureCoordinate3D()} is true.
+	 * @return This object for chaining. */
+	public Quad binTextures (TextureArrayBinner binner) {
+		for (int i = 0; i < textures.length; i++) {
+			int layer = binner.bin(textures[i]);
+			if (layer >= 0) {
+				textures[i] = binner.getTextureArray();
+				regions[i].layer = layer;
+			}
+		}
+		return this;
+	}
+
 	/** Flips the UV region of the most recently applied texture. This must be called after a texture or region has been set with
 	 * {@link #texture(GLTexture)} or {@link #textureRegion(TextureRegion)}.
 	 * @return This object for chaining. */
@@ -246,12 +349,18 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		return this;
 	}
 
-	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+	/** Sets the width and height to the size of the first texture region if they have not been set since the last call to
+	 * {@link #refresh()}. */
+	protected final void applyDefaultSize () {
 		if (!sizeSet && regions.length > 0) {
 			Region2D region = regions[0];
 			width = (region.u2 - region.u) * textures[0].getWidth();
 			height = (region.v2 - region.v) * textures[0].getHeight();
 		}
+	}
+
+	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		applyDefaultSize();
 
 		float color = this.color;
 		int ci = vertexStartingIndex + offsets.color0;
@@ -365,7 +474,7 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		}
 
 		if (isTextureCoordinate3D()) {
-			int tci3 = ci + 3;
+			int tci3 = vertexStartingIndex + offsets.textureCoordinate0 + 2;
 			for (int i = 0; i < regions.length; i++) {
 				Region2D region = regions[i];
 				final float layer = (float)region.layer;
@@ -17,11 +17,16 @@ package com.cyphercove.gdx.flexbatch.batchable;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
 import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.TextureArrayBinner;
 
 /** A {@link Quad} {@link com.cyphercove.gdx.flexbatch.Batchable Batchable} that supports a single texture at a time, with
  * two-dimensional position and color. It is designed to be drawn in a 2D plane, and is commonly called a sprite.
@@ -160,6 +165,28 @@ public class Quad2D extends Quad {
 		return 4;
 	}
 
+	/** Adds two transform attributes: the world origin, rotation in radians, and texture coordinates rotation; and the scaled
+	 * size and scaled offset of the bottom left corner from the origin. */
+	public void addInstanceAttributes (Array<VertexAttribute> attributes) {
+		super.addInstanceAttributes(attributes);
+		attributes.add(new VertexAttribute(Usage.Generic, 4, BatchablePreparation.TRANSFORM_ATTRIBUTE + 0));
+		attributes.add(new VertexAttribute(Usage.Generic, 4, BatchablePreparation.TRANSFORM_ATTRIBUTE + 1));
+	}
+
+	public void applyInstance (float[] instances, int startingIndex, AttributeOffsets offsets) {
+		super.applyInstance(instances, startingIndex, offsets);
+		int i = startingIndex + offsets.generic0;
+		instances[i] = x + originX;
+		instances[i + 1] = y + originY;
+		instances[i + 2] = rotation * MathUtils.degRad;
+		instances[i + 3] = coordinatesRotation % 4;
+		i = startingIndex + offsets.generic1;
+		instances[i] = width * scaleX;
+		instances[i + 1] = height * scaleY;
+		instances[i + 2] = -originX * scaleX;
+		instances[i + 3] = -originY * scaleY;
+	}
+
 	// Chain methods must be overridden to allow return of subclass type.
 
 	public Quad2D texture (Texture texture) {
@@ -187,6 +214,16 @@ public class Quad2D extends Quad {
 		return this;
 	}
 
+	public Quad2D layer (int layer) {
+		super.layer(layer);
+		return this;
+	}
+
+	public Quad2D binTextures (TextureArrayBinner binner) {
+		super.binTextures(binner);
+		return this;
+	}
+
 	public Quad2D size (float width, float height) {
 		super.size(width, height);
 		return this;
@@ -19,12 +19,20 @@ import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
 import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
 import com.cyphercove.gdx.flexbatch.utils.SortableBatchable;
+import com.cyphercove.gdx.flexbatch.utils.TextureArrayBinner;
 
 /** A {@link Quad} {@link com.cyphercove.gdx.flexbatch.Batchable Batchable} that supports a single texture at a time, with
  * two-dimensional position and color. It is designed to be drawn in 3D space, and is commonly called a decal.
@@ -46,11 +54,6 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	public int srcBlendFactor = GL20.GL_SRC_ALPHA;
 	public int dstBlendFactor = GL20.GL_ONE_MINUS_SRC_ALPHA;
 
-	private static final Quaternion TMPQ = new Quaternion();
-	private static final Vector3 TMP1 = new Vector3();
-	private static final Vector3 TMP2 = new Vector3();
-	private static final Vector3 TMP3 = new Vector3();
-
 	/** Commonly used blend function factor pairs, for convenience. */
 	public enum Blending {
 		/** GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA */
@@ -120,6 +123,13 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		return needsFlush;
 	}
 
+	protected boolean hasEquivalentContext (Batchable previous) {
+		if (!super.hasEquivalentContext(previous)) return false;
+		Quad3D other = (Quad3D)previous;
+		if (opaque != other.opaque) return false;
+		return opaque || (srcBlendFactor == other.srcBlendFactor && dstBlendFactor == other.dstBlendFactor);
+	}
+
 	public boolean hasEquivalentTextures (Quad3D other) {
 		for (int i = 0; i < textures.length; i++) {
 			if (other.textures[i] != textures[i]) return false;
@@ -127,6 +137,33 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		return true;
 	}
 
+	/** Tests a bounding sphere around the origin that contains the quad in any rotation. */
+	public boolean isInFrustum (Frustum frustum) {
+		return frustum.sphereInFrustum(x, y, z, getBoundingRadius());
+	}
+
+	/** Sets the center to the origin. The sphere contains the quad in any rotation. */
+	public float getBoundingSphere (Vector3 center) {
+		center.set(x, y, z);
+		return getBoundingRadius();
+	}
+
+	private float getBoundingRadius () {
+		applyDefaultSize();
+		float halfWidth = width / 2f, halfHeight = height / 2f;
+		float horizontal = Math.max(Math.abs((-halfWidth - originX) * scaleX), Math.abs((halfWidth - originX) * scaleX));
+		float vertical = Math.max(Math.abs((-halfHeight - originY) * scaleY), Math.abs((halfHeight - originY) * scaleY));
+		return (float)Math.sqrt(horizontal * horizontal + vertical * vertical);
+	}
+
+	/** Textures are compared by identity, so this combines their identity hash codes. */
+	public int getTexturesHashCode () {
+		int hash = 1;
+		for (int i = 0; i < textures.length; i++)
+			hash = 31 * hash + System.identityHashCode(textures[i]);
+		return hash;
+	}
+
 	public void refresh () {
 		super.refresh();
 		z = 0;
@@ -246,35 +283,57 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	/** Sets the rotation based on a direction vector and up vector. The input vectors <b>do not</b> need to be normalized.
 	 * @return This object for chaining. */
 	public Quad3D rotation (float directionX, float directionY, float directionZ, float upX, float upY, float upZ) {
-		TMP2.set(directionX, directionY, directionZ).nor();
-		TMP1.set(upX, upY, upZ).nor().crs(TMP2).nor();
-		TMP2.crs(TMP1).nor();
-		rotation.setFromAxes(TMP1.x, TMP2.x, directionX, TMP1.y, TMP2.y, directionY, TMP1.z, TMP2.z, directionZ);
-		return this;
+		float invLength = inverseLength(directionX, directionY, directionZ);
+		return rotationFromAxes(directionX * invLength, directionY * invLength, directionZ * invLength, upX, upY, upZ);
 	}
 
 	/** Sets the rotation based on a direction vector and up vector. The input vectors <b>must be</b> normalized.
 	 * @return This object for chaining. */
 	public Quad3D rotation (Vector3 direction, Vector3 up) {
-		TMP1.set(up).crs(direction).nor();
-		TMP2.set(direction).crs(TMP1).nor();
-		rotation.setFromAxes(TMP1.x, TMP2.x, direction.x, TMP1.y, TMP2.y, direction.y, TMP1.z, TMP2.z, direction.z);
-		return this;
+		return rotationFromAxes(direction.x, direction.y, direction.z, up.x, up.y, up.z);
 	}
 
 	/** Sets the rotation to look at the give position, relative to the current position.
 	 * @param up The direction the top of the quad should be pointing.
 	 * @return This object for chaining. */
 	public Quad3D lookAt (Vector3 position, Vector3 up) {
-		TMP3.set(position).sub(x, y, z).nor();
-		TMP1.set(up).crs(TMP3).nor();
-		TMP2.set(TMP3).crs(TMP1).nor();
-		rotation.setFromAxes(TMP1.x, TMP2.x, TMP3.x, TMP1.y, TMP2.y, TMP3.y, TMP1.z, TMP2.z, TMP3.z);
+		float dx = position.x - x, dy = position.y - y, dz = position.z - z;
+		float invLength = inverseLength(dx, dy, dz);
+		return rotationFromAxes(dx * invLength, dy * invLength, dz * invLength, up.x, up.y, up.z);
+	}
+
+	/** Sets the rotation from a normalized direction and an up vector, which is made orthogonal to the direction. Local variables
+	 * are used instead of shared temporary vectors so rotations can be set from multiple threads. */
+	private Quad3D rotationFromAxes (float dx, float dy, float dz, float upX, float upY, float upZ) {
+		// right = up x direction
+		float rx = upY * dz - upZ * dy;
+		float ry = upZ * dx - upX * dz;
+		float rz = upX * dy - upY * dx;
+		float invLength = inverseLength(rx, ry, rz);
+		rx *= invLength;
+		ry *= invLength;
+		rz *= invLength;
+		// orthogonal up = direction x right
+		float ux = dy * rz - dz * ry;
+		float uy = dz * rx - dx * rz;
+		float uz = dx * ry - dy * rx;
+		invLength = inverseLength(ux, uy, uz);
+		ux *= invLength;
+		uy *= invLength;
+		uz *= invLength;
+		rotation.setFromAxes(rx, ux, dx, ry, uy, dy, rz, uz, dz);
 		return this;
 	}
 
+	/** @return The multiplier that normalizes the vector, or 1 if it has zero or unit length. */
+	private static float inverseLength (float x, float y, float z) {
+		float length2 = x * x + y * y + z * z;
+		if (length2 == 0f || length2 == 1f) return 1f;
+		return 1f / (float)Math.sqrt(length2);
+	}
+
 	/** Sets the rotation to look at the camera, relative to the current position. The quad's top side will be oriented to match
-	 * the camera's.
+	 * the camera's. For many quads facing the same camera, {@link BillboardQuad3D} avoids computing a rotation for each one.
 	 * @return This object for chaining. */
 	public Quad3D billboard (Camera camera) {
 		return lookAt(camera.position, camera.up);
@@ -297,65 +356,113 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	/** Rotates from the current orientation by a specific angle about the X axis.
 	 * @return This object for chaining. */
 	public Quad3D rotateX (float angle) {
-		rotation.mul(TMPQ.setFromAxis(1, 0, 0, angle));
+		float halfAngle = angle * MathUtils.degreesToRadians * 0.5f;
+		rotation.mul((float)Math.sin(halfAngle), 0, 0, (float)Math.cos(halfAngle));
 		return this;
 	}
 
 	/** Rotates from the current orientation by a specific angle about the Y axis.
 	 * @return This object for chaining. */
 	public Quad3D rotateY (float angle) {
-		rotation.mul(TMPQ.setFromAxis(0, 1, 0, angle));
+		float halfAngle = angle * MathUtils.degreesToRadians * 0.5f;
+		rotation.mul(0, (float)Math.sin(halfAngle), 0, (float)Math.cos(halfAngle));
 		return this;
 	}
 
 	/** Rotates from the current orientation by a specific angle about the Z axis.
 	 * @return This object for chaining. */
 	public Quad3D rotateZ (float angle) {
-		rotation.mul(TMPQ.setFromAxis(0, 0, 1, angle));
+		float halfAngle = angle * MathUtils.degreesToRadians * 0.5f;
+		rotation.mul(0, 0, (float)Math.sin(halfAngle), (float)Math.cos(halfAngle));
 		return this;
 	}
 
 	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
 		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
-		float left = -width / 2f;
-		float right = left + width;
-		float bottom = -height / 2f;
-		float top = bottom + height;
+		applyPositions(vertices, vertexStartingIndex, vertexSize);
+		return 4;
+	}
+
+	/** Writes the positions of the four corners, oriented by the {@link #rotation}. May be overridden to orient the quad another
+	 * way, using {@link #applyCorners(float[], int, int, float, float, float, float, float, float)}. */
+	protected void applyPositions (float[] vertices, int vertexStartingIndex, int vertexSize) {
+		// The rotated local X and Y axes. This is the same transformation as Quaternion.transform(), but it doesn't use static
+		// temporary objects, so it is safe to apply Quad3Ds from multiple threads.
+		final Quaternion rotation = this.rotation;
+		final float qx = rotation.x, qy = rotation.y, qz = rotation.z, qw = rotation.w;
+		final float scalar = qw * qw - qx * qx - qy * qy - qz * qz;
+		final float rightX = scalar + 2 * qx * qx;
+		final float rightY = 2 * (qx * qy + qw * qz);
+		final float rightZ = 2 * (qx * qz - qw * qy);
+		final float upX = 2 * (qx * qy - qw * qz);
+		final float upY = scalar + 2 * qy * qy;
+		final float upZ = 2 * (qy * qz + qw * qx);
+		applyCorners(vertices, vertexStartingIndex, vertexSize, rightX, rightY, rightZ, upX, upY, upZ);
+	}
+
+	/** Writes the positions of the four corners, expanded from the position along the given axes by the size, origin and scale.
+	 * @param rightX The normalized local X axis of the quad in world space.
+	 * @param upX The normalized local Y axis of the quad in world space. */
+	protected final void applyCorners (float[] vertices, int vertexStartingIndex, int vertexSize, float rightX, float rightY,
+		float rightZ, float upX, float upY, float upZ) {
+		float left = (-width / 2f - originX) * scaleX;
+		float right = (width / 2f - originX) * scaleX;
+		float bottom = (-height / 2f - originY) * scaleY;
+		float top = (height / 2f - originY) * scaleY;
 
 		int i = vertexStartingIndex;
 
 		// bottom left
-		TMP1.set((left - originX) * scaleX, (bottom - originY) * scaleY, 0); // local vertex position
-		rotation.transform(TMP1); // local vertex position rotated
-		vertices[i] = TMP1.x + x; // world position
-		vertices[i + 1] = TMP1.y + y;
-		vertices[i + 2] = TMP1.z + z;
+		vertices[i] = rightX * left + upX * bottom + x;
+		vertices[i + 1] = rightY * left + upY * bottom + y;
+		vertices[i + 2] = rightZ * left + upZ * bottom + z;
 		i += vertexSize;
 
 		// top left
-		TMP1.set((left - originX) * scaleX, (top - originY) * scaleY, 0);
-		rotation.transform(TMP1);
-		vertices[i] = TMP1.x + x;
-		vertices[i + 1] = TMP1.y + y;
-		vertices[i + 2] = TMP1.z + z;
+		vertices[i] = rightX * left + upX * top + x;
+		vertices[i + 1] = rightY * left + upY * top + y;
+		vertices[i + 2] = rightZ * left + upZ * top + z;
 		i += vertexSize;
 
 		// top right
-		TMP1.set((right - originX) * scaleX, (top - originY) * scaleY, 0);
-		rotation.transform(TMP1);
-		vertices[i] = TMP1.x + x;
-		vertices[i + 1] = TMP1.y + y;
-		vertices[i + 2] = TMP1.z + z;
+		vertices[i] = rightX * right + upX * top + x;
+		vertices[i + 1] = rightY * right + upY * top + y;
+		vertices[i + 2] = rightZ * right + upZ * top + z;
 		i += vertexSize;
 
 		// bottom right
-		TMP1.set((right - originX) * scaleX, (bottom - originY) * scaleY, 0);
-		rotation.transform(TMP1);
-		vertices[i] = TMP1.x + x;
-		vertices[i + 1] = TMP1.y + y;
-		vertices[i + 2] = TMP1.z + z;
-
-		return 4;
+		vertices[i] = rightX * right + upX * bottom + x;
+		vertices[i + 1] = rightY * right + upY * bottom + y;
+		vertices[i + 2] = rightZ * right + upZ * bottom + z;
+	}
+
+	/** Adds three transform attributes: the position and texture coordinates rotation; the rotation quaternion; and the scaled
+	 * size and scaled offset of the bottom left corner from the origin. */
+	public void addInstanceAttributes (Array<VertexAttribute> attributes) {
+		super.addInstanceAttributes(attributes);
+		attributes.add(new VertexAttribute(Usage.Generic, 4, BatchablePreparation.TRANSFORM_ATTRIBUTE + 0));
+		attributes.add(new VertexAttribute(Usage.Generic, 4, BatchablePreparation.TRANSFORM_ATTRIBUTE + 1));
+		attributes.add(new VertexAttribute(Usage.Generic, 4, BatchablePreparation.TRANSFORM_ATTRIBUTE + 2));
+	}
+
+	public void applyInstance (float[] instances, int startingIndex, AttributeOffsets offsets) {
+		super.applyInstance(instances, startingIndex, offsets);
+		int i = startingIndex + offsets.generic0;
+		instances[i] = x;
+		instances[i + 1] = y;
+		instances[i + 2] = z;
+		instances[i + 3] = coordinatesRotation % 4;
+		final Quaternion rotation = this.rotation;
+		i = startingIndex + offsets.generic1;
+		instances[i] = rotation.x;
+		instances[i + 1] = rotation.y;
+		instances[i + 2] = rotation.z;
+		instances[i + 3] = rotation.w;
+		i = startingIndex + offsets.generic2;
+		instances[i] = width * scaleX;
+		instances[i + 1] = height * scaleY;
+		instances[i + 2] = (-width / 2f - originX) * scaleX;
+		instances[i + 3] = (-height / 2f - originY) * scaleY;
 	}
 
 	// Chain methods must be overridden to allow return of subclass type.
@@ -380,6 +487,16 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		return this;
 	}
 
+	public Quad3D layer (int layer) {
+		super.layer(layer);
+		return this;
+	}
+
+	public Quad3D binTextures (TextureArrayBinner binner) {
+		super.binTextures(binner);
+		return this;
+	}
+
 	public Quad3D size (float width, float height) {
 		super.size(width, height);
 		return this;
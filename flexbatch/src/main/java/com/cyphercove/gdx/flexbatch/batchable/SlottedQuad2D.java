@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** A {@link Quad2D} that can share a batch with quads that use different textures. Its texture is bound to one of several
+ * texture units (slots), and the slot is passed to the shader in the {@link BatchablePreparation#TEXTURE_SLOT_ATTRIBUTE}
+ * vertex attribute so the shader can pick the matching sampler. The FlexBatch flushes only when a texture is drawn while every
+ * slot already holds a different texture. Scenes that alternate between a few atlases can then be drawn in a single draw call.
+ * <p>
+ * A matching shader can be generated with {@link BatchablePreparation#generateTextureSlotVertexShader()} and
+ * {@link BatchablePreparation#generateTextureSlotFragmentShader(int)}, or obtained from
+ * {@link com.cyphercove.gdx.flexbatch.utils.GeneratedShaderCache GeneratedShaderCache} with the TEXTURE_SLOTS flag.
+ * <p>
+ * The number of slots can be changed by subclassing and overriding {@link #getNumberOfTextureUnits()}. A subclass with a
+ * different slot count needs a matching shader, but can be drawn by the same FlexBatch.
+ *
+ * @author cypherdare */
+public class SlottedQuad2D extends Quad2D {
+	private int slot;
+
+	protected final int getNumberOfTextures () {
+		return 1;
+	}
+
+	/** @return The number of texture slots, which is 8 by default. This is the minimum number of fragment shader texture units
+	 *         that OpenGL ES 2.0 guarantees. {@link BatchablePreparation#getMaxTextureSlots()} can be used to find the actual
+	 *         limit. Must return the same constant value for every instance of the class. */
+	protected int getNumberOfTextureUnits () {
+		return 8;
+	}
+
+	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		super.addVertexAttributes(attributes);
+		attributes.add(new VertexAttribute(Usage.Generic, 1, BatchablePreparation.TEXTURE_SLOT_ATTRIBUTE));
+	}
+
+	public void addInstanceAttributes (Array<VertexAttribute> attributes) {
+		super.addInstanceAttributes(attributes);
+		attributes.add(new VertexAttribute(Usage.Generic, 1, BatchablePreparation.TEXTURE_SLOT_ATTRIBUTE));
+	}
+
+	protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingIndices) {
+		final GLTexture texture = textures[0];
+		final int slotCount = getNumberOfTextureUnits();
+		int freeSlot = -1;
+		for (int i = 0; i < slotCount; i++) {
+			GLTexture slotTexture = renderContext.getTextureUnit(i);
+			if (slotTexture == texture) {
+				slot = i;
+				return remainingVertices < 4;
+			}
+			if (slotTexture == null && freeSlot < 0) freeSlot = i;
+		}
+
+		if (freeSlot >= 0) { // Queued quads do not use the free slot, so it can be filled without flushing.
+			renderContext.setTextureUnit(texture, freeSlot);
+			slot = freeSlot;
+			return remainingVertices < 4;
+		}
+
+		for (int i = 1; i < slotCount; i++)
+			renderContext.clearTextureUnit(i);
+		renderContext.setTextureUnit(texture, 0);
+		slot = 0;
+		return true;
+	}
+
+	/** In addition to comparing textures, this adopts the previous quad's slot if they are equivalent, because
+	 * {@link #prepareContext(RenderContextAccumulator, int, int)} is skipped for equivalent quads. */
+	protected boolean hasEquivalentContext (Batchable previous) {
+		if (!super.hasEquivalentContext(previous)) return false;
+		slot = ((SlottedQuad2D)previous).slot;
+		return true;
+	}
+
+	public void applyInstance (float[] instances, int startingIndex, AttributeOffsets offsets) {
+		super.applyInstance(instances, startingIndex, offsets);
+		instances[startingIndex + offsets.generic2] = slot;
+	}
+
+	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+
+		final float slot = this.slot;
+		int si = vertexStartingIndex + offsets.generic0;
+		vertices[si] = slot;
+		si += vertexSize;
+		vertices[si] = slot;
+		si += vertexSize;
+		vertices[si] = slot;
+		si += vertexSize;
+		vertices[si] = slot;
+
+		return 4;
+	}
+}
@@ -20,19 +20,29 @@ import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.utils.ObjectIntMap;
 
-/** Provides fast and convenient access to VertexAttribute offsets, in float-size units.
+/** Provides fast and convenient access to VertexAttribute offsets, in float-size units, or in bytes for vertex data with
+ * compact attributes that is written to a ByteBuffer (see {@link VertexPacker}).
  * 
  * @author cypherdare */
 public class AttributeOffsets {
 
 	public final VertexAttributes attributes;
+	/** Whether the offsets are in bytes rather than float-size units. */
+	public final boolean byteUnits;
 	private final ObjectIntMap<String> byAlias;
 	private final int[] byIndex;
 	public final int position, color0, color1, color2, color3, textureCoordinate0, textureCoordinate1, textureCoordinate2,
 		textureCoordinate3, generic0, generic1, generic2, generic3, normal, tangent, biNormal;
 
 	public AttributeOffsets (VertexAttributes attributes) {
+		this(attributes, false);
+	}
+
+	/** @param attributes The attributes to find the offsets of.
+	 * @param byteUnits Whether offsets should be in bytes rather than float-size units. */
+	public AttributeOffsets (VertexAttributes attributes, boolean byteUnits) {
 		this.attributes = attributes;
+		this.byteUnits = byteUnits;
 		byAlias = new ObjectIntMap<String>(attributes.size());
 		byIndex = new int[attributes.size()];
 		int cIdx = 0, tcIdx = 0, gIdx = 0;
@@ -40,7 +50,7 @@ public class AttributeOffsets {
 			textureCoordinate3 = 0, generic0 = 0, generic1 = 0, generic2 = 0, generic3 = 0;
 		for (int i = 0; i < byIndex.length; i++) {
 			VertexAttribute attribute = attributes.get(i);
-			int offset = attribute.offset / 4;
+			int offset = toUnits(attribute.offset);
 			byAlias.put(attribute.alias, offset);
 			byIndex[i] = offset;
 
@@ -97,7 +107,7 @@ public class AttributeOffsets {
 			}
 		}
 
-		position = attributes.getOffset(Usage.Position);
+		position = getOffset(Usage.Position);
 		this.color0 = color0;
 		this.color1 = color1;
 		this.color2 = color2;
@@ -110,26 +120,35 @@ public class AttributeOffsets {
 		this.generic1 = generic1;
 		this.generic2 = generic2;
 		this.generic3 = generic3;
-		normal = attributes.getOffset(Usage.Normal);
-		tangent = attributes.getOffset(Usage.Tangent);
-		biNormal = attributes.getOffset(Usage.BiNormal);
+		normal = getOffset(Usage.Normal);
+		tangent = getOffset(Usage.Tangent);
+		biNormal = getOffset(Usage.BiNormal);
+
+	}
+
+	private int toUnits (int byteOffset) {
+		return byteUnits ? byteOffset : byteOffset / 4;
+	}
 
+	private int getOffset (int usage) {
+		VertexAttribute attribute = attributes.findByUsage(usage);
+		return attribute == null ? 0 : toUnits(attribute.offset);
 	}
 
 	/** Refreshes the mapping of aliases to offsets. Call if any {@link VertexAttribute#alias alias} has been changed. */
 	public void udpate () {
 		byAlias.clear();
 		for (VertexAttribute attribute : attributes)
-			byAlias.put(attribute.alias, attribute.offset / 4);
+			byAlias.put(attribute.alias, toUnits(attribute.offset));
 	}
 
-	/** Get the VertexAttribute offset, in float-size units, looking it up by its {@link VertexAttribute#alias alias}.
+	/** Get the VertexAttribute offset, in float-size units or bytes, looking it up by its {@link VertexAttribute#alias alias}.
 	 * @return The offset, or -1 if the value is not found. */
 	public int get (String alias) {
 		return byAlias.get(alias, -1);
 	}
 
-	/** Get the VertexAttribute offset, in float-size units, looking it up by its index in the VertexAttributes.
+	/** Get the VertexAttribute offset, in float-size units or bytes, looking it up by its index in the VertexAttributes.
 	 * @return The offset.
 	 * @throws IndexOutOfBoundsException If the given attribute index does not exist in the VertexAttributes. */
 	public int get (int attributeIndex) {
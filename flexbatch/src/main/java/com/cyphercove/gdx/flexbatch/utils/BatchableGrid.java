@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+import com.cyphercove.gdx.flexbatch.Batchable;
+
+/** A retained set of 3D {@link Batchable Batchables}, such as foliage or decals, held in a uniform grid of cubic cells so the
+ * ones visible to a camera can be passed to a {@link BatchableSorter} without testing each of them. Batchables are inserted once
+ * and stay in the grid until removed. When a Batchable moves or changes size, {@link #move(Batchable)} updates its cell.
+ * <p>
+ * Within each cell, opaque Batchables are kept in buckets of equivalent textures, and blended Batchables in one bucket.
+ * {@link #addVisible(BatchableSorter, Frustum)} skips cells outside the frustum, passes the buckets of cells entirely inside it
+ * to the sorter whole, and tests the Batchables of cells on its edge individually. The sorter receives each bucket with
+ * {@link BatchableSorter#addSeries(Array, int, int)}, so it does not look up the texture group of every Batchable.
+ * <p>
+ * Each cell's bounds are expanded by the largest bounding sphere of the Batchables placed in it since it was created, so
+ * Batchables larger than a cell are not culled early. The cell size should be around the size of a typical Batchable or a few
+ * times larger. Cells are found by their coordinates, which wrap after about a million cells from the origin on each axis.
+ * <p>
+ * The opacity and textures of a Batchable must not change while it is in the grid.
+ *
+ * @author cypherdare */
+public class BatchableGrid<T extends Batchable & SortableBatchable<T>> {
+
+	private static final float HALF_CUBE_DIAGONAL = (float)Math.sqrt(3) / 2f;
+
+	public final float cellSize;
+	private final float inverseCellSize;
+	private final LongMap<Cell<T>> cellsByKey = new LongMap<Cell<T>>();
+	private final Array<Cell<T>> cells = new Array<Cell<T>>(false, 16);
+	private final ObjectMap<T, Entry<T>> entries = new ObjectMap<T, Entry<T>>();
+	private final Array<T> visibleTemp = new Array<T>();
+	private final Vector3 tmp = new Vector3();
+
+	private final Pool<Cell<T>> cellPool = new Pool<Cell<T>>() {
+		protected Cell<T> newObject () {
+			return new Cell<T>();
+		}
+	};
+	private final Pool<Bucket<T>> bucketPool = new Pool<Bucket<T>>() {
+		protected Bucket<T> newObject () {
+			return new Bucket<T>();
+		}
+	};
+	private final Pool<Entry<T>> entryPool = new Pool<Entry<T>>() {
+		protected Entry<T> newObject () {
+			return new Entry<T>();
+		}
+	};
+
+	/** @param cellSize The width of each cubic cell in world units. */
+	public BatchableGrid (float cellSize) {
+		if (cellSize <= 0) throw new IllegalArgumentException("cellSize must be positive.");
+		this.cellSize = cellSize;
+		inverseCellSize = 1f / cellSize;
+	}
+
+	/** Adds a Batchable to the grid, placing it by its {@link SortableBatchable#getBoundingSphere(Vector3) bounding sphere}.
+	 * @return Whether the Batchable was added, or false if it was already in the grid. */
+	public boolean insert (T batchable) {
+		if (entries.containsKey(batchable)) return false;
+		Entry<T> entry = entryPool.obtain();
+		place(batchable, entry, batchable.getBoundingSphere(tmp));
+		entries.put(batchable, entry);
+		return true;
+	}
+
+	/** Updates the cell of a Batchable in the grid after it has moved or changed size. Batchables that stay in the same cell are
+	 * updated in constant time.
+	 * @return Whether the Batchable was found in the grid. */
+	public boolean move (T batchable) {
+		Entry<T> entry = entries.get(batchable);
+		if (entry == null) return false;
+		float radius = batchable.getBoundingSphere(tmp);
+		Cell<T> cell = entry.bucket.cell;
+		if (cell.x == cellCoordinate(tmp.x) && cell.y == cellCoordinate(tmp.y) && cell.z == cellCoordinate(tmp.z)) {
+			cell.maxRadius = Math.max(cell.maxRadius, radius);
+		} else {
+			detach(batchable, entry);
+			place(batchable, entry, radius);
+		}
+		return true;
+	}
+
+	/** Removes a Batchable from the grid.
+	 * @return Whether the Batchable was found and removed. */
+	public boolean remove (T batchable) {
+		Entry<T> entry = entries.remove(batchable);
+		if (entry == null) return false;
+		detach(batchable, entry);
+		entryPool.free(entry);
+		return true;
+	}
+
+	/** @return Whether the Batchable is in the grid. */
+	public boolean contains (T batchable) {
+		return entries.containsKey(batchable);
+	}
+
+	/** @return The number of Batchables in the grid. */
+	public int size () {
+		return entries.size;
+	}
+
+	/** Removes all Batchables from the grid. */
+	public void clear () {
+		for (Cell<T> cell : cells) {
+			bucketPool.freeAll(cell.buckets);
+			cellPool.free(cell);
+		}
+		cells.clear();
+		cellsByKey.clear();
+		entryPool.freeAll(entries.values().toArray());
+		entries.clear();
+	}
+
+	/** Adds the Batchables that may be visible in the frustum to the sorter, grouped by their buckets. This does not depend on
+	 * whether the sorter does {@link BatchableSorter#setFrustumCulling(boolean) frustum culling}.
+	 * @param sorter The sorter to add the Batchables to.
+	 * @param frustum The frustum of the camera, which must be up to date. */
+	public void addVisible (BatchableSorter<T> sorter, Frustum frustum) {
+		final Plane[] planes = frustum.planes;
+		final float halfCellSize = cellSize / 2f, cellRadius = cellSize * HALF_CUBE_DIAGONAL;
+		final Array<T> visible = visibleTemp;
+		for (Cell<T> cell : cells) {
+			float x = cell.x * cellSize + halfCellSize, y = cell.y * cellSize + halfCellSize, z = cell.z * cellSize + halfCellSize;
+			float radius = cellRadius + cell.maxRadius;
+			boolean inside = true;
+			boolean outside = false;
+			for (int i = 0; i < planes.length; i++) {
+				Plane plane = planes[i];
+				float distance = plane.normal.x * x + plane.normal.y * y + plane.normal.z * z + plane.d;
+				if (distance < -radius) {
+					outside = true;
+					break;
+				}
+				if (distance < radius) inside = false;
+			}
+			if (outside) continue;
+			for (Bucket<T> bucket : cell.buckets) {
+				if (inside) {
+					sorter.addSeries(bucket.batchables, 0, bucket.batchables.size);
+				} else {
+					for (T batchable : bucket.batchables)
+						if (batchable.isInFrustum(frustum)) visible.add(batchable);
+					sorter.addSeries(visible, 0, visible.size);
+					visible.clear();
+				}
+			}
+		}
+	}
+
+	private int cellCoordinate (float position) {
+		return (int)Math.floor(position * inverseCellSize);
+	}
+
+	/** Places the Batchable in the cell containing {@link #tmp}. */
+	private void place (T batchable, Entry<T> entry, float radius) {
+		int x = cellCoordinate(tmp.x), y = cellCoordinate(tmp.y), z = cellCoordinate(tmp.z);
+		long key = (long)(x & 0x1FFFFF) << 42 | (long)(y & 0x1FFFFF) << 21 | (z & 0x1FFFFF);
+		Cell<T> cell = cellsByKey.get(key);
+		if (cell == null) {
+			cell = cellPool.obtain();
+			cell.x = x;
+			cell.y = y;
+			cell.z = z;
+			cell.key = key;
+			cell.index = cells.size;
+			cells.add(cell);
+			cellsByKey.put(key, cell);
+		}
+		cell.maxRadius = Math.max(cell.maxRadius, radius);
+
+		Bucket<T> bucket = null;
+		final boolean opaque = batchable.isOpaque();
+		final int hash = opaque ? batchable.getTexturesHashCode() : 0;
+		for (Bucket<T> candidate : cell.buckets) {
+			if (candidate.opaque == opaque && (!opaque
+				|| (candidate.hash == hash && batchable.hasEquivalentTextures(candidate.batchables.first())))) {
+				bucket = candidate;
+				break;
+			}
+		}
+		if (bucket == null) {
+			bucket = bucketPool.obtain();
+			bucket.cell = cell;
+			bucket.opaque = opaque;
+			bucket.hash = hash;
+			cell.buckets.add(bucket);
+		}
+		entry.bucket = bucket;
+		entry.index = bucket.batchables.size;
+		bucket.batchables.add(batchable);
+	}
+
+	/** Removes the Batchable from its bucket, freeing the bucket and cell if they become empty. */
+	private void detach (T batchable, Entry<T> entry) {
+		Bucket<T> bucket = entry.bucket;
+		Array<T> batchables = bucket.batchables;
+		batchables.removeIndex(entry.index); // unordered, so the last Batchable takes its place
+		if (entry.index < batchables.size) entries.get(batchables.get(entry.index)).index = entry.index;
+		entry.bucket = null;
+		if (batchables.size > 0) return;
+
+		Cell<T> cell = bucket.cell;
+		cell.buckets.removeValue(bucket, true);
+		bucketPool.free(bucket);
+		if (cell.buckets.size > 0) return;
+
+		cells.removeIndex(cell.index);
+		if (cell.index < cells.size) cells.get(cell.index).index = cell.index;
+		cellsByKey.remove(cell.key);
+		cellPool.free(cell);
+	}
+
+	private static class Cell<T> implements Pool.Poolable {
+		int x, y, z, index;
+		long key;
+		float maxRadius;
+		final Array<Bucket<T>> buckets = new Array<Bucket<T>>(false, 4);
+
+		public void reset () {
+			maxRadius = 0;
+			buckets.clear();
+		}
+	}
+
+	/** Batchables in one cell that are all blended, or all opaque with equivalent textures. */
+	private static class Bucket<T> implements Pool.Poolable {
+		Cell<T> cell;
+		boolean opaque;
+		int hash;
+		final Array<T> batchables = new Array<T>(false, 16);
+
+		public void reset () {
+			cell = null;
+			batchables.clear();
+		}
+	}
+
+	private static class Entry<T> implements Pool.Poolable {
+		Bucket<T> bucket;
+		int index;
+
+		public void reset () {
+			bucket = null;
+		}
+	}
+}
@@ -16,14 +16,31 @@
 package com.cyphercove.gdx.flexbatch.utils;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BufferUtils;
 import com.badlogic.gdx.utils.StringBuilder;
 
+import java.nio.IntBuffer;
+
 public final class BatchablePreparation {
 
+	/** The name of the vertex attribute that holds the texture slot of a
+	 * {@link com.cyphercove.gdx.flexbatch.batchable.SlottedQuad2D SlottedQuad2D}. */
+	public static final String TEXTURE_SLOT_ATTRIBUTE = "a_textureIndex";
+	/** The name of the template vertex attribute holding the corner of a quad drawn by an
+	 * {@link com.cyphercove.gdx.flexbatch.InstancedFlexBatch InstancedFlexBatch}. */
+	public static final String CORNER_ATTRIBUTE = "a_corner";
+	/** The prefix of the instance attributes holding the texture regions of a quad drawn by an InstancedFlexBatch. The texture
+	 * index is appended. */
+	public static final String REGION_ATTRIBUTE = "a_region";
+	/** The prefix of the instance attributes holding the transform of a quad drawn by an InstancedFlexBatch. The attribute index
+	 * is appended. */
+	public static final String TRANSFORM_ATTRIBUTE = "a_transform";
+
 	/** Generate vertex attributes suitable for multi-texturing and vertex color. 32 bit floats are used for each position
 	 * component and texture coordinate. The four color components are packed into a single 32 bit float.
 	 * @param textureCount The number of textures to support.
@@ -33,18 +50,58 @@ public final class BatchablePreparation {
 	 *           available positions, followed by texture coordinates. */
 	public static void addBaseAttributes (Array<VertexAttribute> attributes, int textureCount, boolean position3D,
 		boolean textureCoordinates3D) {
-		attributes.add(new VertexAttribute(Usage.Position, position3D ? 3 : 2, ShaderProgram.POSITION_ATTRIBUTE));
+		addBaseAttributes(attributes, textureCount, position3D, textureCoordinates3D, false);
+	}
+
+	/** Generate vertex attributes suitable for multi-texturing and vertex color, optionally in a compact layout that halves the
+	 * size of the vertex data that the GPU reads. In the compact layout, 2D positions are stored as signed shorts, so they are
+	 * rounded to whole units in the range [-32768, 32767], and 2D texture coordinates are stored as normalized unsigned shorts,
+	 * so they are clamped to [0, 1]. 3D positions and texture coordinates remain 32 bit floats. A FlexBatch packs the data with a
+	 * {@link VertexPacker} when it is uploaded, so Batchables can write floats as usual.
+	 * @param attributes The array to add the vertex attributes to. They are added with position and color in the first two
+	 *           available positions, followed by texture coordinates.
+	 * @param textureCount The number of textures to support.
+	 * @param position3D Whether the position attribute should include a Z component.
+	 * @param textureCoordinates3D Whether the texture coordinate attribute(s) should include a third component.
+	 * @param compact Whether to use the compact layout. */
+	public static void addBaseAttributes (Array<VertexAttribute> attributes, int textureCount, boolean position3D,
+		boolean textureCoordinates3D, boolean compact) {
+		if (compact && !position3D)
+			attributes.add(new VertexAttribute(Usage.Position, 2, GL20.GL_SHORT, false, ShaderProgram.POSITION_ATTRIBUTE));
+		else
+			attributes.add(new VertexAttribute(Usage.Position, position3D ? 3 : 2, ShaderProgram.POSITION_ATTRIBUTE));
 		attributes.add(new VertexAttribute(Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE));
 		for (int i = 0; i < textureCount; i++) {
-			attributes.add(
+			if (compact && !textureCoordinates3D) attributes.add(new VertexAttribute(Usage.TextureCoordinates, 2,
+				GL20.GL_UNSIGNED_SHORT, true, ShaderProgram.TEXCOORD_ATTRIBUTE + i, i));
+			else attributes.add(
 				new VertexAttribute(Usage.TextureCoordinates, textureCoordinates3D ? 3 : 2, ShaderProgram.TEXCOORD_ATTRIBUTE + i, i));
 		}
 	}
 
+	/** Creates an attribute for a unit vector such as a normal, stored as four normalized signed bytes instead of three floats.
+	 * The fourth component is padding that keeps the attribute aligned. A shader can declare it as a vec3.
+	 * @param usage The usage of the attribute, such as {@link Usage#Normal}.
+	 * @param alias The name of the attribute in the shader. */
+	public static VertexAttribute newPackedDirectionAttribute (int usage, String alias) {
+		return new VertexAttribute(usage, 4, GL20.GL_BYTE, true, alias);
+	}
+
 	public static String generateGenericVertexShader (int textureCount) {
+		return generateGenericVertexShader(textureCount, false);
+	}
+
+	/** Generates a vertex shader that passes through vertex color and texture coordinates.
+	 * @param textureCount The number of textures to support.
+	 * @param textureArrays Whether the texture coordinates have a third component for a TextureArray layer, as generated by
+	 *           {@link #addBaseAttributes(Array, int, boolean, boolean)} with {@code textureCoordinates3D} true. The layer is
+	 *           passed through only if GL ES 3.0 is available. Otherwise it is ignored, matching the fallback behavior of
+	 *           {@link TextureArrayBinner}. */
+	public static String generateGenericVertexShader (int textureCount, boolean textureArrays) {
 		boolean v3 = Gdx.gl30 != null;
 		String attribute = v3 ? "in" : "attribute";
 		String varying = v3 ? "out" : "varying";
+		String texCoordType = v3 && textureArrays ? " vec3 " : " vec2 ";
 
 		StringBuilder sb = new StringBuilder();
 
@@ -52,11 +109,11 @@ public final class BatchablePreparation {
 		sb.append(attribute).append(" vec4 ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
 		sb.append(attribute).append(" vec4 ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
 		for (int i = 0; i < textureCount; i++)
-			sb.append(attribute).append(" vec2 ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
+			sb.append(attribute).append(texCoordType).append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
 		sb.append("uniform mat4 u_projTrans;\n");
 		sb.append(varying).append(" vec4 v_color;\n");
 		for (int i = 0; i < textureCount; i++)
-			sb.append(varying).append(" vec2 v_texCoords").append(i).append(";\n\n");
+			sb.append(varying).append(texCoordType).append("v_texCoords").append(i).append(";\n\n");
 
 		sb.append("void main()\n");
 		sb.append("{\n");
@@ -71,10 +128,22 @@ public final class BatchablePreparation {
 	}
 
 	public static String generateGenericFragmentShader (int textureCount) { // TODO default should only use first texture
+		return generateGenericFragmentShader(textureCount, false);
+	}
+
+	/** Generates a fragment shader that multiplies the vertex color by the average of the textures.
+	 * @param textureCount The number of textures to support.
+	 * @param textureArrays Whether to sample TextureArrays, using the layer passed through by
+	 *           {@link #generateGenericVertexShader(int, boolean)}. Plain 2D samplers are used instead if GL ES 3.0 is not
+	 *           available. */
+	public static String generateGenericFragmentShader (int textureCount, boolean textureArrays) {
 		boolean v3 = Gdx.gl30 != null;
+		boolean arrays = v3 && textureArrays;
 		String varying = v3 ? "in" : "varying";
 		String outColor = v3 ? "fragmentColor" : "gl_FragColor";
-		String tex2D = v3 ? "texture, " : "texture2D";
+		String tex2D = v3 ? "texture" : "texture2D";
+		String texCoordType = arrays ? " vec3 " : " vec2 ";
+		String samplerType = arrays ? " sampler2DArray " : " sampler2D ";
 
 		StringBuilder sb = new StringBuilder();
 
@@ -82,16 +151,17 @@ public final class BatchablePreparation {
 		sb.append("#ifdef GL_ES\n");
 		sb.append("#define LOWP lowp\n");
 		sb.append("precision mediump float;\n");
+		if (arrays) sb.append("precision mediump sampler2DArray;\n");
 		sb.append("#else\n");
 		sb.append("#define LOWP \n");
 		sb.append("#endif\n\n");
 
 		sb.append(varying).append(" LOWP vec4 v_color;\n");
 		for (int i = 0; i < textureCount; i++)
-			sb.append(varying).append(" vec2 v_texCoords").append(i).append(";\n");
+			sb.append(varying).append(texCoordType).append("v_texCoords").append(i).append(";\n");
 		for (int i = 0; i < textureCount; i++)
-			sb.append("uniform sampler2D u_texture").append(i).append(";\n");
-		if (v3) sb.append("out LOWP vec4 ").append(outColor).append("\n");
+			sb.append("uniform").append(samplerType).append("u_texture").append(i).append(";\n");
+		if (v3) sb.append("out LOWP vec4 ").append(outColor).append(";\n");
 
 		sb.append("\n");
 		sb.append("void main()\n");
@@ -99,7 +169,7 @@ public final class BatchablePreparation {
 		if (textureCount == 0)
 			sb.append("  ").append(outColor).append(" = v_color;\n");
 		else if (textureCount == 1)
-			sb.append("  ").append(outColor).append(" = v_color * texture2D(u_texture0, v_texCoords0);\n");
+			sb.append("  ").append(outColor).append(" = v_color * ").append(tex2D).append("(u_texture0, v_texCoords0);\n");
 		else {
 			sb.append("LOWP vec4 color = ").append(tex2D).append("(u_texture0, v_texCoords0);\n");
 			for (int i = 1; i < textureCount; i++)
@@ -111,6 +181,161 @@ public final class BatchablePreparation {
 		return sb.toString();
 	}
 
+	/** @return The number of texture units available to fragment shaders, which is the largest number of texture slots a
+	 *         {@link com.cyphercove.gdx.flexbatch.batchable.SlottedQuad2D SlottedQuad2D} subclass can use. */
+	public static int getMaxTextureSlots () {
+		IntBuffer buffer = BufferUtils.newIntBuffer(16);
+		Gdx.gl.glGetIntegerv(GL20.GL_MAX_TEXTURE_IMAGE_UNITS, buffer);
+		return buffer.get(0);
+	}
+
+	/** Generates a vertex shader for a {@link com.cyphercove.gdx.flexbatch.batchable.SlottedQuad2D SlottedQuad2D}. It passes
+	 * through the vertex color, texture coordinates, and texture slot. */
+	public static String generateTextureSlotVertexShader () {
+		boolean v3 = Gdx.gl30 != null;
+		String attribute = v3 ? "in" : "attribute";
+		String varying = v3 ? "out" : "varying";
+
+		StringBuilder sb = new StringBuilder();
+
+		if (v3) sb.append("#version 300 es\n");
+		sb.append(attribute).append(" vec4 ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
+		sb.append(attribute).append(" vec4 ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		sb.append(attribute).append(" vec2 ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append("0;\n");
+		sb.append(attribute).append(" float ").append(TEXTURE_SLOT_ATTRIBUTE).append(";\n");
+		sb.append("uniform mat4 u_projTrans;\n");
+		sb.append(varying).append(" vec4 v_color;\n");
+		sb.append(varying).append(" vec2 v_texCoords0;\n");
+		sb.append(varying).append(" float v_textureIndex;\n\n");
+
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("   v_color = ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		sb.append("   v_color.a = v_color.a * (255.0/254.0);\n");
+		sb.append("   v_texCoords0 = ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append("0;\n");
+		sb.append("   v_textureIndex = ").append(TEXTURE_SLOT_ATTRIBUTE).append(";\n");
+		sb.append("   gl_Position =  u_projTrans * ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
+		sb.append("}\n");
+
+		return sb.toString();
+	}
+
+	/** Generates a fragment shader for a {@link com.cyphercove.gdx.flexbatch.batchable.SlottedQuad2D SlottedQuad2D}. It
+	 * multiplies the vertex color by the texture in the vertex's slot. The samplers are named {@code u_texture0},
+	 * {@code u_texture1}, etc., to match the uniforms that FlexBatch sets. Samplers are selected with a chain of comparisons,
+	 * because OpenGL ES 2.0 does not allow indexing samplers with a varying.
+	 * @param slotCount The number of texture slots, which must match the SlottedQuad2D's number of texture units. */
+	public static String generateTextureSlotFragmentShader (int slotCount) {
+		boolean v3 = Gdx.gl30 != null;
+		String varying = v3 ? "in" : "varying";
+		String outColor = v3 ? "fragmentColor" : "gl_FragColor";
+		String tex2D = v3 ? "texture" : "texture2D";
+
+		StringBuilder sb = new StringBuilder();
+
+		if (v3) sb.append("#version 300 es\n");
+		sb.append("#ifdef GL_ES\n");
+		sb.append("#define LOWP lowp\n");
+		sb.append("precision mediump float;\n");
+		sb.append("#else\n");
+		sb.append("#define LOWP \n");
+		sb.append("#endif\n\n");
+
+		sb.append(varying).append(" LOWP vec4 v_color;\n");
+		sb.append(varying).append(" vec2 v_texCoords0;\n");
+		sb.append(varying).append(" float v_textureIndex;\n");
+		for (int i = 0; i < slotCount; i++)
+			sb.append("uniform sampler2D u_texture").append(i).append(";\n");
+		if (v3) sb.append("out LOWP vec4 ").append(outColor).append(";\n");
+
+		sb.append("\n");
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("  LOWP vec4 color;\n");
+		for (int i = 0; i < slotCount; i++) {
+			sb.append("  ");
+			if (i > 0) sb.append("else ");
+			if (i < slotCount - 1) sb.append("if (v_textureIndex < ").append(i).append(".5) ");
+			sb.append("color = ").append(tex2D).append("(u_texture").append(i).append(", v_texCoords0);\n");
+		}
+		sb.append("  ").append(outColor).append(" = v_color * color;\n");
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	/** Generates a vertex shader for {@link com.cyphercove.gdx.flexbatch.batchable.Quad2D Quad2Ds} drawn by an
+	 * {@link com.cyphercove.gdx.flexbatch.InstancedFlexBatch InstancedFlexBatch}. The corners of each quad are calculated from
+	 * its instance attributes. It can be paired with {@link #generateGenericFragmentShader(int)}. Requires OpenGL ES 3.0.
+	 * @param textureCount The number of textures to support. */
+	public static String generateInstancedQuad2DVertexShader (int textureCount) {
+		StringBuilder sb = new StringBuilder();
+		appendInstancedQuadDeclarations(sb, textureCount, 2);
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("   vec2 local = ").append(CORNER_ATTRIBUTE).append(".xy * ").append(TRANSFORM_ATTRIBUTE).append("1.xy + ")
+			.append(TRANSFORM_ATTRIBUTE).append("1.zw;\n");
+		sb.append("   float c = cos(").append(TRANSFORM_ATTRIBUTE).append("0.z);\n");
+		sb.append("   float s = sin(").append(TRANSFORM_ATTRIBUTE).append("0.z);\n");
+		sb.append("   vec2 world = vec2(c * local.x - s * local.y, s * local.x + c * local.y) + ").append(TRANSFORM_ATTRIBUTE)
+			.append("0.xy;\n");
+		appendInstancedQuadMain(sb, textureCount);
+		sb.append("   gl_Position =  u_projTrans * vec4(world, 0.0, 1.0);\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/** Generates a vertex shader for {@link com.cyphercove.gdx.flexbatch.batchable.Quad3D Quad3Ds} drawn by an
+	 * {@link com.cyphercove.gdx.flexbatch.InstancedFlexBatch InstancedFlexBatch}. The corners of each quad are calculated from
+	 * its instance attributes. It can be paired with {@link #generateGenericFragmentShader(int)}. Requires OpenGL ES 3.0.
+	 * @param textureCount The number of textures to support. */
+	public static String generateInstancedQuad3DVertexShader (int textureCount) {
+		StringBuilder sb = new StringBuilder();
+		appendInstancedQuadDeclarations(sb, textureCount, 3);
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("   vec3 local = vec3(").append(CORNER_ATTRIBUTE).append(".xy * ").append(TRANSFORM_ATTRIBUTE).append("2.xy + ")
+			.append(TRANSFORM_ATTRIBUTE).append("2.zw, 0.0);\n");
+		sb.append("   vec4 q = ").append(TRANSFORM_ATTRIBUTE).append("1;\n");
+		sb.append("   vec3 world = local + 2.0 * cross(q.xyz, cross(q.xyz, local) + q.w * local) + ").append(TRANSFORM_ATTRIBUTE)
+			.append("0.xyz;\n");
+		appendInstancedQuadMain(sb, textureCount);
+		sb.append("   gl_Position =  u_projTrans * vec4(world, 1.0);\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static void appendInstancedQuadDeclarations (StringBuilder sb, int textureCount, int transformCount) {
+		sb.append("#version 300 es\n");
+		sb.append("in vec3 ").append(CORNER_ATTRIBUTE).append(";\n");
+		sb.append("in vec4 ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append("in vec4 ").append(REGION_ATTRIBUTE).append(i).append(";\n");
+		for (int i = 0; i < transformCount; i++)
+			sb.append("in vec4 ").append(TRANSFORM_ATTRIBUTE).append(i).append(";\n");
+		sb.append("uniform mat4 u_projTrans;\n");
+		sb.append("out vec4 v_color;\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append("out vec2 v_texCoords").append(i).append(";\n");
+		sb.append("\n");
+	}
+
+	/** Appends the color and the texture coordinates of the corner, rotated by the texture coordinates rotation in the fourth
+	 * component of the first transform attribute. */
+	private static void appendInstancedQuadMain (StringBuilder sb, int textureCount) {
+		sb.append("   v_color = ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		sb.append("   v_color.a = v_color.a * (255.0/254.0);\n");
+		if (textureCount == 0) return;
+		sb.append("   float corner = mod(").append(CORNER_ATTRIBUTE).append(".z - ").append(TRANSFORM_ATTRIBUTE).append("0.w, 4.0);\n");
+		sb.append("   float right = step(1.5, corner);\n");
+		sb.append("   float top = step(0.5, corner) * step(corner, 2.5);\n");
+		for (int i = 0; i < textureCount; i++) {
+			String region = REGION_ATTRIBUTE + i;
+			sb.append("   v_texCoords").append(i).append(" = vec2(mix(").append(region).append(".x, ").append(region)
+				.append(".z, right), mix(").append(region).append(".w, ").append(region).append(".y, top));\n");
+		}
+	}
+
 	/** Populates an array of triangle indices for quadrangles made up of two triangles. The indices are ordered such that they
 	 * produce counter-clockwise-wound triangles if the vertices are ordered as follows: <code><br>
 	 * <br>2--3
@@ -130,4 +355,19 @@ public final class BatchablePreparation {
 			triangles[i + 5] = (short)(j + 2);
 		}
 	}
+
+	/** Populates an array of 32-bit triangle indices for quadrangles made up of two triangles, in the same order as
+	 * {@link #populateQuadrangleIndices(short[])}.
+	 * @param triangles The array that will be filled with triangle indices. */
+	public static void populateQuadrangleIndices (int[] triangles) {
+		int j = 0;
+		for (int i = 0; i + 5 < triangles.length; i += 6, j += 4) {
+			triangles[i] = j;
+			triangles[i + 1] = j + 2;
+			triangles[i + 2] = j + 1;
+			triangles[i + 3] = j;
+			triangles[i + 4] = j + 3;
+			triangles[i + 5] = j + 2;
+		}
+	}
 }
@@ -15,12 +15,14 @@
  ******************************************************************************/
 package com.cyphercove.gdx.flexbatch.utils;
 
-import java.util.Comparator;
+import java.util.Arrays;
 
 import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.NumberUtils;
 import com.badlogic.gdx.utils.ObjectSet;
 import com.badlogic.gdx.utils.Pool;
 import com.cyphercove.gdx.flexbatch.Batchable;
@@ -28,28 +30,51 @@ import com.cyphercove.gdx.flexbatch.FlexBatch;
 
 /** Sorts 3D {@link Batchable Batchables} to ensure proper render order before passing them to a {@link FlexBatch}.
  * <p>
- * Opaque Batchables are sorted by texture configuration to minimize flushes and drawn first. Blended Batchables are sorted by
- * distance from camera and drawn far to near.
+ * Opaque Batchables are sorted by texture configuration to minimize flushes and drawn first. Each texture configuration's group
+ * is found by its {@link SortableBatchable#getTexturesHashCode() hash code}, so adding a Batchable takes constant time
+ * regardless of the number of groups. Within a group, Batchables are drawn in the order they were added.
+ * <p>
+ * Blended Batchables are sorted by distance from camera and drawn far to near. The distance of each Batchable is calculated
+ * once per sort, and Batchables at equal distances are drawn in the order they were added.
+ * <p>
+ * Batchables that are drawn every frame can be {@link #addPersistent(Batchable) added persistently}, so they stay queued when
+ * the sorter is {@link #clear() cleared} or {@link #flush(FlexBatch) flushed}, until they are
+ * {@link #removePersistent(Batchable) removed}. Blended persistent Batchables are kept in the order of their last sort, which
+ * is corrected with an insertion sort. When the Batchables and camera move little between frames, the order is nearly
+ * correct already, so this takes close to linear time. If too much has changed, it falls back to a full sort.
+ * <p>
+ * With {@link #setFrustumCulling(boolean) frustum culling}, Batchables outside the camera's frustum are dropped when they are
+ * added, before they are sorted or have their vertex data generated. Persistent Batchables are culled each time they are drawn.
  * 
  * @author cypherdare */
 public class BatchableSorter<T extends Batchable & SortableBatchable<T>> {
 
 	protected final int opaqueInitialCapacityPerTexture;
-	private final ObjectMap<T, ObjectSet<T>> opaqueBatchables; // first entered to material group
+	private final IntMap<OpaqueGroup<T>> opaqueGroupsByHash; // first group with each hash, others chained
+	private final Array<OpaqueGroup<T>> opaqueGroups; // in order of creation
 	private final Array<T> blendedBatchables;
-	private final Comparator<T> comparator;
+	/** Sort keys of the blended Batchables, each packing the reversed distance above the index of the Batchable. */
+	private long[] blendedOrder;
 	protected Vector3 cameraPosition;
+	protected Frustum frustum;
+	private boolean frustumCulling;
+	private final Array<T> visibleTemp = new Array<T>(); // only for frustum culling
 	private boolean needSort;
 
-	private Pool<ObjectSet<T>> objectSetPool = new Pool<ObjectSet<T>>() {
-		protected void reset (ObjectSet<T> object) {
-			object.clear();
-		}
+	private final ObjectSet<T> persistentBatchables = new ObjectSet<T>();
+	/** Blended persistent Batchables in the order of their last sort. */
+	private final Array<T> persistentBlendedBatchables = new Array<T>();
+	/** The reversed distances of the persistent blended Batchables at their last sort, in the same order. */
+	private int[] persistentBlendedKeys = new int[16];
+	private long[] persistentBlendedOrder = new long[16]; // only for full sorts
+	private Object[] persistentBlendedTemp = new Object[16]; // only for full sorts
+	/** The number of insertion sort moves per persistent blended Batchable after which a full sort is used instead. */
+	private static final int MAX_MOVES_PER_BATCHABLE = 8;
 
-		protected ObjectSet<T> newObject () {
-			return new ObjectSet<T>(opaqueInitialCapacityPerTexture);
+	private Pool<OpaqueGroup<T>> opaqueGroupPool = new Pool<OpaqueGroup<T>>() {
+		protected OpaqueGroup<T> newObject () {
+			return new OpaqueGroup<T>(opaqueInitialCapacityPerTexture);
 		}
-
 	};
 
 	public BatchableSorter (Camera camera) {
@@ -59,68 +84,297 @@ public class BatchableSorter<T extends Batchable & SortableBatchable<T>> {
 	public BatchableSorter (Camera camera, int opaqueIntialTextureCapacity, int opaqueInitialCapacityPerTexture,
 		int blendedInitialCapacity) {
 		this.cameraPosition = camera.position;
+		this.frustum = camera.frustum;
 		this.opaqueInitialCapacityPerTexture = opaqueInitialCapacityPerTexture;
-		opaqueBatchables = new ObjectMap<T, ObjectSet<T>>();
+		opaqueGroupsByHash = new IntMap<OpaqueGroup<T>>();
+		opaqueGroups = new Array<OpaqueGroup<T>>(false, Math.max(opaqueIntialTextureCapacity, 1));
 		for (int i = 0; i < opaqueIntialTextureCapacity; i++) { // seed the pool to avoid delay on first use
-			objectSetPool.free(objectSetPool.obtain());
+			opaqueGroupPool.free(opaqueGroupPool.obtain());
 		}
 		blendedBatchables = new Array<T>(blendedInitialCapacity);
-		comparator = new Comparator<T>() {
-			public int compare (T o1, T o2) {
-				return (int)Math.signum(o2.calculateDistanceSquared(cameraPosition) - o1.calculateDistanceSquared(cameraPosition));
-			}
-		};
+		blendedOrder = new long[Math.max(blendedInitialCapacity, 16)];
 	}
 
-	/** Clear the queue without drawing anything. */
+	/** Clear the queue without drawing anything. Persistent Batchables stay queued. */
 	public void clear () {
-		for (ObjectSet<T> set : opaqueBatchables.values())
-			objectSetPool.free(set);
-		opaqueBatchables.clear();
+		opaqueGroupsByHash.clear();
+		for (int i = opaqueGroups.size - 1; i >= 0; i--) {
+			OpaqueGroup<T> group = opaqueGroups.get(i);
+			group.batchables.clear();
+			if (group.persistentBatchables.size == 0) {
+				opaqueGroups.removeIndex(i);
+				opaqueGroupPool.free(group);
+			}
+		}
+		for (OpaqueGroup<T> group : opaqueGroups) { // rebuild the chains with only the groups that have persistent Batchables
+			group.next = opaqueGroupsByHash.put(group.hash, group);
+		}
 		blendedBatchables.clear();
 	}
 
 	/** Sort (if necessary) and draw the queued Batchables without clearing them. Must be called in between
-	 * {@link FlexBatch#begin()} and {@link FlexBatch#end()}. */
+	 * {@link FlexBatch#begin()} and {@link FlexBatch#end()}. Persistent blended Batchables are sorted on every call, because
+	 * they may have moved since the last one. */
 	public void draw (FlexBatch<T> flexBatch) {
 		if (needSort) {
-			blendedBatchables.sort(comparator);
+			sortBlended();
 			needSort = false;
 		}
-		for (ObjectSet<T> set : opaqueBatchables.values())
-			for (T batchable : set)
-				flexBatch.draw(batchable);
-		for (T batchable : blendedBatchables)
-			flexBatch.draw(batchable);
+		sortPersistentBlended();
+		for (OpaqueGroup<T> group : opaqueGroups) {
+			Array<T> persistent = group.persistentBatchables;
+			if (frustumCulling) {
+				persistent = visibleTemp;
+				for (T batchable : group.persistentBatchables)
+					if (batchable.isInFrustum(frustum)) persistent.add(batchable);
+			}
+			flexBatch.draw(persistent, 0, persistent.size);
+			visibleTemp.clear();
+			flexBatch.draw(group.batchables, 0, group.batchables.size);
+		}
+
+		// Merge the persistent and transient blended Batchables, preferring persistent ones at equal distances.
+		final Object[] blended = blendedBatchables.items; // not a T[], because the Array was created without a component type
+		final long[] order = blendedOrder;
+		final Array<T> persistentBlended = persistentBlendedBatchables;
+		final int[] persistentKeys = persistentBlendedKeys;
+		final int count = blendedBatchables.size, persistentCount = persistentBlendedBatchables.size;
+		final boolean frustumCulling = this.frustumCulling;
+		int i = 0, p = 0;
+		while (i < count || p < persistentCount) {
+			if (p < persistentCount && (i == count || persistentKeys[p] <= (int)(order[i] >>> 32))) {
+				T batchable = persistentBlended.get(p++);
+				if (!frustumCulling || batchable.isInFrustum(frustum)) flexBatch.draw(batchable);
+			} else {
+				flexBatch.draw((Batchable)blended[(int)order[i++]]);
+			}
+		}
+	}
+
+	/** @return A key that increases as the squared distance to the camera position decreases, for sorting far to near. */
+	private int distanceKey (SortableBatchable<T> batchable) {
+		// The bits of a non-negative float increase with its value, so subtracting them from the maximum reverses the order.
+		return Integer.MAX_VALUE - NumberUtils.floatToRawIntBits(batchable.calculateDistanceSquared(cameraPosition));
+	}
+
+	/** Sorts the blended Batchables far to near. The distances are calculated once into sort keys, which are sorted as primitives
+	 * instead of comparing Batchables. */
+	private void sortBlended () {
+		final int n = blendedBatchables.size;
+		if (blendedOrder.length < n) blendedOrder = new long[Math.max(n, blendedOrder.length * 2)];
+		final long[] order = blendedOrder;
+		final Array<T> blended = blendedBatchables;
+		for (int i = 0; i < n; i++)
+			order[i] = (long)distanceKey(blended.get(i)) << 32 | i;
+		Arrays.sort(order, 0, n);
+	}
+
+	/** Corrects the order of the persistent blended Batchables from their last sort with an insertion sort, falling back to a full
+	 * sort if it takes too many moves. */
+	private void sortPersistentBlended () {
+		final int n = persistentBlendedBatchables.size;
+		if (n == 0) return;
+		if (persistentBlendedKeys.length < n) persistentBlendedKeys = new int[Math.max(n, persistentBlendedKeys.length * 2)];
+		final int[] keys = persistentBlendedKeys;
+		final Array<T> persistentBlended = persistentBlendedBatchables;
+		for (int i = 0; i < n; i++)
+			keys[i] = distanceKey(persistentBlended.get(i));
+		final Object[] items = persistentBlended.items; // only moved, so no casts are needed
+
+		long movesLeft = (long)n * MAX_MOVES_PER_BATCHABLE;
+		for (int i = 1; i < n; i++) {
+			final int key = keys[i];
+			if (keys[i - 1] <= key) continue;
+			final Object item = items[i];
+			int j = i - 1;
+			do {
+				keys[j + 1] = keys[j];
+				items[j + 1] = items[j];
+				j--;
+			} while (j >= 0 && keys[j] > key);
+			keys[j + 1] = key;
+			items[j + 1] = item;
+			movesLeft -= i - 1 - j;
+			if (movesLeft < 0) {
+				fullSortPersistentBlended();
+				return;
+			}
+		}
 	}
 
-	/** Sort (if necessary), draw, and clear references to the queued Batchables. Must be called in between
-	 * {@link FlexBatch#begin()} and {@link FlexBatch#end()}. */
+	private void fullSortPersistentBlended () {
+		final int n = persistentBlendedBatchables.size;
+		if (persistentBlendedOrder.length < n) {
+			persistentBlendedOrder = new long[persistentBlendedKeys.length];
+			persistentBlendedTemp = new Object[persistentBlendedKeys.length];
+		}
+		final long[] order = persistentBlendedOrder;
+		final Object[] temp = persistentBlendedTemp;
+		final int[] keys = persistentBlendedKeys;
+		final Object[] items = persistentBlendedBatchables.items;
+		for (int i = 0; i < n; i++)
+			order[i] = (long)keys[i] << 32 | i;
+		Arrays.sort(order, 0, n);
+		System.arraycopy(items, 0, temp, 0, n);
+		for (int i = 0; i < n; i++) {
+			items[i] = temp[(int)order[i]];
+			keys[i] = (int)(order[i] >>> 32);
+		}
+		Arrays.fill(temp, 0, n, null);
+	}
+
+	/** Sort (if necessary), draw, and clear references to the queued Batchables. Persistent Batchables stay queued. Must be called
+	 * in between {@link FlexBatch#begin()} and {@link FlexBatch#end()}. */
 	public void flush (FlexBatch<T> flexBatch) {
 		draw(flexBatch);
 		clear();
 	}
 
-	/** Add a Batchable to the queue. */
+	/** Add a Batchable to the queue. If {@link #setFrustumCulling(boolean) frustum culling} is enabled, it is only added if it is
+	 * in the camera's frustum. */
 	public void add (T batchable) {
+		if (frustumCulling && !batchable.isInFrustum(frustum)) return;
 		if (batchable.isOpaque()) {
-			for (ObjectMap.Entry<T, ObjectSet<T>> entry : opaqueBatchables) {
-				if (batchable.hasEquivalentTextures(entry.key)) {
-					entry.value.add((T)batchable);
-					return;
-				}
-			}
-			ObjectSet<T> set = objectSetPool.obtain();
-			set.add(batchable);
-			opaqueBatchables.put(batchable, set);
+			obtainGroup(batchable).batchables.add(batchable);
 		} else {
 			blendedBatchables.add(batchable);
+			needSort = true;
+		}
+	}
+
+	/** Adds a series of Batchables that all have the same opacity and, if they are opaque, equivalent textures, such as one
+	 * material bucket of a {@link BatchableGrid}. Opaque Batchables are added to their texture group with a single lookup. Unlike
+	 * {@link #add(Batchable)}, the Batchables are not frustum culled.
+	 * @param batchables The Batchables to add.
+	 * @param offset The index of the first Batchable to add.
+	 * @param count The number of Batchables to add. */
+	public void addSeries (Array<T> batchables, int offset, int count) {
+		if (count == 0) return;
+		T first = batchables.get(offset);
+		if (first.isOpaque()) {
+			obtainGroup(first).batchables.addAll(batchables, offset, count);
+		} else {
+			blendedBatchables.addAll(batchables, offset, count);
+			needSort = true;
+		}
+	}
+
+	/** Adds a Batchable that stays queued until it is removed with {@link #removePersistent(Batchable)}, instead of being
+	 * removed by {@link #clear()} or {@link #flush(FlexBatch)}. The Batchable is identified by reference. Its opacity and
+	 * textures must not change while it is added, but it may move.
+	 * @return Whether the Batchable was added, or false if it was already added persistently. */
+	public boolean addPersistent (T batchable) {
+		if (!persistentBatchables.add(batchable)) return false;
+		if (batchable.isOpaque()) {
+			obtainGroup(batchable).persistentBatchables.add(batchable);
+		} else {
+			persistentBlendedBatchables.add(batchable); // moved into place by the next sort
+		}
+		return true;
+	}
+
+	/** Removes a Batchable that was added with {@link #addPersistent(Batchable)}. Blended Batchables take linear time to remove.
+	 * @return Whether the Batchable was found and removed. */
+	public boolean removePersistent (T batchable) {
+		if (!persistentBatchables.remove(batchable)) return false;
+		if (batchable.isOpaque()) {
+			final int hash = batchable.getTexturesHashCode();
+			OpaqueGroup<T> group = findGroup(batchable, hash);
+			group.persistentBatchables.removeValue(batchable, true);
+			if (group.persistentBatchables.size == 0 && group.batchables.size == 0) removeGroup(group);
+		} else {
+			persistentBlendedBatchables.removeValue(batchable, true);
+		}
+		return true;
+	}
+
+	/** Removes all Batchables that were added with {@link #addPersistent(Batchable)}. */
+	public void clearPersistent () {
+		for (int i = opaqueGroups.size - 1; i >= 0; i--) {
+			OpaqueGroup<T> group = opaqueGroups.get(i);
+			group.persistentBatchables.clear();
+			if (group.batchables.size == 0) removeGroup(group);
+		}
+		persistentBlendedBatchables.clear();
+		persistentBatchables.clear();
+	}
+
+	/** @return Whether the Batchable was added with {@link #addPersistent(Batchable)} and not removed since. */
+	public boolean isPersistent (T batchable) {
+		return persistentBatchables.contains(batchable);
+	}
+
+	private OpaqueGroup<T> findGroup (T batchable, int hash) {
+		OpaqueGroup<T> group = opaqueGroupsByHash.get(hash);
+		while (group != null && !batchable.hasEquivalentTextures(group.first()))
+			group = group.next;
+		return group;
+	}
+
+	private OpaqueGroup<T> obtainGroup (T batchable) {
+		final int hash = batchable.getTexturesHashCode();
+		OpaqueGroup<T> group = findGroup(batchable, hash);
+		if (group == null) {
+			group = opaqueGroupPool.obtain();
+			group.hash = hash;
+			group.next = opaqueGroupsByHash.put(hash, group);
+			opaqueGroups.add(group);
+		}
+		return group;
+	}
+
+	private void removeGroup (OpaqueGroup<T> group) {
+		OpaqueGroup<T> head = opaqueGroupsByHash.get(group.hash);
+		if (head == group) {
+			if (group.next == null)
+				opaqueGroupsByHash.remove(group.hash);
+			else
+				opaqueGroupsByHash.put(group.hash, group.next);
+		} else {
+			while (head.next != group)
+				head = head.next;
+			head.next = group.next;
 		}
-		needSort = true;
+		opaqueGroups.removeValue(group, true);
+		opaqueGroupPool.free(group);
 	}
 
-	/** Sets the camera that is used for distance comparisons to sort the blended Batchables. */
+	/** Sets the camera that is used for distance comparisons to sort the blended Batchables, and for frustum culling. */
 	public void setCamera (Camera camera) {
 		cameraPosition = camera.position;
+		frustum = camera.frustum;
+	}
+
+	/** Sets whether Batchables outside the camera's frustum are culled, using {@link SortableBatchable#isInFrustum(Frustum)}.
+	 * Transient Batchables are tested when they are added, so the camera must be updated before adding them. Persistent
+	 * Batchables are tested when drawn. Disabled by default. */
+	public void setFrustumCulling (boolean frustumCulling) {
+		this.frustumCulling = frustumCulling;
+	}
+
+	public boolean isFrustumCulling () {
+		return frustumCulling;
+	}
+
+	/** Opaque Batchables with equivalent textures. */
+	private static class OpaqueGroup<T> implements Pool.Poolable {
+		final Array<T> batchables, persistentBatchables;
+		int hash;
+		OpaqueGroup<T> next; // another group with the same texture hash code
+
+		OpaqueGroup (int initialCapacity) {
+			batchables = new Array<T>(initialCapacity);
+			persistentBatchables = new Array<T>(false, 16);
+		}
+
+		T first () {
+			return persistentBatchables.size > 0 ? persistentBatchables.first() : batchables.first();
+		}
+
+		public void reset () {
+			batchables.clear();
+			persistentBatchables.clear();
+			next = null;
+		}
 	}
 }
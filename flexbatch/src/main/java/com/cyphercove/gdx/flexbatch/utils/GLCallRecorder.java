@@ -0,0 +1,1704 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+/** A GL30 that counts the OpenGL calls made through it and passes them on to another GL20 or GL30, for measuring how much work
+ * {@link com.cyphercove.gdx.flexbatch.FlexBatch FlexBatch}, {@link RenderContextAccumulator} or any other code that draws with
+ * {@link Gdx#gl} submits to the driver. Call {@link #install()} to wrap the current {@link Gdx#gl}, and {@link #endFrame()} once
+ * per frame to move the counts of the finished frame into the {@link #lastFrame} report.
+ * <p>
+ * Besides counting every call by name, it counts draw calls and the vertices or indices they draw, the bytes uploaded to
+ * buffers, and calls that set GL state, bind textures, buffers, framebuffers or vertex arrays, or switch shaders. Such a call is
+ * counted as redundant if it sets a value that was already set through this GL since the last {@link #forgetState()}. Nothing
+ * is queried from the driver, so the first call to set each value is never redundant. Calls to the separate stencil functions
+ * are always counted as changes.
+ * <p>
+ * If there is no GL to pass calls on to, it does nothing beyond counting, which makes it a test double for code that must be run
+ * without a GPU. In that case, generated handles are unique and nonzero, shaders compile and link successfully with no active
+ * attributes or uniforms, each attribute or uniform name that is looked up is given its own stable location, framebuffers are
+ * complete, and other queries return zero, false, null or an empty String. A {@link #setLogging(boolean) log} of calls can be
+ * kept so the sequence of calls can be checked.
+ * 
+ * @author cypherdare */
+public class GLCallRecorder implements GL30 {
+
+	/** The GL that calls are passed on to, or null if there is none. */
+	public final GL20 gl;
+	/** The same GL as {@link #gl} if it is a GL30, otherwise null. */
+	public final GL30 gl30;
+	private final boolean providesGL30;
+	/** Counts for the current frame. */
+	public final Report frame = new Report();
+	/** Counts for the frame that was finished by the last call to {@link #endFrame()}. */
+	public final Report lastFrame = new Report();
+
+	private boolean logging;
+	private final Array<String> log = new Array<String>();
+	/** The name of the most recent call, which is the one marked if it turns out to be redundant. */
+	private String lastCall;
+	private int lastHandle;
+	private GL20 previousGL, previousGL20;
+	private GL30 previousGL30;
+
+	/** Last values set through this GL. Capabilities are keyed by their enum, and other parameters by the keys below. */
+	private final IntIntMap state = new IntIntMap();
+	/** Bound objects keyed by target, with one map per type of object because their handles are from separate namespaces. The
+	 * bound program and vertex array are keyed by {@link #CURRENT}. */
+	private final IntIntMap bufferBindings = new IntIntMap(), framebufferBindings = new IntIntMap(),
+		renderbufferBindings = new IntIntMap(), programBinding = new IntIntMap(), vertexArrayBinding = new IntIntMap();
+	/** Bound textures keyed by texture unit and target. */
+	private final IntIntMap textureBindings = new IntIntMap();
+	private int activeUnit;
+
+	private static final int ACTIVE_TEXTURE = -1, BLEND_SRC_RGB = -2, BLEND_DST_RGB = -3, BLEND_SRC_ALPHA = -4, BLEND_DST_ALPHA = -5,
+		BLEND_EQUATION_RGB = -6, BLEND_EQUATION_ALPHA = -7, COLOR_MASK = -8, CULL_FACE = -9, DEPTH_FUNC = -10, DEPTH_MASK = -11,
+		DEPTH_RANGE_NEAR = -12, DEPTH_RANGE_FAR = -13, FRONT_FACE = -14, LINE_WIDTH = -15, POLYGON_OFFSET_FACTOR = -16,
+		POLYGON_OFFSET_UNITS = -17, SCISSOR_X = -18, SCISSOR_Y = -19, SCISSOR_WIDTH = -20, SCISSOR_HEIGHT = -21, VIEWPORT_X = -22,
+		VIEWPORT_Y = -23, VIEWPORT_WIDTH = -24, VIEWPORT_HEIGHT = -25, STENCIL_FUNC = -26, STENCIL_REF = -27,
+		STENCIL_VALUE_MASK = -28, STENCIL_FAIL = -29, STENCIL_DEPTH_FAIL = -30, STENCIL_PASS = -31, STENCIL_WRITE_MASK = -32;
+	private static final int CURRENT = 0;
+	/** Locations handed out by name when there is no GL. */
+	private final ObjectIntMap<String> attributeLocations = new ObjectIntMap<String>(),
+		uniformLocations = new ObjectIntMap<String>();
+
+	/** @param gl The GL to pass calls on to. If it is a GL30, this can be used as a GL30. */
+	public GLCallRecorder (GL20 gl) {
+		if (gl == null) throw new IllegalArgumentException("gl cannot be null.");
+		this.gl = gl;
+		gl30 = gl instanceof GL30 ? (GL30)gl : null;
+		providesGL30 = gl30 != null;
+	}
+
+	/** Creates a GLCallRecorder that does not pass calls on to any GL, for use without a GPU.
+	 * @param providesGL30 Whether {@link #install()} sets it as {@link Gdx#gl30}, so code takes its OpenGL ES 3.0 paths. */
+	public GLCallRecorder (boolean providesGL30) {
+		gl = null;
+		gl30 = null;
+		this.providesGL30 = providesGL30;
+	}
+
+	/** Sets this as {@link Gdx#gl} and {@link Gdx#gl20}, and as {@link Gdx#gl30} if it provides GL30, until {@link #uninstall()}
+	 * is called. Objects that hold on to a GL, such as a Mesh created earlier, may keep using the previous one. */
+	public void install () {
+		previousGL = Gdx.gl;
+		previousGL20 = Gdx.gl20;
+		previousGL30 = Gdx.gl30;
+		Gdx.gl = Gdx.gl20 = this;
+		Gdx.gl30 = providesGL30 ? this : null;
+	}
+
+	/** Restores the GLs that were set before {@link #install()} was called. */
+	public void uninstall () {
+		if (Gdx.gl != this) return;
+		Gdx.gl = previousGL;
+		Gdx.gl20 = previousGL20;
+		Gdx.gl30 = previousGL30;
+		previousGL = previousGL20 = null;
+		previousGL30 = null;
+	}
+
+	/** Finishes counting the current frame. Its counts are copied to {@link #lastFrame}, and {@link #frame} and the log are
+	 * cleared. */
+	public void endFrame () {
+		lastFrame.set(frame);
+		frame.clear();
+		log.clear();
+	}
+
+	/** Forgets all values that were set through this GL, so none of the next calls are counted as redundant. This should be
+	 * called if GL state was changed without going through this GL, or the GL context was lost. */
+	public void forgetState () {
+		state.clear();
+		bufferBindings.clear();
+		framebufferBindings.clear();
+		renderbufferBindings.clear();
+		programBinding.clear();
+		vertexArrayBinding.clear();
+		textureBindings.clear();
+		activeUnit = 0;
+	}
+
+	/** Sets whether the name of each call is added to the {@link #getLog() log}. Disabled by default, because it allocates. */
+	public void setLogging (boolean logging) {
+		this.logging = logging;
+	}
+
+	public boolean isLogging () {
+		return logging;
+	}
+
+	/** @return The names of the calls made in the current frame while logging, in order. Calls that pass a salient parameter,
+	 *         such as the capability of glEnable or the count of a draw call, are followed by it, and redundant calls are marked
+	 *         "(redundant)". */
+	public Array<String> getLog () {
+		return log;
+	}
+
+	private void call (String name) {
+		lastCall = name;
+		frame.calls++;
+		frame.callCounts.getAndIncrement(name, 0, 1);
+		if (logging) log.add(name);
+	}
+
+	private void call (String name, int argument) {
+		lastCall = name;
+		frame.calls++;
+		frame.callCounts.getAndIncrement(name, 0, 1);
+		if (logging) log.add(name + " " + argument);
+	}
+
+	private void markRedundant () {
+		frame.redundantCallCounts.getAndIncrement(lastCall, 0, 1);
+		if (logging) log.set(log.size - 1, log.peek() + " (redundant)");
+	}
+
+	/** @return Whether the value differs from the one last set for the key. */
+	private static boolean changeBinding (IntIntMap map, int key, int value) {
+		if (map.containsKey(key) && map.get(key, 0) == value) return false;
+		map.put(key, value);
+		return true;
+	}
+
+	private boolean change (int key, int value) {
+		return changeBinding(state, key, value);
+	}
+
+	private void forget (int... keys) {
+		for (int key : keys)
+			state.remove(key, 0);
+	}
+
+	/** @return The location previously given to the name, or the next unused one. */
+	private static int getLocation (ObjectIntMap<String> locations, String name) {
+		int location = locations.get(name, -1);
+		if (location == -1) {
+			location = locations.size;
+			locations.put(name, location);
+		}
+		return location;
+	}
+
+	/** Forgets the bindings of a deleted object, which GL resets to zero. */
+	private static void forgetBinding (IntIntMap map, int handle) {
+		if (handle == 0) return;
+		for (IntIntMap.Entries entries = map.entries(); entries.hasNext();) {
+			if (entries.next().value == handle) entries.remove();
+		}
+	}
+
+	private void stateChange (boolean changed) {
+		frame.stateChanges++;
+		if (!changed) {
+			frame.redundantStateChanges++;
+			markRedundant();
+		}
+	}
+
+	private void objectBind (boolean changed) {
+		frame.objectBinds++;
+		if (!changed) {
+			frame.redundantObjectBinds++;
+			markRedundant();
+		}
+	}
+
+	private void draw (int vertices) {
+		frame.drawCalls++;
+		frame.verticesDrawn += vertices;
+	}
+
+	/** Counts of the calls made in one frame. */
+	public static class Report {
+		/** The number of GL calls. */
+		public int calls;
+		public int drawCalls;
+		/** The number of indices drawn by indexed draw calls, plus the number of vertices drawn by the others, multiplied by the
+		 * instance count for instanced draw calls. */
+		public long verticesDrawn;
+		/** The number of bytes passed to glBufferData and glBufferSubData. */
+		public long bytesUploaded;
+		/** Calls that set GL state, including enabling and disabling capabilities and setting the active texture unit. */
+		public int stateChanges, redundantStateChanges;
+		public int textureBinds, redundantTextureBinds;
+		/** Calls to glUseProgram. */
+		public int shaderSwitches, redundantShaderSwitches;
+		/** Bindings of buffers, framebuffers, renderbuffers and vertex arrays. */
+		public int objectBinds, redundantObjectBinds;
+		/** The number of calls to each GL method, by name. */
+		public final ObjectIntMap<String> callCounts = new ObjectIntMap<String>();
+		/** The number of redundant calls to each GL method, by name. */
+		public final ObjectIntMap<String> redundantCallCounts = new ObjectIntMap<String>();
+
+		/** @return The total number of redundant calls. */
+		public int getRedundantCalls () {
+			return redundantStateChanges + redundantTextureBinds + redundantShaderSwitches + redundantObjectBinds;
+		}
+
+		/** @return The number of calls to the named GL method. */
+		public int getCalls (String name) {
+			return callCounts.get(name, 0);
+		}
+
+		/** @return The number of redundant calls to the named GL method. */
+		public int getRedundantCalls (String name) {
+			return redundantCallCounts.get(name, 0);
+		}
+
+		public void set (Report other) {
+			calls = other.calls;
+			drawCalls = other.drawCalls;
+			verticesDrawn = other.verticesDrawn;
+			bytesUploaded = other.bytesUploaded;
+			stateChanges = other.stateChanges;
+			redundantStateChanges = other.redundantStateChanges;
+			textureBinds = other.textureBinds;
+			redundantTextureBinds = other.redundantTextureBinds;
+			shaderSwitches = other.shaderSwitches;
+			redundantShaderSwitches = other.redundantShaderSwitches;
+			objectBinds = other.objectBinds;
+			redundantObjectBinds = other.redundantObjectBinds;
+			callCounts.clear();
+			callCounts.putAll(other.callCounts);
+			redundantCallCounts.clear();
+			redundantCallCounts.putAll(other.redundantCallCounts);
+		}
+
+		public void clear () {
+			calls = drawCalls = 0;
+			verticesDrawn = bytesUploaded = 0;
+			stateChanges = redundantStateChanges = textureBinds = redundantTextureBinds = 0;
+			shaderSwitches = redundantShaderSwitches = objectBinds = redundantObjectBinds = 0;
+			callCounts.clear();
+			redundantCallCounts.clear();
+		}
+
+		public String toString () {
+			return "calls: " + calls + ", draw calls: " + drawCalls + ", vertices: " + verticesDrawn + ", bytes: " + bytesUploaded
+				+ ", state changes: " + stateChanges + " (redundant: " + redundantStateChanges + "), texture binds: " + textureBinds
+				+ " (redundant: " + redundantTextureBinds + "), shader switches: " + shaderSwitches + " (redundant: "
+				+ redundantShaderSwitches + "), object binds: " + objectBinds + " (redundant: " + redundantObjectBinds + ")";
+		}
+	}
+
+	public void glActiveTexture (int texture) {
+		call("glActiveTexture", texture - GL20.GL_TEXTURE0);
+		stateChange(change(ACTIVE_TEXTURE, texture));
+		activeUnit = texture - GL20.GL_TEXTURE0;
+		if (gl != null) gl.glActiveTexture(texture);
+	}
+
+	public void glBindTexture (int target, int texture) {
+		call("glBindTexture", texture);
+		frame.textureBinds++;
+		if (!changeBinding(textureBindings, activeUnit << 16 | target & 0xffff, texture)) {
+			frame.redundantTextureBinds++;
+			markRedundant();
+		}
+		if (gl != null) gl.glBindTexture(target, texture);
+	}
+
+	public void glBlendFunc (int sfactor, int dfactor) {
+		call("glBlendFunc");
+		stateChange(change(BLEND_SRC_RGB, sfactor) | change(BLEND_DST_RGB, dfactor) | change(BLEND_SRC_ALPHA, sfactor)
+			| change(BLEND_DST_ALPHA, dfactor));
+		if (gl != null) gl.glBlendFunc(sfactor, dfactor);
+	}
+
+	public void glClear (int mask) {
+		call("glClear");
+		if (gl != null) gl.glClear(mask);
+	}
+
+	public void glClearColor (float red, float green, float blue, float alpha) {
+		call("glClearColor");
+		if (gl != null) gl.glClearColor(red, green, blue, alpha);
+	}
+
+	public void glClearDepthf (float depth) {
+		call("glClearDepthf");
+		if (gl != null) gl.glClearDepthf(depth);
+	}
+
+	public void glClearStencil (int s) {
+		call("glClearStencil");
+		if (gl != null) gl.glClearStencil(s);
+	}
+
+	public void glColorMask (boolean red, boolean green, boolean blue, boolean alpha) {
+		call("glColorMask");
+		stateChange(change(COLOR_MASK, (red ? 1 : 0) | (green ? 2 : 0) | (blue ? 4 : 0) | (alpha ? 8 : 0)));
+		if (gl != null) gl.glColorMask(red, green, blue, alpha);
+	}
+
+	public void glCompressedTexImage2D (int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data) {
+		call("glCompressedTexImage2D");
+		if (gl != null) gl.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize, data);
+	}
+
+	public void glCompressedTexSubImage2D (int target, int level, int xoffset, int yoffset, int width, int height, int format, int imageSize, Buffer data) {
+		call("glCompressedTexSubImage2D");
+		if (gl != null) gl.glCompressedTexSubImage2D(target, level, xoffset, yoffset, width, height, format, imageSize, data);
+	}
+
+	public void glCopyTexImage2D (int target, int level, int internalformat, int x, int y, int width, int height, int border) {
+		call("glCopyTexImage2D");
+		if (gl != null) gl.glCopyTexImage2D(target, level, internalformat, x, y, width, height, border);
+	}
+
+	public void glCopyTexSubImage2D (int target, int level, int xoffset, int yoffset, int x, int y, int width, int height) {
+		call("glCopyTexSubImage2D");
+		if (gl != null) gl.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width, height);
+	}
+
+	public void glCullFace (int mode) {
+		call("glCullFace", mode);
+		stateChange(change(CULL_FACE, mode));
+		if (gl != null) gl.glCullFace(mode);
+	}
+
+	public void glDeleteTextures (int n, IntBuffer textures) {
+		call("glDeleteTextures");
+		for (int i = 0; i < n; i++)
+			forgetBinding(textureBindings, textures.get(textures.position() + i));
+		if (gl != null) gl.glDeleteTextures(n, textures);
+	}
+
+	public void glDeleteTexture (int texture) {
+		call("glDeleteTexture");
+		forgetBinding(textureBindings, texture);
+		if (gl != null) gl.glDeleteTexture(texture);
+	}
+
+	public void glDepthFunc (int func) {
+		call("glDepthFunc", func);
+		stateChange(change(DEPTH_FUNC, func));
+		if (gl != null) gl.glDepthFunc(func);
+	}
+
+	public void glDepthMask (boolean flag) {
+		call("glDepthMask");
+		stateChange(change(DEPTH_MASK, flag ? 1 : 0));
+		if (gl != null) gl.glDepthMask(flag);
+	}
+
+	public void glDepthRangef (float zNear, float zFar) {
+		call("glDepthRangef");
+		stateChange(change(DEPTH_RANGE_NEAR, Float.floatToIntBits(zNear)) | change(DEPTH_RANGE_FAR, Float.floatToIntBits(zFar)));
+		if (gl != null) gl.glDepthRangef(zNear, zFar);
+	}
+
+	public void glDisable (int cap) {
+		call("glDisable", cap);
+		stateChange(change(cap, 0));
+		if (gl != null) gl.glDisable(cap);
+	}
+
+	public void glDrawArrays (int mode, int first, int count) {
+		call("glDrawArrays", count);
+		draw(count);
+		if (gl != null) gl.glDrawArrays(mode, first, count);
+	}
+
+	public void glDrawElements (int mode, int count, int type, Buffer indices) {
+		call("glDrawElements", count);
+		draw(count);
+		if (gl != null) gl.glDrawElements(mode, count, type, indices);
+	}
+
+	public void glEnable (int cap) {
+		call("glEnable", cap);
+		stateChange(change(cap, 1));
+		if (gl != null) gl.glEnable(cap);
+	}
+
+	public void glFinish () {
+		call("glFinish");
+		if (gl != null) gl.glFinish();
+	}
+
+	public void glFlush () {
+		call("glFlush");
+		if (gl != null) gl.glFlush();
+	}
+
+	public void glFrontFace (int mode) {
+		call("glFrontFace", mode);
+		stateChange(change(FRONT_FACE, mode));
+		if (gl != null) gl.glFrontFace(mode);
+	}
+
+	public void glGenTextures (int n, IntBuffer textures) {
+		call("glGenTextures");
+		if (gl != null)
+			gl.glGenTextures(n, textures);
+		else
+			for (int i = 0; i < n; i++)
+				textures.put(textures.position() + i, ++lastHandle);
+	}
+
+	public int glGenTexture () {
+		call("glGenTexture");
+		return gl != null ? gl.glGenTexture() : ++lastHandle;
+	}
+
+	public int glGetError () {
+		call("glGetError");
+		return gl != null ? gl.glGetError() : 0;
+	}
+
+	public void glGetIntegerv (int pname, IntBuffer params) {
+		call("glGetIntegerv");
+		if (gl != null) gl.glGetIntegerv(pname, params);
+	}
+
+	public String glGetString (int name) {
+		call("glGetString");
+		return gl != null ? gl.glGetString(name) : "";
+	}
+
+	public void glHint (int target, int mode) {
+		call("glHint");
+		if (gl != null) gl.glHint(target, mode);
+	}
+
+	public void glLineWidth (float width) {
+		call("glLineWidth");
+		stateChange(change(LINE_WIDTH, Float.floatToIntBits(width)));
+		if (gl != null) gl.glLineWidth(width);
+	}
+
+	public void glPixelStorei (int pname, int param) {
+		call("glPixelStorei");
+		if (gl != null) gl.glPixelStorei(pname, param);
+	}
+
+	public void glPolygonOffset (float factor, float units) {
+		call("glPolygonOffset");
+		stateChange(change(POLYGON_OFFSET_FACTOR, Float.floatToIntBits(factor)) | change(POLYGON_OFFSET_UNITS, Float.floatToIntBits(units)));
+		if (gl != null) gl.glPolygonOffset(factor, units);
+	}
+
+	public void glReadPixels (int x, int y, int width, int height, int format, int type, Buffer pixels) {
+		call("glReadPixels");
+		if (gl != null) gl.glReadPixels(x, y, width, height, format, type, pixels);
+	}
+
+	public void glScissor (int x, int y, int width, int height) {
+		call("glScissor");
+		stateChange(change(SCISSOR_X, x) | change(SCISSOR_Y, y) | change(SCISSOR_WIDTH, width) | change(SCISSOR_HEIGHT, height));
+		if (gl != null) gl.glScissor(x, y, width, height);
+	}
+
+	public void glStencilFunc (int func, int ref, int mask) {
+		call("glStencilFunc");
+		stateChange(change(STENCIL_FUNC, func) | change(STENCIL_REF, ref) | change(STENCIL_VALUE_MASK, mask));
+		if (gl != null) gl.glStencilFunc(func, ref, mask);
+	}
+
+	public void glStencilMask (int mask) {
+		call("glStencilMask");
+		stateChange(change(STENCIL_WRITE_MASK, mask));
+		if (gl != null) gl.glStencilMask(mask);
+	}
+
+	public void glStencilOp (int fail, int zfail, int zpass) {
+		call("glStencilOp");
+		stateChange(change(STENCIL_FAIL, fail) | change(STENCIL_DEPTH_FAIL, zfail) | change(STENCIL_PASS, zpass));
+		if (gl != null) gl.glStencilOp(fail, zfail, zpass);
+	}
+
+	public void glTexImage2D (int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+		call("glTexImage2D");
+		if (gl != null) gl.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+	}
+
+	public void glTexParameterf (int target, int pname, float param) {
+		call("glTexParameterf");
+		if (gl != null) gl.glTexParameterf(target, pname, param);
+	}
+
+	public void glTexSubImage2D (int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels) {
+		call("glTexSubImage2D");
+		if (gl != null) gl.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+	}
+
+	public void glViewport (int x, int y, int width, int height) {
+		call("glViewport");
+		stateChange(change(VIEWPORT_X, x) | change(VIEWPORT_Y, y) | change(VIEWPORT_WIDTH, width) | change(VIEWPORT_HEIGHT, height));
+		if (gl != null) gl.glViewport(x, y, width, height);
+	}
+
+	public void glAttachShader (int program, int shader) {
+		call("glAttachShader");
+		if (gl != null) gl.glAttachShader(program, shader);
+	}
+
+	public void glBindAttribLocation (int program, int index, String name) {
+		call("glBindAttribLocation");
+		if (gl != null) gl.glBindAttribLocation(program, index, name);
+	}
+
+	public void glBindBuffer (int target, int buffer) {
+		call("glBindBuffer", buffer);
+		objectBind(changeBinding(bufferBindings, target, buffer));
+		if (gl != null) gl.glBindBuffer(target, buffer);
+	}
+
+	public void glBindFramebuffer (int target, int framebuffer) {
+		call("glBindFramebuffer", framebuffer);
+		objectBind(changeBinding(framebufferBindings, target, framebuffer));
+		if (gl != null) gl.glBindFramebuffer(target, framebuffer);
+	}
+
+	public void glBindRenderbuffer (int target, int renderbuffer) {
+		call("glBindRenderbuffer", renderbuffer);
+		objectBind(changeBinding(renderbufferBindings, target, renderbuffer));
+		if (gl != null) gl.glBindRenderbuffer(target, renderbuffer);
+	}
+
+	public void glBlendColor (float red, float green, float blue, float alpha) {
+		call("glBlendColor");
+		if (gl != null) gl.glBlendColor(red, green, blue, alpha);
+	}
+
+	public void glBlendEquation (int mode) {
+		call("glBlendEquation");
+		stateChange(change(BLEND_EQUATION_RGB, mode) | change(BLEND_EQUATION_ALPHA, mode));
+		if (gl != null) gl.glBlendEquation(mode);
+	}
+
+	public void glBlendEquationSeparate (int modeRGB, int modeAlpha) {
+		call("glBlendEquationSeparate");
+		stateChange(change(BLEND_EQUATION_RGB, modeRGB) | change(BLEND_EQUATION_ALPHA, modeAlpha));
+		if (gl != null) gl.glBlendEquationSeparate(modeRGB, modeAlpha);
+	}
+
+	public void glBlendFuncSeparate (int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+		call("glBlendFuncSeparate");
+		stateChange(change(BLEND_SRC_RGB, srcRGB) | change(BLEND_DST_RGB, dstRGB) | change(BLEND_SRC_ALPHA, srcAlpha)
+			| change(BLEND_DST_ALPHA, dstAlpha));
+		if (gl != null) gl.glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
+	}
+
+	public void glBufferData (int target, int size, Buffer data, int usage) {
+		call("glBufferData", size);
+		frame.bytesUploaded += size;
+		if (gl != null) gl.glBufferData(target, size, data, usage);
+	}
+
+	public void glBufferSubData (int target, int offset, int size, Buffer data) {
+		call("glBufferSubData", size);
+		frame.bytesUploaded += size;
+		if (gl != null) gl.glBufferSubData(target, offset, size, data);
+	}
+
+	public int glCheckFramebufferStatus (int target) {
+		call("glCheckFramebufferStatus");
+		return gl != null ? gl.glCheckFramebufferStatus(target) : GL20.GL_FRAMEBUFFER_COMPLETE;
+	}
+
+	public void glCompileShader (int shader) {
+		call("glCompileShader");
+		if (gl != null) gl.glCompileShader(shader);
+	}
+
+	public int glCreateProgram () {
+		call("glCreateProgram");
+		return gl != null ? gl.glCreateProgram() : ++lastHandle;
+	}
+
+	public int glCreateShader (int type) {
+		call("glCreateShader");
+		return gl != null ? gl.glCreateShader(type) : ++lastHandle;
+	}
+
+	public void glDeleteBuffer (int buffer) {
+		call("glDeleteBuffer");
+		forgetBinding(bufferBindings, buffer);
+		if (gl != null) gl.glDeleteBuffer(buffer);
+	}
+
+	public void glDeleteBuffers (int n, IntBuffer buffers) {
+		call("glDeleteBuffers");
+		for (int i = 0; i < n; i++)
+			forgetBinding(bufferBindings, buffers.get(buffers.position() + i));
+		if (gl != null) gl.glDeleteBuffers(n, buffers);
+	}
+
+	public void glDeleteFramebuffer (int framebuffer) {
+		call("glDeleteFramebuffer");
+		forgetBinding(framebufferBindings, framebuffer);
+		if (gl != null) gl.glDeleteFramebuffer(framebuffer);
+	}
+
+	public void glDeleteFramebuffers (int n, IntBuffer framebuffers) {
+		call("glDeleteFramebuffers");
+		for (int i = 0; i < n; i++)
+			forgetBinding(framebufferBindings, framebuffers.get(framebuffers.position() + i));
+		if (gl != null) gl.glDeleteFramebuffers(n, framebuffers);
+	}
+
+	public void glDeleteProgram (int program) {
+		call("glDeleteProgram");
+		forgetBinding(programBinding, program);
+		if (gl != null) gl.glDeleteProgram(program);
+	}
+
+	public void glDeleteRenderbuffer (int renderbuffer) {
+		call("glDeleteRenderbuffer");
+		forgetBinding(renderbufferBindings, renderbuffer);
+		if (gl != null) gl.glDeleteRenderbuffer(renderbuffer);
+	}
+
+	public void glDeleteRenderbuffers (int n, IntBuffer renderbuffers) {
+		call("glDeleteRenderbuffers");
+		for (int i = 0; i < n; i++)
+			forgetBinding(renderbufferBindings, renderbuffers.get(renderbuffers.position() + i));
+		if (gl != null) gl.glDeleteRenderbuffers(n, renderbuffers);
+	}
+
+	public void glDeleteShader (int shader) {
+		call("glDeleteShader");
+		if (gl != null) gl.glDeleteShader(shader);
+	}
+
+	public void glDetachShader (int program, int shader) {
+		call("glDetachShader");
+		if (gl != null) gl.glDetachShader(program, shader);
+	}
+
+	public void glDisableVertexAttribArray (int index) {
+		call("glDisableVertexAttribArray");
+		if (gl != null) gl.glDisableVertexAttribArray(index);
+	}
+
+	public void glDrawElements (int mode, int count, int type, int indices) {
+		call("glDrawElements", count);
+		draw(count);
+		if (gl != null) gl.glDrawElements(mode, count, type, indices);
+	}
+
+	public void glEnableVertexAttribArray (int index) {
+		call("glEnableVertexAttribArray");
+		if (gl != null) gl.glEnableVertexAttribArray(index);
+	}
+
+	public void glFramebufferRenderbuffer (int target, int attachment, int renderbuffertarget, int renderbuffer) {
+		call("glFramebufferRenderbuffer");
+		if (gl != null) gl.glFramebufferRenderbuffer(target, attachment, renderbuffertarget, renderbuffer);
+	}
+
+	public void glFramebufferTexture2D (int target, int attachment, int textarget, int texture, int level) {
+		call("glFramebufferTexture2D");
+		if (gl != null) gl.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+	}
+
+	public int glGenBuffer () {
+		call("glGenBuffer");
+		return gl != null ? gl.glGenBuffer() : ++lastHandle;
+	}
+
+	public void glGenBuffers (int n, IntBuffer buffers) {
+		call("glGenBuffers");
+		if (gl != null)
+			gl.glGenBuffers(n, buffers);
+		else
+			for (int i = 0; i < n; i++)
+				buffers.put(buffers.position() + i, ++lastHandle);
+	}
+
+	public void glGenerateMipmap (int target) {
+		call("glGenerateMipmap");
+		if (gl != null) gl.glGenerateMipmap(target);
+	}
+
+	public int glGenFramebuffer () {
+		call("glGenFramebuffer");
+		return gl != null ? gl.glGenFramebuffer() : ++lastHandle;
+	}
+
+	public void glGenFramebuffers (int n, IntBuffer framebuffers) {
+		call("glGenFramebuffers");
+		if (gl != null)
+			gl.glGenFramebuffers(n, framebuffers);
+		else
+			for (int i = 0; i < n; i++)
+				framebuffers.put(framebuffers.position() + i, ++lastHandle);
+	}
+
+	public int glGenRenderbuffer () {
+		call("glGenRenderbuffer");
+		return gl != null ? gl.glGenRenderbuffer() : ++lastHandle;
+	}
+
+	public void glGenRenderbuffers (int n, IntBuffer renderbuffers) {
+		call("glGenRenderbuffers");
+		if (gl != null)
+			gl.glGenRenderbuffers(n, renderbuffers);
+		else
+			for (int i = 0; i < n; i++)
+				renderbuffers.put(renderbuffers.position() + i, ++lastHandle);
+	}
+
+	public String glGetActiveAttrib (int program, int index, IntBuffer size, Buffer type) {
+		call("glGetActiveAttrib");
+		return gl != null ? gl.glGetActiveAttrib(program, index, size, type) : "";
+	}
+
+	public String glGetActiveUniform (int program, int index, IntBuffer size, Buffer type) {
+		call("glGetActiveUniform");
+		return gl != null ? gl.glGetActiveUniform(program, index, size, type) : "";
+	}
+
+	public void glGetAttachedShaders (int program, int maxcount, Buffer count, IntBuffer shaders) {
+		call("glGetAttachedShaders");
+		if (gl != null) gl.glGetAttachedShaders(program, maxcount, count, shaders);
+	}
+
+	public int glGetAttribLocation (int program, String name) {
+		call("glGetAttribLocation");
+		return gl != null ? gl.glGetAttribLocation(program, name) : getLocation(attributeLocations, name);
+	}
+
+	public void glGetBooleanv (int pname, Buffer params) {
+		call("glGetBooleanv");
+		if (gl != null) gl.glGetBooleanv(pname, params);
+	}
+
+	public void glGetBufferParameteriv (int target, int pname, IntBuffer params) {
+		call("glGetBufferParameteriv");
+		if (gl != null) gl.glGetBufferParameteriv(target, pname, params);
+	}
+
+	public void glGetFloatv (int pname, FloatBuffer params) {
+		call("glGetFloatv");
+		if (gl != null) gl.glGetFloatv(pname, params);
+	}
+
+	public void glGetFramebufferAttachmentParameteriv (int target, int attachment, int pname, IntBuffer params) {
+		call("glGetFramebufferAttachmentParameteriv");
+		if (gl != null) gl.glGetFramebufferAttachmentParameteriv(target, attachment, pname, params);
+	}
+
+	public void glGetProgramiv (int program, int pname, IntBuffer params) {
+		call("glGetProgramiv");
+		if (gl != null)
+			gl.glGetProgramiv(program, pname, params);
+		else // report successful compilation and no active variables
+			params.put(params.position(), pname == GL20.GL_LINK_STATUS ? GL20.GL_TRUE : 0);
+	}
+
+	public String glGetProgramInfoLog (int program) {
+		call("glGetProgramInfoLog");
+		return gl != null ? gl.glGetProgramInfoLog(program) : "";
+	}
+
+	public void glGetRenderbufferParameteriv (int target, int pname, IntBuffer params) {
+		call("glGetRenderbufferParameteriv");
+		if (gl != null) gl.glGetRenderbufferParameteriv(target, pname, params);
+	}
+
+	public void glGetShaderiv (int shader, int pname, IntBuffer params) {
+		call("glGetShaderiv");
+		if (gl != null)
+			gl.glGetShaderiv(shader, pname, params);
+		else // report successful compilation and no active variables
+			params.put(params.position(), pname == GL20.GL_COMPILE_STATUS ? GL20.GL_TRUE : 0);
+	}
+
+	public String glGetShaderInfoLog (int shader) {
+		call("glGetShaderInfoLog");
+		return gl != null ? gl.glGetShaderInfoLog(shader) : "";
+	}
+
+	public void glGetShaderPrecisionFormat (int shadertype, int precisiontype, IntBuffer range, IntBuffer precision) {
+		call("glGetShaderPrecisionFormat");
+		if (gl != null) gl.glGetShaderPrecisionFormat(shadertype, precisiontype, range, precision);
+	}
+
+	public void glGetTexParameterfv (int target, int pname, FloatBuffer params) {
+		call("glGetTexParameterfv");
+		if (gl != null) gl.glGetTexParameterfv(target, pname, params);
+	}
+
+	public void glGetTexParameteriv (int target, int pname, IntBuffer params) {
+		call("glGetTexParameteriv");
+		if (gl != null) gl.glGetTexParameteriv(target, pname, params);
+	}
+
+	public void glGetUniformfv (int program, int location, FloatBuffer params) {
+		call("glGetUniformfv");
+		if (gl != null) gl.glGetUniformfv(program, location, params);
+	}
+
+	public void glGetUniformiv (int program, int location, IntBuffer params) {
+		call("glGetUniformiv");
+		if (gl != null) gl.glGetUniformiv(program, location, params);
+	}
+
+	public int glGetUniformLocation (int program, String name) {
+		call("glGetUniformLocation");
+		return gl != null ? gl.glGetUniformLocation(program, name) : getLocation(uniformLocations, name);
+	}
+
+	public void glGetVertexAttribfv (int index, int pname, FloatBuffer params) {
+		call("glGetVertexAttribfv");
+		if (gl != null) gl.glGetVertexAttribfv(index, pname, params);
+	}
+
+	public void glGetVertexAttribiv (int index, int pname, IntBuffer params) {
+		call("glGetVertexAttribiv");
+		if (gl != null) gl.glGetVertexAttribiv(index, pname, params);
+	}
+
+	public void glGetVertexAttribPointerv (int index, int pname, Buffer pointer) {
+		call("glGetVertexAttribPointerv");
+		if (gl != null) gl.glGetVertexAttribPointerv(index, pname, pointer);
+	}
+
+	public boolean glIsBuffer (int buffer) {
+		call("glIsBuffer");
+		return gl != null ? gl.glIsBuffer(buffer) : false;
+	}
+
+	public boolean glIsEnabled (int cap) {
+		call("glIsEnabled");
+		if (gl == null) return state.get(cap, 0) == 1;
+		return gl.glIsEnabled(cap);
+	}
+
+	public boolean glIsFramebuffer (int framebuffer) {
+		call("glIsFramebuffer");
+		return gl != null ? gl.glIsFramebuffer(framebuffer) : false;
+	}
+
+	public boolean glIsProgram (int program) {
+		call("glIsProgram");
+		return gl != null ? gl.glIsProgram(program) : false;
+	}
+
+	public boolean glIsRenderbuffer (int renderbuffer) {
+		call("glIsRenderbuffer");
+		return gl != null ? gl.glIsRenderbuffer(renderbuffer) : false;
+	}
+
+	public boolean glIsShader (int shader) {
+		call("glIsShader");
+		return gl != null ? gl.glIsShader(shader) : false;
+	}
+
+	public boolean glIsTexture (int texture) {
+		call("glIsTexture");
+		return gl != null ? gl.glIsTexture(texture) : false;
+	}
+
+	public void glLinkProgram (int program) {
+		call("glLinkProgram");
+		if (gl != null) gl.glLinkProgram(program);
+	}
+
+	public void glReleaseShaderCompiler () {
+		call("glReleaseShaderCompiler");
+		if (gl != null) gl.glReleaseShaderCompiler();
+	}
+
+	public void glRenderbufferStorage (int target, int internalformat, int width, int height) {
+		call("glRenderbufferStorage");
+		if (gl != null) gl.glRenderbufferStorage(target, internalformat, width, height);
+	}
+
+	public void glSampleCoverage (float value, boolean invert) {
+		call("glSampleCoverage");
+		if (gl != null) gl.glSampleCoverage(value, invert);
+	}
+
+	public void glShaderBinary (int n, IntBuffer shaders, int binaryformat, Buffer binary, int length) {
+		call("glShaderBinary");
+		if (gl != null) gl.glShaderBinary(n, shaders, binaryformat, binary, length);
+	}
+
+	public void glShaderSource (int shader, String string) {
+		call("glShaderSource");
+		if (gl != null) gl.glShaderSource(shader, string);
+	}
+
+	public void glStencilFuncSeparate (int face, int func, int ref, int mask) {
+		call("glStencilFuncSeparate");
+		forget(STENCIL_FUNC, STENCIL_REF, STENCIL_VALUE_MASK);
+		stateChange(true);
+		if (gl != null) gl.glStencilFuncSeparate(face, func, ref, mask);
+	}
+
+	public void glStencilMaskSeparate (int face, int mask) {
+		call("glStencilMaskSeparate");
+		forget(STENCIL_WRITE_MASK);
+		stateChange(true);
+		if (gl != null) gl.glStencilMaskSeparate(face, mask);
+	}
+
+	public void glStencilOpSeparate (int face, int fail, int zfail, int zpass) {
+		call("glStencilOpSeparate");
+		forget(STENCIL_FAIL, STENCIL_DEPTH_FAIL, STENCIL_PASS);
+		stateChange(true);
+		if (gl != null) gl.glStencilOpSeparate(face, fail, zfail, zpass);
+	}
+
+	public void glTexParameterfv (int target, int pname, FloatBuffer params) {
+		call("glTexParameterfv");
+		if (gl != null) gl.glTexParameterfv(target, pname, params);
+	}
+
+	public void glTexParameteri (int target, int pname, int param) {
+		call("glTexParameteri");
+		if (gl != null) gl.glTexParameteri(target, pname, param);
+	}
+
+	public void glTexParameteriv (int target, int pname, IntBuffer params) {
+		call("glTexParameteriv");
+		if (gl != null) gl.glTexParameteriv(target, pname, params);
+	}
+
+	public void glUniform1f (int location, float x) {
+		call("glUniform1f");
+		if (gl != null) gl.glUniform1f(location, x);
+	}
+
+	public void glUniform1fv (int location, int count, FloatBuffer v) {
+		call("glUniform1fv");
+		if (gl != null) gl.glUniform1fv(location, count, v);
+	}
+
+	public void glUniform1fv (int location, int count, float[] v, int offset) {
+		call("glUniform1fv");
+		if (gl != null) gl.glUniform1fv(location, count, v, offset);
+	}
+
+	public void glUniform1i (int location, int x) {
+		call("glUniform1i");
+		if (gl != null) gl.glUniform1i(location, x);
+	}
+
+	public void glUniform1iv (int location, int count, IntBuffer v) {
+		call("glUniform1iv");
+		if (gl != null) gl.glUniform1iv(location, count, v);
+	}
+
+	public void glUniform1iv (int location, int count, int[] v, int offset) {
+		call("glUniform1iv");
+		if (gl != null) gl.glUniform1iv(location, count, v, offset);
+	}
+
+	public void glUniform2f (int location, float x, float y) {
+		call("glUniform2f");
+		if (gl != null) gl.glUniform2f(location, x, y);
+	}
+
+	public void glUniform2fv (int location, int count, FloatBuffer v) {
+		call("glUniform2fv");
+		if (gl != null) gl.glUniform2fv(location, count, v);
+	}
+
+	public void glUniform2fv (int location, int count, float[] v, int offset) {
+		call("glUniform2fv");
+		if (gl != null) gl.glUniform2fv(location, count, v, offset);
+	}
+
+	public void glUniform2i (int location, int x, int y) {
+		call("glUniform2i");
+		if (gl != null) gl.glUniform2i(location, x, y);
+	}
+
+	public void glUniform2iv (int location, int count, IntBuffer v) {
+		call("glUniform2iv");
+		if (gl != null) gl.glUniform2iv(location, count, v);
+	}
+
+	public void glUniform2iv (int location, int count, int[] v, int offset) {
+		call("glUniform2iv");
+		if (gl != null) gl.glUniform2iv(location, count, v, offset);
+	}
+
+	public void glUniform3f (int location, float x, float y, float z) {
+		call("glUniform3f");
+		if (gl != null) gl.glUniform3f(location, x, y, z);
+	}
+
+	public void glUniform3fv (int location, int count, FloatBuffer v) {
+		call("glUniform3fv");
+		if (gl != null) gl.glUniform3fv(location, count, v);
+	}
+
+	public void glUniform3fv (int location, int count, float[] v, int offset) {
+		call("glUniform3fv");
+		if (gl != null) gl.glUniform3fv(location, count, v, offset);
+	}
+
+	public void glUniform3i (int location, int x, int y, int z) {
+		call("glUniform3i");
+		if (gl != null) gl.glUniform3i(location, x, y, z);
+	}
+
+	public void glUniform3iv (int location, int count, IntBuffer v) {
+		call("glUniform3iv");
+		if (gl != null) gl.glUniform3iv(location, count, v);
+	}
+
+	public void glUniform3iv (int location, int count, int[] v, int offset) {
+		call("glUniform3iv");
+		if (gl != null) gl.glUniform3iv(location, count, v, offset);
+	}
+
+	public void glUniform4f (int location, float x, float y, float z, float w) {
+		call("glUniform4f");
+		if (gl != null) gl.glUniform4f(location, x, y, z, w);
+	}
+
+	public void glUniform4fv (int location, int count, FloatBuffer v) {
+		call("glUniform4fv");
+		if (gl != null) gl.glUniform4fv(location, count, v);
+	}
+
+	public void glUniform4fv (int location, int count, float[] v, int offset) {
+		call("glUniform4fv");
+		if (gl != null) gl.glUniform4fv(location, count, v, offset);
+	}
+
+	public void glUniform4i (int location, int x, int y, int z, int w) {
+		call("glUniform4i");
+		if (gl != null) gl.glUniform4i(location, x, y, z, w);
+	}
+
+	public void glUniform4iv (int location, int count, IntBuffer v) {
+		call("glUniform4iv");
+		if (gl != null) gl.glUniform4iv(location, count, v);
+	}
+
+	public void glUniform4iv (int location, int count, int[] v, int offset) {
+		call("glUniform4iv");
+		if (gl != null) gl.glUniform4iv(location, count, v, offset);
+	}
+
+	public void glUniformMatrix2fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix2fv");
+		if (gl != null) gl.glUniformMatrix2fv(location, count, transpose, value);
+	}
+
+	public void glUniformMatrix2fv (int location, int count, boolean transpose, float[] value, int offset) {
+		call("glUniformMatrix2fv");
+		if (gl != null) gl.glUniformMatrix2fv(location, count, transpose, value, offset);
+	}
+
+	public void glUniformMatrix3fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix3fv");
+		if (gl != null) gl.glUniformMatrix3fv(location, count, transpose, value);
+	}
+
+	public void glUniformMatrix3fv (int location, int count, boolean transpose, float[] value, int offset) {
+		call("glUniformMatrix3fv");
+		if (gl != null) gl.glUniformMatrix3fv(location, count, transpose, value, offset);
+	}
+
+	public void glUniformMatrix4fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix4fv");
+		if (gl != null) gl.glUniformMatrix4fv(location, count, transpose, value);
+	}
+
+	public void glUniformMatrix4fv (int location, int count, boolean transpose, float[] value, int offset) {
+		call("glUniformMatrix4fv");
+		if (gl != null) gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	public void glUseProgram (int program) {
+		call("glUseProgram", program);
+		frame.shaderSwitches++;
+		if (!changeBinding(programBinding, CURRENT, program)) {
+			frame.redundantShaderSwitches++;
+			markRedundant();
+		}
+		if (gl != null) gl.glUseProgram(program);
+	}
+
+	public void glValidateProgram (int program) {
+		call("glValidateProgram");
+		if (gl != null) gl.glValidateProgram(program);
+	}
+
+	public void glVertexAttrib1f (int indx, float x) {
+		call("glVertexAttrib1f");
+		if (gl != null) gl.glVertexAttrib1f(indx, x);
+	}
+
+	public void glVertexAttrib1fv (int indx, FloatBuffer values) {
+		call("glVertexAttrib1fv");
+		if (gl != null) gl.glVertexAttrib1fv(indx, values);
+	}
+
+	public void glVertexAttrib2f (int indx, float x, float y) {
+		call("glVertexAttrib2f");
+		if (gl != null) gl.glVertexAttrib2f(indx, x, y);
+	}
+
+	public void glVertexAttrib2fv (int indx, FloatBuffer values) {
+		call("glVertexAttrib2fv");
+		if (gl != null) gl.glVertexAttrib2fv(indx, values);
+	}
+
+	public void glVertexAttrib3f (int indx, float x, float y, float z) {
+		call("glVertexAttrib3f");
+		if (gl != null) gl.glVertexAttrib3f(indx, x, y, z);
+	}
+
+	public void glVertexAttrib3fv (int indx, FloatBuffer values) {
+		call("glVertexAttrib3fv");
+		if (gl != null) gl.glVertexAttrib3fv(indx, values);
+	}
+
+	public void glVertexAttrib4f (int indx, float x, float y, float z, float w) {
+		call("glVertexAttrib4f");
+		if (gl != null) gl.glVertexAttrib4f(indx, x, y, z, w);
+	}
+
+	public void glVertexAttrib4fv (int indx, FloatBuffer values) {
+		call("glVertexAttrib4fv");
+		if (gl != null) gl.glVertexAttrib4fv(indx, values);
+	}
+
+	@Deprecated
+	public void glVertexAttribPointer (int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+		call("glVertexAttribPointer");
+		if (gl != null) gl.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+	}
+
+	public void glVertexAttribPointer (int indx, int size, int type, boolean normalized, int stride, int ptr) {
+		call("glVertexAttribPointer");
+		if (gl != null) gl.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+	}
+
+	public void glReadBuffer (int mode) {
+		call("glReadBuffer");
+		if (gl30 != null) gl30.glReadBuffer(mode);
+	}
+
+	public void glDrawRangeElements (int mode, int start, int end, int count, int type, Buffer indices) {
+		call("glDrawRangeElements", count);
+		draw(count);
+		if (gl30 != null) gl30.glDrawRangeElements(mode, start, end, count, type, indices);
+	}
+
+	public void glDrawRangeElements (int mode, int start, int end, int count, int type, int offset) {
+		call("glDrawRangeElements", count);
+		draw(count);
+		if (gl30 != null) gl30.glDrawRangeElements(mode, start, end, count, type, offset);
+	}
+
+	public void glTexImage3D (int target, int level, int internalformat, int width, int height, int depth, int border, int format, int type, Buffer pixels) {
+		call("glTexImage3D");
+		if (gl30 != null) gl30.glTexImage3D(target, level, internalformat, width, height, depth, border, format, type, pixels);
+	}
+
+	public void glTexImage3D (int target, int level, int internalformat, int width, int height, int depth, int border, int format, int type, int offset) {
+		call("glTexImage3D");
+		if (gl30 != null) gl30.glTexImage3D(target, level, internalformat, width, height, depth, border, format, type, offset);
+	}
+
+	public void glTexSubImage3D (int target, int level, int xoffset, int yoffset, int zoffset, int width, int height, int depth, int format, int type, Buffer pixels) {
+		call("glTexSubImage3D");
+		if (gl30 != null) gl30.glTexSubImage3D(target, level, xoffset, yoffset, zoffset, width, height, depth, format, type, pixels);
+	}
+
+	public void glTexSubImage3D (int target, int level, int xoffset, int yoffset, int zoffset, int width, int height, int depth, int format, int type, int offset) {
+		call("glTexSubImage3D");
+		if (gl30 != null) gl30.glTexSubImage3D(target, level, xoffset, yoffset, zoffset, width, height, depth, format, type, offset);
+	}
+
+	public void glCopyTexSubImage3D (int target, int level, int xoffset, int yoffset, int zoffset, int x, int y, int width, int height) {
+		call("glCopyTexSubImage3D");
+		if (gl30 != null) gl30.glCopyTexSubImage3D(target, level, xoffset, yoffset, zoffset, x, y, width, height);
+	}
+
+	public void glGenQueries (int n, int[] ids, int offset) {
+		call("glGenQueries");
+		if (gl30 != null)
+			gl30.glGenQueries(n, ids, offset);
+		else
+			for (int i = 0; i < n; i++)
+				ids[offset + i] = ++lastHandle;
+	}
+
+	public void glGenQueries (int n, IntBuffer ids) {
+		call("glGenQueries");
+		if (gl30 != null)
+			gl30.glGenQueries(n, ids);
+		else
+			for (int i = 0; i < n; i++)
+				ids.put(ids.position() + i, ++lastHandle);
+	}
+
+	public void glDeleteQueries (int n, int[] ids, int offset) {
+		call("glDeleteQueries");
+		if (gl30 != null) gl30.glDeleteQueries(n, ids, offset);
+	}
+
+	public void glDeleteQueries (int n, IntBuffer ids) {
+		call("glDeleteQueries");
+		if (gl30 != null) gl30.glDeleteQueries(n, ids);
+	}
+
+	public boolean glIsQuery (int id) {
+		call("glIsQuery");
+		return gl30 != null ? gl30.glIsQuery(id) : false;
+	}
+
+	public void glBeginQuery (int target, int id) {
+		call("glBeginQuery");
+		if (gl30 != null) gl30.glBeginQuery(target, id);
+	}
+
+	public void glEndQuery (int target) {
+		call("glEndQuery");
+		if (gl30 != null) gl30.glEndQuery(target);
+	}
+
+	public void glGetQueryiv (int target, int pname, IntBuffer params) {
+		call("glGetQueryiv");
+		if (gl30 != null) gl30.glGetQueryiv(target, pname, params);
+	}
+
+	public void glGetQueryObjectuiv (int id, int pname, IntBuffer params) {
+		call("glGetQueryObjectuiv");
+		if (gl30 != null) gl30.glGetQueryObjectuiv(id, pname, params);
+	}
+
+	public boolean glUnmapBuffer (int target) {
+		call("glUnmapBuffer");
+		return gl30 != null ? gl30.glUnmapBuffer(target) : false;
+	}
+
+	public Buffer glGetBufferPointerv (int target, int pname) {
+		call("glGetBufferPointerv");
+		return gl30 != null ? gl30.glGetBufferPointerv(target, pname) : null;
+	}
+
+	public void glDrawBuffers (int n, IntBuffer bufs) {
+		call("glDrawBuffers");
+		if (gl30 != null) gl30.glDrawBuffers(n, bufs);
+	}
+
+	public void glUniformMatrix2x3fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix2x3fv");
+		if (gl30 != null) gl30.glUniformMatrix2x3fv(location, count, transpose, value);
+	}
+
+	public void glUniformMatrix3x2fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix3x2fv");
+		if (gl30 != null) gl30.glUniformMatrix3x2fv(location, count, transpose, value);
+	}
+
+	public void glUniformMatrix2x4fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix2x4fv");
+		if (gl30 != null) gl30.glUniformMatrix2x4fv(location, count, transpose, value);
+	}
+
+	public void glUniformMatrix4x2fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix4x2fv");
+		if (gl30 != null) gl30.glUniformMatrix4x2fv(location, count, transpose, value);
+	}
+
+	public void glUniformMatrix3x4fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix3x4fv");
+		if (gl30 != null) gl30.glUniformMatrix3x4fv(location, count, transpose, value);
+	}
+
+	public void glUniformMatrix4x3fv (int location, int count, boolean transpose, FloatBuffer value) {
+		call("glUniformMatrix4x3fv");
+		if (gl30 != null) gl30.glUniformMatrix4x3fv(location, count, transpose, value);
+	}
+
+	public void glBlitFramebuffer (int srcX0, int srcY0, int srcX1, int srcY1, int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter) {
+		call("glBlitFramebuffer");
+		if (gl30 != null) gl30.glBlitFramebuffer(srcX0, srcY0, srcX1, srcY1, dstX0, dstY0, dstX1, dstY1, mask, filter);
+	}
+
+	public void glRenderbufferStorageMultisample (int target, int samples, int internalformat, int width, int height) {
+		call("glRenderbufferStorageMultisample");
+		if (gl30 != null) gl30.glRenderbufferStorageMultisample(target, samples, internalformat, width, height);
+	}
+
+	public void glFramebufferTextureLayer (int target, int attachment, int texture, int level, int layer) {
+		call("glFramebufferTextureLayer");
+		if (gl30 != null) gl30.glFramebufferTextureLayer(target, attachment, texture, level, layer);
+	}
+
+	public void glFlushMappedBufferRange (int target, int offset, int length) {
+		call("glFlushMappedBufferRange");
+		if (gl30 != null) gl30.glFlushMappedBufferRange(target, offset, length);
+	}
+
+	public void glBindVertexArray (int array) {
+		call("glBindVertexArray", array);
+		objectBind(changeBinding(vertexArrayBinding, CURRENT, array));
+		bufferBindings.remove(GL20.GL_ELEMENT_ARRAY_BUFFER, 0); // part of the vertex array state
+		if (gl30 != null) gl30.glBindVertexArray(array);
+	}
+
+	public void glDeleteVertexArrays (int n, int[] arrays, int offset) {
+		call("glDeleteVertexArrays");
+		for (int i = 0; i < n; i++)
+			forgetBinding(vertexArrayBinding, arrays[offset + i]);
+		if (gl30 != null) gl30.glDeleteVertexArrays(n, arrays, offset);
+	}
+
+	public void glDeleteVertexArrays (int n, IntBuffer arrays) {
+		call("glDeleteVertexArrays");
+		for (int i = 0; i < n; i++)
+			forgetBinding(vertexArrayBinding, arrays.get(arrays.position() + i));
+		if (gl30 != null) gl30.glDeleteVertexArrays(n, arrays);
+	}
+
+	public void glGenVertexArrays (int n, int[] arrays, int offset) {
+		call("glGenVertexArrays");
+		if (gl30 != null)
+			gl30.glGenVertexArrays(n, arrays, offset);
+		else
+			for (int i = 0; i < n; i++)
+				arrays[offset + i] = ++lastHandle;
+	}
+
+	public void glGenVertexArrays (int n, IntBuffer arrays) {
+		call("glGenVertexArrays");
+		if (gl30 != null)
+			gl30.glGenVertexArrays(n, arrays);
+		else
+			for (int i = 0; i < n; i++)
+				arrays.put(arrays.position() + i, ++lastHandle);
+	}
+
+	public boolean glIsVertexArray (int array) {
+		call("glIsVertexArray");
+		return gl30 != null ? gl30.glIsVertexArray(array) : false;
+	}
+
+	public void glBeginTransformFeedback (int primitiveMode) {
+		call("glBeginTransformFeedback");
+		if (gl30 != null) gl30.glBeginTransformFeedback(primitiveMode);
+	}
+
+	public void glEndTransformFeedback () {
+		call("glEndTransformFeedback");
+		if (gl30 != null) gl30.glEndTransformFeedback();
+	}
+
+	public void glBindBufferRange (int target, int index, int buffer, int offset, int size) {
+		call("glBindBufferRange");
+		if (gl30 != null) gl30.glBindBufferRange(target, index, buffer, offset, size);
+	}
+
+	public void glBindBufferBase (int target, int index, int buffer) {
+		call("glBindBufferBase");
+		if (gl30 != null) gl30.glBindBufferBase(target, index, buffer);
+	}
+
+	public void glTransformFeedbackVaryings (int program, String[] varyings, int bufferMode) {
+		call("glTransformFeedbackVaryings");
+		if (gl30 != null) gl30.glTransformFeedbackVaryings(program, varyings, bufferMode);
+	}
+
+	public void glVertexAttribIPointer (int index, int size, int type, int stride, int offset) {
+		call("glVertexAttribIPointer");
+		if (gl30 != null) gl30.glVertexAttribIPointer(index, size, type, stride, offset);
+	}
+
+	public void glGetVertexAttribIiv (int index, int pname, IntBuffer params) {
+		call("glGetVertexAttribIiv");
+		if (gl30 != null) gl30.glGetVertexAttribIiv(index, pname, params);
+	}
+
+	public void glGetVertexAttribIuiv (int index, int pname, IntBuffer params) {
+		call("glGetVertexAttribIuiv");
+		if (gl30 != null) gl30.glGetVertexAttribIuiv(index, pname, params);
+	}
+
+	public void glVertexAttribI4i (int index, int x, int y, int z, int w) {
+		call("glVertexAttribI4i");
+		if (gl30 != null) gl30.glVertexAttribI4i(index, x, y, z, w);
+	}
+
+	public void glVertexAttribI4ui (int index, int x, int y, int z, int w) {
+		call("glVertexAttribI4ui");
+		if (gl30 != null) gl30.glVertexAttribI4ui(index, x, y, z, w);
+	}
+
+	public void glGetUniformuiv (int program, int location, IntBuffer params) {
+		call("glGetUniformuiv");
+		if (gl30 != null) gl30.glGetUniformuiv(program, location, params);
+	}
+
+	public int glGetFragDataLocation (int program, String name) {
+		call("glGetFragDataLocation");
+		return gl30 != null ? gl30.glGetFragDataLocation(program, name) : -1;
+	}
+
+	public void glUniform1uiv (int location, int count, IntBuffer value) {
+		call("glUniform1uiv");
+		if (gl30 != null) gl30.glUniform1uiv(location, count, value);
+	}
+
+	public void glUniform3uiv (int location, int count, IntBuffer value) {
+		call("glUniform3uiv");
+		if (gl30 != null) gl30.glUniform3uiv(location, count, value);
+	}
+
+	public void glUniform4uiv (int location, int count, IntBuffer value) {
+		call("glUniform4uiv");
+		if (gl30 != null) gl30.glUniform4uiv(location, count, value);
+	}
+
+	public void glClearBufferiv (int buffer, int drawbuffer, IntBuffer value) {
+		call("glClearBufferiv");
+		if (gl30 != null) gl30.glClearBufferiv(buffer, drawbuffer, value);
+	}
+
+	public void glClearBufferuiv (int buffer, int drawbuffer, IntBuffer value) {
+		call("glClearBufferuiv");
+		if (gl30 != null) gl30.glClearBufferuiv(buffer, drawbuffer, value);
+	}
+
+	public void glClearBufferfv (int buffer, int drawbuffer, FloatBuffer value) {
+		call("glClearBufferfv");
+		if (gl30 != null) gl30.glClearBufferfv(buffer, drawbuffer, value);
+	}
+
+	public void glClearBufferfi (int buffer, int drawbuffer, float depth, int stencil) {
+		call("glClearBufferfi");
+		if (gl30 != null) gl30.glClearBufferfi(buffer, drawbuffer, depth, stencil);
+	}
+
+	public String glGetStringi (int name, int index) {
+		call("glGetStringi");
+		return gl30 != null ? gl30.glGetStringi(name, index) : "";
+	}
+
+	public void glCopyBufferSubData (int readTarget, int writeTarget, int readOffset, int writeOffset, int size) {
+		call("glCopyBufferSubData");
+		if (gl30 != null) gl30.glCopyBufferSubData(readTarget, writeTarget, readOffset, writeOffset, size);
+	}
+
+	public void glGetUniformIndices (int program, String[] uniformNames, IntBuffer uniformIndices) {
+		call("glGetUniformIndices");
+		if (gl30 != null) gl30.glGetUniformIndices(program, uniformNames, uniformIndices);
+	}
+
+	public void glGetActiveUniformsiv (int program, int uniformCount, IntBuffer uniformIndices, int pname, IntBuffer params) {
+		call("glGetActiveUniformsiv");
+		if (gl30 != null) gl30.glGetActiveUniformsiv(program, uniformCount, uniformIndices, pname, params);
+	}
+
+	public int glGetUniformBlockIndex (int program, String uniformBlockName) {
+		call("glGetUniformBlockIndex");
+		return gl30 != null ? gl30.glGetUniformBlockIndex(program, uniformBlockName) : -1;
+	}
+
+	public void glGetActiveUniformBlockiv (int program, int uniformBlockIndex, int pname, IntBuffer params) {
+		call("glGetActiveUniformBlockiv");
+		if (gl30 != null) gl30.glGetActiveUniformBlockiv(program, uniformBlockIndex, pname, params);
+	}
+
+	public void glGetActiveUniformBlockName (int program, int uniformBlockIndex, Buffer length, Buffer uniformBlockName) {
+		call("glGetActiveUniformBlockName");
+		if (gl30 != null) gl30.glGetActiveUniformBlockName(program, uniformBlockIndex, length, uniformBlockName);
+	}
+
+	public String glGetActiveUniformBlockName (int program, int uniformBlockIndex) {
+		call("glGetActiveUniformBlockName");
+		return gl30 != null ? gl30.glGetActiveUniformBlockName(program, uniformBlockIndex) : "";
+	}
+
+	public void glUniformBlockBinding (int program, int uniformBlockIndex, int uniformBlockBinding) {
+		call("glUniformBlockBinding");
+		if (gl30 != null) gl30.glUniformBlockBinding(program, uniformBlockIndex, uniformBlockBinding);
+	}
+
+	public void glDrawArraysInstanced (int mode, int first, int count, int instanceCount) {
+		call("glDrawArraysInstanced", count);
+		draw(count * instanceCount);
+		if (gl30 != null) gl30.glDrawArraysInstanced(mode, first, count, instanceCount);
+	}
+
+	public void glDrawElementsInstanced (int mode, int count, int type, int indicesOffset, int instanceCount) {
+		call("glDrawElementsInstanced", count);
+		draw(count * instanceCount);
+		if (gl30 != null) gl30.glDrawElementsInstanced(mode, count, type, indicesOffset, instanceCount);
+	}
+
+	public void glGetInteger64v (int pname, LongBuffer params) {
+		call("glGetInteger64v");
+		if (gl30 != null) gl30.glGetInteger64v(pname, params);
+	}
+
+	public void glGetBufferParameteri64v (int target, int pname, LongBuffer params) {
+		call("glGetBufferParameteri64v");
+		if (gl30 != null) gl30.glGetBufferParameteri64v(target, pname, params);
+	}
+
+	public void glGenSamplers (int count, int[] samplers, int offset) {
+		call("glGenSamplers");
+		if (gl30 != null)
+			gl30.glGenSamplers(count, samplers, offset);
+		else
+			for (int i = 0; i < count; i++)
+				samplers[offset + i] = ++lastHandle;
+	}
+
+	public void glGenSamplers (int count, IntBuffer samplers) {
+		call("glGenSamplers");
+		if (gl30 != null)
+			gl30.glGenSamplers(count, samplers);
+		else
+			for (int i = 0; i < count; i++)
+				samplers.put(samplers.position() + i, ++lastHandle);
+	}
+
+	public void glDeleteSamplers (int count, int[] samplers, int offset) {
+		call("glDeleteSamplers");
+		if (gl30 != null) gl30.glDeleteSamplers(count, samplers, offset);
+	}
+
+	public void glDeleteSamplers (int count, IntBuffer samplers) {
+		call("glDeleteSamplers");
+		if (gl30 != null) gl30.glDeleteSamplers(count, samplers);
+	}
+
+	public boolean glIsSampler (int sampler) {
+		call("glIsSampler");
+		return gl30 != null ? gl30.glIsSampler(sampler) : false;
+	}
+
+	public void glBindSampler (int unit, int sampler) {
+		call("glBindSampler");
+		if (gl30 != null) gl30.glBindSampler(unit, sampler);
+	}
+
+	public void glSamplerParameteri (int sampler, int pname, int param) {
+		call("glSamplerParameteri");
+		if (gl30 != null) gl30.glSamplerParameteri(sampler, pname, param);
+	}
+
+	public void glSamplerParameteriv (int sampler, int pname, IntBuffer param) {
+		call("glSamplerParameteriv");
+		if (gl30 != null) gl30.glSamplerParameteriv(sampler, pname, param);
+	}
+
+	public void glSamplerParameterf (int sampler, int pname, float param) {
+		call("glSamplerParameterf");
+		if (gl30 != null) gl30.glSamplerParameterf(sampler, pname, param);
+	}
+
+	public void glSamplerParameterfv (int sampler, int pname, FloatBuffer param) {
+		call("glSamplerParameterfv");
+		if (gl30 != null) gl30.glSamplerParameterfv(sampler, pname, param);
+	}
+
+	public void glGetSamplerParameteriv (int sampler, int pname, IntBuffer params) {
+		call("glGetSamplerParameteriv");
+		if (gl30 != null) gl30.glGetSamplerParameteriv(sampler, pname, params);
+	}
+
+	public void glGetSamplerParameterfv (int sampler, int pname, FloatBuffer params) {
+		call("glGetSamplerParameterfv");
+		if (gl30 != null) gl30.glGetSamplerParameterfv(sampler, pname, params);
+	}
+
+	public void glVertexAttribDivisor (int index, int divisor) {
+		call("glVertexAttribDivisor");
+		if (gl30 != null) gl30.glVertexAttribDivisor(index, divisor);
+	}
+
+	public void glBindTransformFeedback (int target, int id) {
+		call("glBindTransformFeedback");
+		if (gl30 != null) gl30.glBindTransformFeedback(target, id);
+	}
+
+	public void glDeleteTransformFeedbacks (int n, int[] ids, int offset) {
+		call("glDeleteTransformFeedbacks");
+		if (gl30 != null) gl30.glDeleteTransformFeedbacks(n, ids, offset);
+	}
+
+	public void glDeleteTransformFeedbacks (int n, IntBuffer ids) {
+		call("glDeleteTransformFeedbacks");
+		if (gl30 != null) gl30.glDeleteTransformFeedbacks(n, ids);
+	}
+
+	public void glGenTransformFeedbacks (int n, int[] ids, int offset) {
+		call("glGenTransformFeedbacks");
+		if (gl30 != null)
+			gl30.glGenTransformFeedbacks(n, ids, offset);
+		else
+			for (int i = 0; i < n; i++)
+				ids[offset + i] = ++lastHandle;
+	}
+
+	public void glGenTransformFeedbacks (int n, IntBuffer ids) {
+		call("glGenTransformFeedbacks");
+		if (gl30 != null)
+			gl30.glGenTransformFeedbacks(n, ids);
+		else
+			for (int i = 0; i < n; i++)
+				ids.put(ids.position() + i, ++lastHandle);
+	}
+
+	public boolean glIsTransformFeedback (int id) {
+		call("glIsTransformFeedback");
+		return gl30 != null ? gl30.glIsTransformFeedback(id) : false;
+	}
+
+	public void glPauseTransformFeedback () {
+		call("glPauseTransformFeedback");
+		if (gl30 != null) gl30.glPauseTransformFeedback();
+	}
+
+	public void glResumeTransformFeedback () {
+		call("glResumeTransformFeedback");
+		if (gl30 != null) gl30.glResumeTransformFeedback();
+	}
+
+	public void glProgramParameteri (int program, int pname, int value) {
+		call("glProgramParameteri");
+		if (gl30 != null) gl30.glProgramParameteri(program, pname, value);
+	}
+
+	public void glInvalidateFramebuffer (int target, int numAttachments, IntBuffer attachments) {
+		call("glInvalidateFramebuffer");
+		if (gl30 != null) gl30.glInvalidateFramebuffer(target, numAttachments, attachments);
+	}
+
+	public void glInvalidateSubFramebuffer (int target, int numAttachments, IntBuffer attachments, int x, int y, int width, int height) {
+		call("glInvalidateSubFramebuffer");
+		if (gl30 != null) gl30.glInvalidateSubFramebuffer(target, numAttachments, attachments, x, y, width, height);
+	}
+}
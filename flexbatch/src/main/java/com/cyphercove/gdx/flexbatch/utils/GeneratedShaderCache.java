@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.LifecycleListener;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/** Reference-counted ShaderPrograms compiled from the shaders generated by {@link BatchablePreparation}, so batches that use
+ * the same generated shader share one program instead of each compiling their own. Programs are keyed by texture count, feature
+ * flags, and whether OpenGL ES 3.0 is available, since the generated source depends on it. Each call to
+ * {@link #obtain(int, int)} must be matched by a call to {@link #release(ShaderProgram)}, and a program is disposed when its
+ * last reference is released.
+ * <p>
+ * Programs that will be needed can be compiled ahead of time with {@link #warmUp(int, int)}, such as while loading, so the first
+ * batch to use them does not stall. Warmed up programs are kept until {@link #releaseWarmUps()} is called, even if no batch is
+ * using them.
+ * <p>
+ * The cached programs belong to the current {@link Gdx#app Application}. They are disposed when it is disposed, after which
+ * releasing them has no effect. If a different Application is found, such as when an Android activity is recreated, the
+ * programs of the previous one are dropped without being disposed, since its GL context is gone.
+ * <p>
+ * Must only be used on the GL thread.
+ *
+ * @author cypherdare */
+public final class GeneratedShaderCache {
+
+	/** Samples TextureArrays, using {@link BatchablePreparation#generateGenericVertexShader(int, boolean)} and
+	 * {@link BatchablePreparation#generateGenericFragmentShader(int, boolean)}. Cannot be combined with the other flags. */
+	public static final int TEXTURE_ARRAYS = 1;
+	/** A shader for {@link com.cyphercove.gdx.flexbatch.batchable.SlottedQuad2D SlottedQuad2D}, with the texture count used as
+	 * the slot count. */
+	public static final int TEXTURE_SLOTS = 1 << 1;
+	/** A shader for instanced {@link com.cyphercove.gdx.flexbatch.batchable.Quad2D Quad2Ds}. Requires OpenGL ES 3.0. */
+	public static final int INSTANCED_QUAD_2D = 1 << 2;
+	/** A shader for instanced {@link com.cyphercove.gdx.flexbatch.batchable.Quad3D Quad3Ds}. Requires OpenGL ES 3.0. */
+	public static final int INSTANCED_QUAD_3D = 1 << 3;
+
+	private static final int ALL_FLAGS = TEXTURE_ARRAYS | TEXTURE_SLOTS | INSTANCED_QUAD_2D | INSTANCED_QUAD_3D;
+
+	private static final ObjectMap<Key, Entry> entries = new ObjectMap<Key, Entry>();
+	private static final ObjectMap<ShaderProgram, Entry> entriesByShader = new ObjectMap<ShaderProgram, Entry>();
+	private static final Array<Entry> warmedUp = new Array<Entry>();
+	private static final Key lookupKey = new Key();
+	/** The Application that the cached programs belong to. */
+	private static Application application;
+	private static final LifecycleListener lifecycleListener = new LifecycleListener() {
+		public void pause () {
+		}
+
+		public void resume () {
+		}
+
+		public void dispose () {
+			clear(true);
+			application = null;
+		}
+	};
+
+	private GeneratedShaderCache () {
+	}
+
+	/** @param textureCount The number of textures, or texture slots if {@link #TEXTURE_SLOTS} is set.
+	 * @param flags Zero or one of {@link #TEXTURE_ARRAYS}, {@link #TEXTURE_SLOTS}, {@link #INSTANCED_QUAD_2D} and
+	 *           {@link #INSTANCED_QUAD_3D}.
+	 * @return A reference to the shared program, which is compiled if it is not already cached. It must be released with
+	 *         {@link #release(ShaderProgram)} instead of being disposed.
+	 * @throws IllegalArgumentException If the flags are invalid or the program fails to compile. */
+	public static ShaderProgram obtain (int textureCount, int flags) {
+		Entry entry = obtainEntry(textureCount, flags);
+		entry.references++;
+		return entry.shader;
+	}
+
+	/** Releases a reference to a program obtained with {@link #obtain(int, int)}, disposing of it if it was the last reference.
+	 * @return Whether the program belongs to the cache. */
+	public static boolean release (ShaderProgram shader) {
+		checkApplication();
+		Entry entry = entriesByShader.get(shader);
+		if (entry == null) return false;
+		if (--entry.references == 0) remove(entry);
+		return true;
+	}
+
+	/** Compiles a program ahead of time if it is not already cached, and keeps it until {@link #releaseWarmUps()} is called.
+	 * Warming up the same program more than once has no further effect.
+	 * @see #obtain(int, int) */
+	public static void warmUp (int textureCount, int flags) {
+		Entry entry = obtainEntry(textureCount, flags);
+		if (entry.warmedUp) return;
+		entry.warmedUp = true;
+		entry.references++;
+		warmedUp.add(entry);
+	}
+
+	/** Releases the programs kept by {@link #warmUp(int, int)}. Programs that are not obtained by anything else are disposed. */
+	public static void releaseWarmUps () {
+		for (Entry entry : warmedUp) {
+			entry.warmedUp = false;
+			if (--entry.references == 0) remove(entry);
+		}
+		warmedUp.clear();
+	}
+
+	private static Entry obtainEntry (int textureCount, int flags) {
+		if (textureCount < 0) throw new IllegalArgumentException("textureCount cannot be negative.");
+		if ((flags & ~ALL_FLAGS) != 0 || Integer.bitCount(flags) > 1)
+			throw new IllegalArgumentException("Invalid shader flags: " + flags);
+		checkApplication();
+		lookupKey.set(textureCount, flags, Gdx.gl30 != null);
+		Entry entry = entries.get(lookupKey);
+		if (entry == null) {
+			ShaderProgram shader = new ShaderProgram(generateVertexShader(textureCount, flags),
+				generateFragmentShader(textureCount, flags));
+			if (!shader.isCompiled()) {
+				String log = shader.getLog();
+				shader.dispose();
+				throw new IllegalArgumentException("Error compiling shader: " + log);
+			}
+			Key key = new Key();
+			key.set(textureCount, flags, lookupKey.gl30);
+			entry = new Entry(key, shader);
+			entries.put(key, entry);
+			entriesByShader.put(shader, entry);
+		}
+		return entry;
+	}
+
+	/** Drops the programs of a previous Application, and registers to clear the cache when the current one is disposed. */
+	private static void checkApplication () {
+		if (Gdx.app == application) return;
+		if (application != null) application.removeLifecycleListener(lifecycleListener);
+		clear(false);
+		application = Gdx.app;
+		if (application != null) application.addLifecycleListener(lifecycleListener);
+	}
+
+	private static void clear (boolean dispose) {
+		if (dispose) {
+			for (Entry entry : entries.values())
+				entry.shader.dispose();
+		}
+		entries.clear();
+		entriesByShader.clear();
+		warmedUp.clear();
+	}
+
+	private static void remove (Entry entry) {
+		entries.remove(entry.key);
+		entriesByShader.remove(entry.shader);
+		entry.shader.dispose();
+	}
+
+	private static String generateVertexShader (int textureCount, int flags) {
+		switch (flags) {
+		case TEXTURE_SLOTS:
+			return BatchablePreparation.generateTextureSlotVertexShader();
+		case INSTANCED_QUAD_2D:
+			return BatchablePreparation.generateInstancedQuad2DVertexShader(textureCount);
+		case INSTANCED_QUAD_3D:
+			return BatchablePreparation.generateInstancedQuad3DVertexShader(textureCount);
+		default:
+			return BatchablePreparation.generateGenericVertexShader(textureCount, flags == TEXTURE_ARRAYS);
+		}
+	}
+
+	private static String generateFragmentShader (int textureCount, int flags) {
+		if (flags == TEXTURE_SLOTS) return BatchablePreparation.generateTextureSlotFragmentShader(textureCount);
+		return BatchablePreparation.generateGenericFragmentShader(textureCount, flags == TEXTURE_ARRAYS);
+	}
+
+	private static class Key {
+		int textureCount, flags;
+		boolean gl30;
+
+		void set (int textureCount, int flags, boolean gl30) {
+			this.textureCount = textureCount;
+			this.flags = flags;
+			this.gl30 = gl30;
+		}
+
+		public boolean equals (Object o) {
+			if (!(o instanceof Key)) return false;
+			Key other = (Key)o;
+			return textureCount == other.textureCount && flags == other.flags && gl30 == other.gl30;
+		}
+
+		public int hashCode () {
+			return (textureCount * 31 + flags) * 31 + (gl30 ? 1 : 0);
+		}
+	}
+
+	private static class Entry {
+		final Key key;
+		final ShaderProgram shader;
+		int references;
+		boolean warmedUp;
+
+		Entry (Key key, ShaderProgram shader) {
+			this.key = key;
+			this.shader = shader;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+
+/** A vertex buffer object holding per-instance attributes for instanced drawing. When bound, each of its attributes advances once
+ * per instance instead of once per vertex. Instanced drawing requires OpenGL ES 3.0.
+ * <p>
+ * Unlike a Mesh, this buffer is not managed, so it is not restored after the OpenGL context is lost.
+ *
+ * @author cypherdare */
+public class InstanceBufferObject implements Disposable {
+
+	private final VertexAttributes attributes;
+	private final FloatBuffer buffer;
+	private final int[] locations;
+	private int bufferHandle;
+	private boolean isDirty = true;
+
+	/** @param maxInstances The maximum number of instances this buffer can hold.
+	 * @param attributes The attributes of each instance. */
+	public InstanceBufferObject (int maxInstances, VertexAttributes attributes) {
+		this.attributes = attributes;
+		buffer = BufferUtils.newFloatBuffer(maxInstances * attributes.vertexSize / 4);
+		buffer.flip();
+		locations = new int[attributes.size()];
+		bufferHandle = Gdx.gl20.glGenBuffer();
+	}
+
+	public VertexAttributes getAttributes () {
+		return attributes;
+	}
+
+	/** @return The number of instances that will be uploaded. */
+	public int getNumInstances () {
+		return buffer.limit() * 4 / attributes.vertexSize;
+	}
+
+	/** Copies instance data into the buffer. It is uploaded the next time the buffer is bound.
+	 * @param instances The source data.
+	 * @param offset The index of the first element to copy.
+	 * @param count The number of floats to copy. */
+	public void setInstances (float[] instances, int offset, int count) {
+		buffer.clear();
+		buffer.put(instances, offset, count);
+		buffer.flip();
+		isDirty = true;
+	}
+
+	/** Binds this buffer and sets up its attributes in the shader with a divisor of 1, uploading the data first if it has
+	 * changed. Attributes the shader does not have are skipped. */
+	public void bind (ShaderProgram shader) {
+		GL20 gl = Gdx.gl20;
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+		if (isDirty) {
+			gl.glBufferData(GL20.GL_ARRAY_BUFFER, buffer.limit() * 4, buffer, GL20.GL_STREAM_DRAW);
+			isDirty = false;
+		}
+		int stride = attributes.vertexSize;
+		for (int i = 0; i < locations.length; i++) {
+			VertexAttribute attribute = attributes.get(i);
+			int location = shader.getAttributeLocation(attribute.alias);
+			locations[i] = location;
+			if (location < 0) continue;
+			shader.enableVertexAttribute(location);
+			shader.setVertexAttribute(location, attribute.numComponents, attribute.type, attribute.normalized, stride,
+				attribute.offset);
+			Gdx.gl30.glVertexAttribDivisor(location, 1);
+		}
+	}
+
+	/** Disables the attributes set up by {@link #bind(ShaderProgram)} and restores their divisors to 0. */
+	public void unbind (ShaderProgram shader) {
+		for (int i = 0; i < locations.length; i++) {
+			int location = locations[i];
+			if (location < 0) continue;
+			Gdx.gl30.glVertexAttribDivisor(location, 0);
+			shader.disableVertexAttribute(location);
+		}
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+	}
+
+	public void dispose () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+		Gdx.gl20.glDeleteBuffer(bufferHandle);
+		bufferHandle = 0;
+	}
+}
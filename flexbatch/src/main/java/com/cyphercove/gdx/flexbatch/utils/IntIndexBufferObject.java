@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+
+/** An index buffer object holding 32-bit indices, for drawing meshes with more vertices than can be addressed by the
+ * {@code short} indices of a {@link com.badlogic.gdx.graphics.Mesh Mesh}. 32-bit indices require OpenGL ES 3.0.
+ * <p>
+ * Unlike a Mesh, this buffer is not managed, so it is not restored after the OpenGL context is lost.
+ *
+ * @author cypherdare */
+public class IntIndexBufferObject implements Disposable {
+
+	private final IntBuffer buffer;
+	private final int usage;
+	private int bufferHandle;
+	private boolean isDirty = true;
+
+	/** @param isStatic Whether the indices will be set only once.
+	 * @param maxIndices The maximum number of indices this buffer can hold. */
+	public IntIndexBufferObject (boolean isStatic, int maxIndices) {
+		buffer = BufferUtils.newIntBuffer(maxIndices);
+		buffer.flip();
+		usage = isStatic ? GL20.GL_STATIC_DRAW : GL20.GL_DYNAMIC_DRAW;
+		bufferHandle = Gdx.gl20.glGenBuffer();
+	}
+
+	/** @return The number of indices that will be uploaded. */
+	public int getNumIndices () {
+		return buffer.limit();
+	}
+
+	/** Copies indices into the buffer. They are uploaded the next time the buffer is bound.
+	 * @param indices The source indices.
+	 * @param offset The index of the first element to copy.
+	 * @param count The number of indices to copy. */
+	public void setIndices (int[] indices, int offset, int count) {
+		buffer.clear();
+		buffer.put(indices, offset, count);
+		buffer.flip();
+		isDirty = true;
+	}
+
+	/** Returns the underlying buffer for direct modification. The buffer will be uploaded on the next bind, and its limit
+	 * determines how many indices are uploaded.
+	 * @return The underlying IntBuffer. */
+	public IntBuffer getBuffer () {
+		isDirty = true;
+		return buffer;
+	}
+
+	/** Binds this buffer to the element array target, uploading the indices first if they have changed. */
+	public void bind () {
+		GL20 gl = Gdx.gl20;
+		gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, bufferHandle);
+		if (isDirty) {
+			gl.glBufferData(GL20.GL_ELEMENT_ARRAY_BUFFER, buffer.limit() * 4, buffer, usage);
+			isDirty = false;
+		}
+	}
+
+	public void unbind () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	public void dispose () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		Gdx.gl20.glDeleteBuffer(bufferHandle);
+		bufferHandle = 0;
+	}
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/** The transforms of many two-dimensional quads, held in parallel arrays, with a kernel that writes the positions of their
+ * corners into interleaved vertex data in one pass. Each quad is transformed the same way as a
+ * {@link com.cyphercove.gdx.flexbatch.batchable.Quad2D Quad2D}, and its corners are written in the same order, so the data can be
+ * drawn with the indices of a Quad2D, for example with {@link com.cyphercove.gdx.flexbatch.CompliantBatch#draw(
+ * com.badlogic.gdx.graphics.Texture, float[], int, int) CompliantBatch.draw(Texture, float[], int, int)}.
+ * <p>
+ * This is for large numbers of quads that move every frame, such as particles, where the other attributes, like color and texture
+ * coordinates, can be written once and only the positions change. The transform arrays can be updated in bulk by the simulation
+ * that moves the quads, and {@link #transform(int, int, float[], int, int)} avoids the per-object field access and virtual calls
+ * of applying individual Batchables.
+ * <p>
+ * Unlike a Quad2D, the width and height do not default to the size of a texture region.
+ *
+ * @author cypherdare */
+public class QuadTransforms2D {
+
+	public float[] x, y, originX, originY, width, height, scaleX, scaleY, rotation;
+	/** The number of quads. Quads can be added with {@link #add(float, float, float, float, float, float, float, float, float)},
+	 * or written directly into the arrays after making room with {@link #ensureCapacity(int)}. */
+	public int size;
+
+	public QuadTransforms2D () {
+		this(16);
+	}
+
+	/** @param capacity The number of quads to allocate room for initially. */
+	public QuadTransforms2D (int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	/** Adds a quad.
+	 * @return The index of the quad. */
+	public int add (float x, float y, float originX, float originY, float width, float height, float scaleX, float scaleY,
+		float rotation) {
+		ensureCapacity(size + 1);
+		int i = size++;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.originX[i] = originX;
+		this.originY[i] = originY;
+		this.width[i] = width;
+		this.height[i] = height;
+		this.scaleX[i] = scaleX;
+		this.scaleY[i] = scaleY;
+		this.rotation[i] = rotation;
+		return i;
+	}
+
+	/** Removes a quad by moving the last quad into its place.
+	 * @return The previous index of the quad that was moved, or -1 if the removed quad was the last one. */
+	public int removeIndex (int index) {
+		if (index >= size) throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size);
+		int last = --size;
+		if (index == last) return -1;
+		x[index] = x[last];
+		y[index] = y[last];
+		originX[index] = originX[last];
+		originY[index] = originY[last];
+		width[index] = width[last];
+		height[index] = height[last];
+		scaleX[index] = scaleX[last];
+		scaleY[index] = scaleY[last];
+		rotation[index] = rotation[last];
+		return last;
+	}
+
+	public void clear () {
+		size = 0;
+	}
+
+	/** Grows the arrays if necessary so they can hold the given number of quads. The arrays may be replaced. */
+	public void ensureCapacity (int capacity) {
+		if (capacity > x.length) allocate(Math.max(capacity, x.length * 7 / 4));
+	}
+
+	private void allocate (int capacity) {
+		x = resize(x, capacity);
+		y = resize(y, capacity);
+		originX = resize(originX, capacity);
+		originY = resize(originY, capacity);
+		width = resize(width, capacity);
+		height = resize(height, capacity);
+		scaleX = resize(scaleX, capacity);
+		scaleY = resize(scaleY, capacity);
+		rotation = resize(rotation, capacity);
+	}
+
+	static float[] resize (float[] array, int capacity) {
+		float[] newArray = new float[capacity];
+		if (array != null) System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	/** Writes the positions of the four corners of each quad in a range into interleaved vertex data. Other attributes in the
+	 * vertex data are left unchanged.
+	 * @param start The index of the first quad.
+	 * @param count The number of quads.
+	 * @param vertices The vertex data, with room for four vertices per quad.
+	 * @param offset The index of the position of the first vertex in the vertex data.
+	 * @param vertexSize The number of floats per vertex. */
+	public void transform (int start, int count, float[] vertices, int offset, int vertexSize) {
+		if (start < 0 || count < 0 || start + count > size)
+			throw new IndexOutOfBoundsException("Range " + start + " to " + (start + count) + " is out of bounds for size " + size);
+		// Local copies of the arrays let the JIT keep them in registers and hoist their bounds checks.
+		final float[] x = this.x, y = this.y, originX = this.originX, originY = this.originY, width = this.width,
+			height = this.height, scaleX = this.scaleX, scaleY = this.scaleY, rotation = this.rotation;
+		final int end = start + count;
+		int i = offset;
+		for (int q = start; q < end; q++) {
+			final float ox = originX[q], oy = originY[q], sx = scaleX[q], sy = scaleY[q];
+			final float worldOriginX = x[q] + ox;
+			final float worldOriginY = y[q] + oy;
+			final float fx = -ox * sx;
+			final float fy = -oy * sy;
+			final float fx2 = (width[q] - ox) * sx;
+			final float fy2 = (height[q] - oy) * sy;
+
+			float x1, y1, x2, y2, x3, y3, x4, y4;
+			final float r = rotation[q];
+			if (r != 0) {
+				final float cos = MathUtils.cosDeg(r);
+				final float sin = MathUtils.sinDeg(r);
+				x1 = cos * fx - sin * fy;
+				y1 = sin * fx + cos * fy;
+				x2 = cos * fx - sin * fy2;
+				y2 = sin * fx + cos * fy2;
+				x3 = cos * fx2 - sin * fy2;
+				y3 = sin * fx2 + cos * fy2;
+				x4 = x1 + (x3 - x2);
+				y4 = y3 - (y2 - y1);
+			} else {
+				x1 = fx;
+				y1 = fy;
+				x2 = fx;
+				y2 = fy2;
+				x3 = fx2;
+				y3 = fy2;
+				x4 = fx2;
+				y4 = fy;
+			}
+
+			vertices[i] = x1 + worldOriginX;
+			vertices[i + 1] = y1 + worldOriginY;
+			i += vertexSize;
+			vertices[i] = x2 + worldOriginX;
+			vertices[i + 1] = y2 + worldOriginY;
+			i += vertexSize;
+			vertices[i] = x3 + worldOriginX;
+			vertices[i + 1] = y3 + worldOriginY;
+			i += vertexSize;
+			vertices[i] = x4 + worldOriginX;
+			vertices[i + 1] = y4 + worldOriginY;
+			i += vertexSize;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import static com.cyphercove.gdx.flexbatch.utils.QuadTransforms2D.resize;
+
+/** The transforms of many three-dimensional quads, held in parallel arrays, with a kernel that writes the positions of their
+ * corners into interleaved vertex data in one pass. Each quad is transformed the same way as a
+ * {@link com.cyphercove.gdx.flexbatch.batchable.Quad3D Quad3D}, centered on its position and rotated by a quaternion, and its
+ * corners are written in the same order, so the data can be drawn with the indices of a Quad3D.
+ * <p>
+ * See {@link QuadTransforms2D} for when to use this instead of individual Batchables. The rotation quaternions must be
+ * normalized. Unlike a Quad3D, the width and height do not default to the size of a texture region.
+ *
+ * @author cypherdare */
+public class QuadTransforms3D {
+
+	public float[] x, y, z, rotationX, rotationY, rotationZ, rotationW, originX, originY, width, height, scaleX, scaleY;
+	/** The number of quads. Quads can be added with
+	 * {@link #add(float, float, float, float, float, float, float, float, float, float, float, float, float)}, or written
+	 * directly into the arrays after making room with {@link #ensureCapacity(int)}. */
+	public int size;
+
+	public QuadTransforms3D () {
+		this(16);
+	}
+
+	/** @param capacity The number of quads to allocate room for initially. */
+	public QuadTransforms3D (int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	/** Adds a quad.
+	 * @return The index of the quad. */
+	public int add (float x, float y, float z, float rotationX, float rotationY, float rotationZ, float rotationW, float originX,
+		float originY, float width, float height, float scaleX, float scaleY) {
+		ensureCapacity(size + 1);
+		int i = size++;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.z[i] = z;
+		this.rotationX[i] = rotationX;
+		this.rotationY[i] = rotationY;
+		this.rotationZ[i] = rotationZ;
+		this.rotationW[i] = rotationW;
+		this.originX[i] = originX;
+		this.originY[i] = originY;
+		this.width[i] = width;
+		this.height[i] = height;
+		this.scaleX[i] = scaleX;
+		this.scaleY[i] = scaleY;
+		return i;
+	}
+
+	/** Removes a quad by moving the last quad into its place.
+	 * @return The previous index of the quad that was moved, or -1 if the removed quad was the last one. */
+	public int removeIndex (int index) {
+		if (index >= size) throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size);
+		int last = --size;
+		if (index == last) return -1;
+		x[index] = x[last];
+		y[index] = y[last];
+		z[index] = z[last];
+		rotationX[index] = rotationX[last];
+		rotationY[index] = rotationY[last];
+		rotationZ[index] = rotationZ[last];
+		rotationW[index] = rotationW[last];
+		originX[index] = originX[last];
+		originY[index] = originY[last];
+		width[index] = width[last];
+		height[index] = height[last];
+		scaleX[index] = scaleX[last];
+		scaleY[index] = scaleY[last];
+		return last;
+	}
+
+	public void clear () {
+		size = 0;
+	}
+
+	/** Grows the arrays if necessary so they can hold the given number of quads. The arrays may be replaced. */
+	public void ensureCapacity (int capacity) {
+		if (capacity > x.length) allocate(Math.max(capacity, x.length * 7 / 4));
+	}
+
+	private void allocate (int capacity) {
+		x = resize(x, capacity);
+		y = resize(y, capacity);
+		z = resize(z, capacity);
+		rotationX = resize(rotationX, capacity);
+		rotationY = resize(rotationY, capacity);
+		rotationZ = resize(rotationZ, capacity);
+		rotationW = resize(rotationW, capacity);
+		originX = resize(originX, capacity);
+		originY = resize(originY, capacity);
+		width = resize(width, capacity);
+		height = resize(height, capacity);
+		scaleX = resize(scaleX, capacity);
+		scaleY = resize(scaleY, capacity);
+	}
+
+	/** Writes the positions of the four corners of each quad in a range into interleaved vertex data. Other attributes in the
+	 * vertex data are left unchanged.
+	 * @param start The index of the first quad.
+	 * @param count The number of quads.
+	 * @param vertices The vertex data, with room for four vertices per quad.
+	 * @param offset The index of the position of the first vertex in the vertex data.
+	 * @param vertexSize The number of floats per vertex. */
+	public void transform (int start, int count, float[] vertices, int offset, int vertexSize) {
+		if (start < 0 || count < 0 || start + count > size)
+			throw new IndexOutOfBoundsException("Range " + start + " to " + (start + count) + " is out of bounds for size " + size);
+		final float[] x = this.x, y = this.y, z = this.z, rotationX = this.rotationX, rotationY = this.rotationY,
+			rotationZ = this.rotationZ, rotationW = this.rotationW, originX = this.originX, originY = this.originY,
+			width = this.width, height = this.height, scaleX = this.scaleX, scaleY = this.scaleY;
+		final int end = start + count;
+		int i = offset;
+		for (int q = start; q < end; q++) {
+			final float halfWidth = width[q] / 2f, halfHeight = height[q] / 2f;
+			final float ox = originX[q], oy = originY[q], sx = scaleX[q], sy = scaleY[q];
+			final float left = (-halfWidth - ox) * sx;
+			final float right = (halfWidth - ox) * sx;
+			final float bottom = (-halfHeight - oy) * sy;
+			final float top = (halfHeight - oy) * sy;
+
+			// The rotated local X and Y axes, as in Quad3D.
+			final float qx = rotationX[q], qy = rotationY[q], qz = rotationZ[q], qw = rotationW[q];
+			final float scalar = qw * qw - qx * qx - qy * qy - qz * qz;
+			final float rightX = scalar + 2 * qx * qx;
+			final float rightY = 2 * (qx * qy + qw * qz);
+			final float rightZ = 2 * (qx * qz - qw * qy);
+			final float upX = 2 * (qx * qy - qw * qz);
+			final float upY = scalar + 2 * qy * qy;
+			final float upZ = 2 * (qy * qz + qw * qx);
+
+			final float px = x[q], py = y[q], pz = z[q];
+			final float leftX = rightX * left, leftY = rightY * left, leftZ = rightZ * left;
+			final float rightEdgeX = rightX * right, rightEdgeY = rightY * right, rightEdgeZ = rightZ * right;
+			final float bottomX = upX * bottom, bottomY = upY * bottom, bottomZ = upZ * bottom;
+			final float topX = upX * top, topY = upY * top, topZ = upZ * top;
+
+			// bottom left
+			vertices[i] = leftX + bottomX + px;
+			vertices[i + 1] = leftY + bottomY + py;
+			vertices[i + 2] = leftZ + bottomZ + pz;
+			i += vertexSize;
+
+			// top left
+			vertices[i] = leftX + topX + px;
+			vertices[i + 1] = leftY + topY + py;
+			vertices[i + 2] = leftZ + topZ + pz;
+			i += vertexSize;
+
+			// top right
+			vertices[i] = rightEdgeX + topX + px;
+			vertices[i + 1] = rightEdgeY + topY + py;
+			vertices[i + 2] = rightEdgeZ + topZ + pz;
+			i += vertexSize;
+
+			// bottom right
+			vertices[i] = rightEdgeX + bottomX + px;
+			vertices[i + 1] = rightEdgeY + bottomY + py;
+			vertices[i + 2] = rightEdgeZ + bottomZ + pz;
+			i += vertexSize;
+		}
+	}
+}
@@ -18,28 +18,48 @@ package com.cyphercove.gdx.flexbatch.utils;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.GLTexture;
-import com.badlogic.gdx.utils.IntMap;
 
 /** Stores up pending GL state changes and textures to bind, and executes them on demand. Minimizes actual state changes.
  * Remembers and can restore state between uses.
  * <p>
  * Pending state changes can be made at any time, but can only be applied by calling {@link #executeChanges()} between calls to
  * {@link #begin()} and {@link #end()}.
+ * <p>
+ * Each group of related parameters has a dirty bit that is set when its pending value is changed, so checking for and applying
+ * changes only compares the groups that were touched since they were last applied. Parameters that only take effect while a
+ * capability is enabled, such as the depth function or scissor box, are left pending until it is enabled. Textures are tracked
+ * in a fixed table of {@value #MAX_TEXTURE_UNITS} units with a bitmask of occupied units.
  * 
  * @author cypherdare */
 public class RenderContextAccumulator {
 
+	/** The number of texture units that can be tracked. */
+	public static final int MAX_TEXTURE_UNITS = 32;
+
+	private static final int DEPTH_MASK = 1, DEPTH_TEST = 1 << 1, DEPTH_FUNC = 1 << 2, BLEND = 1 << 3, BLEND_FUNC = 1 << 4,
+		BLEND_EQUATION = 1 << 5, CULL = 1 << 6, CULL_FACE = 1 << 7, SCISSOR_TEST = 1 << 8, SCISSOR_BOX = 1 << 9,
+		STENCIL_TEST = 1 << 10, STENCIL_FUNC = 1 << 11, STENCIL_OP = 1 << 12, STENCIL_MASK = 1 << 13, COLOR_MASK = 1 << 14,
+		POLYGON_OFFSET_FILL = 1 << 15, POLYGON_OFFSET = 1 << 16, LINE_WIDTH = 1 << 17, ALL = (1 << 18) - 1;
+
 	static final class State {
-		boolean depthMasking, depthTesting, blending, culling;
+		boolean depthMasking, depthTesting, blending, culling, scissorTesting, stencilTesting, polygonOffsetFilling;
 		int blendSrcFuncColor, blendDstFuncColor, blendEquationColor;
 		int blendSrcFuncAlpha, blendDstFuncAlpha, blendEquationAlpha;
 		int depthFunc;
 		float depthRangeNear, depthRangeFar;
 		int cullFace;
-		final IntMap<GLTexture> textureUnits = new IntMap<GLTexture>(32);
+		int scissorX, scissorY, scissorWidth, scissorHeight;
+		int stencilFunc, stencilRef, stencilValueMask, stencilFail, stencilDepthFail, stencilPass, stencilWriteMask;
+		/** Red, green, blue and alpha write enables in the lowest four bits. */
+		int colorMask;
+		float polygonOffsetFactor, polygonOffsetUnits;
+		float lineWidth;
+		final GLTexture[] textureUnits = new GLTexture[MAX_TEXTURE_UNITS];
+		/** Bits of the units that have a texture. */
+		int boundUnits;
 
 		public void applyDefaults () {
-			blending = depthTesting = culling = false;
+			blending = depthTesting = culling = scissorTesting = stencilTesting = polygonOffsetFilling = false;
 			depthMasking = true;
 			depthRangeNear = 0f;
 			depthRangeFar = 1f;
@@ -48,7 +68,81 @@ public class RenderContextAccumulator {
 			blendDstFuncColor = blendDstFuncAlpha = GL20.GL_ZERO;
 			blendEquationColor = blendEquationAlpha = GL20.GL_FUNC_ADD;
 			depthFunc = GL20.GL_LESS;
-			textureUnits.clear();
+			scissorX = scissorY = scissorWidth = scissorHeight = 0;
+			stencilFunc = GL20.GL_ALWAYS;
+			stencilRef = 0;
+			stencilValueMask = stencilWriteMask = 0xffffffff;
+			stencilFail = stencilDepthFail = stencilPass = GL20.GL_KEEP;
+			colorMask = 0xf;
+			polygonOffsetFactor = polygonOffsetUnits = 0f;
+			lineWidth = 1f;
+			clearTextureUnits();
+		}
+
+		public void set (State other) {
+			depthMasking = other.depthMasking;
+			depthTesting = other.depthTesting;
+			blending = other.blending;
+			culling = other.culling;
+			scissorTesting = other.scissorTesting;
+			stencilTesting = other.stencilTesting;
+			polygonOffsetFilling = other.polygonOffsetFilling;
+			blendSrcFuncColor = other.blendSrcFuncColor;
+			blendDstFuncColor = other.blendDstFuncColor;
+			blendEquationColor = other.blendEquationColor;
+			blendSrcFuncAlpha = other.blendSrcFuncAlpha;
+			blendDstFuncAlpha = other.blendDstFuncAlpha;
+			blendEquationAlpha = other.blendEquationAlpha;
+			depthFunc = other.depthFunc;
+			depthRangeNear = other.depthRangeNear;
+			depthRangeFar = other.depthRangeFar;
+			cullFace = other.cullFace;
+			scissorX = other.scissorX;
+			scissorY = other.scissorY;
+			scissorWidth = other.scissorWidth;
+			scissorHeight = other.scissorHeight;
+			stencilFunc = other.stencilFunc;
+			stencilRef = other.stencilRef;
+			stencilValueMask = other.stencilValueMask;
+			stencilFail = other.stencilFail;
+			stencilDepthFail = other.stencilDepthFail;
+			stencilPass = other.stencilPass;
+			stencilWriteMask = other.stencilWriteMask;
+			colorMask = other.colorMask;
+			polygonOffsetFactor = other.polygonOffsetFactor;
+			polygonOffsetUnits = other.polygonOffsetUnits;
+			lineWidth = other.lineWidth;
+			clearTextureUnits();
+			for (int units = other.boundUnits; units != 0; units &= units - 1) {
+				int unit = Integer.numberOfTrailingZeros(units);
+				textureUnits[unit] = other.textureUnits[unit];
+			}
+			boundUnits = other.boundUnits;
+		}
+
+		public boolean isEquivalent (State other) {
+			if (depthMasking != other.depthMasking || depthTesting != other.depthTesting || blending != other.blending
+				|| culling != other.culling || blendSrcFuncColor != other.blendSrcFuncColor
+				|| blendDstFuncColor != other.blendDstFuncColor || blendEquationColor != other.blendEquationColor
+				|| blendSrcFuncAlpha != other.blendSrcFuncAlpha || blendDstFuncAlpha != other.blendDstFuncAlpha
+				|| blendEquationAlpha != other.blendEquationAlpha || depthFunc != other.depthFunc
+				|| depthRangeNear != other.depthRangeNear || depthRangeFar != other.depthRangeFar || cullFace != other.cullFace)
+				return false;
+			if (scissorTesting != other.scissorTesting || scissorX != other.scissorX || scissorY != other.scissorY
+				|| scissorWidth != other.scissorWidth || scissorHeight != other.scissorHeight) return false;
+			if (stencilTesting != other.stencilTesting || stencilFunc != other.stencilFunc || stencilRef != other.stencilRef
+				|| stencilValueMask != other.stencilValueMask || stencilFail != other.stencilFail
+				|| stencilDepthFail != other.stencilDepthFail || stencilPass != other.stencilPass
+				|| stencilWriteMask != other.stencilWriteMask) return false;
+			if (colorMask != other.colorMask || polygonOffsetFilling != other.polygonOffsetFilling
+				|| polygonOffsetFactor != other.polygonOffsetFactor || polygonOffsetUnits != other.polygonOffsetUnits
+				|| lineWidth != other.lineWidth) return false;
+			if (boundUnits != other.boundUnits) return false;
+			for (int units = boundUnits; units != 0; units &= units - 1) {
+				int unit = Integer.numberOfTrailingZeros(units);
+				if (textureUnits[unit] != other.textureUnits[unit]) return false;
+			}
+			return true;
 		}
 
 		/** Set invalid values on parameters to force them to be applied on the first call to
@@ -56,12 +150,40 @@ public class RenderContextAccumulator {
 		 * {@link RenderContextAccumulator#begin()}. */
 		public void invalidateParameters () {
 			cullFace = blendSrcFuncColor = blendSrcFuncAlpha = blendDstFuncColor = blendDstFuncAlpha = depthFunc = -1;
+			blendEquationColor = blendEquationAlpha = -1;
 			depthRangeNear = depthRangeFar = -2f;
+			scissorWidth = scissorHeight = -1;
+			stencilFunc = stencilFail = stencilDepthFail = stencilPass = -1;
+			colorMask = -1;
+			polygonOffsetFactor = polygonOffsetUnits = Float.NaN;
+			lineWidth = -1f;
+		}
+
+		void putTextureUnit (int unit, GLTexture texture) {
+			textureUnits[unit] = texture;
+			boundUnits |= 1 << unit;
+		}
+
+		GLTexture removeTextureUnit (int unit) {
+			GLTexture texture = textureUnits[unit];
+			textureUnits[unit] = null;
+			boundUnits &= ~(1 << unit);
+			return texture;
+		}
+
+		void clearTextureUnits () {
+			for (int units = boundUnits; units != 0; units &= units - 1)
+				textureUnits[Integer.numberOfTrailingZeros(units)] = null;
+			boundUnits = 0;
 		}
 	}
 
 	private final State current = new State();
 	private State pending = new State();
+	/** Groups of parameters whose pending values may differ from the applied ones. */
+	private int dirty = ALL;
+	/** Textures that were pending for units with no applied texture, but were replaced or cleared before being applied. */
+	private final State unapplied = new State(); // only its texture units are used
 	private static final State DEF = new State();
 
 	static {
@@ -79,123 +201,350 @@ public class RenderContextAccumulator {
 	 * {@link #executeChanges()} method may only be called in between {@link #begin()} and {@link #end()}. */
 	public void begin () {
 		current.applyDefaults();
+		unapplied.clearTextureUnits();
 		current.invalidateParameters(); // Avoids having to forcibly set defaults here for parameters that can hold an invalid state
+		dirty = ALL;
 		Gdx.gl.glDepthMask(true);
 		Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
 		Gdx.gl.glDisable(GL20.GL_CULL_FACE);
 		Gdx.gl.glDisable(GL20.GL_BLEND);
+		Gdx.gl.glDisable(GL20.GL_SCISSOR_TEST);
+		Gdx.gl.glDisable(GL20.GL_STENCIL_TEST);
+		Gdx.gl.glDisable(GL20.GL_POLYGON_OFFSET_FILL);
+		Gdx.gl.glStencilMask(0xffffffff);
 	}
 
-	public boolean hasPendingChanges () {
-		State pending = this.pending;
-		State current = this.current;
-
-		if (pending.depthMasking != current.depthMasking) return true;
+	/** Sets the pending state changes and texture bindings to match the pending state of another RenderContextAccumulator.
+	 * This can be used to restore a state that was recorded earlier. Nothing is applied to GL until {@link #executeChanges()}
+	 * is called.
+	 * @param other The RenderContextAccumulator whose pending state is copied. */
+	public void set (RenderContextAccumulator other) {
+		pending.set(other.pending);
+		dirty = ALL;
+	}
 
-		if (pending.depthTesting != current.depthTesting) return true;
+	/** @param other Another RenderContextAccumulator.
+	 * @return Whether the pending state and texture bindings of this RenderContextAccumulator are the same as those of the
+	 *         other one. */
+	public boolean hasEquivalentPendingState (RenderContextAccumulator other) {
+		return pending.isEquivalent(other.pending);
+	}
 
-		if (pending.depthTesting && pending.depthFunc != current.depthFunc) return true;
+	/** @return Whether any pending GL state changes or texture bindings differ from what has been applied. */
+	public boolean hasPendingChanges () {
+		return hasPendingStateChanges() || hasPendingTextureChanges();
+	}
+
+	/** @return Whether any pending GL state changes, not including texture bindings, differ from what has been applied. Only
+	 *         the groups of parameters that were changed since they were last applied are compared. */
+	public boolean hasPendingStateChanges () {
+		final int dirty = this.dirty;
+		if (dirty == 0) return false;
+		final State pending = this.pending;
+		final State current = this.current;
+
+		if ((dirty & DEPTH_MASK) != 0 && pending.depthMasking != current.depthMasking) return true;
+		if ((dirty & DEPTH_TEST) != 0 && pending.depthTesting != current.depthTesting) return true;
+		if ((dirty & DEPTH_FUNC) != 0 && pending.depthTesting && (pending.depthFunc != current.depthFunc
+			|| pending.depthRangeNear != current.depthRangeNear || pending.depthRangeFar != current.depthRangeFar)) return true;
+
+		if ((dirty & BLEND) != 0 && pending.blending != current.blending) return true;
+		if ((dirty & BLEND_FUNC) != 0 && pending.blending && (pending.blendSrcFuncColor != current.blendSrcFuncColor
+			|| pending.blendDstFuncColor != current.blendDstFuncColor || pending.blendSrcFuncAlpha != current.blendSrcFuncAlpha
+			|| pending.blendDstFuncAlpha != current.blendDstFuncAlpha)) return true;
+		if ((dirty & BLEND_EQUATION) != 0 && pending.blending && (pending.blendEquationColor != current.blendEquationColor
+			|| pending.blendEquationAlpha != current.blendEquationAlpha)) return true;
+
+		if ((dirty & CULL) != 0 && pending.culling != current.culling) return true;
+		if ((dirty & CULL_FACE) != 0 && pending.culling && pending.cullFace != current.cullFace) return true;
+
+		if ((dirty & SCISSOR_TEST) != 0 && pending.scissorTesting != current.scissorTesting) return true;
+		if ((dirty & SCISSOR_BOX) != 0 && pending.scissorTesting && (pending.scissorX != current.scissorX
+			|| pending.scissorY != current.scissorY || pending.scissorWidth != current.scissorWidth
+			|| pending.scissorHeight != current.scissorHeight)) return true;
+
+		if ((dirty & STENCIL_TEST) != 0 && pending.stencilTesting != current.stencilTesting) return true;
+		if ((dirty & STENCIL_FUNC) != 0 && pending.stencilTesting && (pending.stencilFunc != current.stencilFunc
+			|| pending.stencilRef != current.stencilRef || pending.stencilValueMask != current.stencilValueMask)) return true;
+		if ((dirty & STENCIL_OP) != 0 && pending.stencilTesting && (pending.stencilFail != current.stencilFail
+			|| pending.stencilDepthFail != current.stencilDepthFail || pending.stencilPass != current.stencilPass)) return true;
+		if ((dirty & STENCIL_MASK) != 0 && pending.stencilWriteMask != current.stencilWriteMask) return true;
+
+		if ((dirty & COLOR_MASK) != 0 && pending.colorMask != current.colorMask) return true;
+
+		if ((dirty & POLYGON_OFFSET_FILL) != 0 && pending.polygonOffsetFilling != current.polygonOffsetFilling) return true;
+		if ((dirty & POLYGON_OFFSET) != 0 && pending.polygonOffsetFilling
+			&& (pending.polygonOffsetFactor != current.polygonOffsetFactor || pending.polygonOffsetUnits != current.polygonOffsetUnits))
+			return true;
 
-		if (pending.blending != current.blending) return true;
+		if ((dirty & LINE_WIDTH) != 0 && pending.lineWidth != current.lineWidth) return true;
 
-		if (pending.blending) {
-			if (pending.blendSrcFuncColor != current.blendSrcFuncColor || pending.blendDstFuncColor != current.blendDstFuncColor
-				|| pending.blendSrcFuncAlpha != current.blendSrcFuncAlpha || pending.blendDstFuncAlpha != current.blendDstFuncAlpha)
-				return true;
-			if (pending.blendEquationColor != current.blendEquationColor || pending.blendEquationAlpha != current.blendEquationAlpha)
-				return true;
-		}
+		return false;
+	}
 
-		IntMap<GLTexture> actualTextureUnits = current.textureUnits;
-		for (IntMap.Entry<GLTexture> entry : pending.textureUnits) {
-			if (actualTextureUnits.get(entry.key) != entry.value) return true;
+	/** @return Whether any pending texture bindings differ from what has been applied. */
+	public boolean hasPendingTextureChanges () {
+		final GLTexture[] pendingTextureUnits = pending.textureUnits, currentTextureUnits = current.textureUnits;
+		for (int units = pending.boundUnits; units != 0; units &= units - 1) {
+			int unit = Integer.numberOfTrailingZeros(units);
+			if (currentTextureUnits[unit] != pendingTextureUnits[unit]) return true;
 		}
-
 		return false;
 	}
 
 	/** Applies the pending state changes and texture bindings to GL. This must be called in between {@link #begin()} and
 	 * {@link #end()}. */
 	public void executeChanges () {
-		State pending = this.pending;
-		State current = this.current;
+		final State pending = this.pending;
+		final State current = this.current;
+		int dirty = this.dirty;
+
+		if (dirty != 0) {
+			if ((dirty & DEPTH_MASK) != 0) {
+				if (pending.depthMasking != current.depthMasking) {
+					Gdx.gl.glDepthMask(pending.depthMasking);
+					current.depthMasking = pending.depthMasking;
+				}
+				dirty &= ~DEPTH_MASK;
+			}
 
-		if (pending.depthMasking != current.depthMasking) {
-			Gdx.gl.glDepthMask(pending.depthMasking);
-			current.depthMasking = pending.depthMasking;
-		}
+			if ((dirty & DEPTH_TEST) != 0) {
+				if (pending.depthTesting != current.depthTesting) {
+					setCapability(GL20.GL_DEPTH_TEST, pending.depthTesting);
+					current.depthTesting = pending.depthTesting;
+				}
+				dirty &= ~DEPTH_TEST;
+			}
 
-		if (pending.depthTesting != current.depthTesting) {
-			if (pending.depthTesting)
-				Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
-			else
-				Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
-			current.depthTesting = pending.depthTesting;
-		}
+			if ((dirty & DEPTH_FUNC) != 0 && pending.depthTesting) {
+				if (pending.depthFunc != current.depthFunc) {
+					Gdx.gl.glDepthFunc(pending.depthFunc);
+					current.depthFunc = pending.depthFunc;
+				}
+				if (pending.depthRangeNear != current.depthRangeNear || pending.depthRangeFar != current.depthRangeFar) {
+					Gdx.gl.glDepthRangef(pending.depthRangeNear, pending.depthRangeFar);
+					current.depthRangeNear = pending.depthRangeNear;
+					current.depthRangeFar = pending.depthRangeFar;
+				}
+				dirty &= ~DEPTH_FUNC;
+			}
 
-		if (pending.depthTesting) {
-			if (pending.depthFunc != current.depthFunc) {
-				Gdx.gl.glDepthFunc(pending.depthFunc);
-				current.depthFunc = pending.depthFunc;
+			if ((dirty & BLEND) != 0) {
+				if (pending.blending != current.blending) {
+					setCapability(GL20.GL_BLEND, pending.blending);
+					current.blending = pending.blending;
+				}
+				dirty &= ~BLEND;
 			}
 
-			if (pending.depthRangeNear != current.depthRangeNear || pending.depthRangeFar != current.depthRangeFar) {
-				Gdx.gl.glDepthRangef(pending.depthRangeNear, pending.depthRangeFar);
-				current.depthRangeNear = pending.depthRangeNear;
-				current.depthRangeFar = pending.depthRangeFar;
+			if ((dirty & BLEND_FUNC) != 0 && pending.blending) {
+				if (pending.blendSrcFuncColor != current.blendSrcFuncColor || pending.blendDstFuncColor != current.blendDstFuncColor
+					|| pending.blendSrcFuncAlpha != current.blendSrcFuncAlpha || pending.blendDstFuncAlpha != current.blendDstFuncAlpha) {
+					if (pending.blendSrcFuncColor == pending.blendSrcFuncAlpha
+						&& pending.blendDstFuncColor == pending.blendDstFuncAlpha) {
+						Gdx.gl.glBlendFunc(pending.blendSrcFuncColor, pending.blendDstFuncColor);
+					} else {
+						Gdx.gl.glBlendFuncSeparate(pending.blendSrcFuncColor, pending.blendDstFuncColor, pending.blendSrcFuncAlpha,
+							pending.blendDstFuncAlpha);
+					}
+					current.blendSrcFuncColor = pending.blendSrcFuncColor;
+					current.blendDstFuncColor = pending.blendDstFuncColor;
+					current.blendSrcFuncAlpha = pending.blendSrcFuncAlpha;
+					current.blendDstFuncAlpha = pending.blendDstFuncAlpha;
+				}
+				dirty &= ~BLEND_FUNC;
 			}
-		}
 
-		if (pending.blending != current.blending) {
-			if (pending.blending)
-				Gdx.gl.glEnable(GL20.GL_BLEND);
-			else
-				Gdx.gl.glDisable(GL20.GL_BLEND);
-			current.blending = pending.blending;
-		}
+			if ((dirty & BLEND_EQUATION) != 0 && pending.blending) {
+				if (pending.blendEquationColor != current.blendEquationColor
+					|| pending.blendEquationAlpha != current.blendEquationAlpha) {
+					if (pending.blendEquationColor == pending.blendEquationAlpha)
+						Gdx.gl.glBlendEquation(pending.blendEquationColor);
+					else
+						Gdx.gl.glBlendEquationSeparate(pending.blendEquationColor, pending.blendEquationAlpha);
+					current.blendEquationColor = pending.blendEquationColor;
+					current.blendEquationAlpha = pending.blendEquationAlpha;
+				}
+				dirty &= ~BLEND_EQUATION;
+			}
+
+			if ((dirty & CULL) != 0) {
+				if (pending.culling != current.culling) {
+					setCapability(GL20.GL_CULL_FACE, pending.culling);
+					current.culling = pending.culling;
+				}
+				dirty &= ~CULL;
+			}
 
-		if (pending.blending) {
-			if (pending.blendSrcFuncColor != current.blendSrcFuncColor || pending.blendDstFuncColor != current.blendDstFuncColor
-				|| pending.blendSrcFuncAlpha != current.blendSrcFuncAlpha || pending.blendDstFuncAlpha != current.blendDstFuncAlpha) {
-				if (pending.blendSrcFuncColor == pending.blendSrcFuncAlpha
-					&& pending.blendDstFuncColor == pending.blendDstFuncAlpha) {
-					Gdx.gl.glBlendFunc(pending.blendSrcFuncColor, pending.blendDstFuncColor);
-				} else {
-					Gdx.gl.glBlendFuncSeparate(pending.blendSrcFuncColor, pending.blendDstFuncColor, pending.blendSrcFuncAlpha,
-						pending.blendDstFuncAlpha);
+			if ((dirty & CULL_FACE) != 0 && pending.culling) {
+				if (pending.cullFace != current.cullFace) {
+					Gdx.gl.glCullFace(pending.cullFace);
+					current.cullFace = pending.cullFace;
 				}
-				current.blendSrcFuncColor = pending.blendSrcFuncColor;
-				current.blendDstFuncColor = pending.blendDstFuncColor;
-				current.blendSrcFuncAlpha = pending.blendSrcFuncAlpha;
-				current.blendDstFuncAlpha = pending.blendDstFuncAlpha;
+				dirty &= ~CULL_FACE;
 			}
 
-			if (pending.blendEquationColor != current.blendEquationColor
-				|| pending.blendEquationAlpha != current.blendEquationAlpha) {
-				if (pending.blendEquationColor == pending.blendEquationAlpha)
-					Gdx.gl.glBlendEquation(pending.blendEquationColor);
-				else
-					Gdx.gl.glBlendEquationSeparate(pending.blendEquationColor, pending.blendEquationAlpha);
+			if ((dirty & SCISSOR_TEST) != 0) {
+				if (pending.scissorTesting != current.scissorTesting) {
+					setCapability(GL20.GL_SCISSOR_TEST, pending.scissorTesting);
+					current.scissorTesting = pending.scissorTesting;
+				}
+				dirty &= ~SCISSOR_TEST;
+			}
+
+			if ((dirty & SCISSOR_BOX) != 0 && pending.scissorTesting) {
+				if (pending.scissorX != current.scissorX || pending.scissorY != current.scissorY
+					|| pending.scissorWidth != current.scissorWidth || pending.scissorHeight != current.scissorHeight) {
+					Gdx.gl.glScissor(pending.scissorX, pending.scissorY, pending.scissorWidth, pending.scissorHeight);
+					current.scissorX = pending.scissorX;
+					current.scissorY = pending.scissorY;
+					current.scissorWidth = pending.scissorWidth;
+					current.scissorHeight = pending.scissorHeight;
+				}
+				dirty &= ~SCISSOR_BOX;
+			}
+
+			if ((dirty & STENCIL_TEST) != 0) {
+				if (pending.stencilTesting != current.stencilTesting) {
+					setCapability(GL20.GL_STENCIL_TEST, pending.stencilTesting);
+					current.stencilTesting = pending.stencilTesting;
+				}
+				dirty &= ~STENCIL_TEST;
 			}
+
+			if ((dirty & STENCIL_FUNC) != 0 && pending.stencilTesting) {
+				if (pending.stencilFunc != current.stencilFunc || pending.stencilRef != current.stencilRef
+					|| pending.stencilValueMask != current.stencilValueMask) {
+					Gdx.gl.glStencilFunc(pending.stencilFunc, pending.stencilRef, pending.stencilValueMask);
+					current.stencilFunc = pending.stencilFunc;
+					current.stencilRef = pending.stencilRef;
+					current.stencilValueMask = pending.stencilValueMask;
+				}
+				dirty &= ~STENCIL_FUNC;
+			}
+
+			if ((dirty & STENCIL_OP) != 0 && pending.stencilTesting) {
+				if (pending.stencilFail != current.stencilFail || pending.stencilDepthFail != current.stencilDepthFail
+					|| pending.stencilPass != current.stencilPass) {
+					Gdx.gl.glStencilOp(pending.stencilFail, pending.stencilDepthFail, pending.stencilPass);
+					current.stencilFail = pending.stencilFail;
+					current.stencilDepthFail = pending.stencilDepthFail;
+					current.stencilPass = pending.stencilPass;
+				}
+				dirty &= ~STENCIL_OP;
+			}
+
+			if ((dirty & STENCIL_MASK) != 0) {
+				if (pending.stencilWriteMask != current.stencilWriteMask) {
+					Gdx.gl.glStencilMask(pending.stencilWriteMask);
+					current.stencilWriteMask = pending.stencilWriteMask;
+				}
+				dirty &= ~STENCIL_MASK;
+			}
+
+			if ((dirty & COLOR_MASK) != 0) {
+				if (pending.colorMask != current.colorMask) {
+					int mask = pending.colorMask;
+					Gdx.gl.glColorMask((mask & 1) != 0, (mask & 2) != 0, (mask & 4) != 0, (mask & 8) != 0);
+					current.colorMask = mask;
+				}
+				dirty &= ~COLOR_MASK;
+			}
+
+			if ((dirty & POLYGON_OFFSET_FILL) != 0) {
+				if (pending.polygonOffsetFilling != current.polygonOffsetFilling) {
+					setCapability(GL20.GL_POLYGON_OFFSET_FILL, pending.polygonOffsetFilling);
+					current.polygonOffsetFilling = pending.polygonOffsetFilling;
+				}
+				dirty &= ~POLYGON_OFFSET_FILL;
+			}
+
+			if ((dirty & POLYGON_OFFSET) != 0 && pending.polygonOffsetFilling) {
+				if (pending.polygonOffsetFactor != current.polygonOffsetFactor
+					|| pending.polygonOffsetUnits != current.polygonOffsetUnits) {
+					Gdx.gl.glPolygonOffset(pending.polygonOffsetFactor, pending.polygonOffsetUnits);
+					current.polygonOffsetFactor = pending.polygonOffsetFactor;
+					current.polygonOffsetUnits = pending.polygonOffsetUnits;
+				}
+				dirty &= ~POLYGON_OFFSET;
+			}
+
+			if ((dirty & LINE_WIDTH) != 0) {
+				if (pending.lineWidth != current.lineWidth) {
+					Gdx.gl.glLineWidth(pending.lineWidth);
+					current.lineWidth = pending.lineWidth;
+				}
+				dirty &= ~LINE_WIDTH;
+			}
+
+			this.dirty = dirty;
 		}
 
-		IntMap<GLTexture> currentTextureUnits = current.textureUnits;
-		for (IntMap.Entry<GLTexture> entry : pending.textureUnits) {
-			if (currentTextureUnits.get(entry.key) != entry.value) {
-				entry.value.bind(entry.key);
-				currentTextureUnits.put(entry.key, entry.value);
+		final GLTexture[] currentTextureUnits = current.textureUnits, pendingTextureUnits = pending.textureUnits;
+		for (int units = pending.boundUnits; units != 0; units &= units - 1) {
+			int unit = Integer.numberOfTrailingZeros(units);
+			GLTexture texture = pendingTextureUnits[unit];
+			if (currentTextureUnits[unit] != texture) {
+				texture.bind(unit);
+				current.putTextureUnit(unit, texture);
 			}
 		}
+		// units cleared since the last call are treated as empty
+		for (int units = current.boundUnits & ~pending.boundUnits; units != 0; units &= units - 1)
+			current.removeTextureUnit(Integer.numberOfTrailingZeros(units));
+		unapplied.clearTextureUnits();
+	}
+
+	private static void setCapability (int capability, boolean enabled) {
+		if (enabled)
+			Gdx.gl.glEnable(capability);
+		else
+			Gdx.gl.glDisable(capability);
+	}
+
+	/** Binds textures to units that had no texture applied when they were set, leaving all other pending changes for
+	 * {@link #executeChanges()}. Geometry that is already queued cannot have been using such units before, so this may be called
+	 * before it is drawn. This allows a Batchable to start using an additional texture unit without a flush. If such a texture
+	 * was replaced or cleared before being applied, the first one is bound, since queued geometry may use it. This must be called
+	 * in between {@link #begin()} and {@link #end()}. */
+	public void executeTextureUnitAdditions () {
+		final State current = this.current;
+		for (int units = unapplied.boundUnits; units != 0; units &= units - 1) {
+			int unit = Integer.numberOfTrailingZeros(units);
+			GLTexture texture = unapplied.textureUnits[unit];
+			texture.bind(unit);
+			current.putTextureUnit(unit, texture);
+		}
+		unapplied.clearTextureUnits();
+		for (int units = pending.boundUnits & ~current.boundUnits; units != 0; units &= units - 1) {
+			int unit = Integer.numberOfTrailingZeros(units);
+			GLTexture texture = pending.textureUnits[unit];
+			texture.bind(unit);
+			current.putTextureUnit(unit, texture);
+		}
+	}
 
+	/** Binds the texture that was applied to a unit again if other code has replaced it by binding a different texture of the
+	 * same target to that unit, so the applied state is correct again without querying GL. Pending changes are left for
+	 * {@link #executeChanges()}. This must be called in between {@link #begin()} and {@link #end()}.
+	 * @param unit The texture unit that the other texture was bound to.
+	 * @param boundTexture The texture that was bound by the other code. */
+	public void restoreTextureUnit (int unit, GLTexture boundTexture) {
+		if (unit < 0 || unit >= MAX_TEXTURE_UNITS) return;
+		GLTexture texture = current.textureUnits[unit];
+		if (texture != null && texture != boundTexture && texture.glTarget == boundTexture.glTarget) texture.bind(unit);
 	}
 
-	/** Returns actual OpenGL states to defaults. The blend function parameters, depth test function parameters, and culled face
-	 * parameter are left unchanged. */
+	/** Returns actual OpenGL states to defaults. Parameters that only apply while a capability is enabled, such as the blend
+	 * function, depth test function, culled face, scissor box, stencil function and operations, and polygon offset, are left
+	 * unchanged. */
 	public void end () {
 		State temp = pending;
 		pending = DEF;
+		dirty = ALL;
 		executeChanges();
 		pending = temp;
+		dirty = ALL;
 		Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
 	}
 
@@ -204,6 +553,7 @@ public class RenderContextAccumulator {
 	public boolean setDepthMasking (boolean enabled) {
 		if (pending.depthMasking != enabled) {
 			pending.depthMasking = enabled;
+			dirty |= DEPTH_MASK;
 			return true;
 		}
 		return false;
@@ -214,6 +564,7 @@ public class RenderContextAccumulator {
 	public boolean setDepthTesting (boolean enabled) {
 		if (pending.depthTesting != enabled) {
 			pending.depthTesting = enabled;
+			dirty |= DEPTH_TEST;
 			return true;
 		}
 		return false;
@@ -233,6 +584,7 @@ public class RenderContextAccumulator {
 			pending.depthFunc = depthFunc;
 			pending.depthRangeNear = depthRangeNear;
 			pending.depthRangeFar = depthRangeFar;
+			dirty |= DEPTH_FUNC;
 			return true;
 		}
 		return false;
@@ -243,6 +595,7 @@ public class RenderContextAccumulator {
 	public boolean setBlending (boolean enabled) {
 		if (pending.blending != enabled) {
 			pending.blending = enabled;
+			dirty |= BLEND;
 			return true;
 		}
 		return false;
@@ -264,6 +617,7 @@ public class RenderContextAccumulator {
 			pending.blendDstFuncColor = dColorFactor;
 			pending.blendSrcFuncAlpha = sAlphaFactor;
 			pending.blendDstFuncAlpha = dAlphaFactor;
+			dirty |= BLEND_FUNC;
 			return pending.blending;
 		}
 		return false;
@@ -279,9 +633,10 @@ public class RenderContextAccumulator {
 	 * blending is enabled.
 	 * @return Whether the pending blend equations were changed while the pending blending state is true. */
 	public boolean setBlendEquation (int blendEquationColor, int blendEquationAlpha) {
-		if (pending.blendEquationColor != blendEquationColor || pending.blendEquationAlpha != blendEquationColor) {
+		if (pending.blendEquationColor != blendEquationColor || pending.blendEquationAlpha != blendEquationAlpha) {
 			pending.blendEquationColor = blendEquationColor;
 			pending.blendEquationAlpha = blendEquationAlpha;
+			dirty |= BLEND_EQUATION;
 			return pending.blending;
 		}
 		return false;
@@ -292,6 +647,7 @@ public class RenderContextAccumulator {
 	public boolean setFaceCulling (boolean enabled) {
 		if (pending.culling != enabled) {
 			pending.culling = enabled;
+			dirty |= CULL;
 			return true;
 		}
 		return false;
@@ -300,36 +656,175 @@ public class RenderContextAccumulator {
 	/** Sets which face(s) is culled when face culling is enabled. It will only be applied when face culling is enabled.
 	 * @return Whether the pending cull face parameter was changed while face culling is true; */
 	public boolean setCullFace (int face) {
-		if (pending.cullFace != current.cullFace) {
-			pending.cullFace = current.cullFace;
+		if (pending.cullFace != face) {
+			pending.cullFace = face;
+			dirty |= CULL_FACE;
 			return pending.culling;
 		}
 		return false;
 	}
 
+	/** Enables or disables the scissor test.
+	 * @return Whether the pending scissor test state was changed. */
+	public boolean setScissorTesting (boolean enabled) {
+		if (pending.scissorTesting != enabled) {
+			pending.scissorTesting = enabled;
+			dirty |= SCISSOR_TEST;
+			return true;
+		}
+		return false;
+	}
+
+	/** Sets the scissor box in window coordinates. It will only be applied when the scissor test is enabled.
+	 * @return Whether the pending scissor box was changed while the scissor test is enabled. */
+	public boolean setScissor (int x, int y, int width, int height) {
+		if (pending.scissorX != x || pending.scissorY != y || pending.scissorWidth != width || pending.scissorHeight != height) {
+			pending.scissorX = x;
+			pending.scissorY = y;
+			pending.scissorWidth = width;
+			pending.scissorHeight = height;
+			dirty |= SCISSOR_BOX;
+			return pending.scissorTesting;
+		}
+		return false;
+	}
+
+	/** Enables or disables stencil testing.
+	 * @return Whether the pending stencil testing state was changed. */
+	public boolean setStencilTesting (boolean enabled) {
+		if (pending.stencilTesting != enabled) {
+			pending.stencilTesting = enabled;
+			dirty |= STENCIL_TEST;
+			return true;
+		}
+		return false;
+	}
+
+	/** Sets the stencil test function, reference value and mask for both faces. They will only be applied when stencil testing
+	 * is enabled.
+	 * @return Whether the pending stencil function parameters were changed while stencil testing is enabled. */
+	public boolean setStencilFunction (int func, int ref, int mask) {
+		if (pending.stencilFunc != func || pending.stencilRef != ref || pending.stencilValueMask != mask) {
+			pending.stencilFunc = func;
+			pending.stencilRef = ref;
+			pending.stencilValueMask = mask;
+			dirty |= STENCIL_FUNC;
+			return pending.stencilTesting;
+		}
+		return false;
+	}
+
+	/** Sets the stencil operations for both faces. They will only be applied when stencil testing is enabled.
+	 * @return Whether the pending stencil operations were changed while stencil testing is enabled. */
+	public boolean setStencilOperation (int fail, int depthFail, int pass) {
+		if (pending.stencilFail != fail || pending.stencilDepthFail != depthFail || pending.stencilPass != pass) {
+			pending.stencilFail = fail;
+			pending.stencilDepthFail = depthFail;
+			pending.stencilPass = pass;
+			dirty |= STENCIL_OP;
+			return pending.stencilTesting;
+		}
+		return false;
+	}
+
+	/** Sets which bits of the stencil buffer can be written.
+	 * @return Whether the pending stencil write mask was changed. */
+	public boolean setStencilMask (int mask) {
+		if (pending.stencilWriteMask != mask) {
+			pending.stencilWriteMask = mask;
+			dirty |= STENCIL_MASK;
+			return true;
+		}
+		return false;
+	}
+
+	/** Sets which color components can be written.
+	 * @return Whether the pending color mask was changed. */
+	public boolean setColorMask (boolean red, boolean green, boolean blue, boolean alpha) {
+		int mask = (red ? 1 : 0) | (green ? 2 : 0) | (blue ? 4 : 0) | (alpha ? 8 : 0);
+		if (pending.colorMask != mask) {
+			pending.colorMask = mask;
+			dirty |= COLOR_MASK;
+			return true;
+		}
+		return false;
+	}
+
+	/** Enables or disables polygon offset for filled polygons.
+	 * @return Whether the pending polygon offset state was changed. */
+	public boolean setPolygonOffsetFilling (boolean enabled) {
+		if (pending.polygonOffsetFilling != enabled) {
+			pending.polygonOffsetFilling = enabled;
+			dirty |= POLYGON_OFFSET_FILL;
+			return true;
+		}
+		return false;
+	}
+
+	/** Sets the polygon offset parameters. They will only be applied when polygon offset filling is enabled.
+	 * @return Whether the pending polygon offset parameters were changed while polygon offset filling is enabled. */
+	public boolean setPolygonOffset (float factor, float units) {
+		if (pending.polygonOffsetFactor != factor || pending.polygonOffsetUnits != units) {
+			pending.polygonOffsetFactor = factor;
+			pending.polygonOffsetUnits = units;
+			dirty |= POLYGON_OFFSET;
+			return pending.polygonOffsetFilling;
+		}
+		return false;
+	}
+
+	/** Sets the width of rasterized lines.
+	 * @return Whether the pending line width was changed. */
+	public boolean setLineWidth (float width) {
+		if (pending.lineWidth != width) {
+			pending.lineWidth = width;
+			dirty |= LINE_WIDTH;
+			return true;
+		}
+		return false;
+	}
+
 	/** Sets the texture to be bound to the given texture unit.
+	 * @param unit The texture unit, from 0 to {@link #MAX_TEXTURE_UNITS} - 1.
 	 * @return Whether the pending texture for the unit was changed. */
 	public boolean setTextureUnit (GLTexture texture, int unit) {
-		if (pending.textureUnits.get(unit) != texture) {
+		if (unit < 0 || unit >= MAX_TEXTURE_UNITS)
+			throw new IllegalArgumentException("Texture unit must be from 0 to " + (MAX_TEXTURE_UNITS - 1) + ": " + unit);
+		if (pending.textureUnits[unit] != texture) {
+			retainUnapplied(unit);
 			if (texture == null)
-				pending.textureUnits.remove(unit);
+				pending.removeTextureUnit(unit);
 			else
-				pending.textureUnits.put(unit, texture);
+				pending.putTextureUnit(unit, texture);
 			return true;
 		}
 		return false;
 	}
 
+	/** @return The texture that is pending to be bound to the given texture unit, or null if there is none. */
+	public GLTexture getTextureUnit (int unit) {
+		return unit >= 0 && unit < MAX_TEXTURE_UNITS ? pending.textureUnits[unit] : null;
+	}
+
 	/** Cancels any pending texture that is to be bound to the given texture unit.
 	 * @return whether a unit was cleared. */
 	public boolean clearTextureUnit (int unit) {
-		return null != pending.textureUnits.remove(unit);
+		if (unit < 0 || unit >= MAX_TEXTURE_UNITS) return false;
+		retainUnapplied(unit);
+		return null != pending.removeTextureUnit(unit);
+	}
+
+	private void retainUnapplied (int unit) {
+		if (((current.boundUnits | unapplied.boundUnits) & 1 << unit) != 0) return;
+		GLTexture texture = pending.textureUnits[unit];
+		if (texture != null) unapplied.putTextureUnit(unit, texture);
 	}
 
 	/** Cancels all pending texture bindings and drops all Texture references held by RenderContextAccumulator. */
 	public void clearAllTextureUnits () {
-		pending.textureUnits.clear();
-		current.textureUnits.clear();
+		pending.clearTextureUnits();
+		current.clearTextureUnits();
+		unapplied.clearTextureUnits();
 	}
 
 	/** @return Whether depth buffer writing is enabled. This state may not have been applied yet. */
@@ -361,7 +856,7 @@ public class RenderContextAccumulator {
 	}
 
 	public int getBlendFuncSrcColor () {
-		return pending.blendDstFuncColor;
+		return pending.blendSrcFuncColor;
 	}
 
 	public int getBlendFuncDstColor () {
@@ -369,7 +864,7 @@ public class RenderContextAccumulator {
 	}
 
 	public boolean isBlendFuncSeparate () {
-		return pending.blendSrcFuncAlpha != -1;
+		return pending.blendSrcFuncColor != pending.blendSrcFuncAlpha || pending.blendDstFuncColor != pending.blendDstFuncAlpha;
 	}
 
 	public int getBlendFuncSrcAlpha () {
@@ -389,4 +884,81 @@ public class RenderContextAccumulator {
 	public int getCullFace () {
 		return pending.cullFace;
 	}
+
+	/** @return Whether the scissor test is enabled. This state may not have been applied yet. */
+	public boolean isScissorTestingEnabled () {
+		return pending.scissorTesting;
+	}
+
+	public int getScissorX () {
+		return pending.scissorX;
+	}
+
+	public int getScissorY () {
+		return pending.scissorY;
+	}
+
+	public int getScissorWidth () {
+		return pending.scissorWidth;
+	}
+
+	public int getScissorHeight () {
+		return pending.scissorHeight;
+	}
+
+	/** @return Whether stencil testing is enabled. This state may not have been applied yet. */
+	public boolean isStencilTestingEnabled () {
+		return pending.stencilTesting;
+	}
+
+	public int getStencilFunction () {
+		return pending.stencilFunc;
+	}
+
+	public int getStencilReference () {
+		return pending.stencilRef;
+	}
+
+	public int getStencilValueMask () {
+		return pending.stencilValueMask;
+	}
+
+	public int getStencilFailOperation () {
+		return pending.stencilFail;
+	}
+
+	public int getStencilDepthFailOperation () {
+		return pending.stencilDepthFail;
+	}
+
+	public int getStencilPassOperation () {
+		return pending.stencilPass;
+	}
+
+	public int getStencilMask () {
+		return pending.stencilWriteMask;
+	}
+
+	/** @return The color mask, with the red, green, blue and alpha write enables in the lowest four bits. This parameter may not
+	 *         have been applied yet. */
+	public int getColorMask () {
+		return pending.colorMask;
+	}
+
+	/** @return Whether polygon offset is enabled for filled polygons. This state may not have been applied yet. */
+	public boolean isPolygonOffsetFillingEnabled () {
+		return pending.polygonOffsetFilling;
+	}
+
+	public float getPolygonOffsetFactor () {
+		return pending.polygonOffsetFactor;
+	}
+
+	public float getPolygonOffsetUnits () {
+		return pending.polygonOffsetUnits;
+	}
+
+	public float getLineWidth () {
+		return pending.lineWidth;
+	}
 }
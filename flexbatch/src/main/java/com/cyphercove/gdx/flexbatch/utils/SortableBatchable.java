@@ -15,6 +15,7 @@
  ******************************************************************************/
 package com.cyphercove.gdx.flexbatch.utils;
 
+import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.Vector3;
 import com.cyphercove.gdx.flexbatch.Batchable;
 
@@ -31,4 +32,18 @@ public interface SortableBatchable<T extends Batchable> {
 	 * @return Whether this Batchable and the other have the same texture configuration such that they could be drawn sequentially
 	 *         without forcing the FlexBatch to flush in between. */
 	public abstract boolean hasEquivalentTextures (T other);
+
+	/** @return A hash code of the texture configuration, used by {@link BatchableSorter} to find the group of opaque Batchables
+	 *         with equivalent textures. It must be the same for any two Batchables whose {@link #hasEquivalentTextures(Batchable)}
+	 *         returns true. */
+	int getTexturesHashCode ();
+
+	/** @param frustum The frustum of the camera, which must be up to date.
+	 * @return Whether this Batchable might be visible in the frustum. May conservatively return true for a Batchable that is
+	 *         just outside it. Used by {@link BatchableSorter} for culling. */
+	boolean isInFrustum (Frustum frustum);
+
+	/** @param center Set to the center of a sphere that contains this Batchable.
+	 * @return The radius of the sphere. Used by {@link BatchableGrid} to place the Batchable in its cells. */
+	float getBoundingSphere (Vector3 center);
 }
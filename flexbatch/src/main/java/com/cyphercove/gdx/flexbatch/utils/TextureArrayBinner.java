@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.TextureArray;
+import com.badlogic.gdx.graphics.TextureArrayData;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+/** Packs same-size Textures into the layers of a single {@link TextureArray}, so Batchables that would otherwise each bind a
+ * different Texture can share one texture binding and be drawn without flushing between them. Each Texture is copied into the
+ * next free layer the first time it is seen, and keeps that layer until {@link #clear()} is called.
+ * <p>
+ * Textures are copied on the GPU, so binning a Texture does not reload its image data. Only Textures with the same dimensions
+ * as the TextureArray and the same RGBA8888 format can be binned, because GL ES 3.0 only copies between matching formats. Any
+ * other Texture is rejected and is drawn unchanged.
+ * <p>
+ * A Texture is copied the first time it is binned, which is typically while drawing. The copy binds the TextureArray to texture
+ * unit 0, leaving unit 0 active, and resets the read framebuffer to the default framebuffer. The draw framebuffer is not
+ * changed. When binning for a {@link com.cyphercove.gdx.flexbatch.FlexBatch FlexBatch}, pass its RenderContextAccumulator to
+ * {@link #setRenderContext(RenderContextAccumulator)} so any texture the copy displaces is bound again.
+ * <p>
+ * TextureArrays require GL ES 3.0. If {@link Gdx#gl30} is not available, the binner creates no TextureArray and rejects every
+ * Texture, so the same drawing code falls back to binding the individual Textures. The shaders from
+ * {@link BatchablePreparation} that are generated with texture arrays enabled also fall back to plain 2D samplers in that case.
+ *
+ * @author cypherdare */
+public class TextureArrayBinner implements Disposable {
+
+	private final int width, height, maxLayers;
+	private final TextureArray textureArray;
+	private final ObjectIntMap<Texture> layers;
+	private final Array<Texture> layerTextures;
+	private RenderContextAccumulator renderContext;
+	private int framebufferHandle;
+
+	/** @param width The width of the TextureArray. Only Textures of this width can be binned.
+	 * @param height The height of the TextureArray. Only Textures of this height can be binned.
+	 * @param maxLayers The number of layers in the TextureArray, and therefore the number of distinct Textures that can be binned
+	 *           until {@link #clear()} is called. Must not exceed the GL implementation's GL_MAX_ARRAY_TEXTURE_LAYERS, which is at
+	 *           least 256. */
+	public TextureArrayBinner (int width, int height, int maxLayers) {
+		if (maxLayers < 1) throw new IllegalArgumentException("maxLayers must be at least 1.");
+		this.width = width;
+		this.height = height;
+		this.maxLayers = maxLayers;
+		layers = new ObjectIntMap<Texture>(maxLayers);
+		layerTextures = new Array<Texture>(maxLayers);
+		textureArray = isSupported() ? new TextureArray(new LayerData()) : null;
+	}
+
+	/** @return Whether TextureArrays are available, so that Textures can be binned. */
+	public static boolean isSupported () {
+		return Gdx.gl30 != null;
+	}
+
+	/** @return The TextureArray that binned Textures are copied into, or null if TextureArrays are not supported. */
+	public TextureArray getTextureArray () {
+		return textureArray;
+	}
+
+	/** Sets the RenderContextAccumulator whose texture bindings are restored after a Texture is copied into the TextureArray,
+	 * such as the one from {@link com.cyphercove.gdx.flexbatch.FlexBatch#getRenderContext()}. May be null. */
+	public void setRenderContext (RenderContextAccumulator renderContext) {
+		this.renderContext = renderContext;
+	}
+
+	/** Sets the filter of the TextureArray. Filters of the binned Textures are not carried over. */
+	public void setFilter (TextureFilter minFilter, TextureFilter magFilter) {
+		if (textureArray != null) textureArray.setFilter(minFilter, magFilter);
+	}
+
+	/** Finds the layer of the TextureArray that holds the given texture, copying it into the next free layer if it has not been
+	 * binned yet.
+	 * @param texture A texture to look up. May be null.
+	 * @return The layer holding the texture, or -1 if it cannot be binned because TextureArrays are not supported, the texture is
+	 *         not a Texture of the correct size and format, or all layers are in use. */
+	public int bin (GLTexture texture) {
+		if (!(texture instanceof Texture) || textureArray == null) return -1;
+		Texture t = (Texture)texture;
+		int layer = layers.get(t, -1);
+		if (layer >= 0) return layer;
+		if (layerTextures.size == maxLayers || t.getWidth() != width || t.getHeight() != height) return -1;
+		if (t.getTextureData().getFormat() != Pixmap.Format.RGBA8888) return -1;
+		layer = layerTextures.size;
+		layers.put(t, layer);
+		layerTextures.add(t);
+		upload(t, layer);
+		return layer;
+	}
+
+	/** @param texture A texture to look up.
+	 * @return The layer holding the texture, or -1 if it has not been binned. */
+	public int getLayer (GLTexture texture) {
+		return texture instanceof Texture ? layers.get((Texture)texture, -1) : -1;
+	}
+
+	/** @return The number of layers in use. */
+	public int getLayerCount () {
+		return layerTextures.size;
+	}
+
+	/** Releases all layers so the TextureArray can be repacked, for example with the textures of the next frame. Nothing that was
+	 * binned before this call may still be queued for drawing. */
+	public void clear () {
+		layers.clear();
+		layerTextures.clear();
+	}
+
+	/** Copies a Texture into a layer on the GPU by attaching it to a framebuffer and copying from there, so the Texture's data
+	 * never has to be reloaded. GL state is left as described in the class documentation rather than queried and restored,
+	 * because querying GL while drawing can stall the pipeline. */
+	private void upload (Texture texture, int layer) {
+		textureArray.bind(0);
+		copyLayer(texture, layer);
+		Gdx.gl.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, 0);
+		if (renderContext != null) renderContext.restoreTextureUnit(0, textureArray);
+	}
+
+	/** Copies to the bound TextureArray, leaving the copy framebuffer bound for reading. */
+	private void copyLayer (Texture texture, int layer) {
+		Gdx.gl.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, framebufferHandle);
+		Gdx.gl.glFramebufferTexture2D(GL30.GL_READ_FRAMEBUFFER, GL20.GL_COLOR_ATTACHMENT0, GL20.GL_TEXTURE_2D,
+			texture.getTextureObjectHandle(), 0);
+		Gdx.gl30.glCopyTexSubImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, 0, 0, width, height);
+	}
+
+	public void dispose () {
+		clear();
+		if (textureArray != null) {
+			textureArray.dispose();
+			Gdx.gl.glDeleteFramebuffer(framebufferHandle);
+		}
+	}
+
+	/** Allocates the TextureArray's storage and the copy framebuffer, and copies the binned layers again if the GL context is
+	 * lost. The binned Textures are reloaded before TextureArrays are. */
+	private class LayerData implements TextureArrayData {
+		public boolean isPrepared () {
+			return true;
+		}
+
+		public void prepare () {
+		}
+
+		public void consumeTextureArrayData () {
+			framebufferHandle = Gdx.gl.glGenFramebuffer();
+			if (layerTextures.size == 0) return;
+			for (int i = 0; i < layerTextures.size; i++)
+				copyLayer(layerTextures.get(i), i);
+			Gdx.gl.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, 0);
+		}
+
+		public int getWidth () {
+			return width;
+		}
+
+		public int getHeight () {
+			return height;
+		}
+
+		public int getDepth () {
+			return maxLayers;
+		}
+
+		public boolean isManaged () {
+			return true;
+		}
+
+		public int getInternalFormat () {
+			return GL20.GL_RGBA;
+		}
+
+		public int getGLType () {
+			return GL20.GL_UNSIGNED_BYTE;
+		}
+	}
+}
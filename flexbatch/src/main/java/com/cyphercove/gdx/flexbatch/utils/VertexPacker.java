@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright 2017 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.ByteBuffer;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+
+/** Converts vertex data from 32-bit floats into a compact vertex layout, such as one created by
+ * {@link BatchablePreparation#addBaseAttributes(com.badlogic.gdx.utils.Array, int, boolean, boolean, boolean)}. Batchables keep
+ * writing floats into an array laid out by the {@link #expandedAttributes}, which have the same attributes and component counts
+ * as the compact {@link #packedAttributes} but with every component stored as a float. The data is converted when it is
+ * uploaded, so the GPU reads the smaller vertices.
+ * <p>
+ * Supported component types are floats, packed colors, non-normalized shorts, and normalized unsigned shorts, signed bytes and
+ * unsigned bytes. Converted values are rounded to the nearest representable value and clamped to its range. Each attribute
+ * must take a multiple of 4 bytes, which keeps attributes aligned for the GPU.
+ * <p>
+ * The static writers can also be used to fill a ByteBuffer directly, using an {@link AttributeOffsets} created in byte units.
+ *
+ * @author cypherdare */
+public class VertexPacker {
+
+	private static final int FLOAT = 0, SHORT = 1, NORMALIZED_UNSIGNED_SHORT = 2, NORMALIZED_BYTE = 3, NORMALIZED_UNSIGNED_BYTE = 4;
+
+	/** The compact attributes that the GPU reads. */
+	public final VertexAttributes packedAttributes;
+	/** Attributes equivalent to the {@link #packedAttributes}, but with every component stored as a float, except packed colors,
+	 * which are stored as one float as usual. */
+	public final VertexAttributes expandedAttributes;
+	/** The size of a packed vertex in bytes. */
+	public final int packedVertexSize;
+	/** The size of an expanded vertex in floats. */
+	public final int expandedVertexSize;
+	private final int[] types, componentCounts, sourceOffsets, destinationOffsets;
+
+	/** @param packedAttributes The compact attributes.
+	 * @throws IllegalArgumentException If an attribute has an unsupported type or its size is not a multiple of 4 bytes. */
+	public VertexPacker (VertexAttributes packedAttributes) {
+		this.packedAttributes = packedAttributes;
+		expandedAttributes = expand(packedAttributes);
+		packedVertexSize = packedAttributes.vertexSize;
+		expandedVertexSize = expandedAttributes.vertexSize / 4;
+		AttributeOffsets sourceOffsets = new AttributeOffsets(expandedAttributes);
+		AttributeOffsets destinationOffsets = new AttributeOffsets(packedAttributes, true);
+		int count = packedAttributes.size();
+		types = new int[count];
+		componentCounts = new int[count];
+		this.sourceOffsets = new int[count];
+		this.destinationOffsets = new int[count];
+		for (int i = 0; i < count; i++) {
+			VertexAttribute attribute = packedAttributes.get(i);
+			if (attribute.getSizeInBytes() % 4 != 0) throw new IllegalArgumentException(
+				"Packed attributes must take a multiple of 4 bytes: " + attribute.alias);
+			types[i] = typeOf(attribute);
+			componentCounts[i] = attribute.usage == Usage.ColorPacked ? 1 : attribute.numComponents;
+			this.sourceOffsets[i] = sourceOffsets.get(i);
+			this.destinationOffsets[i] = destinationOffsets.get(i);
+		}
+	}
+
+	private static int typeOf (VertexAttribute attribute) {
+		if (attribute.usage == Usage.ColorPacked) return FLOAT;
+		switch (attribute.type) {
+		case GL20.GL_FLOAT:
+			return FLOAT;
+		case GL20.GL_SHORT:
+			if (!attribute.normalized) return SHORT;
+			break;
+		case GL20.GL_UNSIGNED_SHORT:
+			if (attribute.normalized) return NORMALIZED_UNSIGNED_SHORT;
+			break;
+		case GL20.GL_BYTE:
+			if (attribute.normalized) return NORMALIZED_BYTE;
+			break;
+		case GL20.GL_UNSIGNED_BYTE:
+			if (attribute.normalized) return NORMALIZED_UNSIGNED_BYTE;
+			break;
+		}
+		throw new IllegalArgumentException("Unsupported packed attribute type: " + attribute.alias);
+	}
+
+	/** @return Whether any of the attributes stores components in something other than floats or a packed color, so the vertex
+	 *         data must be packed before it is uploaded. */
+	public static boolean isPacked (VertexAttributes attributes) {
+		for (int i = 0; i < attributes.size(); i++) {
+			VertexAttribute attribute = attributes.get(i);
+			if (attribute.usage != Usage.ColorPacked && attribute.type != GL20.GL_FLOAT) return true;
+		}
+		return false;
+	}
+
+	private static VertexAttributes expand (VertexAttributes attributes) {
+		VertexAttribute[] expanded = new VertexAttribute[attributes.size()];
+		for (int i = 0; i < expanded.length; i++) {
+			VertexAttribute attribute = attributes.get(i);
+			if (attribute.usage == Usage.ColorPacked || attribute.type == GL20.GL_FLOAT)
+				expanded[i] = attribute.copy();
+			else
+				expanded[i] = new VertexAttribute(attribute.usage, attribute.numComponents, GL20.GL_FLOAT, false, attribute.alias,
+					attribute.unit);
+		}
+		return new VertexAttributes(expanded);
+	}
+
+	/** Converts expanded vertices into packed vertices.
+	 * @param source Vertex data laid out by the {@link #expandedAttributes}.
+	 * @param offset The index of the first float of the source data.
+	 * @param vertexCount The number of vertices to convert.
+	 * @param destination The buffer to write to. Its position and limit are not changed.
+	 * @param destinationIndex The byte index at which to write the first vertex. */
+	public void pack (float[] source, int offset, int vertexCount, ByteBuffer destination, int destinationIndex) {
+		final int[] types = this.types, componentCounts = this.componentCounts, sourceOffsets = this.sourceOffsets,
+			destinationOffsets = this.destinationOffsets;
+		final int attributeCount = types.length;
+		for (int v = 0; v < vertexCount; v++) {
+			for (int a = 0; a < attributeCount; a++) {
+				int s = offset + sourceOffsets[a];
+				int d = destinationIndex + destinationOffsets[a];
+				int n = componentCounts[a];
+				switch (types[a]) {
+				case FLOAT:
+					for (int c = 0; c < n; c++, d += 4)
+						destination.putFloat(d, source[s + c]);
+					break;
+				case SHORT:
+					for (int c = 0; c < n; c++, d += 2)
+						putShort(destination, d, source[s + c]);
+					break;
+				case NORMALIZED_UNSIGNED_SHORT:
+					for (int c = 0; c < n; c++, d += 2)
+						putNormalizedUnsignedShort(destination, d, source[s + c]);
+					break;
+				case NORMALIZED_BYTE:
+					for (int c = 0; c < n; c++, d++)
+						putNormalizedByte(destination, d, source[s + c]);
+					break;
+				case NORMALIZED_UNSIGNED_BYTE:
+					for (int c = 0; c < n; c++, d++)
+						putNormalizedUnsignedByte(destination, d, source[s + c]);
+					break;
+				}
+			}
+			offset += expandedVertexSize;
+			destinationIndex += packedVertexSize;
+		}
+	}
+
+	/** Writes a value as a non-normalized signed short, rounded to the nearest whole number. */
+	public static void putShort (ByteBuffer buffer, int index, float value) {
+		buffer.putShort(index, (short)clamp(Math.round(value), Short.MIN_VALUE, Short.MAX_VALUE));
+	}
+
+	/** Writes a value in the range [0, 1] as a normalized unsigned short. */
+	public static void putNormalizedUnsignedShort (ByteBuffer buffer, int index, float value) {
+		buffer.putShort(index, (short)clamp(Math.round(value * 65535f), 0, 65535));
+	}
+
+	/** Writes a value in the range [-1, 1] as a normalized signed byte. */
+	public static void putNormalizedByte (ByteBuffer buffer, int index, float value) {
+		buffer.put(index, (byte)clamp(Math.round(value * 127f), -127, 127));
+	}
+
+	/** Writes a value in the range [0, 1] as a normalized unsigned byte. */
+	public static void putNormalizedUnsignedByte (ByteBuffer buffer, int index, float value) {
+		buffer.put(index, (byte)clamp(Math.round(value * 255f), 0, 255));
+	}
+
+	/** Writes a unit vector as four normalized signed bytes, for an attribute created with
+	 * {@link BatchablePreparation#newPackedDirectionAttribute(int, String)}. The fourth byte is zero. */
+	public static void putPackedDirection (ByteBuffer buffer, int index, float x, float y, float z) {
+		putNormalizedByte(buffer, index, x);
+		putNormalizedByte(buffer, index + 1, y);
+		putNormalizedByte(buffer, index + 2, z);
+		buffer.put(index + 3, (byte)0);
+	}
+
+	private static int clamp (int value, int min, int max) {
+		return value < min ? min : value > max ? max : value;
+	}
+}
@@ -0,0 +1,111 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.cyphercove.gdx.flexbatch.batchable.Quad3D;
+import com.cyphercove.gdx.flexbatch.tests.BatchableSorterTest.OrderRecordingBatch;
+import com.cyphercove.gdx.flexbatch.utils.BatchableGrid;
+import com.cyphercove.gdx.flexbatch.utils.BatchableSorter;
+
+public class BatchableGridTest extends RecordingGLTest {
+
+    private PerspectiveCamera camera;
+    private BatchableGrid<Quad3D> grid;
+    private BatchableSorter<Quad3D> sorter;
+    private OrderRecordingBatch batch;
+    private Texture texture;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(BatchableGridTest.class);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        camera = new PerspectiveCamera(67, 100, 100);
+        camera.position.set(0, 0, 20);
+        camera.lookAt(0, 0, 0);
+        camera.near = 1;
+        camera.far = 100;
+        camera.update();
+        grid = new BatchableGrid<Quad3D>(10);
+        sorter = new BatchableSorter<Quad3D>(camera);
+        batch = manage(new OrderRecordingBatch());
+        texture = createTexture(4, 4);
+    }
+
+    /** @return A small opaque quad in the cell at the origin, unless moved. */
+    private Quad3D quad(float x) {
+        return new Quad3D().texture(texture).size(1, 1).position(x, 1, 1);
+    }
+
+    /** Asserts that exactly the given Batchables are passed on as visible, in any order. */
+    private void assertVisible(Quad3D... expected) {
+        grid.addVisible(sorter, camera.frustum);
+        sorter.flush(batch);
+        assertEquals(expected.length, batch.drawn.size);
+        for (Quad3D quad : expected)
+            assertTrue(batch.drawn.contains(quad, true));
+        batch.drawn.clear();
+    }
+
+    public void testRemoveKeepsTheIndicesOfOthers() {
+        Quad3D[] quads = new Quad3D[5];
+        for (int i = 0; i < quads.length; i++) {
+            quads[i] = quad(i + 1);
+            assertTrue(grid.insert(quads[i]));
+        }
+        assertFalse(grid.insert(quads[0]));
+
+        assertTrue(grid.remove(quads[1])); // the last quad takes its place in the bucket
+        assertTrue(grid.remove(quads[4]));
+        assertFalse(grid.remove(quads[4]));
+        assertVisible(quads[0], quads[2], quads[3]);
+
+        assertTrue(grid.remove(quads[0]));
+        assertEquals(2, grid.size());
+        assertVisible(quads[2], quads[3]);
+    }
+
+    public void testMoveBetweenCells() {
+        Quad3D a = quad(1), b = quad(2), c = quad(3);
+        grid.insert(a);
+        grid.insert(b);
+        grid.insert(c);
+
+        a.position(0, 0, 50); // behind the camera, in another cell
+        assertTrue(grid.move(a));
+        b.position(4, 1, 1); // within the same cell
+        assertTrue(grid.move(b));
+        assertVisible(b, c);
+
+        assertTrue(grid.remove(c)); // c took the place of a in the bucket
+        assertVisible(b);
+
+        a.position(-5, 1, 1);
+        assertTrue(grid.move(a));
+        assertVisible(a, b);
+        assertEquals(2, grid.size());
+        assertFalse(grid.move(c));
+    }
+
+    public void testEmptiedCellsCanBeReused() {
+        Quad3D a = quad(1), b = quad(-15);
+        grid.insert(a);
+        grid.insert(b);
+        assertTrue(grid.remove(a)); // frees a cell that is not the last one
+        assertTrue(grid.remove(b));
+        assertEquals(0, grid.size());
+        assertVisible();
+
+        grid.insert(b);
+        b.position(1, 1, 1);
+        assertTrue(grid.move(b));
+        grid.insert(a);
+        assertTrue(grid.contains(a));
+        assertVisible(a, b);
+
+        grid.clear();
+        assertFalse(grid.contains(a));
+        assertVisible();
+    }
+}
@@ -0,0 +1,198 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable;
+import com.cyphercove.gdx.flexbatch.FlexBatch;
+import com.cyphercove.gdx.flexbatch.batchable.Quad3D;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.BatchableSorter;
+import com.cyphercove.gdx.flexbatch.utils.GLCallRecorder;
+
+public class BatchableSorterTest extends RecordingGLTest {
+
+    /** Records the Batchables passed to it in order, instead of drawing them. */
+    public static class OrderRecordingBatch extends FlexBatch<Quad3D> {
+        final Array<Quad3D> drawn = new Array<Quad3D>();
+
+        public OrderRecordingBatch() {
+            super(Quad3D.class, 4000, 0);
+        }
+
+        public void draw(Batchable batchable) {
+            drawn.add((Quad3D) batchable);
+        }
+
+        public void draw(Array<? extends Batchable> batchables, int offset, int count) {
+            for (int i = offset; i < offset + count; i++)
+                drawn.add((Quad3D) batchables.get(i));
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(BatchableSorterTest.class);
+    }
+
+    private FlexBatch<Quad3D> createBatch() {
+        FlexBatch<Quad3D> batch = manage(new FlexBatch<Quad3D>(Quad3D.class, 4000, 0));
+        batch.setShader(manage(new ShaderProgram(BatchablePreparation.generateGenericVertexShader(1),
+                BatchablePreparation.generateGenericFragmentShader(1))));
+        return batch;
+    }
+
+    /** @return A camera at (0, 0, 20) looking at the origin. */
+    private static PerspectiveCamera createCamera() {
+        PerspectiveCamera camera = new PerspectiveCamera(67, 100, 100);
+        camera.position.set(0, 0, 20);
+        camera.lookAt(0, 0, 0);
+        camera.near = 1;
+        camera.far = 100;
+        camera.update();
+        return camera;
+    }
+
+    public void testCulledPersistentGroupsAreEachDrawnOnce() {
+        FlexBatch<Quad3D> batch = createBatch();
+        Texture textureA = createTexture(4, 4);
+        Texture textureB = createTexture(4, 4);
+        BatchableSorter<Quad3D> sorter = new BatchableSorter<Quad3D>(createCamera());
+        sorter.setFrustumCulling(true);
+        for (Texture texture : new Texture[] {textureA, textureB}) {
+            sorter.addPersistent(new Quad3D().texture(texture).position(0, 0, 0));
+            sorter.addPersistent(new Quad3D().texture(texture).position(1, 0, 0));
+            sorter.addPersistent(new Quad3D().texture(texture).position(0, 0, 50)); // behind the camera
+        }
+        endFrame();
+
+        batch.begin();
+        sorter.draw(batch);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(2, frame.drawCalls);
+        assertEquals(4 * 6, frame.verticesDrawn);
+    }
+
+    private static Quad3D blended(float z) {
+        return new Quad3D(Quad3D.Blending.Alpha).position(0, 0, z);
+    }
+
+    private static void assertDrawOrder(OrderRecordingBatch batch, Quad3D... expected) {
+        assertEquals(expected.length, batch.drawn.size);
+        for (int i = 0; i < expected.length; i++)
+            assertSame("Batchable " + i, expected[i], batch.drawn.get(i));
+        batch.drawn.clear();
+    }
+
+    public void testOpaqueGroupsByTextureBeforeBlended() {
+        OrderRecordingBatch batch = manage(new OrderRecordingBatch());
+        Texture textureA = createTexture(4, 4);
+        Texture textureB = createTexture(4, 4);
+        BatchableSorter<Quad3D> sorter = new BatchableSorter<Quad3D>(createCamera());
+        Quad3D blended = blended(0).texture(textureA);
+        Quad3D a1 = new Quad3D().texture(textureA);
+        Quad3D b1 = new Quad3D().texture(textureB);
+        Quad3D a2 = new Quad3D().texture(textureA);
+        Quad3D b2 = new Quad3D().texture(textureB);
+        for (Quad3D quad : new Quad3D[] {blended, a1, b1, a2, b2})
+            sorter.add(quad);
+
+        sorter.draw(batch);
+
+        assertDrawOrder(batch, a1, a2, b1, b2, blended);
+    }
+
+    public void testBlendedAreDrawnFarToNear() {
+        OrderRecordingBatch batch = manage(new OrderRecordingBatch());
+        BatchableSorter<Quad3D> sorter = new BatchableSorter<Quad3D>(createCamera());
+        Quad3D near = blended(10), middle = blended(0), far = blended(-10), middleToo = blended(0), nearest = blended(15);
+        for (Quad3D quad : new Quad3D[] {near, middle, far, middleToo, nearest})
+            sorter.add(quad);
+
+        sorter.flush(batch);
+
+        assertDrawOrder(batch, far, middle, middleToo, near, nearest); // equal distances keep the order they were added in
+        sorter.draw(batch);
+        assertDrawOrder(batch);
+    }
+
+    public void testBlendedAreResortedWhenAddedAfterDrawing() {
+        OrderRecordingBatch batch = manage(new OrderRecordingBatch());
+        BatchableSorter<Quad3D> sorter = new BatchableSorter<Quad3D>(createCamera());
+        Quad3D near = blended(10), far = blended(-10);
+        sorter.add(near);
+        sorter.draw(batch);
+        batch.drawn.clear();
+
+        sorter.add(far);
+        sorter.draw(batch);
+
+        assertDrawOrder(batch, far, near);
+    }
+
+    public void testPersistentBlendedFollowSmallMoves() {
+        OrderRecordingBatch batch = manage(new OrderRecordingBatch());
+        BatchableSorter<Quad3D> sorter = new BatchableSorter<Quad3D>(createCamera());
+        Quad3D a = blended(0), b = blended(5), c = blended(-5), d = blended(10);
+        for (Quad3D quad : new Quad3D[] {a, b, c, d})
+            sorter.addPersistent(quad);
+
+        sorter.draw(batch);
+        assertDrawOrder(batch, c, a, b, d);
+
+        a.position(0, 0, 7); // passes b
+        sorter.draw(batch);
+        assertDrawOrder(batch, c, b, a, d);
+    }
+
+    public void testPersistentBlendedFullyReversed() {
+        // Reversing 40 Batchables takes 780 insertion sort moves, which exceeds the limit, so a full sort is used.
+        OrderRecordingBatch batch = manage(new OrderRecordingBatch());
+        BatchableSorter<Quad3D> sorter = new BatchableSorter<Quad3D>(createCamera());
+        Quad3D[] quads = new Quad3D[40];
+        for (int i = 0; i < quads.length; i++) {
+            quads[i] = blended(-i);
+            sorter.addPersistent(quads[i]);
+        }
+        sorter.draw(batch);
+        Quad3D[] expected = new Quad3D[quads.length];
+        for (int i = 0; i < quads.length; i++)
+            expected[i] = quads[quads.length - 1 - i];
+        assertDrawOrder(batch, expected);
+
+        for (int i = 0; i < quads.length; i++)
+            quads[i].position(0, 0, i - quads.length);
+        sorter.draw(batch);
+
+        assertDrawOrder(batch, quads);
+    }
+
+    public void testPersistentBlendedMergeWithTransient() {
+        OrderRecordingBatch batch = manage(new OrderRecordingBatch());
+        BatchableSorter<Quad3D> sorter = new BatchableSorter<Quad3D>(createCamera());
+        Quad3D persistentFar = blended(-5), persistentNear = blended(5);
+        Quad3D transientMiddle = blended(0), transientNear = blended(5);
+        sorter.add(transientNear);
+        sorter.addPersistent(persistentNear);
+        sorter.add(transientMiddle);
+        sorter.addPersistent(persistentFar);
+        assertFalse(sorter.addPersistent(persistentFar));
+
+        sorter.flush(batch);
+        assertDrawOrder(batch, persistentFar, transientMiddle, persistentNear, transientNear); // persistent first at ties
+
+        sorter.draw(batch);
+        assertDrawOrder(batch, persistentFar, persistentNear);
+
+        assertTrue(sorter.removePersistent(persistentFar));
+        assertFalse(sorter.isPersistent(persistentFar));
+        sorter.draw(batch);
+        assertDrawOrder(batch, persistentNear);
+
+        sorter.clearPersistent();
+        sorter.draw(batch);
+        assertDrawOrder(batch);
+    }
+}
@@ -0,0 +1,184 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable;
+import com.cyphercove.gdx.flexbatch.CompliantBatch;
+import com.cyphercove.gdx.flexbatch.FlexBatch;
+import com.cyphercove.gdx.flexbatch.batchable.NinePatch2D;
+import com.cyphercove.gdx.flexbatch.batchable.Poly2D;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.batchable.Quad3D;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.GLCallRecorder;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+public class FlexBatchRecordingTest extends RecordingGLTest {
+
+    /** A Batchable that only applies 16-bit indices. */
+    public static class ShortIndexedBatchable extends Batchable {
+        protected boolean prepareContext(RenderContextAccumulator renderContext, int remainingVertices,
+                int remainingIndices) {
+            return false;
+        }
+
+        protected void addVertexAttributes(Array<VertexAttribute> attributes) {
+            BatchablePreparation.addBaseAttributes(attributes, 0, false, false);
+        }
+
+        protected int getNumberOfTextures() {
+            return 0;
+        }
+
+        public void refresh() {
+        }
+
+        public void reset() {
+        }
+
+        protected int apply(float[] vertices, int startingIndex, AttributeOffsets offsets, int vertexSize) {
+            return 0;
+        }
+
+        protected int apply(short[] triangles, int startingIndex, short firstVertex) {
+            return 0;
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(FlexBatchRecordingTest.class);
+    }
+
+    public void testOneTextureIsOneDrawCall() {
+        CompliantBatch<Quad2D> batch = manage(new CompliantBatch<Quad2D>(Quad2D.class, false));
+        Texture texture = createTexture(4, 4);
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 100; i++)
+            batch.draw(texture, i, i);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(1, batch.renderCalls);
+        assertEquals(1, frame.drawCalls);
+        assertEquals(100 * 6, frame.verticesDrawn);
+        assertEquals(0, getAvoidableRedundantCalls(frame));
+    }
+
+    public void testTextureChangeFlushes() {
+        CompliantBatch<Quad2D> batch = manage(new CompliantBatch<Quad2D>(Quad2D.class, false));
+        Texture textureA = createTexture(4, 4);
+        Texture textureB = createTexture(4, 4);
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 10; i++)
+            batch.draw(textureA, i, i);
+        for (int i = 0; i < 10; i++)
+            batch.draw(textureB, i, i);
+        for (int i = 0; i < 10; i++)
+            batch.draw(textureA, i, i);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(3, batch.renderCalls);
+        assertEquals(3, frame.drawCalls);
+        assertEquals(3, frame.textureBinds);
+        assertEquals(30 * 6, frame.verticesDrawn);
+    }
+
+    public void testFullBatchFlushes() {
+        CompliantBatch<Quad2D> batch = manage(new CompliantBatch<Quad2D>(Quad2D.class, 400, false));
+        Texture texture = createTexture(4, 4);
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 250; i++)
+            batch.draw(texture, i, i);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(3, frame.drawCalls);
+        assertEquals(250 * 6, frame.verticesDrawn);
+        assertEquals(1, frame.textureBinds);
+    }
+
+    public void testNoRedundantStateChanges() {
+        FlexBatch<Quad3D> batch = manage(new FlexBatch<Quad3D>(Quad3D.class, 4000, 0));
+        ShaderProgram shader = manage(new ShaderProgram(BatchablePreparation.generateGenericVertexShader(1),
+                BatchablePreparation.generateGenericFragmentShader(1)));
+        batch.setShader(shader);
+        Texture textureA = createTexture(4, 4);
+        Texture textureB = createTexture(4, 4);
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 20; i++) {
+            Quad3D quad = batch.draw().texture(i % 4 < 2 ? textureA : textureB).position(i, 0, 0);
+            if (i % 2 == 0)
+                quad.blend();
+            else
+                quad.opaque();
+        }
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(20, frame.drawCalls);
+        assertEquals(0, frame.redundantStateChanges - frame.getRedundantCalls("glActiveTexture"));
+        assertEquals(0, frame.redundantTextureBinds);
+        assertEquals(0, frame.redundantShaderSwitches);
+        assertEquals(0, frame.redundantObjectBinds);
+    }
+
+    public void testRepeatedFramesDrawTheSame() {
+        CompliantBatch<Quad2D> batch = manage(new CompliantBatch<Quad2D>(Quad2D.class, false));
+        Texture texture = createTexture(4, 4);
+        endFrame();
+
+        for (int frameIndex = 0; frameIndex < 3; frameIndex++) {
+            batch.begin();
+            for (int i = 0; i < 10; i++)
+                batch.draw(texture, i, i);
+            batch.end();
+            GLCallRecorder.Report frame = endFrame();
+            assertEquals(1, frame.drawCalls);
+            assertEquals(0, getAvoidableRedundantCalls(frame));
+        }
+    }
+
+    public void testNinePatchesFlushWhenIndicesRunOut() {
+        // 4000 vertices fit 250 nine-patches, but 2000 triangles only fit 111.
+        FlexBatch<Poly2D> batch = manage(new FlexBatch<Poly2D>(Poly2D.class, 4000, 2000));
+        batch.setShader(manage(new ShaderProgram(BatchablePreparation.generateGenericVertexShader(1),
+                BatchablePreparation.generateGenericFragmentShader(1))));
+        TextureRegion region = new TextureRegion(createTexture(16, 16));
+        NinePatch2D ninePatch = new NinePatch2D();
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 250; i++) {
+            ninePatch.refresh();
+            batch.draw(ninePatch.ninePatch(region, 4, 4, 4, 4).position(i, i).size(32, 32));
+        }
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(3, frame.drawCalls);
+        assertEquals(250 * 54, frame.verticesDrawn);
+    }
+
+    public void testIntIndicesRequireIntIndexedBatchable() {
+        replaceRecorder(new GLCallRecorder(true));
+        try {
+            new FlexBatch<ShortIndexedBatchable>(ShortIndexedBatchable.class, 70000, 1000);
+            fail("ShortIndexedBatchable does not implement IntIndexedBatchable.");
+        } catch (IllegalArgumentException expected) {
+        }
+        manage(new FlexBatch<Poly2D>(Poly2D.class, 70000, 1000));
+    }
+}
@@ -0,0 +1,105 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.LifecycleListener;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.utils.GLCallRecorder;
+import com.cyphercove.gdx.flexbatch.utils.GeneratedShaderCache;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+public class GeneratedShaderCacheTest extends RecordingGLTest {
+
+    /** An Application that does nothing but keep its lifecycle listeners. */
+    private static class ListenerApplication implements InvocationHandler {
+        final Array<LifecycleListener> listeners = new Array<LifecycleListener>();
+        final Application application = (Application) Proxy.newProxyInstance(Application.class.getClassLoader(),
+                new Class<?>[] {Application.class}, this);
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("addLifecycleListener"))
+                listeners.add((LifecycleListener) args[0]);
+            else if (method.getName().equals("removeLifecycleListener"))
+                listeners.removeValue((LifecycleListener) args[0], true);
+            Class<?> type = method.getReturnType();
+            if (type == boolean.class)
+                return false;
+            if (type == int.class)
+                return 0;
+            if (type == long.class)
+                return 0L;
+            return null;
+        }
+
+        void dispose() {
+            for (LifecycleListener listener : listeners)
+                listener.dispose();
+        }
+    }
+
+    private Application originalApplication;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(GeneratedShaderCacheTest.class);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        originalApplication = Gdx.app;
+    }
+
+    protected void tearDown() throws Exception {
+        Gdx.app = originalApplication;
+        super.tearDown();
+    }
+
+    public void testProgramsAreShared() {
+        ShaderProgram shader = GeneratedShaderCache.obtain(1, 0);
+        assertSame(shader, GeneratedShaderCache.obtain(1, 0));
+        endFrame();
+
+        assertTrue(GeneratedShaderCache.release(shader));
+        assertTrue(GeneratedShaderCache.release(shader));
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(1, frame.getCalls("glDeleteProgram"));
+        assertFalse(GeneratedShaderCache.release(shader));
+    }
+
+    public void testProgramsAreDisposedWithTheApplication() {
+        ListenerApplication application = new ListenerApplication();
+        Gdx.app = application.application;
+        ShaderProgram shader = GeneratedShaderCache.obtain(2, 0);
+        GeneratedShaderCache.warmUp(3, 0);
+        assertEquals(1, application.listeners.size);
+        endFrame();
+
+        application.dispose();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(2, frame.getCalls("glDeleteProgram"));
+        assertFalse(GeneratedShaderCache.release(shader));
+        GeneratedShaderCache.releaseWarmUps();
+        assertEquals(0, endFrame().getCalls("glDeleteProgram"));
+    }
+
+    public void testProgramsOfAPreviousApplicationAreDropped() {
+        ListenerApplication previous = new ListenerApplication();
+        Gdx.app = previous.application;
+        ShaderProgram previousShader = manage(GeneratedShaderCache.obtain(1, 0));
+
+        ListenerApplication current = new ListenerApplication();
+        Gdx.app = current.application;
+        ShaderProgram shader = GeneratedShaderCache.obtain(1, 0);
+
+        assertNotSame(previousShader, shader);
+        assertEquals(0, previous.listeners.size);
+        assertEquals(1, current.listeners.size);
+        assertFalse(GeneratedShaderCache.release(previousShader));
+        assertTrue(GeneratedShaderCache.release(shader));
+    }
+}
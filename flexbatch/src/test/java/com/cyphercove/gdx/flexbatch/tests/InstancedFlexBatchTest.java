@@ -0,0 +1,202 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.cyphercove.gdx.flexbatch.InstancedFlexBatch;
+import com.cyphercove.gdx.flexbatch.batchable.NinePatch2D;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.batchable.Quad3D;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.GLCallRecorder;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+public class InstancedFlexBatchTest extends RecordingGLTest {
+
+    /** Keeps the instance data uploaded by the last flush and the instance count of each instanced draw call. */
+    private static class InstanceRecorder extends GLCallRecorder {
+        final FloatArray instanceData = new FloatArray();
+        final IntArray instanceCounts = new IntArray();
+
+        InstanceRecorder() {
+            super(true);
+        }
+
+        public void glBufferData(int target, int size, Buffer data, int usage) {
+            super.glBufferData(target, size, data, usage);
+            if (usage == GL20.GL_STREAM_DRAW && data instanceof FloatBuffer) {
+                FloatBuffer floats = ((FloatBuffer) data).duplicate();
+                floats.position(0);
+                instanceData.clear();
+                for (int i = 0; i < size / 4; i++)
+                    instanceData.add(floats.get(i));
+            }
+        }
+
+        public void glDrawElementsInstanced(int mode, int count, int type, int indicesOffset, int instanceCount) {
+            super.glDrawElementsInstanced(mode, count, type, indicesOffset, instanceCount);
+            instanceCounts.add(instanceCount);
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(InstancedFlexBatchTest.class);
+    }
+
+    protected GLCallRecorder createRecorder() {
+        return new InstanceRecorder();
+    }
+
+    private InstanceRecorder instanceRecorder() {
+        return (InstanceRecorder) recorder;
+    }
+
+    private <T extends Quad2D> InstancedFlexBatch<T> createBatch2D(Class<T> type, int maxInstances) {
+        InstancedFlexBatch<T> batch = manage(new InstancedFlexBatch<T>(type, maxInstances));
+        batch.setShader(manage(new ShaderProgram(BatchablePreparation.generateInstancedQuad2DVertexShader(1),
+                BatchablePreparation.generateGenericFragmentShader(1))));
+        return batch;
+    }
+
+    private static AttributeOffsets offsets(Array<VertexAttribute> attributes) {
+        return new AttributeOffsets(new VertexAttributes(attributes.toArray()));
+    }
+
+    public void testQuad2DInstanceLayout() {
+        InstancedFlexBatch<Quad2D> batch = createBatch2D(Quad2D.class, 10);
+        Texture texture = createTexture(4, 4);
+        Array<VertexAttribute> attributes = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+        new Quad2D().addInstanceAttributes(attributes);
+        AttributeOffsets offsets = offsets(attributes);
+        int instanceSize = offsets.attributes.vertexSize / 4;
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 3; i++) {
+            Quad2D quad = batch.draw();
+            quad.texture(texture).region(0.25f, 0.5f, 0.75f, 1f).size(10 + i, 20 + i).origin(1, 2).scale(2, 3)
+                    .color(Color.RED).rotateCoordinates90(true);
+            quad.position(100 * i, 50 * i).rotation(45 * i);
+        }
+        batch.end();
+        FloatArray data = instanceRecorder().instanceData;
+
+        assertEquals(3 * instanceSize, data.size);
+        for (int i = 0; i < 3; i++) {
+            int start = i * instanceSize;
+            assertEquals(Color.RED.toFloatBits(), data.get(start + offsets.color0), 0f);
+            assertRegion(data, start + offsets.textureCoordinate0, 0.25f, 0.5f, 0.75f, 1f);
+            assertRegion(data, start + offsets.generic0, 100 * i + 1, 50 * i + 2, 45 * i * MathUtils.degRad, 1);
+            assertRegion(data, start + offsets.generic1, (10 + i) * 2, (20 + i) * 3, -2, -6);
+        }
+    }
+
+    public void testQuad3DInstanceLayout() {
+        InstancedFlexBatch<Quad3D> batch = manage(new InstancedFlexBatch<Quad3D>(Quad3D.class, 10));
+        batch.setShader(manage(new ShaderProgram(BatchablePreparation.generateInstancedQuad3DVertexShader(1),
+                BatchablePreparation.generateGenericFragmentShader(1))));
+        Texture texture = createTexture(4, 4);
+        Array<VertexAttribute> attributes = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+        new Quad3D().addInstanceAttributes(attributes);
+        AttributeOffsets offsets = offsets(attributes);
+        int instanceSize = offsets.attributes.vertexSize / 4;
+        Quaternion rotation = new Quaternion(Vector3.Y, 30);
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 2; i++) {
+            batch.draw().texture(texture).size(4, 6).origin(1, 1).scale(2, 2).position(i, 2 * i, 3 * i)
+                    .rotation(rotation);
+        }
+        batch.end();
+        FloatArray data = instanceRecorder().instanceData;
+
+        assertEquals(2 * instanceSize, data.size);
+        for (int i = 0; i < 2; i++) {
+            int start = i * instanceSize;
+            assertEquals(Color.WHITE.toFloatBits(), data.get(start + offsets.color0), 0f);
+            assertRegion(data, start + offsets.textureCoordinate0, 0, 0, 1, 1);
+            assertRegion(data, start + offsets.generic0, i, 2 * i, 3 * i, 0);
+            assertRegion(data, start + offsets.generic1, rotation.x, rotation.y, rotation.z, rotation.w);
+            assertRegion(data, start + offsets.generic2, 8, 12, -6, -8);
+        }
+    }
+
+    private static void assertRegion(FloatArray data, int index, float a, float b, float c, float d) {
+        assertEquals(a, data.get(index), 1e-5f);
+        assertEquals(b, data.get(index + 1), 1e-5f);
+        assertEquals(c, data.get(index + 2), 1e-5f);
+        assertEquals(d, data.get(index + 3), 1e-5f);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void testRejectsTypesWithoutInstancing() {
+        try {
+            new InstancedFlexBatch(NinePatch2D.class, 10);
+            fail("NinePatch2D does not implement InstanceableBatchable.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testOneInstancedDrawCallPerBatch() {
+        InstancedFlexBatch<Quad2D> batch = createBatch2D(Quad2D.class, 100);
+        Texture texture = createTexture(4, 4);
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 40; i++)
+            batch.draw().texture(texture).position(i, i);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(1, batch.renderCalls);
+        assertEquals(1, frame.drawCalls);
+        assertEquals(1, frame.getCalls("glDrawElementsInstanced"));
+        assertEquals(0, frame.getCalls("glDrawElements"));
+        assertEquals(40 * 6, frame.verticesDrawn);
+        assertEquals(1, instanceRecorder().instanceCounts.size);
+        assertEquals(40, instanceRecorder().instanceCounts.get(0));
+    }
+
+    public void testInstanceCountsAcrossFlushes() {
+        InstancedFlexBatch<Quad2D> batch = createBatch2D(Quad2D.class, 16);
+        Texture textureA = createTexture(4, 4);
+        Texture textureB = createTexture(4, 4);
+        // The Mesh uploads its template on its first bind, which binds its index buffer twice.
+        batch.begin();
+        batch.draw().texture(textureA);
+        batch.end();
+        instanceRecorder().instanceCounts.clear();
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 40; i++)
+            batch.draw().texture(textureA).position(i, i);
+        for (int i = 0; i < 5; i++)
+            batch.draw().texture(textureB).position(i, i);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        IntArray instanceCounts = instanceRecorder().instanceCounts;
+        assertEquals(4, batch.renderCalls);
+        assertEquals(4, frame.getCalls("glDrawElementsInstanced"));
+        assertEquals(4, instanceCounts.size);
+        assertEquals(16, instanceCounts.get(0));
+        assertEquals(16, instanceCounts.get(1));
+        assertEquals(8, instanceCounts.get(2));
+        assertEquals(5, instanceCounts.get(3));
+        assertEquals(0, getAvoidableRedundantCalls(frame));
+    }
+}
@@ -0,0 +1,85 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.cyphercove.gdx.flexbatch.utils.GLCallRecorder;
+import junit.framework.TestCase;
+
+/** Runs each test with a {@link GLCallRecorder} installed in place of the GL, so the GL calls made by batches can be counted
+ * without a GPU. */
+public abstract class RecordingGLTest extends TestCase {
+
+    private static HeadlessApplication application;
+
+    protected GLCallRecorder recorder;
+    private final Array<Disposable> disposables = new Array<Disposable>();
+
+    protected void setUp() throws Exception {
+        startApplication();
+        recorder = createRecorder();
+        recorder.install();
+    }
+
+    protected void tearDown() throws Exception {
+        for (Disposable disposable : disposables)
+            disposable.dispose();
+        disposables.clear();
+        recorder.uninstall();
+    }
+
+    /** Starts a headless application once, which loads the natives and provides the {@code Gdx.app} that managed GL
+     * resources are registered with. */
+    private static synchronized void startApplication() {
+        if (application != null)
+            return;
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = -1;
+        application = new HeadlessApplication(new ApplicationAdapter() {
+        }, config);
+    }
+
+    /** @return The recorder to install for each test. By default, it does not provide GL30. */
+    protected GLCallRecorder createRecorder() {
+        return new GLCallRecorder(false);
+    }
+
+    /** Installs a different recorder for the rest of the test. */
+    protected void replaceRecorder(GLCallRecorder recorder) {
+        this.recorder.uninstall();
+        this.recorder = recorder;
+        recorder.install();
+    }
+
+    /** Disposes the object at the end of the test. */
+    protected <T extends Disposable> T manage(T disposable) {
+        disposables.add(disposable);
+        return disposable;
+    }
+
+    protected Texture createTexture(int width, int height) {
+        Pixmap pixmap = new Pixmap(width, height, Pixmap.Format.RGBA8888);
+        Texture texture = new Texture(pixmap);
+        pixmap.dispose();
+        return manage(texture);
+    }
+
+    /** @return The number of redundant calls in the report, other than calls to glActiveTexture. A RenderContextAccumulator
+     * sets the active unit with every texture bind, because other code may change it at any time. */
+    protected static int getAvoidableRedundantCalls(GLCallRecorder.Report report) {
+        return report.getRedundantCalls() - report.getRedundantCalls("glActiveTexture");
+    }
+
+    /** Ends the recorder's frame and forgets the GL state, as if another application had used the GL in between, so a
+     * following frame is counted from a clean slate.
+     * @return The counts of the frame that was ended. */
+    protected GLCallRecorder.Report endFrame() {
+        recorder.endFrame();
+        recorder.forgetState();
+        return recorder.lastFrame;
+    }
+}
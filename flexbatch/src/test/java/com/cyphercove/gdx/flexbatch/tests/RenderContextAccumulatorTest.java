@@ -0,0 +1,105 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.cyphercove.gdx.flexbatch.utils.GLCallRecorder;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+public class RenderContextAccumulatorTest extends RecordingGLTest {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(RenderContextAccumulatorTest.class);
+    }
+
+    public void testChangesAreAppliedOnce() {
+        RenderContextAccumulator renderContext = new RenderContextAccumulator();
+        renderContext.begin();
+        endFrame();
+
+        assertTrue(renderContext.setBlending(true));
+        assertTrue(renderContext.setBlendFunction(GL20.GL_ONE, GL20.GL_ONE_MINUS_SRC_ALPHA));
+        assertFalse(renderContext.setBlending(true));
+        assertTrue(renderContext.hasPendingChanges());
+        renderContext.executeChanges();
+        assertFalse(renderContext.hasPendingChanges());
+        renderContext.executeChanges();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(1, frame.getCalls("glEnable"));
+        assertEquals(1, frame.getCalls("glBlendFuncSeparate") + frame.getCalls("glBlendFunc"));
+        assertEquals(0, frame.drawCalls);
+        renderContext.end();
+    }
+
+    public void testRevertedChangeIsNotApplied() {
+        RenderContextAccumulator renderContext = new RenderContextAccumulator();
+        renderContext.begin();
+        renderContext.setDepthTesting(true);
+        renderContext.executeChanges();
+        endFrame();
+
+        renderContext.setDepthTesting(false);
+        renderContext.setDepthTesting(true);
+        assertFalse(renderContext.hasPendingChanges());
+        renderContext.executeChanges();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(0, frame.calls);
+        renderContext.end();
+    }
+
+    public void testTextureUnitsBoundOnce() {
+        Texture textureA = createTexture(4, 4);
+        Texture textureB = createTexture(4, 4);
+        RenderContextAccumulator renderContext = new RenderContextAccumulator();
+        renderContext.begin();
+        endFrame();
+
+        assertTrue(renderContext.setTextureUnit(textureA, 0));
+        assertTrue(renderContext.setTextureUnit(textureB, 1));
+        renderContext.executeChanges();
+        assertFalse(renderContext.setTextureUnit(textureA, 0));
+        renderContext.executeChanges();
+        assertTrue(renderContext.setTextureUnit(textureB, 0));
+        renderContext.executeChanges();
+        renderContext.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(3, frame.textureBinds);
+        assertEquals(0, frame.redundantTextureBinds);
+        assertEquals(0, getAvoidableRedundantCalls(frame));
+    }
+
+    public void testEndRestoresDefaults() {
+        RenderContextAccumulator renderContext = new RenderContextAccumulator();
+        renderContext.begin();
+        renderContext.setBlending(true);
+        renderContext.setDepthTesting(true);
+        renderContext.setDepthMasking(false);
+        renderContext.executeChanges();
+        endFrame();
+
+        renderContext.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(2, frame.getCalls("glDisable"));
+        assertEquals(1, frame.getCalls("glDepthMask"));
+        assertEquals(0, getAvoidableRedundantCalls(frame));
+    }
+
+    public void testEndActivatesUnitZeroAfterOutsideBinds() {
+        Texture texture = createTexture(4, 4);
+        RenderContextAccumulator renderContext = new RenderContextAccumulator();
+        renderContext.begin();
+        renderContext.setTextureUnit(texture, 0);
+        renderContext.executeChanges();
+        texture.bind(3); // as other code might between draws
+        recorder.endFrame(); // keeps the state, so the recorder knows unit 3 is active
+
+        renderContext.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(1, frame.getCalls("glActiveTexture"));
+        assertEquals(0, frame.getRedundantCalls("glActiveTexture"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.cyphercove.gdx.flexbatch.CompliantBatch;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.utils.GLCallRecorder;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+public class SortedDrawQueueTest extends RecordingGLTest {
+
+    /** The number of floats in a Quad2D vertex, which starts with its position. */
+    private static final int QUAD_2D_VERTEX_SIZE = 5;
+
+    /** Keeps the texture bound at each draw call and the x positions of the quads it draws. */
+    private static class DrawOrderRecorder extends GLCallRecorder {
+        final IntArray drawnTextures = new IntArray();
+        final Array<FloatArray> drawnQuadPositions = new Array<FloatArray>();
+        private final FloatArray vertices = new FloatArray();
+        private int boundTexture;
+
+        DrawOrderRecorder() {
+            super(true);
+        }
+
+        public void glBindTexture(int target, int texture) {
+            super.glBindTexture(target, texture);
+            boundTexture = texture;
+        }
+
+        public void glBufferData(int target, int size, Buffer data, int usage) {
+            super.glBufferData(target, size, data, usage);
+            if (target != GL20.GL_ARRAY_BUFFER || data == null)
+                return;
+            FloatBuffer floats;
+            if (data instanceof ByteBuffer) {
+                ByteBuffer bytes = ((ByteBuffer) data).duplicate().order(ByteOrder.nativeOrder());
+                bytes.position(0);
+                floats = bytes.asFloatBuffer();
+            } else {
+                floats = ((FloatBuffer) data).duplicate();
+                floats.position(0);
+            }
+            vertices.clear();
+            for (int i = 0; i < size / 4; i++)
+                vertices.add(floats.get(i));
+        }
+
+        public void glDrawElements(int mode, int count, int type, int indices) {
+            super.glDrawElements(mode, count, type, indices);
+            drawnTextures.add(boundTexture);
+            FloatArray positions = new FloatArray();
+            for (int i = 0; i < count / 6; i++)
+                positions.add(vertices.get(i * 4 * QUAD_2D_VERTEX_SIZE));
+            drawnQuadPositions.add(positions);
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(SortedDrawQueueTest.class);
+    }
+
+    protected GLCallRecorder createRecorder() {
+        return new DrawOrderRecorder();
+    }
+
+    private DrawOrderRecorder drawOrderRecorder() {
+        return (DrawOrderRecorder) recorder;
+    }
+
+    private static void draw(CompliantBatch<Quad2D> batch, Texture texture, int layer, int... xs) {
+        batch.setLayer(layer);
+        for (int x : xs)
+            batch.draw(texture, x, 0);
+    }
+
+    public void testDrawsAreOrderedByLayerThenContextThenSubmission() {
+        CompliantBatch<Quad2D> batch = manage(new CompliantBatch<Quad2D>(Quad2D.class, false));
+        batch.setSorted(true);
+        Texture textureA = createTexture(4, 4);
+        Texture textureB = createTexture(4, 4);
+        int a = textureA.getTextureObjectHandle(), b = textureB.getTextureObjectHandle();
+        endFrame();
+
+        batch.begin();
+        draw(batch, textureA, 1, 0);
+        draw(batch, textureB, -1, 1, 2);
+        draw(batch, textureA, 0, 3, 4);
+        draw(batch, textureB, 1, 5);
+        draw(batch, textureA, -1, 6);
+        draw(batch, textureB, 0, 7);
+        draw(batch, textureA, 1, 8);
+        draw(batch, textureA, -1, 9);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        // Contexts are numbered in the order they are first seen, so A sorts before B within every layer.
+        int[] expectedTextures = {a, b, a, b, a, b};
+        float[][] expectedPositions = {{6, 9}, {1, 2}, {3, 4}, {7}, {0, 8}, {5}};
+        DrawOrderRecorder recorder = drawOrderRecorder();
+        assertEquals(6, frame.drawCalls);
+        assertEquals(expectedTextures.length, recorder.drawnTextures.size);
+        for (int i = 0; i < expectedTextures.length; i++) {
+            assertEquals("Texture of draw " + i, expectedTextures[i], recorder.drawnTextures.get(i));
+            FloatArray positions = recorder.drawnQuadPositions.get(i);
+            assertEquals("Quads of draw " + i, expectedPositions[i].length, positions.size);
+            for (int j = 0; j < positions.size; j++)
+                assertEquals("Quad " + j + " of draw " + i, expectedPositions[i][j], positions.get(j), 0f);
+        }
+    }
+
+    public void testOneLayerAndContextIsOneDrawCall() {
+        CompliantBatch<Quad2D> batch = manage(new CompliantBatch<Quad2D>(Quad2D.class, false));
+        batch.setSorted(true);
+        Texture textureA = createTexture(4, 4);
+        Texture textureB = createTexture(4, 4);
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 20; i++)
+            draw(batch, i % 2 == 0 ? textureA : textureB, 0, i);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(2, frame.drawCalls);
+        assertEquals(2, frame.textureBinds);
+        assertEquals(20 * 6, frame.verticesDrawn);
+    }
+}
@@ -0,0 +1,156 @@
+package com.cyphercove.gdx.flexbatch.tests;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.cyphercove.gdx.flexbatch.FlexBatch;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.GLCallRecorder;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.TextureArrayBinner;
+
+public class TextureArrayBinnerTest extends RecordingGLTest {
+
+    /** A Quad2D with layered texture coordinates, so it can be drawn from a binned TextureArray. */
+    public static class LayeredQuad2D extends Quad2D {
+        protected boolean isTextureCoordinate3D() {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TextureArrayBinnerTest.class);
+    }
+
+    protected GLCallRecorder createRecorder() {
+        return new GLCallRecorder(true);
+    }
+
+    private FlexBatch<LayeredQuad2D> createBatch() {
+        FlexBatch<LayeredQuad2D> batch = manage(new FlexBatch<LayeredQuad2D>(LayeredQuad2D.class, 4000, 0));
+        batch.setShader(manage(new ShaderProgram(BatchablePreparation.generateGenericVertexShader(1, true),
+                BatchablePreparation.generateGenericFragmentShader(1, true))));
+        return batch;
+    }
+
+    private Texture[] createTextures(int count) {
+        Texture[] textures = new Texture[count];
+        for (int i = 0; i < count; i++)
+            textures[i] = createTexture(8, 8);
+        return textures;
+    }
+
+    public void testBinnedTexturesDrawInOneFlush() {
+        FlexBatch<LayeredQuad2D> batch = createBatch();
+        Texture[] textures = createTextures(4);
+        TextureArrayBinner binner = manage(new TextureArrayBinner(8, 8, 4));
+        assertTrue(TextureArrayBinner.isSupported());
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 20; i++)
+            batch.draw().texture(textures[i % 4]).binTextures(binner).position(i, i);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(1, batch.renderCalls);
+        assertEquals(1, frame.drawCalls);
+        assertEquals(20 * 6, frame.verticesDrawn);
+        assertEquals(4, binner.getLayerCount());
+        assertEquals(4, frame.getCalls("glCopyTexSubImage3D"));
+        assertEquals(0, frame.getCalls("glGetIntegerv"));
+        for (int i = 0; i < 4; i++)
+            assertEquals(i, binner.getLayer(textures[i]));
+    }
+
+    public void testTexturesThatCannotBeBinnedAreDrawnUnchanged() {
+        FlexBatch<LayeredQuad2D> batch = createBatch();
+        Texture[] textures = createTextures(2);
+        Texture otherSize = createTexture(4, 4);
+        TextureArrayBinner binner = manage(new TextureArrayBinner(8, 8, 1));
+        endFrame();
+
+        batch.begin();
+        batch.draw().texture(textures[0]).binTextures(binner);
+        batch.draw().texture(textures[1]).binTextures(binner);
+        batch.draw().texture(otherSize).binTextures(binner);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(0, binner.getLayer(textures[0]));
+        assertEquals(-1, binner.getLayer(textures[1]));
+        assertEquals(-1, binner.getLayer(otherSize));
+        assertEquals(3, frame.drawCalls);
+    }
+
+    public void testOnlyTheArrayFormatIsBinned() {
+        Pixmap pixmap = new Pixmap(8, 8, Pixmap.Format.RGB888);
+        Texture rgb = manage(new Texture(pixmap));
+        pixmap.dispose();
+        TextureArrayBinner binner = manage(new TextureArrayBinner(8, 8, 4));
+
+        assertEquals(-1, binner.bin(rgb));
+        assertEquals(0, binner.bin(createTexture(8, 8)));
+    }
+
+    public void testDisplacedTextureArrayIsRestored() {
+        TextureArrayBinner other = manage(new TextureArrayBinner(8, 8, 1));
+        TextureArrayBinner binner = manage(new TextureArrayBinner(8, 8, 1));
+        Texture texture = createTexture(8, 8);
+        RenderContextAccumulator renderContext = new RenderContextAccumulator();
+        renderContext.begin();
+        renderContext.setTextureUnit(other.getTextureArray(), 0);
+        renderContext.executeChanges();
+        binner.setRenderContext(renderContext);
+        endFrame();
+
+        binner.bin(texture);
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(2, frame.textureBinds); // the copy, then the restore
+        assertEquals(0, frame.getCalls("glGetIntegerv"));
+        renderContext.end();
+    }
+
+    public void testApplied2DTextureIsNotRebound() {
+        TextureArrayBinner binner = manage(new TextureArrayBinner(8, 8, 1));
+        Texture applied = createTexture(4, 4);
+        Texture texture = createTexture(8, 8);
+        RenderContextAccumulator renderContext = new RenderContextAccumulator();
+        renderContext.begin();
+        renderContext.setTextureUnit(applied, 0);
+        renderContext.executeChanges();
+        binner.setRenderContext(renderContext);
+        endFrame();
+
+        binner.bin(texture);
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(1, frame.textureBinds);
+        renderContext.end();
+    }
+
+    public void testFallbackWithoutGL30() {
+        replaceRecorder(new GLCallRecorder(false));
+        FlexBatch<LayeredQuad2D> batch = createBatch();
+        Texture[] textures = createTextures(2);
+        TextureArrayBinner binner = manage(new TextureArrayBinner(8, 8, 4));
+        assertFalse(TextureArrayBinner.isSupported());
+        assertNull(binner.getTextureArray());
+        endFrame();
+
+        batch.begin();
+        for (int i = 0; i < 20; i++)
+            batch.draw().texture(textures[i / 10]).binTextures(binner).position(i, i);
+        batch.end();
+        GLCallRecorder.Report frame = endFrame();
+
+        assertEquals(-1, binner.bin(textures[0]));
+        assertEquals(0, binner.getLayerCount());
+        assertEquals(2, frame.drawCalls);
+        assertEquals(2, frame.textureBinds);
+        assertEquals(0, frame.getCalls("glCopyTexSubImage3D"));
+        assertEquals(0, getAvoidableRedundantCalls(frame));
+    }
+}